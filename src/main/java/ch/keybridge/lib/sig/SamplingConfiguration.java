@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background sampling configuration for
+ * {@link SystemInspectorGeneral#startSampling(SamplingConfiguration)}.
+ * <p>
+ * Each subsystem is refreshed on its own interval. A cached value is returned
+ * by the SystemInspectorGeneral getter methods only while it is younger than
+ * the subsystem maximum age (the staleness bound); an older value is replaced
+ * by a synchronous read. Set a subsystem interval to zero to disable
+ * background sampling of that subsystem.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class SamplingConfiguration {
+
+  /**
+   * The refresh interval for each subsystem (milliseconds).
+   */
+  private final Map<ESubsystem, Long> intervals = new EnumMap<>(ESubsystem.class);
+  /**
+   * The maximum age of a cached value for each subsystem (milliseconds).
+   */
+  private final Map<ESubsystem, Long> maxAges = new EnumMap<>(ESubsystem.class);
+
+  /**
+   * Construct a new configuration with default intervals: one second for CPU
+   * and memory, five seconds for network interfaces and thirty seconds for
+   * file systems. The default maximum age is three times the interval.
+   */
+  public SamplingConfiguration() {
+    setInterval(ESubsystem.CPU, 1, TimeUnit.SECONDS);
+    setInterval(ESubsystem.MEMORY, 1, TimeUnit.SECONDS);
+    setInterval(ESubsystem.NETWORK_INTERFACE, 5, TimeUnit.SECONDS);
+    setInterval(ESubsystem.FILE_SYSTEM, 30, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Set the refresh interval for a subsystem. This also resets the maximum age
+   * to three times the interval.
+   *
+   * @param subsystem the subsystem
+   * @param interval  the refresh interval; zero to disable sampling
+   * @param unit      the interval time unit
+   * @return this configuration
+   */
+  public SamplingConfiguration setInterval(ESubsystem subsystem, long interval, TimeUnit unit) {
+    intervals.put(subsystem, unit.toMillis(interval));
+    maxAges.put(subsystem, 3 * unit.toMillis(interval));
+    return this;
+  }
+
+  /**
+   * Set the maximum age (staleness bound) of a cached subsystem value.
+   *
+   * @param subsystem the subsystem
+   * @param maxAge    the maximum age
+   * @param unit      the maximum age time unit
+   * @return this configuration
+   */
+  public SamplingConfiguration setMaxAge(ESubsystem subsystem, long maxAge, TimeUnit unit) {
+    maxAges.put(subsystem, unit.toMillis(maxAge));
+    return this;
+  }
+
+  /**
+   * Get the refresh interval for a subsystem.
+   *
+   * @param subsystem the subsystem
+   * @return the refresh interval (milliseconds); zero if disabled
+   */
+  public long getInterval(ESubsystem subsystem) {
+    return intervals.getOrDefault(subsystem, 0L);
+  }
+
+  /**
+   * Get the maximum age of a cached subsystem value.
+   *
+   * @param subsystem the subsystem
+   * @return the maximum age (milliseconds)
+   */
+  public long getMaxAge(ESubsystem subsystem) {
+    return maxAges.getOrDefault(subsystem, 0L);
+  }
+
+  /**
+   * Determine if background sampling is enabled for a subsystem.
+   *
+   * @param subsystem the subsystem
+   * @return TRUE if the subsystem interval is greater than zero
+   */
+  public boolean isEnabled(ESubsystem subsystem) {
+    return getInterval(subsystem) > 0;
+  }
+
+  @Override
+  public String toString() {
+    return "SamplingConfiguration intervals " + intervals + " max age " + maxAges;
+  }
+
+  /**
+   * Subsystems that support background sampling.
+   */
+  public static enum ESubsystem {
+    CPU, MEMORY, FILE_SYSTEM, NETWORK_INTERFACE;
+  }
+
+}
@@ -15,15 +15,36 @@
  */
 package ch.keybridge.lib.sig;
 
+import ch.keybridge.lib.sig.SamplingConfiguration.ESubsystem;
+import ch.keybridge.lib.sig.SystemSnapshot.ECollector;
 import ch.keybridge.lib.sig.type.SystemType;
 import ch.keybridge.lib.sig.hw.*;
 import ch.keybridge.lib.sig.hw.net.NetworkInterfaceInfo;
 import ch.keybridge.lib.sig.hw.net.WirelessNetworkInfo;
 import ch.keybridge.lib.sig.hw.sensor.ThermalInfo;
 import ch.keybridge.lib.sig.sw.OperatingSystemInfo;
+import ch.keybridge.lib.sig.sw.config.NTPConfiguration;
+import ch.keybridge.lib.sig.sw.run.ProcessInfo;
+import ch.keybridge.lib.sig.sw.run.SocketInfo;
 import com.sun.jna.Platform;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
 
 /**
  * The main system inspector class. This is the {@code SIG} entry point.
@@ -33,10 +54,44 @@ import java.util.Collection;
  */
 public class SystemInspectorGeneral {
 
+  /**
+   * The default per-collector timeout for {@link #snapshotAll()} (seconds).
+   */
+  private static final long SNAPSHOT_TIMEOUT = 10;
+  /**
+   * The bounded executor that runs the {@link #snapshotAll()} collectors. It
+   * has one (daemon) thread per collector; idle threads are released. Since at
+   * most one task per collector is in flight (see {@link #IN_FLIGHT}) the
+   * bounded queue never fills.
+   */
+  private static final ThreadPoolExecutor SNAPSHOT_EXECUTOR = new ThreadPoolExecutor(ECollector.values().length, ECollector.values().length,
+                                                                                      30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(ECollector.values().length),
+                                                                                      runnable -> {
+                                                                                        Thread thread = new Thread(runnable, "sig-snapshot");
+                                                                                        thread.setDaemon(true);
+                                                                                        return thread;
+                                                                                      });
+
+  /**
+   * The collectors with a task still running (e.g. a hung system command from
+   * an earlier, timed out snapshot). These are skipped so that a hung collector
+   * ties up at most one thread and later snapshots do not queue behind it.
+   */
+  private static final Set<ECollector> IN_FLIGHT = ConcurrentHashMap.newKeySet();
+
+  static {
+    SNAPSHOT_EXECUTOR.allowCoreThreadTimeOut(true);
+  }
+
   /**
    * The current platform type.
    */
   private final SystemType currentPlatform;
+  /**
+   * The process-wide background sampler, shared by all SystemInspectorGeneral
+   * instances. Null unless sampling has been started.
+   */
+  private static volatile SystemSampler sampler;
 
   /**
    * Private constructor - use {@link #getInstance()}
@@ -62,6 +117,227 @@ public class SystemInspectorGeneral {
     return new SystemInspectorGeneral();
   }
 
+  /**
+   * Start background sampling.
+   * <p>
+   * In sampling mode each configured subsystem (CPU, memory, file system and
+   * network interface) is refreshed on its own interval by a background
+   * thread. The corresponding getter methods then return the latest cached
+   * value instead of re-reading the system, provided the value is younger than
+   * the configured maximum age. Each caller receives its own copy of the
+   * cached value.
+   * <p>
+   * Sampling is process-wide: the cache is shared by all SystemInspectorGeneral
+   * instances, and starting or stopping sampling on any instance affects all of
+   * them. Calling this method while sampling is active restarts sampling with
+   * the new configuration.
+   *
+   * @param configuration the sampling configuration
+   */
+  public void startSampling(SamplingConfiguration configuration) {
+    synchronized (SystemInspectorGeneral.class) {
+      stopSampling();
+      Map<ESubsystem, Callable<?>> loaders = new EnumMap<>(ESubsystem.class);
+      loaders.put(ESubsystem.CPU, CPUInfo::getInstance);
+      loaders.put(ESubsystem.MEMORY, MemoryInfo::getInstance);
+      loaders.put(ESubsystem.FILE_SYSTEM, SystemInspectorGeneral::readFileSystemInfo);
+      loaders.put(ESubsystem.NETWORK_INTERFACE, SystemInspectorGeneral::readNetworkInterfaceInfo);
+      sampler = new SystemSampler(configuration, loaders);
+    }
+  }
+
+  /**
+   * Stop the process-wide background sampling. Subsequent getter calls read
+   * the system directly. This method has no effect if sampling is not active.
+   */
+  public void stopSampling() {
+    synchronized (SystemInspectorGeneral.class) {
+      if (sampler != null) {
+        sampler.shutdown();
+        sampler = null;
+      }
+    }
+  }
+
+  /**
+   * Determine if background sampling is active.
+   *
+   * @return TRUE if sampling has been started and not stopped
+   */
+  public boolean isSampling() {
+    return sampler != null;
+  }
+
+  /**
+   * Get a subsystem value from the background sampler.
+   *
+   * @param <T>       the value type
+   * @param sampler   the active sampler
+   * @param subsystem the subsystem
+   * @param loader    the synchronous loader, used if the cached value is
+   *                  missing or stale
+   * @return the cached or freshly loaded value
+   * @throws IOException if the loader fails
+   */
+  private static <T> T getSampled(SystemSampler sampler, ESubsystem subsystem, Callable<T> loader) throws IOException {
+    try {
+      return sampler.get(subsystem, loader);
+    } catch (IOException | RuntimeException exception) {
+      throw exception;
+    } catch (Exception exception) {
+      throw new IOException(exception);
+    }
+  }
+
+  /**
+   * Copy each element of a cached collection, so that the caller cannot modify
+   * the shared cached instances.
+   *
+   * @param <T>    the element type
+   * @param values the cached values
+   * @param copier the element copy method
+   * @return a new collection of copies
+   */
+  private static <T> Collection<T> copyAll(Collection<T> values, UnaryOperator<T> copier) {
+    Collection<T> copies = new ArrayList<>(values.size());
+    for (T value : values) {
+      copies.add(copier.apply(value));
+    }
+    return copies;
+  }
+
+  /**
+   * Read all file system instances into an unmodifiable collection.
+   *
+   * @return the file system instances
+   * @throws Exception if the file systems cannot be read
+   */
+  private static Collection<FileSystemInfo> readFileSystemInfo() throws Exception {
+    return Collections.unmodifiableCollection(FileSystemInfo.getAllInstances());
+  }
+
+  /**
+   * Read all network interface instances into an unmodifiable collection.
+   *
+   * @return the network interface instances
+   * @throws IOException if the network interfaces cannot be read
+   */
+  private static Collection<NetworkInterfaceInfo> readNetworkInterfaceInfo() throws IOException {
+    return Collections.unmodifiableCollection(NetworkInterfaceInfo.getAllInterfaces());
+  }
+
+  /**
+   * Collect a full system inventory, running each collector concurrently with
+   * a default per-collector timeout of ten seconds.
+   *
+   * @return a system snapshot
+   * @see #snapshotAll(long, java.util.concurrent.TimeUnit)
+   */
+  public SystemSnapshot snapshotAll() {
+    return snapshotAll(SNAPSHOT_TIMEOUT, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Collect a full system inventory: CPU, memory, file systems, network
+   * interfaces, displays, processes, sockets and NTP configuration.
+   * <p>
+   * Each collector runs concurrently on a bounded executor, so the total wall
+   * time is close to that of the slowest collector rather than the sum of all.
+   * A collector that fails, or that does not complete within the timeout
+   * (measured from the start of the snapshot), is cancelled and reported in
+   * the snapshot failures; the other values are still returned. A collector
+   * that is still running from an earlier snapshot (i.e. it ignored the
+   * cancellation) is not started again and is reported with a
+   * {@code RejectedExecutionException}.
+   * <p>
+   * If sampling is active the CPU, memory, file system and network interface
+   * values are taken from the sampler cache.
+   *
+   * @param timeout the per-collector timeout
+   * @param unit    the timeout time unit
+   * @return a system snapshot
+   */
+  public SystemSnapshot snapshotAll(long timeout, TimeUnit unit) {
+    Map<ECollector, Callable<?>> collectors = new EnumMap<>(ECollector.class);
+    collectors.put(ECollector.CPU, this::getCPUInfo);
+    collectors.put(ECollector.MEMORY, this::getMemoryInfo);
+    collectors.put(ECollector.FILE_SYSTEM, this::getFileSystemInfo);
+    collectors.put(ECollector.NETWORK_INTERFACE, this::getNetworkInterfaceInfo);
+    collectors.put(ECollector.DISPLAY, this::getDisplayInfo);
+    collectors.put(ECollector.PROCESS, ProcessInfo::getAllProcesses);
+    collectors.put(ECollector.SOCKET, SocketInfo::getAllSockets);
+    collectors.put(ECollector.NTP, NTPConfiguration::getInstance);
+    return snapshot(collectors, timeout, unit);
+  }
+
+  /**
+   * Run a set of collectors concurrently.
+   *
+   * @param collectors the collectors
+   * @param timeout    the per-collector timeout
+   * @param unit       the timeout time unit
+   * @return a system snapshot
+   */
+  static SystemSnapshot snapshot(Map<ECollector, Callable<?>> collectors, long timeout, TimeUnit unit) {
+    long start = System.nanoTime();
+    SystemSnapshot snapshot = new SystemSnapshot(System.currentTimeMillis());
+    Map<ECollector, Future<?>> futures = new EnumMap<>(ECollector.class);
+    Map<ECollector, AtomicBoolean> started = new EnumMap<>(ECollector.class);
+    /**
+     * Exactly one side releases the in-flight marker of a submission: the task
+     * if it starts, otherwise the caller when it gives up on the task. Both
+     * claim the start flag first, so a task cancelled as it enters call() can
+     * not release the marker of a newer snapshot's task.
+     */
+    for (Map.Entry<ECollector, Callable<?>> entry : collectors.entrySet()) {
+      ECollector collector = entry.getKey();
+      Callable<?> task = entry.getValue();
+      if (!IN_FLIGHT.add(collector)) {
+        snapshot.setFailure(collector, new RejectedExecutionException(collector + " collector is still running from a previous snapshot"));
+        continue;
+      }
+      AtomicBoolean running = new AtomicBoolean();
+      try {
+        futures.put(collector, SNAPSHOT_EXECUTOR.submit(() -> {
+          if (!running.compareAndSet(false, true)) {
+            return null;
+          }
+          try {
+            return task.call();
+          } finally {
+            IN_FLIGHT.remove(collector);
+          }
+        }));
+        started.put(collector, running);
+      } catch (RejectedExecutionException exception) {
+        IN_FLIGHT.remove(collector);
+        snapshot.setFailure(collector, exception);
+      }
+    }
+    long deadline = start + unit.toNanos(timeout);
+    for (Map.Entry<ECollector, Future<?>> entry : futures.entrySet()) {
+      try {
+        snapshot.setValue(entry.getKey(), entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+      } catch (ExecutionException exception) {
+        snapshot.setFailure(entry.getKey(), exception.getCause());
+      } catch (TimeoutException | InterruptedException exception) {
+        /**
+         * A task that has not started never runs its finally block.
+         */
+        entry.getValue().cancel(true);
+        if (started.get(entry.getKey()).compareAndSet(false, true)) {
+          IN_FLIGHT.remove(entry.getKey());
+        }
+        snapshot.setFailure(entry.getKey(), exception);
+        if (exception instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+    snapshot.setElapsed(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return snapshot;
+  }
+
   /**
    * Read and parse Operating system identifying information.
    * <p>
@@ -78,34 +354,49 @@ public class SystemInspectorGeneral {
 
   /**
    * Get an instance of a CPUInfo descriptor.
+   * <p>
+   * If sampling is active this returns a copy of the latest cached instance.
    *
    * @return a CPUInfo instance
    * @throws IOException if the file {@code /proc/cpuinfo} cannot be read.
    */
   public CPUInfo getCPUInfo() throws IOException {
-    return CPUInfo.getInstance();
+    SystemSampler current = sampler;
+    return current == null
+           ? CPUInfo.getInstance()
+           : getSampled(current, ESubsystem.CPU, CPUInfo::getInstance).copy();
   }
 
   /**
    * Get a instance of a system memory descriptor. This reads and parses the
    * {@code /prc/meminfo} and populates the internal configuration.
+   * <p>
+   * If sampling is active this returns a copy of the latest cached instance.
    *
    * @return a memory descriptor
    * @throws IOException if the file {@code /prc/meminfo} cannot be read
    */
   public MemoryInfo getMemoryInfo() throws IOException {
-    return MemoryInfo.getInstance();
+    SystemSampler current = sampler;
+    return current == null
+           ? MemoryInfo.getInstance()
+           : getSampled(current, ESubsystem.MEMORY, MemoryInfo::getInstance).copy();
   }
 
   /**
    * Read and parse all Files System instances on the current system. This
    * executes the {@code df -k} system command and parses the output.
+   * <p>
+   * If sampling is active this returns a copy of the latest cached collection.
    *
    * @return a collection of FileSystemInfo configurations
    * @throws Exception if the {@code df -k} system command fails to execute
    */
   public Collection<FileSystemInfo> getFileSystemInfo() throws Exception {
-    return FileSystemInfo.getAllInstances();
+    SystemSampler current = sampler;
+    return current == null
+           ? FileSystemInfo.getAllInstances()
+           : copyAll(getSampled(current, ESubsystem.FILE_SYSTEM, SystemInspectorGeneral::readFileSystemInfo), FileSystemInfo::copy);
   }
 
   /**
@@ -113,12 +404,17 @@ public class SystemInspectorGeneral {
    * <p>
    * This method parses the file {@code /proc/net/dev} and then builds a
    * NetworkInterfaceInfo instance for each discovered interface entry.
+   * <p>
+   * If sampling is active this returns a copy of the latest cached collection.
    *
    * @return a collection of NetworkInterfaceInfo configurations
    * @throws IOException if the file {@code /proc/net/dev} cannot be parsed
    */
   public Collection<NetworkInterfaceInfo> getNetworkInterfaceInfo() throws IOException {
-    return NetworkInterfaceInfo.getAllInterfaces();
+    SystemSampler current = sampler;
+    return current == null
+           ? NetworkInterfaceInfo.getAllInterfaces()
+           : copyAll(getSampled(current, ESubsystem.NETWORK_INTERFACE, SystemInspectorGeneral::readNetworkInterfaceInfo), NetworkInterfaceInfo::copy);
   }
 
   /**
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig;
+
+import ch.keybridge.lib.sig.SamplingConfiguration.ESubsystem;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A background subsystem sampler with a lock-free latest-value cache.
+ * <p>
+ * Each enabled subsystem is refreshed on its own interval by its own daemon
+ * thread, so a slow subsystem (e.g. a file system {@code statvfs} blocked on an
+ * unresponsive network mount) does not delay the refresh of the others. The
+ * latest value is published as an immutable {@link Sample} through an
+ * AtomicReference, so that readers never block on (and never duplicate) the
+ * underlying {@code /proc} reads or system commands.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+class SystemSampler {
+
+  private static final Logger LOGGER = Logger.getLogger(SystemSampler.class.getName());
+
+  /**
+   * The sampling configuration.
+   */
+  private final SamplingConfiguration configuration;
+  /**
+   * The latest published value for each subsystem. This map is fully populated
+   * at construction and never modified.
+   */
+  private final Map<ESubsystem, AtomicReference<Sample<?>>> latest = new EnumMap<>(ESubsystem.class);
+  /**
+   * The refresh scheduler of each enabled subsystem.
+   */
+  private final Map<ESubsystem, ScheduledExecutorService> schedulers = new EnumMap<>(ESubsystem.class);
+
+  /**
+   * Construct and start a new sampler.
+   *
+   * @param configuration the sampling configuration
+   * @param loaders       the value loader for each subsystem
+   */
+  SystemSampler(SamplingConfiguration configuration, Map<ESubsystem, Callable<?>> loaders) {
+    this.configuration = configuration;
+    for (ESubsystem subsystem : ESubsystem.values()) {
+      latest.put(subsystem, new AtomicReference<>());
+    }
+    for (Map.Entry<ESubsystem, Callable<?>> entry : loaders.entrySet()) {
+      ESubsystem subsystem = entry.getKey();
+      if (configuration.isEnabled(subsystem)) {
+        Callable<?> loader = entry.getValue();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+          Thread thread = new Thread(runnable, "sig-sampler-" + subsystem.name().toLowerCase());
+          thread.setDaemon(true);
+          return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> refresh(subsystem, loader), 0, configuration.getInterval(subsystem), TimeUnit.MILLISECONDS);
+        schedulers.put(subsystem, scheduler);
+      }
+    }
+  }
+
+  /**
+   * Refresh a subsystem value. Errors are logged and the previous value is
+   * retained (and will eventually exceed its maximum age).
+   *
+   * @param subsystem the subsystem
+   * @param loader    the value loader
+   */
+  private void refresh(ESubsystem subsystem, Callable<?> loader) {
+    try {
+      publish(subsystem, loader.call());
+    } catch (Exception exception) {
+      LOGGER.log(Level.FINE, "Failed to sample " + subsystem, exception);
+    }
+  }
+
+  /**
+   * Publish a new value for a subsystem.
+   *
+   * @param subsystem the subsystem
+   * @param value     the value
+   */
+  void publish(ESubsystem subsystem, Object value) {
+    latest.get(subsystem).set(new Sample<>(value, System.nanoTime()));
+  }
+
+  /**
+   * Get the latest value for a subsystem if it is within the configured
+   * maximum age, otherwise load (and publish) a new value synchronously.
+   *
+   * @param <T>       the value type
+   * @param subsystem the subsystem
+   * @param loader    the synchronous loader
+   * @return the cached or freshly loaded value
+   * @throws Exception if the loader fails
+   */
+  @SuppressWarnings("unchecked")
+  <T> T get(ESubsystem subsystem, Callable<T> loader) throws Exception {
+    Sample<?> sample = latest.get(subsystem).get();
+    if (sample != null && sample.getAge(TimeUnit.MILLISECONDS) <= configuration.getMaxAge(subsystem)) {
+      return (T) sample.getValue();
+    }
+    T value = loader.call();
+    publish(subsystem, value);
+    return value;
+  }
+
+  /**
+   * Get the latest published sample for a subsystem, regardless of age.
+   *
+   * @param subsystem the subsystem
+   * @return the latest sample; null if none has been published
+   */
+  Sample<?> getSample(ESubsystem subsystem) {
+    return latest.get(subsystem).get();
+  }
+
+  /**
+   * Stop the background refresh.
+   */
+  void shutdown() {
+    for (ScheduledExecutorService scheduler : schedulers.values()) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  /**
+   * An immutable, time-stamped subsystem value.
+   *
+   * @param <T> the value type
+   */
+  static final class Sample<T> {
+
+    private final T value;
+    private final long timestamp;
+
+    Sample(T value, long timestamp) {
+      this.value = value;
+      this.timestamp = timestamp;
+    }
+
+    T getValue() {
+      return value;
+    }
+
+    long getAge(TimeUnit unit) {
+      return unit.convert(System.nanoTime() - timestamp, TimeUnit.NANOSECONDS);
+    }
+  }
+
+}
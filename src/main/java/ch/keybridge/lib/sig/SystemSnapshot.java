@@ -0,0 +1,228 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig;
+
+import ch.keybridge.lib.sig.hw.CPUInfo;
+import ch.keybridge.lib.sig.hw.DisplayInfo;
+import ch.keybridge.lib.sig.hw.FileSystemInfo;
+import ch.keybridge.lib.sig.hw.MemoryInfo;
+import ch.keybridge.lib.sig.hw.net.NetworkInterfaceInfo;
+import ch.keybridge.lib.sig.sw.config.NTPConfiguration;
+import ch.keybridge.lib.sig.sw.run.ProcessInfo;
+import ch.keybridge.lib.sig.sw.run.SocketInfo;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A full system inventory collected by
+ * {@link SystemInspectorGeneral#snapshotAll()}.
+ * <p>
+ * Each collector runs concurrently and independently. A collector that fails
+ * or exceeds its timeout leaves its value null and records the cause in the
+ * {@link #getFailures() failures} map; all other values are still reported.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class SystemSnapshot {
+
+  /**
+   * The collected values, by collector.
+   */
+  private final Map<ECollector, Object> values = new EnumMap<>(ECollector.class);
+  /**
+   * The failure cause, by collector.
+   */
+  private final Map<ECollector, Throwable> failures = new EnumMap<>(ECollector.class);
+  /**
+   * The time the snapshot was started (milliseconds since the epoch).
+   */
+  private final long timestamp;
+  /**
+   * The wall time taken to collect the snapshot (milliseconds).
+   */
+  private long elapsed;
+
+  /**
+   * Construct a new, empty snapshot.
+   *
+   * @param timestamp the time the snapshot was started
+   */
+  SystemSnapshot(long timestamp) {
+    this.timestamp = timestamp;
+  }
+
+  /**
+   * Record a collected value.
+   *
+   * @param collector the collector
+   * @param value     the value
+   */
+  void setValue(ECollector collector, Object value) {
+    values.put(collector, value);
+  }
+
+  /**
+   * Get a collected value.
+   *
+   * @param collector the collector
+   * @return the value; null if not collected
+   */
+  Object getValue(ECollector collector) {
+    return values.get(collector);
+  }
+
+  /**
+   * Record a collector failure.
+   *
+   * @param collector the collector
+   * @param cause     the failure cause
+   */
+  void setFailure(ECollector collector, Throwable cause) {
+    failures.put(collector, cause);
+  }
+
+  /**
+   * Set the wall time taken to collect the snapshot.
+   *
+   * @param elapsed the elapsed time (milliseconds)
+   */
+  void setElapsed(long elapsed) {
+    this.elapsed = elapsed;
+  }
+
+  public CPUInfo getCpu() {
+    return (CPUInfo) values.get(ECollector.CPU);
+  }
+
+  public MemoryInfo getMemory() {
+    return (MemoryInfo) values.get(ECollector.MEMORY);
+  }
+
+  @SuppressWarnings("unchecked")
+  public Collection<FileSystemInfo> getFileSystems() {
+    return (Collection<FileSystemInfo>) values.get(ECollector.FILE_SYSTEM);
+  }
+
+  @SuppressWarnings("unchecked")
+  public Collection<NetworkInterfaceInfo> getNetworkInterfaces() {
+    return (Collection<NetworkInterfaceInfo>) values.get(ECollector.NETWORK_INTERFACE);
+  }
+
+  @SuppressWarnings("unchecked")
+  public Collection<DisplayInfo> getDisplays() {
+    return (Collection<DisplayInfo>) values.get(ECollector.DISPLAY);
+  }
+
+  @SuppressWarnings("unchecked")
+  public Collection<ProcessInfo> getProcesses() {
+    return (Collection<ProcessInfo>) values.get(ECollector.PROCESS);
+  }
+
+  @SuppressWarnings("unchecked")
+  public Collection<SocketInfo> getSockets() {
+    return (Collection<SocketInfo>) values.get(ECollector.SOCKET);
+  }
+
+  public NTPConfiguration getNtpConfiguration() {
+    return (NTPConfiguration) values.get(ECollector.NTP);
+  }
+
+  /**
+   * Get the collectors that failed or timed out, and the cause of each. A
+   * timeout is reported as a {@code java.util.concurrent.TimeoutException}; a
+   * collector skipped because it is still running from an earlier snapshot as
+   * a {@code java.util.concurrent.RejectedExecutionException}.
+   *
+   * @return an unmodifiable map of collector to failure cause
+   */
+  public Map<ECollector, Throwable> getFailures() {
+    return Collections.unmodifiableMap(failures);
+  }
+
+  /**
+   * Determine if all collectors completed successfully.
+   *
+   * @return TRUE if there are no failures
+   */
+  public boolean isComplete() {
+    return failures.isEmpty();
+  }
+
+  /**
+   * Get the time the snapshot was started.
+   *
+   * @return the start time (milliseconds since the epoch)
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Get the wall time taken to collect the snapshot.
+   *
+   * @return the elapsed time (milliseconds)
+   */
+  public long getElapsed() {
+    return elapsed;
+  }
+
+  @Override
+  public String toString() {
+    return "SystemSnapshot " + values.keySet() + " in " + elapsed + " ms" + (failures.isEmpty() ? "" : "; failed " + failures.keySet());
+  }
+
+  /**
+   * The independent snapshot collectors.
+   */
+  public static enum ECollector {
+    /**
+     * CPU information from {@code /proc/cpuinfo}.
+     */
+    CPU,
+    /**
+     * Memory information from {@code /proc/meminfo}.
+     */
+    MEMORY,
+    /**
+     * File system information.
+     */
+    FILE_SYSTEM,
+    /**
+     * Network interface information from {@code /proc/net/dev}.
+     */
+    NETWORK_INTERFACE,
+    /**
+     * Display information from {@code xrandr}.
+     */
+    DISPLAY,
+    /**
+     * Process information.
+     */
+    PROCESS,
+    /**
+     * Socket information.
+     */
+    SOCKET,
+    /**
+     * NTP configuration from {@code ntpq}.
+     */
+    NTP;
+  }
+
+}
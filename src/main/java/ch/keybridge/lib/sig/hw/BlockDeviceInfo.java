@@ -0,0 +1,410 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw;
+
+import ch.keybridge.lib.sig.utility.ProcFileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * A block device (disk, partition, device mapper or loop device) with its
+ * cumulative I/O counters from {@code /proc/diskstats} and its request queue
+ * attributes from {@code /sys/class/block/[name]/queue}.
+ * <p>
+ * Each device is mapped to the mount points of {@code /proc/self/mountinfo}
+ * with the same major:minor device number; these correspond to the
+ * {@link FileSystemInfo#getMountPoint()} values. A disk that is only mounted
+ * through its partitions has no mount points of its own.
+ * <p>
+ * The counters are cumulative since boot. For IOPS, throughput, latency,
+ * queue depth and utilization see {@link BlockDeviceSampler}.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ * @see
+ * <a href="https://www.kernel.org/doc/Documentation/ABI/testing/procfs-diskstats">procfs-diskstats</a>
+ */
+public class BlockDeviceInfo {
+
+  /**
+   * Counter index: reads completed.
+   */
+  public static final int READS = 0;
+  /**
+   * Counter index: adjacent reads merged.
+   */
+  public static final int READS_MERGED = 1;
+  /**
+   * Counter index: sectors read (512 bytes).
+   */
+  public static final int READ_SECTORS = 2;
+  /**
+   * Counter index: time spent reading (milliseconds).
+   */
+  public static final int READ_TIME = 3;
+  /**
+   * Counter index: writes completed.
+   */
+  public static final int WRITES = 4;
+  /**
+   * Counter index: adjacent writes merged.
+   */
+  public static final int WRITES_MERGED = 5;
+  /**
+   * Counter index: sectors written (512 bytes).
+   */
+  public static final int WRITE_SECTORS = 6;
+  /**
+   * Counter index: time spent writing (milliseconds).
+   */
+  public static final int WRITE_TIME = 7;
+  /**
+   * Counter index: I/Os currently in progress. This is a gauge, not a
+   * cumulative counter.
+   */
+  public static final int IN_FLIGHT = 8;
+  /**
+   * Counter index: time the device had I/O in progress (milliseconds).
+   */
+  public static final int IO_TIME = 9;
+  /**
+   * Counter index: weighted time spent doing I/O (milliseconds); the time of
+   * each I/O multiplied by the number of I/Os in progress.
+   */
+  public static final int WEIGHTED_IO_TIME = 10;
+  /**
+   * Counter index: discards completed (kernel 4.18+).
+   */
+  public static final int DISCARDS = 11;
+  /**
+   * Counter index: adjacent discards merged (kernel 4.18+).
+   */
+  public static final int DISCARDS_MERGED = 12;
+  /**
+   * Counter index: sectors discarded (kernel 4.18+).
+   */
+  public static final int DISCARD_SECTORS = 13;
+  /**
+   * Counter index: time spent discarding (milliseconds, kernel 4.18+).
+   */
+  public static final int DISCARD_TIME = 14;
+  /**
+   * Counter index: flush requests completed (kernel 5.5+).
+   */
+  public static final int FLUSHES = 15;
+  /**
+   * Counter index: time spent flushing (milliseconds, kernel 5.5+).
+   */
+  public static final int FLUSH_TIME = 16;
+  /**
+   * The number of counters.
+   */
+  public static final int FIELDS = 17;
+  /**
+   * The size of a diskstats sector, independent of the device block size.
+   */
+  public static final int SECTOR_SIZE = 512;
+
+  /**
+   * The kernel device name. e.g. "sda", "sda1", "nvme0n1", "dm-0"
+   */
+  private final String name;
+  /**
+   * The device major number.
+   */
+  private final int major;
+  /**
+   * The device minor number.
+   */
+  private final int minor;
+  /**
+   * The cumulative counters. -1 marks a counter not reported by the kernel.
+   */
+  private final long[] counters;
+  /**
+   * TRUE if the device is a partition of another device.
+   */
+  private boolean partition;
+  /**
+   * TRUE for a rotational (spinning) disk; FALSE for solid state. Null if not
+   * available.
+   */
+  private Boolean rotational;
+  /**
+   * The logical block size (bytes).
+   */
+  private Integer logicalBlockSize;
+  /**
+   * The physical block size (bytes).
+   */
+  private Integer physicalBlockSize;
+  /**
+   * The active I/O scheduler. e.g. "mq-deadline", "none"
+   */
+  private String scheduler;
+  /**
+   * The maximum number of requests queued per hardware queue.
+   */
+  private Integer nrRequests;
+  /**
+   * The read ahead size (kilobytes).
+   */
+  private Integer readAheadKb;
+  /**
+   * The mount points of this device, in mount order.
+   */
+  private final List<String> mountPoints = new ArrayList<>();
+
+  private BlockDeviceInfo(String name, int major, int minor, long[] counters) {
+    this.name = name;
+    this.major = major;
+    this.minor = minor;
+    this.counters = counters;
+  }
+
+  /**
+   * Read all block devices on the current system.
+   *
+   * @return the block devices, in {@code /proc/diskstats} order
+   * @throws IOException if the {@code /proc/diskstats} file cannot be read
+   */
+  public static List<BlockDeviceInfo> getAllDevices() throws IOException {
+    List<MountInfo> mounts;
+    try {
+      mounts = MountInfo.getAllMounts();
+    } catch (IOException exception) {
+      mounts = Collections.emptyList();
+    }
+    return read(Paths.get("/proc/diskstats"), Paths.get("/sys/class/block"), mounts);
+  }
+
+  /**
+   * Read the block devices from the indicated files.
+   *
+   * @param procDiskstats the disk statistics file
+   * @param sysClassBlock the sysfs block class directory
+   * @param mounts        the mount points
+   * @return the block devices, in diskstats order
+   * @throws IOException if the diskstats file cannot be read
+   */
+  static List<BlockDeviceInfo> read(Path procDiskstats, Path sysClassBlock, List<MountInfo> mounts) throws IOException {
+    List<BlockDeviceInfo> devices = new ArrayList<>();
+    Map<Long, BlockDeviceInfo> byNumber = new HashMap<>();
+    ProcFileReader reader = ProcFileReader.get().read(procDiskstats);
+    StringBuilder sb = new StringBuilder();
+    long[] counters = new long[FIELDS];
+    do {
+      sb.setLength(0);
+      long number = parse(reader, sb, counters);
+      if (number >= 0) {
+        BlockDeviceInfo device = new BlockDeviceInfo(sb.toString(), (int) (number >>> 32), (int) number, counters.clone());
+        devices.add(device);
+        byNumber.put(number, device);
+      }
+    } while (reader.nextLine());
+    /**
+     * The sysfs attributes are read after the diskstats parse completes since
+     * they share this thread's reader.
+     */
+    for (BlockDeviceInfo device : devices) {
+      device.readQueue(sysClassBlock.resolve(device.name));
+    }
+    for (MountInfo mount : mounts) {
+      BlockDeviceInfo device = byNumber.get(((long) mount.getMajor() << 32) | mount.getMinor());
+      if (device != null) {
+        device.mountPoints.add(mount.getMountPoint());
+      }
+    }
+    return devices;
+  }
+
+  /**
+   * Parse one {@code /proc/diskstats} line:
+   * {@code major minor name counter...}. Counters not reported by the kernel
+   * (older kernels report 11 or 15) are set to -1.
+   *
+   * @param reader   the reader, positioned at the beginning of the line
+   * @param name     the destination for the device name
+   * @param counters the destination for the counters
+   * @return the device number (major in the upper and minor in the lower 32
+   *         bits); -1 if the line is malformed
+   */
+  static long parse(ProcFileReader reader, StringBuilder name, long[] counters) {
+    try {
+      long major = reader.nextInt();
+      long minor = reader.nextInt();
+      reader.nextToken(name);
+      int field = 0;
+      for (; field < FIELDS; field++) {
+        reader.skipSpaces();
+        if (!reader.hasRemaining() || reader.byteAt(reader.position()) == '\n') {
+          break;
+        }
+        counters[field] = reader.nextLong();
+      }
+      if (field <= WEIGHTED_IO_TIME || name.length() == 0) {
+        return -1;
+      }
+      Arrays.fill(counters, field, FIELDS, -1);
+      return (major << 32) | minor;
+    } catch (NumberFormatException exception) {
+      return -1;
+    }
+  }
+
+  /**
+   * Read the request queue attributes. A partition shares the queue of its
+   * parent disk.
+   *
+   * @param directory the {@code /sys/class/block/[name]} directory
+   */
+  private void readQueue(Path directory) {
+    partition = Files.exists(directory.resolve("partition"));
+    Path queue = directory.resolve("queue");
+    if (partition) {
+      try {
+        queue = directory.toRealPath().getParent().resolve("queue");
+      } catch (IOException exception) {
+        return;
+      }
+    }
+    String value = readAttribute(queue.resolve("rotational"));
+    rotational = value == null ? null : value.equals("1");
+    logicalBlockSize = readInteger(queue.resolve("logical_block_size"));
+    physicalBlockSize = readInteger(queue.resolve("physical_block_size"));
+    nrRequests = readInteger(queue.resolve("nr_requests"));
+    readAheadKb = readInteger(queue.resolve("read_ahead_kb"));
+    /**
+     * e.g. "mq-deadline kyber [bfq] none": the active scheduler is bracketed.
+     */
+    value = readAttribute(queue.resolve("scheduler"));
+    if (value != null) {
+      int start = value.indexOf('[');
+      int end = value.indexOf(']');
+      scheduler = start >= 0 && end > start ? value.substring(start + 1, end) : value;
+    }
+  }
+
+  private static String readAttribute(Path file) {
+    try {
+      return new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim();
+    } catch (IOException exception) {
+      return null;
+    }
+  }
+
+  private static Integer readInteger(Path file) {
+    String value = readAttribute(file);
+    try {
+      return value == null ? null : Integer.valueOf(value);
+    } catch (NumberFormatException exception) {
+      return null;
+    }
+  }
+
+  /**
+   * Get a cumulative counter.
+   *
+   * @param field the counter index. e.g. {@link #READ_SECTORS}
+   * @return the counter value; -1 if not reported by the kernel
+   */
+  public long getCounter(int field) {
+    return counters[field];
+  }
+
+  /**
+   * Get the total bytes read since boot.
+   *
+   * @return the bytes read
+   */
+  public long getReadBytes() {
+    return counters[READ_SECTORS] * SECTOR_SIZE;
+  }
+
+  /**
+   * Get the total bytes written since boot.
+   *
+   * @return the bytes written
+   */
+  public long getWriteBytes() {
+    return counters[WRITE_SECTORS] * SECTOR_SIZE;
+  }
+
+  /**
+   * Determine if the device has completed any I/O since boot. Unused loop and
+   * ram devices are idle.
+   *
+   * @return TRUE if no reads or writes have completed
+   */
+  public boolean isIdle() {
+    return counters[READS] == 0 && counters[WRITES] == 0;
+  }
+
+  //<editor-fold defaultstate="collapsed" desc="Getter">
+  public String getName() {
+    return name;
+  }
+
+  public int getMajor() {
+    return major;
+  }
+
+  public int getMinor() {
+    return minor;
+  }
+
+  public boolean isPartition() {
+    return partition;
+  }
+
+  public Boolean getRotational() {
+    return rotational;
+  }
+
+  public Integer getLogicalBlockSize() {
+    return logicalBlockSize;
+  }
+
+  public Integer getPhysicalBlockSize() {
+    return physicalBlockSize;
+  }
+
+  public String getScheduler() {
+    return scheduler;
+  }
+
+  public Integer getNrRequests() {
+    return nrRequests;
+  }
+
+  public Integer getReadAheadKb() {
+    return readAheadKb;
+  }
+
+  public List<String> getMountPoints() {
+    return Collections.unmodifiableList(mountPoints);
+  }//</editor-fold>
+
+  @Override
+  public String toString() {
+    return name + " (" + major + ":" + minor + ")" + (mountPoints.isEmpty() ? "" : " mounted at " + mountPoints);
+  }
+
+}
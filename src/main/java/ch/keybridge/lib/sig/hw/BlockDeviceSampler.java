@@ -0,0 +1,321 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw;
+
+import ch.keybridge.lib.sig.utility.ProcFileReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static ch.keybridge.lib.sig.hw.BlockDeviceInfo.*;
+
+/**
+ * A delta-based block device I/O sampler built on the {@code /proc/diskstats}
+ * cumulative counters.
+ * <p>
+ * On each call to {@link #sample()} the per-second rate of every
+ * {@link BlockDeviceInfo} counter is computed for every device. From these the
+ * {@code iostat -x} metrics are derived: IOPS, read and write throughput,
+ * average wait and service time, average queue depth and utilization.
+ * <p>
+ * A counter that goes backwards from between 2^31 and 2^32 is treated as a
+ * 32-bit wrap (the counters are {@code unsigned long} on 32-bit kernels). Any
+ * other backwards counter (e.g. a re-attached loop device), or a device number
+ * change for the same name (e.g. a re-created device mapper target), resets
+ * the device baseline. A device that disappears is dropped.
+ * <p>
+ * The first sample of a device only establishes its baseline; metrics are NaN
+ * until the second sample.
+ * <p>
+ * Instances are thread safe.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class BlockDeviceSampler {
+
+  private static final long WRAP_32 = 1L << 32;
+  private static final long HALF_WRAP_32 = 1L << 31;
+
+  /**
+   * The disk statistics file.
+   */
+  private final Path procDiskstats;
+  /**
+   * The devices present in the last sample, by name.
+   */
+  private final Map<String, Device> devices = new HashMap<>();
+  /**
+   * Scratch space for the current counter vector of one device.
+   */
+  private final long[] current = new long[FIELDS];
+
+  /**
+   * Construct a new sampler reading the system {@code /proc/diskstats} file.
+   */
+  public BlockDeviceSampler() {
+    this(Paths.get("/proc/diskstats"));
+  }
+
+  /**
+   * Construct a new sampler reading the indicated disk statistics file.
+   *
+   * @param procDiskstats the disk statistics file
+   */
+  public BlockDeviceSampler(Path procDiskstats) {
+    this.procDiskstats = procDiskstats;
+  }
+
+  /**
+   * Read the current counters and compute the rates since the previous sample.
+   *
+   * @throws IOException if the {@code /proc/diskstats} file cannot be read
+   */
+  public void sample() throws IOException {
+    sample(System.nanoTime());
+  }
+
+  /**
+   * Read the current counters and compute the rates since the previous sample.
+   *
+   * @param now the sample time (nanoseconds)
+   * @throws IOException if the {@code /proc/diskstats} file cannot be read
+   */
+  synchronized void sample(long now) throws IOException {
+    for (Device device : devices.values()) {
+      device.present = false;
+    }
+    ProcFileReader reader = ProcFileReader.get().read(procDiskstats);
+    StringBuilder sb = new StringBuilder();
+    do {
+      sb.setLength(0);
+      long number = parse(reader, sb, current);
+      if (number < 0) {
+        continue;
+      }
+      String name = sb.toString();
+      Device device = devices.get(name);
+      if (device == null || device.number != number) {
+        device = new Device(number);
+        devices.put(name, device);
+        device.baseline(current, now);
+      } else {
+        device.update(current, now);
+      }
+      device.present = true;
+    } while (reader.nextLine());
+    devices.values().removeIf(device -> !device.present);
+  }
+
+  /**
+   * Get the device names present in the last sample.
+   *
+   * @return a sorted set of device names
+   */
+  public synchronized SortedSet<String> getDeviceNames() {
+    return new TreeSet<>(devices.keySet());
+  }
+
+  /**
+   * Get the per-second rate of a counter over the last interval. For
+   * {@link BlockDeviceInfo#IN_FLIGHT} this is the current value.
+   *
+   * @param name  the device name
+   * @param field the counter index. e.g. {@link BlockDeviceInfo#READS}
+   * @return the rate (per second); NaN if the device is unknown, has no
+   *         baseline or the counter is not reported by the kernel
+   */
+  public synchronized double getRate(String name, int field) {
+    Device device = devices.get(name);
+    return device == null ? Double.NaN : device.rates[field];
+  }
+
+  /**
+   * Get the read and write operations per second over the last interval.
+   *
+   * @param name the device name
+   * @return the IOPS; NaN if not available
+   */
+  public synchronized double getIops(String name) {
+    return getRate(name, READS) + getRate(name, WRITES);
+  }
+
+  /**
+   * Get the read throughput over the last interval.
+   *
+   * @param name the device name
+   * @return the bytes read per second; NaN if not available
+   */
+  public synchronized double getReadBytes(String name) {
+    return getRate(name, READ_SECTORS) * SECTOR_SIZE;
+  }
+
+  /**
+   * Get the write throughput over the last interval.
+   *
+   * @param name the device name
+   * @return the bytes written per second; NaN if not available
+   */
+  public synchronized double getWriteBytes(String name) {
+    return getRate(name, WRITE_SECTORS) * SECTOR_SIZE;
+  }
+
+  /**
+   * Get the average time for read requests to be served, including the time
+   * spent in the queue (iostat "r_await").
+   *
+   * @param name the device name
+   * @return the average read latency (milliseconds); zero if no reads
+   *         completed; NaN if not available
+   */
+  public synchronized double getReadAwait(String name) {
+    return ratio(getRate(name, READ_TIME), getRate(name, READS));
+  }
+
+  /**
+   * Get the average time for write requests to be served, including the time
+   * spent in the queue (iostat "w_await").
+   *
+   * @param name the device name
+   * @return the average write latency (milliseconds); zero if no writes
+   *         completed; NaN if not available
+   */
+  public synchronized double getWriteAwait(String name) {
+    return ratio(getRate(name, WRITE_TIME), getRate(name, WRITES));
+  }
+
+  /**
+   * Get the average time for read and write requests to be served, including
+   * the time spent in the queue (iostat "await").
+   *
+   * @param name the device name
+   * @return the average latency (milliseconds); zero if no I/O completed; NaN
+   *         if not available
+   */
+  public synchronized double getAwait(String name) {
+    return ratio(getRate(name, READ_TIME) + getRate(name, WRITE_TIME), getIops(name));
+  }
+
+  /**
+   * Get the average device service time per request: the busy time divided by
+   * the number of requests completed (iostat "svctm"). On devices serving
+   * requests in parallel (SSD, RAID, NVMe) this under-estimates the actual
+   * device latency.
+   *
+   * @param name the device name
+   * @return the average service time (milliseconds); zero if no I/O
+   *         completed; NaN if not available
+   */
+  public synchronized double getServiceTime(String name) {
+    return ratio(getRate(name, IO_TIME), getIops(name));
+  }
+
+  /**
+   * Get the average number of requests queued or in service over the last
+   * interval (iostat "aqu-sz").
+   *
+   * @param name the device name
+   * @return the average queue depth; NaN if not available
+   */
+  public synchronized double getQueueDepth(String name) {
+    return getRate(name, WEIGHTED_IO_TIME) / 1000;
+  }
+
+  /**
+   * Get the percentage of the last interval during which the device had I/O
+   * in progress (iostat "%util"). Devices serving requests in parallel may
+   * have capacity left at 100% utilization.
+   *
+   * @param name the device name
+   * @return the utilization (percent); NaN if not available
+   */
+  public synchronized double getUtilization(String name) {
+    return Math.min(100, getRate(name, IO_TIME) / 10);
+  }
+
+  /**
+   * Divide a time rate by an operation rate.
+   *
+   * @param time       the milliseconds per second
+   * @param operations the operations per second
+   * @return the milliseconds per operation; zero if no operations
+   */
+  private static double ratio(double time, double operations) {
+    return operations == 0 ? 0 : time / operations;
+  }
+
+  /**
+   * The counters of one device.
+   */
+  private static final class Device {
+
+    /**
+     * The device number (major in the upper and minor in the lower 32 bits).
+     */
+    private final long number;
+    private final long[] previous = new long[FIELDS];
+    private final double[] rates = new double[FIELDS];
+    /**
+     * The time of the previous sample (nanoseconds).
+     */
+    private long timestamp;
+    private boolean present;
+
+    Device(long number) {
+      this.number = number;
+    }
+
+    /**
+     * Reset the baseline to the current counter vector. Rates are NaN until
+     * the next sample.
+     */
+    void baseline(long[] current, long now) {
+      System.arraycopy(current, 0, previous, 0, FIELDS);
+      Arrays.fill(rates, Double.NaN);
+      timestamp = now;
+    }
+
+    /**
+     * Compute the rates from the previous to the current counter vector.
+     */
+    void update(long[] current, long now) {
+      double seconds = (now - timestamp) / 1e9;
+      if (seconds <= 0) {
+        return;
+      }
+      for (int i = 0; i < FIELDS; i++) {
+        if (i == IN_FLIGHT || current[i] < 0) {
+          rates[i] = current[i] < 0 ? Double.NaN : current[i];
+          continue;
+        }
+        long delta = current[i] - previous[i];
+        if (delta < 0) {
+          if (previous[i] >= HALF_WRAP_32 && previous[i] < WRAP_32 && current[i] < WRAP_32) {
+            delta += WRAP_32;
+          } else {
+            baseline(current, now);
+            return;
+          }
+        }
+        rates[i] = delta / seconds;
+      }
+      System.arraycopy(current, 0, previous, 0, FIELDS);
+      timestamp = now;
+    }
+  }
+
+}
@@ -33,6 +33,11 @@ import java.util.logging.Logger;
 public class CPUInfo {
 
   private static final OperatingSystemMXBean OS_MXBEAN = ManagementFactory.getOperatingSystemMXBean();
+  /**
+   * The shared CPU usage sampler backing {@link #getSystemUsage()} and
+   * {@link #getSystemUsageDetail()}.
+   */
+  private static final CpuUsageSampler USAGE_SAMPLER = new CpuUsageSampler();
 
   // Logical and Physical Processor Counts
   /**
@@ -263,6 +268,11 @@ public class CPUInfo {
   /**
    * Returns the "recent cpu usage" in percent for the whole system from
    * {@code /proc/stat}.
+   * <p>
+   * Usage is calculated from the change in the jiffy counters since the
+   * previous call to this method (or since boot on the first call) by a shared
+   * {@link CpuUsageSampler}. For accurate, independent interval sampling create
+   * a dedicated CpuUsageSampler instance.
    *
    * @return the "recent cpu usage" for the whole system; a negative value if
    *         not available.
@@ -339,14 +349,11 @@ public class CPUInfo {
      * other virtual hosts (in virtualised environments like Xen)
      */
     try {
-      for (String string : SIGUtility.readFileLines(Paths.get("/proc/stat"))) {
-        String[] tokens = string.trim().split("\\s+");
-        if (tokens[0].equals("cpu")) { // read only the aggregate number.
-          return (Double.valueOf(tokens[1]) + Double.valueOf(tokens[2]) + Double.valueOf(tokens[3])) / Double.valueOf(tokens[4]);
-//          return (d(tokens[1]) + d(tokens[3])) / (d(tokens[1]) + d(tokens[3]) + d(tokens[5]));
-        }
+      synchronized (USAGE_SAMPLER) {
+        USAGE_SAMPLER.sample();
+        return USAGE_SAMPLER.getUsage();
       }
-    } catch (IOException ex) {
+    } catch (IOException | NumberFormatException ex) {
       Logger.getLogger(CPUInfo.class.getName()).log(Level.SEVERE, null, ex);
     }
     return -1.0;
@@ -356,7 +363,9 @@ public class CPUInfo {
    * Get a map detailing the usage (percent) of all processors on this system.
    * <p>
    * For a multiprocessor / multi-core system the returned map will include
-   * calculated usage for each processor core.
+   * calculated usage for each processor core. Usage is calculated over the
+   * interval since the previous call to this method or to
+   * {@link #getSystemUsage()} (or since boot on the first call).
    *
    * @return a sorted map containing entries of
    *         {@code [processor name, processor usage (%)]}
@@ -364,13 +373,15 @@ public class CPUInfo {
   public Map<String, Double> getSystemUsageDetail() {
     Map<String, Double> systemUsage = new TreeMap<>();
     try {
-      for (String string : SIGUtility.readFileLines(Paths.get("/proc/stat"))) {
-        String[] tokens = string.trim().split("\\s+");
-        if (tokens[0].startsWith("cpu") && !tokens[0].equals("cpu")) {
-          systemUsage.put(tokens[0], (Double.valueOf(tokens[1]) + Double.valueOf(tokens[2]) + Double.valueOf(tokens[3])) / Double.valueOf(tokens[4]));
+      synchronized (USAGE_SAMPLER) {
+        USAGE_SAMPLER.sample();
+        for (int cpu = 0; cpu < USAGE_SAMPLER.getCpuCount(); cpu++) {
+          if (!Double.isNaN(USAGE_SAMPLER.getUsage(cpu))) {
+            systemUsage.put("cpu" + cpu, USAGE_SAMPLER.getUsage(cpu));
+          }
         }
       }
-    } catch (IOException ex) {
+    } catch (IOException | NumberFormatException ex) {
       Logger.getLogger(CPUInfo.class.getName()).log(Level.SEVERE, null, ex);
     }
     return systemUsage;
@@ -474,6 +485,27 @@ public class CPUInfo {
     return cpu;
   }
 
+  /**
+   * Create a copy of this CPU descriptor.
+   *
+   * @return a new CPUInfo instance with the same values
+   */
+  public CPUInfo copy() {
+    CPUInfo copy = new CPUInfo();
+    copy.physicalCount = physicalCount;
+    copy.logicalCount = logicalCount;
+    copy.vendor = vendor;
+    copy.name = name;
+    copy.identifier = identifier;
+    copy.stepping = stepping;
+    copy.model = model;
+    copy.family = family;
+    copy.frequency = frequency;
+    copy.bogomips = bogomips;
+    copy.flags = flags == null ? null : new ArrayList<>(flags);
+    return copy;
+  }
+
   /**
    * Get the name.
    *
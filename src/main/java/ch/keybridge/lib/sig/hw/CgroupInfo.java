@@ -0,0 +1,329 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw;
+
+import ch.keybridge.lib.sig.utility.ProcFileReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * A cgroup v2 resource view: the memory, CPU and I/O limits and usage of the
+ * control group containing this process.
+ * <p>
+ * Inside a container {@link MemoryInfo} and {@link CPUInfo} report host-wide
+ * numbers. The resources actually available to the process are the limits of
+ * its cgroup. This class finds the cgroup v2 directory of the current process
+ * from {@code /proc/self/cgroup} and {@code /proc/self/mountinfo} and reads
+ * the {@code memory.current}, {@code memory.max}, {@code memory.stat},
+ * {@code cpu.max}, {@code cpu.stat} and {@code io.stat} files. Files of
+ * controllers that are not enabled for the group are skipped and the
+ * corresponding values are null.
+ * <p>
+ * For delta sampling (CPU usage, throttling and I/O rates) see
+ * {@link CgroupSampler}.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ * @see
+ * <a href="https://www.kernel.org/doc/Documentation/admin-guide/cgroup-v2.rst">Control
+ * Group v2</a>
+ */
+public class CgroupInfo {
+
+  /**
+   * The cgroup directory. e.g.
+   * {@code /sys/fs/cgroup/system.slice/app.service}
+   */
+  private Path directory;
+  /**
+   * The total memory currently used by the cgroup and its descendants (bytes).
+   */
+  private Long memoryCurrent;
+  /**
+   * The memory usage hard limit (bytes). Null if unlimited or not available.
+   */
+  private Long memoryMax;
+  /**
+   * The {@code memory.stat} values (bytes, or event counts). e.g. "anon",
+   * "file", "pgmajfault".
+   */
+  private SortedMap<String, Long> memoryStat = new TreeMap<>();
+  /**
+   * The CPU bandwidth quota per period (microseconds). Null if unlimited or not
+   * available.
+   */
+  private Long cpuQuota;
+  /**
+   * The CPU bandwidth period (microseconds).
+   */
+  private Long cpuPeriod;
+  /**
+   * The {@code cpu.stat} values. e.g. "usage_usec", "nr_throttled".
+   */
+  private SortedMap<String, Long> cpuStat = new TreeMap<>();
+  /**
+   * The {@code io.stat} values summed over all devices. e.g. "rbytes",
+   * "wbytes", "rios", "wios".
+   */
+  private SortedMap<String, Long> ioStat = new TreeMap<>();
+
+  /**
+   * Get the cgroup v2 resource view of the current process.
+   *
+   * @return the cgroup information
+   * @throws IOException if the process is not in a cgroup v2 hierarchy (e.g.
+   *                     not Linux, or a cgroup v1 only system)
+   */
+  public static CgroupInfo getInstance() throws IOException {
+    Path directory = locate(Paths.get("/proc/self/cgroup"), Paths.get("/proc/self/mountinfo"));
+    if (directory == null) {
+      throw new FileNotFoundException("cgroup v2 hierarchy not found on this system.");
+    }
+    return read(directory);
+  }
+
+  /**
+   * Find the cgroup v2 directory of a process.
+   *
+   * @param procCgroup    the process cgroup file. e.g.
+   *                      {@code /proc/self/cgroup}
+   * @param procMountinfo the process mount information file. e.g.
+   *                      {@code /proc/self/mountinfo}
+   * @return the cgroup directory; null if the process is not in a cgroup v2
+   *         hierarchy
+   * @throws IOException if the files cannot be read
+   */
+  static Path locate(Path procCgroup, Path procMountinfo) throws IOException {
+    /**
+     * The cgroup v2 entry has hierarchy ID 0 and no controller list.
+     */
+    String path = null;
+    for (String line : Files.readAllLines(procCgroup, StandardCharsets.UTF_8)) {
+      if (line.startsWith("0::")) {
+        path = line.substring(3);
+      }
+    }
+    if (path == null) {
+      return null;
+    }
+    for (MountInfo mount : MountInfo.read(procMountinfo)) {
+      if (!mount.getType().equals("cgroup2")) {
+        continue;
+      }
+      String root = mount.getRoot();
+      Path mountPoint = Paths.get(mount.getMountPoint());
+      /**
+       * The mount may expose a sub-tree of the hierarchy (e.g. a container
+       * bind mount); the cgroup path is then relative to the mount root.
+       */
+      String relative = path;
+      if (!root.equals("/")) {
+        if (!path.equals(root) && !path.startsWith(root + "/")) {
+          continue;
+        }
+        relative = path.substring(root.length());
+      }
+      Path directory = relative.isEmpty() || relative.equals("/") ? mountPoint : mountPoint.resolve(relative.substring(1));
+      if (Files.isDirectory(directory)) {
+        return directory;
+      }
+      /**
+       * Inside a cgroup namespace without a namespaced mount the path is not
+       * visible; fall back to the mount root.
+       */
+      if (Files.exists(mountPoint.resolve("cgroup.controllers"))) {
+        return mountPoint;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Read the resource files of a cgroup directory.
+   *
+   * @param directory the cgroup directory
+   * @return the cgroup information
+   */
+  static CgroupInfo read(Path directory) {
+    CgroupInfo cgroup = new CgroupInfo();
+    cgroup.setDirectory(directory);
+    ProcFileReader reader = ProcFileReader.get();
+    try {
+      cgroup.setMemoryCurrent(reader.readLong(directory.resolve("memory.current")));
+    } catch (IOException | NumberFormatException exception) {
+      // memory controller not enabled
+    }
+    try {
+      reader.read(directory.resolve("memory.max"));
+      cgroup.setMemoryMax(reader.nextTokenEquals("max") ? null : reader.nextLong());
+    } catch (IOException | NumberFormatException exception) {
+    }
+    try {
+      reader.read(directory.resolve("cpu.max"));
+      cgroup.setCpuQuota(reader.nextTokenEquals("max") ? null : reader.nextLong());
+      cgroup.setCpuPeriod(reader.nextLong());
+    } catch (IOException | NumberFormatException exception) {
+    }
+    readKeyValues(directory.resolve("memory.stat"), cgroup.memoryStat);
+    readKeyValues(directory.resolve("cpu.stat"), cgroup.cpuStat);
+    /**
+     * io.stat: one line per device. e.g. "8:0 rbytes=1 wbytes=2 rios=3 wios=4
+     * dbytes=0 dios=0"
+     */
+    try {
+      for (String line : Files.readAllLines(directory.resolve("io.stat"), StandardCharsets.US_ASCII)) {
+        String[] fields = line.trim().split("\\s+");
+        for (int i = 1; i < fields.length; i++) {
+          int equals = fields[i].indexOf('=');
+          if (equals > 0) {
+            cgroup.ioStat.merge(fields[i].substring(0, equals), Long.valueOf(fields[i].substring(equals + 1)), Long::sum);
+          }
+        }
+      }
+    } catch (IOException | NumberFormatException exception) {
+    }
+    return cgroup;
+  }
+
+  /**
+   * Read a flat keyed file ("key value" lines) into a map.
+   *
+   * @param file the file
+   * @param map  the destination map
+   */
+  private static void readKeyValues(Path file, Map<String, Long> map) {
+    try {
+      for (String line : Files.readAllLines(file, StandardCharsets.US_ASCII)) {
+        String[] fields = line.trim().split("\\s+");
+        if (fields.length == 2) {
+          map.put(fields[0], Long.valueOf(fields[1]));
+        }
+      }
+    } catch (IOException | NumberFormatException exception) {
+    }
+  }
+
+  /**
+   * Get the CPU limit as a (fractional) number of processors: the quota
+   * divided by the period.
+   *
+   * @return the CPU limit; null if unlimited
+   */
+  public Double getCpuLimit() {
+    return cpuQuota == null || cpuPeriod == null || cpuPeriod == 0 ? null : cpuQuota / (double) cpuPeriod;
+  }
+
+  /**
+   * Get the number of processors this cgroup may use: the CPU limit rounded up,
+   * and never more than the processors available to the JVM. This is the
+   * value to use when sizing thread pools.
+   *
+   * @return the effective processor count
+   */
+  public int getAvailableProcessors() {
+    int processors = Runtime.getRuntime().availableProcessors();
+    Double limit = getCpuLimit();
+    return limit == null ? processors : Math.max(1, Math.min(processors, (int) Math.ceil(limit)));
+  }
+
+  /**
+   * Get the memory still available to this cgroup before reaching its hard
+   * limit.
+   *
+   * @return the available memory (bytes); null if unlimited or unknown
+   */
+  public Long getMemoryAvailable() {
+    return memoryMax == null || memoryCurrent == null ? null : Math.max(0, memoryMax - memoryCurrent);
+  }
+
+  //<editor-fold defaultstate="collapsed" desc="Getter and Setter">
+  public Path getDirectory() {
+    return directory;
+  }
+
+  public void setDirectory(Path directory) {
+    this.directory = directory;
+  }
+
+  public Long getMemoryCurrent() {
+    return memoryCurrent;
+  }
+
+  public void setMemoryCurrent(Long memoryCurrent) {
+    this.memoryCurrent = memoryCurrent;
+  }
+
+  public Long getMemoryMax() {
+    return memoryMax;
+  }
+
+  public void setMemoryMax(Long memoryMax) {
+    this.memoryMax = memoryMax;
+  }
+
+  public SortedMap<String, Long> getMemoryStat() {
+    return memoryStat;
+  }
+
+  public void setMemoryStat(SortedMap<String, Long> memoryStat) {
+    this.memoryStat = memoryStat;
+  }
+
+  public Long getCpuQuota() {
+    return cpuQuota;
+  }
+
+  public void setCpuQuota(Long cpuQuota) {
+    this.cpuQuota = cpuQuota;
+  }
+
+  public Long getCpuPeriod() {
+    return cpuPeriod;
+  }
+
+  public void setCpuPeriod(Long cpuPeriod) {
+    this.cpuPeriod = cpuPeriod;
+  }
+
+  public SortedMap<String, Long> getCpuStat() {
+    return cpuStat;
+  }
+
+  public void setCpuStat(SortedMap<String, Long> cpuStat) {
+    this.cpuStat = cpuStat;
+  }
+
+  public SortedMap<String, Long> getIoStat() {
+    return ioStat;
+  }
+
+  public void setIoStat(SortedMap<String, Long> ioStat) {
+    this.ioStat = ioStat;
+  }//</editor-fold>
+
+  @Override
+  public String toString() {
+    return "CgroupInfo " + directory
+           + " memory " + memoryCurrent + "/" + (memoryMax == null ? "max" : memoryMax)
+           + " cpu " + (getCpuLimit() == null ? "max" : getCpuLimit());
+  }
+
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw;
+
+import ch.keybridge.lib.sig.utility.ProcFileReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * A delta-based cgroup v2 resource sampler built on the {@code cpu.stat},
+ * {@code io.stat} and {@code memory.stat} cumulative counters of a cgroup.
+ * <p>
+ * This is the cgroup counterpart of {@link CpuUsageSampler}: the previous
+ * counter vector is kept in a primitive {@code long[]} and, on each call to
+ * {@link #sample()}, the per-second rates over the interval are computed. The
+ * CPU usage is reported in processors (e.g. 1.5 = one and a half processors
+ * busy) and as a percentage of the {@code cpu.max} quota; throttling is the
+ * percentage of enforcement periods in which the group was throttled. I/O
+ * counters are summed over all devices.
+ * <p>
+ * Rates are NaN until the second sample, and for counters whose controller is
+ * not enabled for the group.
+ * <p>
+ * Instances are thread safe.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class CgroupSampler {
+
+  /**
+   * Counter index: total CPU time (microseconds).
+   */
+  public static final int CPU_USAGE = 0;
+  /**
+   * Counter index: user CPU time (microseconds).
+   */
+  public static final int CPU_USER = 1;
+  /**
+   * Counter index: system CPU time (microseconds).
+   */
+  public static final int CPU_SYSTEM = 2;
+  /**
+   * Counter index: CPU bandwidth enforcement periods.
+   */
+  public static final int NR_PERIODS = 3;
+  /**
+   * Counter index: periods in which the group was throttled.
+   */
+  public static final int NR_THROTTLED = 4;
+  /**
+   * Counter index: time throttled (microseconds).
+   */
+  public static final int THROTTLED = 5;
+  /**
+   * Counter index: bytes read.
+   */
+  public static final int IO_READ_BYTES = 6;
+  /**
+   * Counter index: bytes written.
+   */
+  public static final int IO_WRITE_BYTES = 7;
+  /**
+   * Counter index: read operations.
+   */
+  public static final int IO_READ_OPS = 8;
+  /**
+   * Counter index: write operations.
+   */
+  public static final int IO_WRITE_OPS = 9;
+  /**
+   * Counter index: page faults.
+   */
+  public static final int PGFAULT = 10;
+  /**
+   * Counter index: major page faults.
+   */
+  public static final int PGMAJFAULT = 11;
+  /**
+   * The number of counters.
+   */
+  public static final int FIELDS = 12;
+
+  /**
+   * The io.stat keys, in counter index order from {@link #IO_READ_BYTES}.
+   */
+  private static final String[] IO_KEYS = {"rbytes", "wbytes", "rios", "wios"};
+
+  /**
+   * The counter files.
+   */
+  private final Path cpuStat;
+  private final Path ioStat;
+  private final Path memoryStat;
+  private final Path cpuMax;
+
+  /**
+   * The previous and current counter vectors. -1 marks a counter that is not
+   * available.
+   */
+  private long[] previous = new long[FIELDS];
+  private long[] current = new long[FIELDS];
+  /**
+   * The per-second rates over the last interval.
+   */
+  private final double[] rates = new double[FIELDS];
+  /**
+   * The CPU quota (processors) at the last sample. NaN if unlimited.
+   */
+  private double limit = Double.NaN;
+  /**
+   * The previous sample time (nanoseconds). Zero before the first sample.
+   */
+  private long timestamp;
+
+  /**
+   * Construct a new sampler for the cgroup of the current process.
+   *
+   * @throws IOException if the process is not in a cgroup v2 hierarchy
+   */
+  public CgroupSampler() throws IOException {
+    this(locate());
+  }
+
+  /**
+   * Construct a new sampler for a cgroup directory.
+   *
+   * @param directory the cgroup directory
+   */
+  public CgroupSampler(Path directory) {
+    this.cpuStat = directory.resolve("cpu.stat");
+    this.ioStat = directory.resolve("io.stat");
+    this.memoryStat = directory.resolve("memory.stat");
+    this.cpuMax = directory.resolve("cpu.max");
+    Arrays.fill(rates, Double.NaN);
+  }
+
+  private static Path locate() throws IOException {
+    Path directory = CgroupInfo.locate(Paths.get("/proc/self/cgroup"), Paths.get("/proc/self/mountinfo"));
+    if (directory == null) {
+      throw new FileNotFoundException("cgroup v2 hierarchy not found on this system.");
+    }
+    return directory;
+  }
+
+  /**
+   * Read the current counters and compute the rates since the previous sample.
+   */
+  public void sample() {
+    sample(System.nanoTime());
+  }
+
+  /**
+   * Read the current counters and compute the rates since the previous sample.
+   *
+   * @param now the sample time (nanoseconds)
+   */
+  synchronized void sample(long now) {
+    Arrays.fill(current, -1);
+    ProcFileReader reader = ProcFileReader.get();
+    try {
+      reader.read(cpuStat);
+      do {
+        if (reader.nextTokenEquals("usage_usec")) {
+          current[CPU_USAGE] = reader.nextLong();
+        } else if (reader.nextTokenEquals("user_usec")) {
+          current[CPU_USER] = reader.nextLong();
+        } else if (reader.nextTokenEquals("system_usec")) {
+          current[CPU_SYSTEM] = reader.nextLong();
+        } else if (reader.nextTokenEquals("nr_periods")) {
+          current[NR_PERIODS] = reader.nextLong();
+        } else if (reader.nextTokenEquals("nr_throttled")) {
+          current[NR_THROTTLED] = reader.nextLong();
+        } else if (reader.nextTokenEquals("throttled_usec")) {
+          current[THROTTLED] = reader.nextLong();
+        }
+      } while (reader.nextLine());
+    } catch (IOException | NumberFormatException exception) {
+      // cpu controller not enabled
+    }
+    try {
+      reader.read(cpuMax);
+      limit = reader.nextTokenEquals("max") ? Double.NaN : reader.nextLong();
+      limit /= reader.nextLong();
+    } catch (IOException | NumberFormatException exception) {
+      limit = Double.NaN;
+    }
+    try {
+      reader.read(ioStat);
+      for (int i = IO_READ_BYTES; i <= IO_WRITE_OPS; i++) {
+        current[i] = 0;
+      }
+      do {
+        /**
+         * "major:minor rbytes=1 wbytes=2 rios=3 wios=4 dbytes=0 dios=0"
+         */
+        reader.skipToken();
+        while (reader.skipPast('=')) {
+          int field = ioField(reader);
+          long value = reader.nextLong();
+          if (field >= 0) {
+            current[field] += value;
+          }
+        }
+      } while (reader.nextLine());
+    } catch (IOException | NumberFormatException exception) {
+      // io controller not enabled
+    }
+    try {
+      reader.read(memoryStat);
+      do {
+        if (reader.nextTokenEquals("pgfault")) {
+          current[PGFAULT] = reader.nextLong();
+        } else if (reader.nextTokenEquals("pgmajfault")) {
+          current[PGMAJFAULT] = reader.nextLong();
+        }
+      } while (reader.nextLine());
+    } catch (IOException | NumberFormatException exception) {
+      // memory controller not enabled
+    }
+    if (timestamp != 0 && now > timestamp) {
+      double seconds = (now - timestamp) / 1e9;
+      for (int i = 0; i < FIELDS; i++) {
+        long delta = current[i] - previous[i];
+        rates[i] = current[i] < 0 || previous[i] < 0 || delta < 0 ? Double.NaN : delta / seconds;
+      }
+    }
+    long[] swap = previous;
+    previous = current;
+    current = swap;
+    timestamp = now;
+  }
+
+  /**
+   * Identify the io.stat key preceding the '=' at the reader cursor.
+   *
+   * @param reader the reader, positioned after the '='
+   * @return the counter index; -1 if the key is not sampled (e.g. the discard
+   *         counters)
+   */
+  private static int ioField(ProcFileReader reader) {
+    int end = reader.position() - 1;
+    int start = end;
+    while (start > 0 && reader.byteAt(start - 1) != ' ') {
+      start--;
+    }
+    for (int i = 0; i < IO_KEYS.length; i++) {
+      String key = IO_KEYS[i];
+      boolean equals = key.length() == end - start;
+      for (int j = 0; equals && j < key.length(); j++) {
+        equals = key.charAt(j) == reader.byteAt(start + j);
+      }
+      if (equals) {
+        return IO_READ_BYTES + i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Get the per-second rate of a counter over the last interval.
+   *
+   * @param field the counter index. e.g. {@link #IO_READ_BYTES}
+   * @return the rate (per second); NaN if not available
+   */
+  public synchronized double getRate(int field) {
+    return rates[field];
+  }
+
+  /**
+   * Get the CPU usage over the last interval.
+   *
+   * @return the number of processors busy on average (e.g. 1.5); NaN if not
+   *         available
+   */
+  public synchronized double getCpuUsage() {
+    return rates[CPU_USAGE] / 1e6;
+  }
+
+  /**
+   * Get the CPU usage over the last interval as a percentage of the
+   * {@code cpu.max} quota.
+   *
+   * @return the CPU usage (percent of quota); NaN if unlimited or not available
+   */
+  public synchronized double getCpuPercentOfLimit() {
+    return 100.0 * getCpuUsage() / limit;
+  }
+
+  /**
+   * Get the percentage of CPU bandwidth enforcement periods in the last
+   * interval in which the group was throttled.
+   *
+   * @return the throttled periods (percent); NaN if no periods elapsed or not
+   *         available
+   */
+  public synchronized double getThrottledPercent() {
+    double periods = rates[NR_PERIODS];
+    return periods > 0 ? 100.0 * rates[NR_THROTTLED] / periods : Double.NaN;
+  }
+
+}
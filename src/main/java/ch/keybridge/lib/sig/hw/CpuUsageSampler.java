@@ -0,0 +1,320 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw;
+
+import ch.keybridge.lib.sig.utility.ProcFileReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * A delta-based CPU utilization sampler built on the {@code /proc/stat} jiffy
+ * counters.
+ * <p>
+ * The kernel reports cumulative (since boot) jiffy counters for the aggregate
+ * "cpu" entry and for each "cpuN" processor entry. Utilization over an interval
+ * is the change in the busy counters divided by the change in all counters.
+ * This sampler keeps the previous counter vector for every entry in a primitive
+ * {@code long[]} and, on each call to {@link #sample()}, computes the
+ * per-interval percentages in O(cores). Only the leading "cpu" lines of
+ * {@code /proc/stat} are parsed; the (large) interrupt and softirq lines that
+ * follow are never read into the parser.
+ * <p>
+ * The first sample reports utilization since boot. Each subsequent sample
+ * reports utilization since the previous sample. If no jiffy has elapsed since
+ * the previous sample (e.g. two calls within one clock tick) the previous
+ * interval's values are retained and the next sample is measured from the
+ * earlier baseline. A processor that comes (back) online starts a new
+ * baseline: its values are NaN until the following sample.
+ * <p>
+ * Note that "guest" and "guest_nice" time is already included in the "user"
+ * and "nice" counters by the kernel, and is therefore excluded from the total.
+ * <p>
+ * Instances are thread safe.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class CpuUsageSampler {
+
+  /**
+   * Counter index: normal processes executing in user mode.
+   */
+  public static final int USER = 0;
+  /**
+   * Counter index: niced processes executing in user mode.
+   */
+  public static final int NICE = 1;
+  /**
+   * Counter index: processes executing in kernel mode.
+   */
+  public static final int SYSTEM = 2;
+  /**
+   * Counter index: twiddling thumbs.
+   */
+  public static final int IDLE = 3;
+  /**
+   * Counter index: waiting for I/O to complete.
+   */
+  public static final int IOWAIT = 4;
+  /**
+   * Counter index: servicing interrupts.
+   */
+  public static final int IRQ = 5;
+  /**
+   * Counter index: servicing softirqs.
+   */
+  public static final int SOFTIRQ = 6;
+  /**
+   * Counter index: involuntary wait while the hypervisor services another
+   * virtual processor.
+   */
+  public static final int STEAL = 7;
+  /**
+   * Counter index: running a virtual CPU for a guest operating system.
+   */
+  public static final int GUEST = 8;
+  /**
+   * Counter index: running a niced guest.
+   */
+  public static final int GUEST_NICE = 9;
+  /**
+   * The number of counters per cpu entry.
+   */
+  public static final int FIELDS = 10;
+  /**
+   * The cpu index used to identify the aggregate "cpu" entry.
+   */
+  public static final int AGGREGATE = -1;
+
+  /**
+   * The kernel/system statistics file.
+   */
+  private final Path procStat;
+
+  /**
+   * The previous counter vectors. Row 0 is the aggregate entry, row N+1 is
+   * "cpuN".
+   */
+  private long[] previous;
+  /**
+   * The current counter vectors. Same layout as {@link #previous}; -1 marks an
+   * entry that was not present in the last read.
+   */
+  private long[] current;
+  /**
+   * The per-interval percentages. Same layout as {@link #previous}.
+   */
+  private double[] percent;
+  /**
+   * The per-interval busy percentage for each row.
+   */
+  private double[] busy;
+  /**
+   * The number of rows (aggregate plus highest cpu number + 1) in the last
+   * sample.
+   */
+  private int rows;
+  /**
+   * TRUE once the first sample has been taken. Rows added after the first
+   * sample have no baseline.
+   */
+  private boolean sampled;
+
+  /**
+   * Construct a new sampler reading the system {@code /proc/stat} file.
+   */
+  public CpuUsageSampler() {
+    this(Paths.get("/proc/stat"));
+  }
+
+  /**
+   * Construct a new sampler reading the indicated {@code stat} file.
+   *
+   * @param procStat the kernel/system statistics file
+   */
+  public CpuUsageSampler(Path procStat) {
+    this.procStat = procStat;
+    allocate(Runtime.getRuntime().availableProcessors() + 1);
+  }
+
+  /**
+   * Read the current counters and compute the utilization since the previous
+   * sample (or since boot for the first sample).
+   *
+   * @throws IOException if the {@code /proc/stat} file cannot be read
+   */
+  public synchronized void sample() throws IOException {
+    Arrays.fill(current, -1);
+    rows = 0;
+    ProcFileReader reader = ProcFileReader.get().read(procStat);
+    while (reader.startsWith("cpu")) {
+      reader.skipPast('u');
+      int row = reader.byteAt(reader.position()) == ' '
+                ? 0
+                : (int) reader.nextLong() + 1;
+      if (row >= previous.length / FIELDS) {
+        grow(row + 1);
+      }
+      int offset = row * FIELDS;
+      for (int i = 0; i < FIELDS; i++) {
+        /**
+         * Older kernels report fewer columns. Missing values remain zero.
+         */
+        reader.skipSpaces();
+        current[offset + i] = reader.hasRemaining() && reader.byteAt(reader.position()) != '\n'
+                              ? reader.nextLong()
+                              : 0;
+      }
+      rows = Math.max(rows, row + 1);
+      if (!reader.nextLine()) {
+        break;
+      }
+    }
+    /**
+     * Compute the deltas, then roll the current vector into the previous.
+     */
+    for (int row = 0; row < rows; row++) {
+      compute(row);
+    }
+    long[] swap = previous;
+    previous = current;
+    current = swap;
+    sampled = true;
+  }
+
+  /**
+   * Compute the percentages for a single row.
+   *
+   * @param row the row index
+   */
+  private void compute(int row) {
+    int offset = row * FIELDS;
+    if (current[offset] < 0) {
+      /**
+       * The processor is offline.
+       */
+      Arrays.fill(percent, offset, offset + FIELDS, Double.NaN);
+      busy[row] = Double.NaN;
+      return;
+    }
+    long total = 0;
+    for (int i = 0; i < GUEST; i++) {
+      total += current[offset + i] - previous[offset + i];
+    }
+    if (total == 0) {
+      /**
+       * No time elapsed. Keep the previous interval's values and baseline.
+       */
+      System.arraycopy(previous, offset, current, offset, FIELDS);
+      return;
+    }
+    if (previous[offset] < 0 || total < 0) {
+      /**
+       * The processor has come online (no baseline) or the counters were
+       * reset. The current counters become the new baseline.
+       */
+      Arrays.fill(percent, offset, offset + FIELDS, Double.NaN);
+      busy[row] = Double.NaN;
+      return;
+    }
+    for (int i = 0; i < FIELDS; i++) {
+      percent[offset + i] = 100d * (current[offset + i] - previous[offset + i]) / total;
+    }
+    busy[row] = 100d - percent[offset + IDLE] - percent[offset + IOWAIT];
+  }
+
+  /**
+   * Get the aggregate (all processors) busy percentage over the last
+   * interval. Busy time is all time not spent idle or waiting for I/O.
+   *
+   * @return the busy percentage [0, 100]; NaN if not available
+   */
+  public synchronized double getUsage() {
+    return busy[0];
+  }
+
+  /**
+   * Get the busy percentage of a single processor over the last interval.
+   *
+   * @param cpu the processor number (i.e. N in "cpuN"); or {@link #AGGREGATE}
+   * @return the busy percentage [0, 100]; NaN if the processor is offline or
+   *         unknown
+   */
+  public synchronized double getUsage(int cpu) {
+    return cpu + 1 < rows ? busy[cpu + 1] : Double.NaN;
+  }
+
+  /**
+   * Get the percentage of time a processor spent in a particular state over
+   * the last interval.
+   *
+   * @param cpu   the processor number (i.e. N in "cpuN"); or
+   *              {@link #AGGREGATE}
+   * @param field the counter index. e.g. {@link #IOWAIT}
+   * @return the percentage [0, 100]; NaN if the processor is offline or unknown
+   */
+  public synchronized double getPercent(int cpu, int field) {
+    return cpu + 1 < rows ? percent[(cpu + 1) * FIELDS + field] : Double.NaN;
+  }
+
+  /**
+   * Get the number of processor entries. This is the highest processor number
+   * reported plus one.
+   *
+   * @return the processor count
+   */
+  public synchronized int getCpuCount() {
+    return Math.max(0, rows - 1);
+  }
+
+  /**
+   * Allocate the counter arrays.
+   *
+   * @param rowCount the number of rows
+   */
+  private void allocate(int rowCount) {
+    previous = new long[rowCount * FIELDS];
+    current = new long[rowCount * FIELDS];
+    percent = new double[rowCount * FIELDS];
+    busy = new double[rowCount];
+  }
+
+  /**
+   * Grow the counter arrays to hold more processors, preserving the previous
+   * and current values and the last percentages.
+   *
+   * @param rowCount the new number of rows
+   */
+  private void grow(int rowCount) {
+    long[] oldPrevious = previous;
+    long[] oldCurrent = current;
+    double[] oldPercent = percent;
+    double[] oldBusy = busy;
+    allocate(rowCount);
+    System.arraycopy(oldPrevious, 0, previous, 0, oldPrevious.length);
+    System.arraycopy(oldCurrent, 0, current, 0, oldCurrent.length);
+    System.arraycopy(oldPercent, 0, percent, 0, oldPercent.length);
+    System.arraycopy(oldBusy, 0, busy, 0, oldBusy.length);
+    Arrays.fill(current, oldCurrent.length, current.length, -1);
+    /**
+     * Processors appearing after the first sample have no baseline.
+     */
+    Arrays.fill(previous, oldPrevious.length, previous.length, sampled ? -1 : 0);
+  }
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw;
+
+import java.util.*;
+
+/**
+ * A per-mount usage history with a linear regression "time to full" forecast
+ * for both capacity and inodes.
+ * <p>
+ * Each mount point keeps a fixed size ring buffer of (time, used) samples. The
+ * least squares sums (Σt, Σy, Σt², Σty) are maintained incrementally as
+ * samples enter and leave the window, so each {@link #update(Collection)} and
+ * each forecast is O(1) per mount regardless of the window size. (To bound
+ * floating point drift the sums are recomputed from the buffer once per full
+ * rotation: amortized O(1).)
+ * <p>
+ * The forecast is the time for the fitted growth rate to consume the space
+ * currently available: {@code available / slope}. A file system that is not
+ * growing has an infinite time to full. Forecasts are NaN until a mount has
+ * two samples.
+ * <p>
+ * Mounts missing from an update are dropped. Instances are thread safe.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class FileSystemHistory {
+
+  /**
+   * The default number of samples retained per mount.
+   */
+  public static final int DEFAULT_CAPACITY = 60;
+
+  /**
+   * The number of samples retained per mount.
+   */
+  private final int capacity;
+  /**
+   * The capacity and inode series of each mount, by mount point.
+   */
+  private final Map<String, Series[]> history = new HashMap<>();
+  /**
+   * The time of the first update (nanoseconds); sample times are seconds
+   * relative to this origin.
+   */
+  private long origin = -1;
+
+  /**
+   * Construct a new history retaining {@link #DEFAULT_CAPACITY} samples per
+   * mount.
+   */
+  public FileSystemHistory() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Construct a new history.
+   *
+   * @param capacity the number of samples retained per mount (minimum 2)
+   */
+  public FileSystemHistory(int capacity) {
+    if (capacity < 2) {
+      throw new IllegalArgumentException("Capacity must be at least 2.");
+    }
+    this.capacity = capacity;
+  }
+
+  /**
+   * Add a sample for each file system. e.g.
+   * {@code history.update(FileSystemInfo.getAllInstances())}
+   *
+   * @param fsInfo the file systems
+   */
+  public void update(Collection<FileSystemInfo> fsInfo) {
+    update(fsInfo, System.nanoTime());
+  }
+
+  /**
+   * Add a sample for each file system.
+   *
+   * @param fsInfo the file systems
+   * @param now    the sample time (nanoseconds)
+   */
+  synchronized void update(Collection<FileSystemInfo> fsInfo, long now) {
+    if (origin < 0) {
+      origin = now;
+    }
+    double time = (now - origin) / 1e9;
+    Set<String> present = new HashSet<>();
+    for (FileSystemInfo fs : fsInfo) {
+      if (fs.getMountPoint() == null || !present.add(fs.getMountPoint())) {
+        continue;
+      }
+      Series[] series = history.computeIfAbsent(fs.getMountPoint(), mountPoint -> new Series[]{new Series(capacity), new Series(capacity)});
+      if (fs.getUsed() != null && fs.getAvailable() != null) {
+        series[0].add(time, fs.getUsed(), fs.getAvailable());
+      }
+      if (fs.getInodesUsed() != null && fs.getInodes() > 0) {
+        series[1].add(time, fs.getInodesUsed(), fs.getInodesFree());
+      }
+    }
+    history.keySet().retainAll(present);
+  }
+
+  /**
+   * Get the mount points with a history.
+   *
+   * @return a sorted set of mount points
+   */
+  public synchronized SortedSet<String> getMountPoints() {
+    return new TreeSet<>(history.keySet());
+  }
+
+  /**
+   * Get the fitted capacity growth rate of a mount.
+   *
+   * @param mountPoint the mount point
+   * @return the growth rate (kilobytes per second; negative if shrinking); NaN
+   *         if fewer than two samples
+   */
+  public synchronized double getGrowthRate(String mountPoint) {
+    Series[] series = history.get(mountPoint);
+    return series == null ? Double.NaN : series[0].slope();
+  }
+
+  /**
+   * Get the forecast time until a mount has no available capacity.
+   *
+   * @param mountPoint the mount point
+   * @return the time to full (seconds); positive infinity if not growing; NaN
+   *         if fewer than two samples
+   */
+  public synchronized double getTimeToFull(String mountPoint) {
+    Series[] series = history.get(mountPoint);
+    return series == null ? Double.NaN : series[0].timeToFull();
+  }
+
+  /**
+   * Get the fitted inode growth rate of a mount.
+   *
+   * @param mountPoint the mount point
+   * @return the growth rate (inodes per second; negative if shrinking); NaN if
+   *         fewer than two samples or the file system has no inode table
+   */
+  public synchronized double getInodeGrowthRate(String mountPoint) {
+    Series[] series = history.get(mountPoint);
+    return series == null ? Double.NaN : series[1].slope();
+  }
+
+  /**
+   * Get the forecast time until a mount has no free inodes.
+   *
+   * @param mountPoint the mount point
+   * @return the time to inode exhaustion (seconds); positive infinity if not
+   *         growing; NaN if fewer than two samples or the file system has no
+   *         inode table
+   */
+  public synchronized double getTimeToInodeExhaustion(String mountPoint) {
+    Series[] series = history.get(mountPoint);
+    return series == null ? Double.NaN : series[1].timeToFull();
+  }
+
+  /**
+   * A ring buffer of (time, used) samples with running least squares sums.
+   */
+  private static final class Series {
+
+    private final double[] times;
+    private final double[] values;
+    /**
+     * The next write position and the number of samples in the buffer.
+     */
+    private int head;
+    private int count;
+    /**
+     * The number of samples evicted since the sums were last recomputed.
+     */
+    private int evicted;
+    private double sumT;
+    private double sumY;
+    private double sumTT;
+    private double sumTY;
+    /**
+     * The space remaining at the latest sample.
+     */
+    private double remaining;
+
+    Series(int capacity) {
+      this.times = new double[capacity];
+      this.values = new double[capacity];
+    }
+
+    void add(double time, double used, double remaining) {
+      if (count == times.length) {
+        double t = times[head];
+        double y = values[head];
+        sumT -= t;
+        sumY -= y;
+        sumTT -= t * t;
+        sumTY -= t * y;
+        count--;
+        evicted++;
+      }
+      times[head] = time;
+      values[head] = used;
+      head = (head + 1) % times.length;
+      count++;
+      sumT += time;
+      sumY += used;
+      sumTT += time * time;
+      sumTY += time * used;
+      this.remaining = remaining;
+      if (evicted >= times.length) {
+        recompute();
+      }
+    }
+
+    /**
+     * Recompute the sums from the buffer to discard accumulated rounding
+     * error.
+     */
+    private void recompute() {
+      sumT = sumY = sumTT = sumTY = 0;
+      for (int i = 0; i < count; i++) {
+        sumT += times[i];
+        sumY += values[i];
+        sumTT += times[i] * times[i];
+        sumTY += times[i] * values[i];
+      }
+      evicted = 0;
+    }
+
+    /**
+     * The least squares slope: (nΣty − ΣtΣy) / (nΣt² − (Σt)²).
+     */
+    double slope() {
+      if (count < 2) {
+        return Double.NaN;
+      }
+      double denominator = count * sumTT - sumT * sumT;
+      return denominator <= 0 ? Double.NaN : (count * sumTY - sumT * sumY) / denominator;
+    }
+
+    double timeToFull() {
+      double slope = slope();
+      if (Double.isNaN(slope)) {
+        return Double.NaN;
+      }
+      return slope <= 0 ? Double.POSITIVE_INFINITY : remaining / slope;
+    }
+  }
+
+}
@@ -15,10 +15,18 @@
  */
 package ch.keybridge.lib.sig.hw;
 
+import ch.keybridge.lib.sig.utility.CLibrary;
 import ch.keybridge.lib.sig.utility.SIGUtility;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Objects;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * The File System is a storage pool, device, partition, volume, concrete file
@@ -52,6 +60,203 @@ public class FileSystemInfo {
    * The path where the file system is mounted.
    */
   private String mountPoint;
+  /**
+   * The file system type. e.g. "ext4", "xfs", "nfs4". Not available from
+   * {@code df}.
+   */
+  private String type;
+  /**
+   * The total number of inodes (file serial numbers). Null if not available;
+   * zero for file systems without a fixed inode table (e.g. btrfs).
+   */
+  private Long inodes;
+  /**
+   * The number of free inodes. Null if not available.
+   */
+  private Long inodesFree;
+
+  /**
+   * The pseudo and virtual file system types skipped by default: kernel
+   * interfaces, memory backed and container overlay file systems.
+   */
+  public static final Set<String> EXCLUDED_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+    "autofs", "binfmt_misc", "bpf", "cgroup", "cgroup2", "configfs", "debugfs", "devpts", "devtmpfs", "efivarfs",
+    "fusectl", "hugetlbfs", "mqueue", "nsfs", "overlay", "proc", "pstore", "ramfs", "rpc_pipefs", "securityfs",
+    "sysfs", "tmpfs", "tracefs")));
+  /**
+   * The default time to wait for a file system to report its capacity
+   * (milliseconds).
+   */
+  public static final long DEFAULT_TIMEOUT = 5_000;
+
+  /**
+   * Daemon threads used to query file system capacity. A query against an
+   * unresponsive (e.g. stale NFS) mount may block indefinitely in the kernel.
+   */
+  private static final ExecutorService PROBE_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "sig-filesystem-probe");
+    thread.setDaemon(true);
+    return thread;
+  });
+  /**
+   * The mount points with a capacity query still in progress. These are
+   * skipped so that an unresponsive mount ties up at most one thread.
+   */
+  private static final Set<String> PENDING = ConcurrentHashMap.newKeySet();
+  /**
+   * The byte offsets of the {@code f_files} and {@code f_ffree} fields in the
+   * 64-bit Linux {@code struct statvfs}, in which every field preceding the
+   * spare area is 8 bytes wide.
+   */
+  private static final int F_FILES = 40;
+  private static final int F_FFREE = 48;
+  private static final int STATVFS_SIZE = 112;
+
+  /**
+   * Read all File System instances on the current system.
+   * <p>
+   * The mount points are read from {@code /proc/self/mountinfo} and the
+   * capacity of each is queried through its {@link FileStore}. Pseudo file
+   * systems (see {@link #EXCLUDED_TYPES}) are skipped and each mount must
+   * respond within {@link #DEFAULT_TIMEOUT}. If the mountinfo file is not
+   * available (e.g. not Linux) this falls back to the {@code df -k} system
+   * command.
+   *
+   * @return a collection of FileSystemInfo configurations, one per mount point
+   *         in mount order
+   * @throws Exception if the {@code df -k} system command fails to execute
+   */
+  public static Collection<FileSystemInfo> getAllInstances() throws Exception {
+    List<MountInfo> mounts;
+    try {
+      mounts = MountInfo.getAllMounts();
+    } catch (IOException exception) {
+      return getAllInstancesDF();
+    }
+    return getAllInstances(mounts, EXCLUDED_TYPES, DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Read the File System instances on the current system, filtered by type.
+   * <p>
+   * The capacity of all mounts is queried concurrently. A mount that does not
+   * respond within the timeout (e.g. a stale NFS mount) is omitted from the
+   * result and logged; it is skipped by later calls until the blocked query
+   * returns.
+   *
+   * @param excludedTypes the file system types to skip. e.g.
+   *                      {@link #EXCLUDED_TYPES}
+   * @param timeout       the time to wait for the mounts to respond
+   * @param unit          the timeout unit
+   * @return a collection of FileSystemInfo configurations
+   * @throws IOException if the {@code /proc/self/mountinfo} file cannot be
+   *                     read
+   */
+  public static Collection<FileSystemInfo> getAllInstances(Set<String> excludedTypes, long timeout, TimeUnit unit) throws IOException {
+    return getAllInstances(MountInfo.getAllMounts(), excludedTypes, timeout, unit);
+  }
+
+  /**
+   * Query the capacity of a list of mounts.
+   *
+   * @param mounts        the mounts
+   * @param excludedTypes the file system types to skip
+   * @param timeout       the time to wait for the mounts to respond
+   * @param unit          the timeout unit
+   * @return a collection of FileSystemInfo configurations
+   */
+  static Collection<FileSystemInfo> getAllInstances(List<MountInfo> mounts, Set<String> excludedTypes, long timeout, TimeUnit unit) {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    Map<MountInfo, Future<FileSystemInfo>> probes = new LinkedHashMap<>();
+    for (MountInfo mount : mounts) {
+      if (excludedTypes.contains(mount.getType())) {
+        continue;
+      }
+      if (!PENDING.add(mount.getMountPoint())) {
+        Logger.getLogger(FileSystemInfo.class.getName()).log(Level.FINE, "Skipping unresponsive file system {0}", mount.getMountPoint());
+        continue;
+      }
+      try {
+        probes.put(mount, PROBE_EXECUTOR.submit(() -> {
+          try {
+            return probe(mount);
+          } finally {
+            PENDING.remove(mount.getMountPoint());
+          }
+        }));
+      } catch (RejectedExecutionException exception) {
+        PENDING.remove(mount.getMountPoint());
+      }
+    }
+    /**
+     * A list, not a set: bind mounts, btrfs subvolumes and repeated exports
+     * share the same source (name) but are distinct mounts.
+     */
+    Collection<FileSystemInfo> fsInfo = new ArrayList<>();
+    for (Map.Entry<MountInfo, Future<FileSystemInfo>> probe : probes.entrySet()) {
+      try {
+        fsInfo.add(probe.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+      } catch (TimeoutException exception) {
+        Logger.getLogger(FileSystemInfo.class.getName()).log(Level.WARNING, "File system {0} did not respond within {1} ms",
+                                                              new Object[]{probe.getKey().getMountPoint(), unit.toMillis(timeout)});
+      } catch (ExecutionException exception) {
+        /**
+         * e.g. Access denied or the mount was removed.
+         */
+        Logger.getLogger(FileSystemInfo.class.getName()).log(Level.FINE, "Error reading file system " + probe.getKey().getMountPoint(), exception.getCause());
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    return fsInfo;
+  }
+
+  /**
+   * Query the capacity of a mounted file system.
+   *
+   * @param mount the mount
+   * @return a FileSystemInfo instance
+   * @throws IOException if the file system cannot be queried
+   */
+  private static FileSystemInfo probe(MountInfo mount) throws IOException {
+    FileStore store = Files.getFileStore(Paths.get(mount.getMountPoint()));
+    long total = store.getTotalSpace();
+    FileSystemInfo fs = new FileSystemInfo();
+    fs.setName(mount.getSource());
+    fs.setType(mount.getType());
+    fs.setMountPoint(mount.getMountPoint());
+    fs.setSize(total / 1024);
+    fs.setUsed((total - store.getUnallocatedSpace()) / 1024);
+    fs.setAvailable(store.getUsableSpace() / 1024);
+    readInodes(fs);
+    return fs;
+  }
+
+  /**
+   * Read the inode counts of a file system with {@code statvfs(3)}. The Java
+   * FileStore API does not report inodes. The counts are left null if the C
+   * library is not available or the platform is not 64-bit Linux.
+   *
+   * @param fs the file system
+   */
+  private static void readInodes(FileSystemInfo fs) {
+    CLibrary libc = CLibrary.get();
+    if (libc == null) {
+      return;
+    }
+    byte[] buffer = new byte[STATVFS_SIZE];
+    try {
+      if (libc.statvfs(fs.getMountPoint(), buffer) != 0) {
+        return;
+      }
+    } catch (RuntimeException | UnsatisfiedLinkError exception) {
+      return;
+    }
+    ByteBuffer statvfs = ByteBuffer.wrap(buffer).order(ByteOrder.nativeOrder());
+    fs.setInodes(statvfs.getLong(F_FILES));
+    fs.setInodesFree(statvfs.getLong(F_FFREE));
+  }
 
   /**
    * Read and parse all Files System instances on the current system. This
@@ -60,18 +265,18 @@ public class FileSystemInfo {
    * @return a collection of FileSystemInfo configurations
    * @throws Exception if the {@code df -k} system command fails to execute
    */
-  public static Collection<FileSystemInfo> getAllInstances() throws Exception {
-    Collection<FileSystemInfo> fsInfo = new HashSet<>();
-    for (String dfEntry : SIGUtility.execute("df", "-k")) {
+  public static Collection<FileSystemInfo> getAllInstancesDF() throws Exception {
+    Collection<FileSystemInfo> fsInfo = new ArrayList<>();
+    SIGUtility.execute(dfEntry -> {
       try {
-        fsInfo.add(FileSystemInfo.parseDFEntry(dfEntry));
+        fsInfo.add(FileSystemInfo.parseDFEntry(dfEntry.toString()));
       } catch (Exception e) {
         /**
          * The df output (first line) header fails to parse. Ignore this
          * expected error.
          */
       }
-    }
+    }, "df", "-k");
     return fsInfo;
   }
 
@@ -98,6 +303,24 @@ public class FileSystemInfo {
     return fs;
   }
 
+  /**
+   * Create a copy of this file system descriptor.
+   *
+   * @return a new FileSystemInfo instance with the same values
+   */
+  public FileSystemInfo copy() {
+    FileSystemInfo copy = new FileSystemInfo();
+    copy.name = name;
+    copy.size = size;
+    copy.used = used;
+    copy.available = available;
+    copy.mountPoint = mountPoint;
+    copy.type = type;
+    copy.inodes = inodes;
+    copy.inodesFree = inodesFree;
+    return copy;
+  }
+
   //<editor-fold defaultstate="collapsed" desc="Getter and Setter">
   public String getName() {
     return name;
@@ -139,13 +362,64 @@ public class FileSystemInfo {
     this.mountPoint = mountPoint;
   }
 
+  public String getType() {
+    return type;
+  }
+
+  public void setType(String type) {
+    this.type = type;
+  }
+
+  public Long getInodes() {
+    return inodes;
+  }
+
+  public void setInodes(Long inodes) {
+    this.inodes = inodes;
+  }
+
+  public Long getInodesFree() {
+    return inodesFree;
+  }
+
+  public void setInodesFree(Long inodesFree) {
+    this.inodesFree = inodesFree;
+  }
+
   /**
    * The used capacity of the the file system. (Percent).
    *
-   * @return The used capacity of the the file system.
+   * @return The used capacity of the the file system; zero for a zero-size
+   *         (pseudo) file system; null if not available.
    */
   public Double getUsedPercent() {
-    return used.doubleValue() / size.doubleValue();
+    if (used == null || size == null) {
+      return null;
+    }
+    return size == 0 ? 0 : used.doubleValue() / size.doubleValue();
+  }
+
+  /**
+   * The number of inodes in use.
+   *
+   * @return the used inodes; null if not available
+   */
+  public Long getInodesUsed() {
+    return inodes == null || inodesFree == null ? null : inodes - inodesFree;
+  }
+
+  /**
+   * The used inode capacity of the file system. (Percent).
+   *
+   * @return the used inodes; zero for a file system without a fixed
+   *         inode table; null if not available.
+   */
+  public Double getInodesUsedPercent() {
+    Long inodesUsed = getInodesUsed();
+    if (inodesUsed == null) {
+      return null;
+    }
+    return inodes == 0 ? 0 : inodesUsed.doubleValue() / inodes.doubleValue();
   }//</editor-fold>
 
   /**
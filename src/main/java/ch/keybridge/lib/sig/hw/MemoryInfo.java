@@ -15,9 +15,13 @@
  */
 package ch.keybridge.lib.sig.hw;
 
-import ch.keybridge.lib.sig.utility.SIGUtility;
+import ch.keybridge.lib.sig.utility.ProcFileReader;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A system memory container presenting memory status information from
@@ -32,6 +36,9 @@ import java.nio.file.Paths;
  * from physical systems which are slow to access (ie. data storage). By design,
  * the term "memory" refers to temporary state devices, whereas the term
  * "storage" is reserved for permanent data.
+ * <p>
+ * This class reports memory totals. For page fault, swap and reclaim rates and
+ * pressure stall information see {@link MemoryPressureSampler}.
  *
  * @author Key Bridge LLC
  * @since 1.0.0 (01/31/16)
@@ -68,6 +75,33 @@ public class MemoryInfo {
    */
   private Long swapAvailable;
 
+  /**
+   * The meminfo file.
+   */
+  private static final Path MEMINFO = Paths.get("/proc/meminfo");
+  /**
+   * The field lookup table: an open-addressed hash table of field ordinal + 1,
+   * keyed by the hash of the field name bytes. Zero marks an empty slot.
+   */
+  private static final byte[] FIELD_TABLE = new byte[256];
+  private static final EMemoryField[] FIELDS = EMemoryField.values();
+
+  static {
+    for (EMemoryField field : FIELDS) {
+      int slot = hash(field.getKey(), 0, field.getKey().length()) & (FIELD_TABLE.length - 1);
+      while (FIELD_TABLE[slot] != 0) {
+        slot = (slot + 1) & (FIELD_TABLE.length - 1);
+      }
+      FIELD_TABLE[slot] = (byte) (field.ordinal() + 1);
+    }
+  }
+
+  /**
+   * All field values, indexed by EMemoryField ordinal, in kByte (or count for
+   * the HugePages_* fields). -1 if the field is not reported by this kernel.
+   */
+  private final long[] values = new long[FIELDS.length];
+
   /**
    * Get a instance of a system memory descriptor. This reads and parses the
    * {@code /prc/meminfo} and populates the internal configuration.
@@ -76,7 +110,64 @@ public class MemoryInfo {
    * @throws IOException if the file {@code /prc/meminfo} cannot be read
    */
   public static MemoryInfo getInstance() throws IOException {
-    MemoryInfo memory = new MemoryInfo();
+    return new MemoryInfo().refresh();
+  }
+
+  /**
+   * Create a copy of this memory descriptor. The copy may be refreshed
+   * independently.
+   *
+   * @return a new MemoryInfo instance with the same values
+   */
+  public MemoryInfo copy() {
+    MemoryInfo copy = new MemoryInfo();
+    copy.total = total;
+    copy.available = available;
+    copy.swapTotal = swapTotal;
+    copy.swapAvailable = swapAvailable;
+    System.arraycopy(values, 0, copy.values, 0, values.length);
+    return copy;
+  }
+
+  /**
+   * Re-read the {@code /proc/meminfo} file into this descriptor.
+   * <p>
+   * The file is scanned once. Each field name is mapped to its value slot
+   * through a precomputed hash table and the value is parsed straight from the
+   * read buffer, so a refresh creates no String and is cheap enough for high
+   * frequency (e.g. 10 Hz) sampling.
+   *
+   * @return this memory descriptor
+   * @throws IOException if the file {@code /prc/meminfo} cannot be read
+   */
+  public MemoryInfo refresh() throws IOException {
+    return refresh(MEMINFO);
+  }
+
+  /**
+   * Re-read a meminfo file into this descriptor.
+   *
+   * @param meminfo the meminfo file
+   * @return this memory descriptor
+   * @throws IOException if the file cannot be read
+   */
+  MemoryInfo refresh(Path meminfo) throws IOException {
+    Arrays.fill(values, -1);
+    ProcFileReader reader = ProcFileReader.get().read(meminfo);
+    do {
+      int start = reader.position();
+      if (!reader.skipPast(':')) {
+        continue;
+      }
+      EMemoryField field = lookup(reader, start, reader.position() - 1);
+      if (field != null) {
+        try {
+          values[field.ordinal()] = reader.nextLong();
+        } catch (NumberFormatException exception) {
+          Logger.getLogger(MemoryInfo.class.getName()).log(Level.WARNING, "Error reading meminfo field {0}", field.getKey());
+        }
+      }
+    } while (reader.nextLine());
     /**
      * Scan the /proc/meminfo file for memory information.
      * <p>
@@ -87,55 +178,86 @@ public class MemoryInfo {
      * without pushing the system into swap, can be estimated from MemFree,
      * Active(file), Inactive(file), and SReclaimable, as well as the "low"
      * watermarks from /proc/zoneinfo.
+     * <p>
+     * If MemAvailable is not present then calculate the sum of MemFree +
+     * Active(file), Inactive(file), and Reclaimable.
      */
-    long tempAvailable = 0;
-    for (String entry : SIGUtility.readFileLines(Paths.get("/proc/meminfo"))) {
-      /**
-       * If MemAvailable is present then use that value.
-       */
-      if (entry.startsWith("MemAvailable")) {
-        memory.setAvailable(Long.valueOf(entry.split(":")[1].replaceAll("\\D", "")));
-      }
-      /**
-       * If MemAvailable is not present the calculate the sum of MemFree +
-       * Active(file), Inactive(file), and Reclaimable.
-       */
-      if (entry.startsWith("MemFree")) {
-        tempAvailable += Long.valueOf(entry.split(":")[1].replaceAll("\\D", ""));
-      }
-      if (entry.startsWith("Active(file)")) {
-        tempAvailable += Long.valueOf(entry.split(":")[1].replaceAll("\\D", ""));
-      }
-      if (entry.startsWith("Inactive(file)")) {
-        tempAvailable += Long.valueOf(entry.split(":")[1].replaceAll("\\D", ""));
-      }
-      if (entry.startsWith("SReclaimable")) {
-        tempAvailable += Long.valueOf(entry.split(":")[1].replaceAll("\\D", ""));
-      }
-      /**
-       * Set the total memory information.
-       */
-      if (entry.startsWith("MemTotal")) {
-        memory.setTotal(Long.valueOf(entry.split(":")[1].replaceAll("\\D", "")));
-      }
-      /**
-       * Set the SWAP values.
-       */
-      if (entry.startsWith("SwapFree")) {
-        memory.setSwapAvailable(Long.valueOf(entry.split(":")[1].replaceAll("\\D", "")));
-      }
-      if (entry.startsWith("SwapTotal")) {
-        memory.setSwapTotal(Long.valueOf(entry.split(":")[1].replaceAll("\\D", "")));
+    long estimate = 0;
+    for (EMemoryField field : new EMemoryField[]{EMemoryField.MEM_FREE, EMemoryField.ACTIVE_FILE, EMemoryField.INACTIVE_FILE, EMemoryField.S_RECLAIMABLE}) {
+      estimate += Math.max(0, values[field.ordinal()]);
+    }
+    setAvailable(values[EMemoryField.MEM_AVAILABLE.ordinal()] < 0 ? estimate : values[EMemoryField.MEM_AVAILABLE.ordinal()]);
+    setTotal(getValue(EMemoryField.MEM_TOTAL));
+    setSwapTotal(getValue(EMemoryField.SWAP_TOTAL));
+    setSwapAvailable(getValue(EMemoryField.SWAP_FREE));
+    return this;
+  }
+
+  /**
+   * Find the field named by the bytes in the reader buffer.
+   *
+   * @param reader the reader
+   * @param start  the name start offset
+   * @param end    the name end offset (exclusive)
+   * @return the field; null if not recognized
+   */
+  private static EMemoryField lookup(ProcFileReader reader, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + reader.byteAt(i);
+    }
+    int slot = hash & (FIELD_TABLE.length - 1);
+    while (FIELD_TABLE[slot] != 0) {
+      EMemoryField field = FIELDS[FIELD_TABLE[slot] - 1];
+      if (equals(field.getKey(), reader, start, end)) {
+        return field;
       }
+      slot = (slot + 1) & (FIELD_TABLE.length - 1);
     }
-    /**
-     * If MemAvailable is not present then use the assembled value.
-     */
-    if (memory.getAvailable() == null) {
-      memory.setAvailable(tempAvailable);
+    return null;
+  }
+
+  private static int hash(String key, int start, int end) {
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + key.charAt(i);
     }
+    return hash;
+  }
 
-    return memory;
+  private static boolean equals(String key, ProcFileReader reader, int start, int end) {
+    if (key.length() != end - start) {
+      return false;
+    }
+    for (int i = 0; i < key.length(); i++) {
+      if (key.charAt(i) != reader.byteAt(start + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get a meminfo field value.
+   *
+   * @param field the field
+   * @return the value, in kByte (or a page count for the HugePages_* fields);
+   *         null if the field is not reported by this kernel
+   */
+  public Long getValue(EMemoryField field) {
+    long value = values[field.ordinal()];
+    return value < 0 ? null : value;
+  }
+
+  /**
+   * Get a meminfo field value without boxing.
+   *
+   * @param field the field
+   * @return the value, in kByte (or a page count for the HugePages_* fields);
+   *         -1 if the field is not reported by this kernel
+   */
+  public long get(EMemoryField field) {
+    return values[field.ordinal()];
   }
 
   /**
@@ -180,9 +302,195 @@ public class MemoryInfo {
     this.swapAvailable = swapAvailable;
   }
 
+  /**
+   * @return the free memory (kByte): memory not used for anything
+   */
+  public Long getFree() {
+    return getValue(EMemoryField.MEM_FREE);
+  }
+
+  /**
+   * @return the file buffer memory (kByte)
+   */
+  public Long getBuffers() {
+    return getValue(EMemoryField.BUFFERS);
+  }
+
+  /**
+   * @return the page cache memory (kByte), excluding SwapCached
+   */
+  public Long getCached() {
+    return getValue(EMemoryField.CACHED);
+  }
+
+  /**
+   * @return the memory waiting to be written back to disk (kByte)
+   */
+  public Long getDirty() {
+    return getValue(EMemoryField.DIRTY);
+  }
+
+  /**
+   * @return the memory actively being written back to disk (kByte)
+   */
+  public Long getWriteback() {
+    return getValue(EMemoryField.WRITEBACK);
+  }
+
+  /**
+   * @return the non-file backed (anonymous) pages mapped into user space
+   *         (kByte)
+   */
+  public Long getAnonPages() {
+    return getValue(EMemoryField.ANON_PAGES);
+  }
+
+  /**
+   * @return the shared memory and tmpfs memory (kByte)
+   */
+  public Long getShmem() {
+    return getValue(EMemoryField.SHMEM);
+  }
+
+  /**
+   * @return the in-kernel data structures cache (kByte)
+   */
+  public Long getSlab() {
+    return getValue(EMemoryField.SLAB);
+  }
+
+  /**
+   * @return the reclaimable part of the slab cache (kByte)
+   */
+  public Long getSlabReclaimable() {
+    return getValue(EMemoryField.S_RECLAIMABLE);
+  }
+
+  /**
+   * @return the memory that can be allocated under the strict overcommit
+   *         policy (kByte)
+   */
+  public Long getCommitLimit() {
+    return getValue(EMemoryField.COMMIT_LIMIT);
+  }
+
+  /**
+   * @return the memory currently allocated (committed) on the system (kByte)
+   */
+  public Long getCommitted() {
+    return getValue(EMemoryField.COMMITTED_AS);
+  }
+
+  /**
+   * @return the anonymous transparent huge pages mapped into user space
+   *         (kByte)
+   */
+  public Long getAnonHugePages() {
+    return getValue(EMemoryField.ANON_HUGE_PAGES);
+  }
+
+  /**
+   * @return the size of the huge page pool (pages)
+   */
+  public Long getHugePagesTotal() {
+    return getValue(EMemoryField.HUGE_PAGES_TOTAL);
+  }
+
+  /**
+   * @return the number of huge pages not yet allocated (pages)
+   */
+  public Long getHugePagesFree() {
+    return getValue(EMemoryField.HUGE_PAGES_FREE);
+  }
+
+  /**
+   * @return the huge page size (kByte)
+   */
+  public Long getHugePageSize() {
+    return getValue(EMemoryField.HUGEPAGESIZE);
+  }
+
   @Override
   public String toString() {
     return (total / 1024) + " MByte total, " + (available / 1024) + " MByte available";
   }
 
+  /**
+   * The {@code /proc/meminfo} fields. Values are in kByte except for the
+   * HugePages_* fields, which are page counts.
+   */
+  public static enum EMemoryField {
+    MEM_TOTAL("MemTotal"),
+    MEM_FREE("MemFree"),
+    MEM_AVAILABLE("MemAvailable"),
+    BUFFERS("Buffers"),
+    CACHED("Cached"),
+    SWAP_CACHED("SwapCached"),
+    ACTIVE("Active"),
+    INACTIVE("Inactive"),
+    ACTIVE_ANON("Active(anon)"),
+    INACTIVE_ANON("Inactive(anon)"),
+    ACTIVE_FILE("Active(file)"),
+    INACTIVE_FILE("Inactive(file)"),
+    UNEVICTABLE("Unevictable"),
+    MLOCKED("Mlocked"),
+    SWAP_TOTAL("SwapTotal"),
+    SWAP_FREE("SwapFree"),
+    ZSWAP("Zswap"),
+    ZSWAPPED("Zswapped"),
+    DIRTY("Dirty"),
+    WRITEBACK("Writeback"),
+    ANON_PAGES("AnonPages"),
+    MAPPED("Mapped"),
+    SHMEM("Shmem"),
+    K_RECLAIMABLE("KReclaimable"),
+    SLAB("Slab"),
+    S_RECLAIMABLE("SReclaimable"),
+    S_UNRECLAIM("SUnreclaim"),
+    KERNEL_STACK("KernelStack"),
+    PAGE_TABLES("PageTables"),
+    SEC_PAGE_TABLES("SecPageTables"),
+    NFS_UNSTABLE("NFS_Unstable"),
+    BOUNCE("Bounce"),
+    WRITEBACK_TMP("WritebackTmp"),
+    COMMIT_LIMIT("CommitLimit"),
+    COMMITTED_AS("Committed_AS"),
+    VMALLOC_TOTAL("VmallocTotal"),
+    VMALLOC_USED("VmallocUsed"),
+    VMALLOC_CHUNK("VmallocChunk"),
+    PERCPU("Percpu"),
+    HARDWARE_CORRUPTED("HardwareCorrupted"),
+    ANON_HUGE_PAGES("AnonHugePages"),
+    SHMEM_HUGE_PAGES("ShmemHugePages"),
+    SHMEM_PMD_MAPPED("ShmemPmdMapped"),
+    FILE_HUGE_PAGES("FileHugePages"),
+    FILE_PMD_MAPPED("FilePmdMapped"),
+    CMA_TOTAL("CmaTotal"),
+    CMA_FREE("CmaFree"),
+    UNACCEPTED("Unaccepted"),
+    BALLOON("Balloon"),
+    HUGE_PAGES_TOTAL("HugePages_Total"),
+    HUGE_PAGES_FREE("HugePages_Free"),
+    HUGE_PAGES_RSVD("HugePages_Rsvd"),
+    HUGE_PAGES_SURP("HugePages_Surp"),
+    HUGEPAGESIZE("Hugepagesize"),
+    HUGETLB("Hugetlb"),
+    DIRECT_MAP_4K("DirectMap4k"),
+    DIRECT_MAP_2M("DirectMap2M"),
+    DIRECT_MAP_1G("DirectMap1G");
+
+    /**
+     * The field name in the meminfo file.
+     */
+    private final String key;
+
+    private EMemoryField(String key) {
+      this.key = key;
+    }
+
+    public String getKey() {
+      return key;
+    }
+  }
+
 }
@@ -0,0 +1,374 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw;
+
+import ch.keybridge.lib.sig.utility.ProcFileReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * A delta-based memory pressure sampler built on the {@code /proc/vmstat}
+ * event counters and the {@code /proc/pressure/{cpu,memory,io}} pressure stall
+ * information (PSI) files.
+ * <p>
+ * {@link MemoryInfo} reports memory totals. Memory pressure shows first in the
+ * page fault, swap and reclaim <em>rates</em> and in the time tasks spend
+ * stalled waiting for memory, well before the OOM killer acts. This sampler
+ * keeps the previous counter vector in a primitive {@code long[]} and, on each
+ * call to {@link #sample()}, computes per-second event rates and the stall
+ * percentage of each PSI resource over the interval. The kernel's own PSI
+ * running averages (10, 60 and 300 seconds) are also reported.
+ * <p>
+ * The scan and steal counters are the sum of the kswapd, direct, khugepaged
+ * and proactive reclaim counters (older kernels report these per zone); the
+ * allocation stall counter is the sum of all zones.
+ * <p>
+ * Rates are NaN until the second sample. PSI values are NaN if the kernel does
+ * not support PSI (before 4.20, or booted with {@code psi=0}).
+ * <p>
+ * Instances are thread safe.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class MemoryPressureSampler {
+
+  /**
+   * Counter index: page faults (minor and major).
+   */
+  public static final int PGFAULT = 0;
+  /**
+   * Counter index: major page faults, requiring a read from disk.
+   */
+  public static final int PGMAJFAULT = 1;
+  /**
+   * Counter index: pages swapped in.
+   */
+  public static final int PSWPIN = 2;
+  /**
+   * Counter index: pages swapped out.
+   */
+  public static final int PSWPOUT = 3;
+  /**
+   * Counter index: pages scanned for reclaim.
+   */
+  public static final int PGSCAN = 4;
+  /**
+   * Counter index: pages reclaimed.
+   */
+  public static final int PGSTEAL = 5;
+  /**
+   * Counter index: allocations stalled for direct reclaim.
+   */
+  public static final int ALLOCSTALL = 6;
+  /**
+   * Counter index: processes killed by the OOM killer.
+   */
+  public static final int OOM_KILL = 7;
+  /**
+   * The number of counters.
+   */
+  public static final int FIELDS = 8;
+
+  /**
+   * PSI line: some tasks were stalled.
+   */
+  public static final int SOME = 0;
+  /**
+   * PSI line: all non-idle tasks were stalled simultaneously.
+   */
+  public static final int FULL = 1;
+
+  private static final EResource[] RESOURCES = EResource.values();
+  private static final int[] WINDOWS = {10, 60, 300};
+
+  /**
+   * The virtual memory statistics file.
+   */
+  private final Path procVmstat;
+  /**
+   * The pressure stall information file of each resource.
+   */
+  private final Path[] pressure = new Path[RESOURCES.length];
+
+  /**
+   * The previous and current counter vectors.
+   */
+  private long[] previous = new long[FIELDS];
+  private long[] current = new long[FIELDS];
+  /**
+   * The per-second rates over the last interval.
+   */
+  private final double[] rates = new double[FIELDS];
+  /**
+   * The previous and current PSI stall totals (microseconds), indexed
+   * {@code resource * 2 + line}. -1 marks a line that is not available.
+   */
+  private long[] previousStall = new long[RESOURCES.length * 2];
+  private long[] currentStall = new long[RESOURCES.length * 2];
+  /**
+   * The stall percentages over the last interval. Same layout as the totals.
+   */
+  private final double[] stall = new double[RESOURCES.length * 2];
+  /**
+   * The kernel PSI running averages, indexed
+   * {@code (resource * 2 + line) * 3 + window}.
+   */
+  private final double[] averages = new double[RESOURCES.length * 2 * WINDOWS.length];
+  /**
+   * The previous sample time (nanoseconds). Zero before the first sample.
+   */
+  private long timestamp;
+
+  /**
+   * Construct a new sampler reading the system {@code /proc/vmstat} and
+   * {@code /proc/pressure} files.
+   */
+  public MemoryPressureSampler() {
+    this(Paths.get("/proc/vmstat"), Paths.get("/proc/pressure"));
+  }
+
+  /**
+   * Construct a new sampler reading the indicated files.
+   *
+   * @param procVmstat    the virtual memory statistics file
+   * @param procPressure the pressure stall information directory
+   */
+  public MemoryPressureSampler(Path procVmstat, Path procPressure) {
+    this.procVmstat = procVmstat;
+    for (EResource resource : RESOURCES) {
+      pressure[resource.ordinal()] = procPressure.resolve(resource.name());
+    }
+    Arrays.fill(rates, Double.NaN);
+    Arrays.fill(stall, Double.NaN);
+    Arrays.fill(averages, Double.NaN);
+  }
+
+  /**
+   * Read the current counters and compute the rates since the previous sample.
+   *
+   * @throws IOException if the {@code /proc/vmstat} file cannot be read
+   */
+  public void sample() throws IOException {
+    sample(System.nanoTime());
+  }
+
+  /**
+   * Read the current counters and compute the rates since the previous sample.
+   *
+   * @param now the sample time (nanoseconds)
+   * @throws IOException if the {@code /proc/vmstat} file cannot be read
+   */
+  synchronized void sample(long now) throws IOException {
+    readVmstat();
+    readPressure();
+    if (timestamp != 0 && now > timestamp) {
+      double seconds = (now - timestamp) / 1e9;
+      for (int i = 0; i < FIELDS; i++) {
+        long delta = current[i] - previous[i];
+        rates[i] = delta < 0 ? Double.NaN : delta / seconds;
+      }
+      for (int i = 0; i < currentStall.length; i++) {
+        long delta = currentStall[i] - previousStall[i];
+        stall[i] = currentStall[i] < 0 || previousStall[i] < 0 || delta < 0
+                   ? Double.NaN
+                   : Math.min(100.0, delta / (seconds * 1e4));
+      }
+    }
+    long[] swap = previous;
+    previous = current;
+    current = swap;
+    swap = previousStall;
+    previousStall = currentStall;
+    currentStall = swap;
+    timestamp = now;
+  }
+
+  /**
+   * Read the {@code /proc/vmstat} counters into the current vector.
+   *
+   * @throws IOException if the file cannot be read
+   */
+  private void readVmstat() throws IOException {
+    Arrays.fill(current, 0);
+    ProcFileReader reader = ProcFileReader.get().read(procVmstat);
+    do {
+      int field = field(reader);
+      if (field >= 0) {
+        reader.skipToken();
+        current[field] += reader.nextLong();
+      }
+    } while (reader.nextLine());
+  }
+
+  /**
+   * Identify the counter at the beginning of a {@code /proc/vmstat} line.
+   * Only the first byte is examined for most of the ~200 lines.
+   *
+   * @param reader the reader, positioned at the beginning of a line
+   * @return the counter index; -1 if the line is not sampled
+   */
+  private static int field(ProcFileReader reader) {
+    if (!reader.hasRemaining()) {
+      return -1;
+    }
+    switch (reader.byteAt(reader.position())) {
+      case 'p':
+        if (reader.startsWith("pgfault ")) {
+          return PGFAULT;
+        } else if (reader.startsWith("pgmajfault ")) {
+          return PGMAJFAULT;
+        } else if (reader.startsWith("pswpin ")) {
+          return PSWPIN;
+        } else if (reader.startsWith("pswpout ")) {
+          return PSWPOUT;
+        } else if (reader.startsWith("pgscan_") && isReclaim(reader, "pgscan_".length())) {
+          return PGSCAN;
+        } else if (reader.startsWith("pgsteal_") && isReclaim(reader, "pgsteal_".length())) {
+          return PGSTEAL;
+        }
+        return -1;
+      case 'a':
+        return reader.startsWith("allocstall") ? ALLOCSTALL : -1;
+      case 'o':
+        return reader.startsWith("oom_kill ") ? OOM_KILL : -1;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Determine if a scan or steal counter is a reclaim source counter (kswapd,
+   * direct, khugepaged or proactive). The per-type (anon, file) counters and
+   * the direct reclaim throttle counter would double count.
+   *
+   * @param reader the reader, positioned at the beginning of the line
+   * @param offset the offset of the source name
+   * @return TRUE if the counter is a reclaim source counter
+   */
+  private static boolean isReclaim(ProcFileReader reader, int offset) {
+    int start = reader.position();
+    reader.position(start + offset);
+    boolean reclaim = reader.startsWith("kswapd")
+                      || (reader.startsWith("direct") && !reader.startsWith("direct_throttle"))
+                      || reader.startsWith("khugepaged")
+                      || reader.startsWith("proactive");
+    reader.position(start);
+    return reclaim;
+  }
+
+  /**
+   * Read the PSI files into the current stall totals and the averages.
+   */
+  private void readPressure() {
+    Arrays.fill(currentStall, -1);
+    ProcFileReader reader = ProcFileReader.get();
+    for (EResource resource : RESOURCES) {
+      try {
+        reader.read(pressure[resource.ordinal()]);
+      } catch (IOException exception) {
+        /**
+         * PSI is not supported.
+         */
+        continue;
+      }
+      do {
+        int line;
+        if (reader.nextTokenEquals("some")) {
+          line = SOME;
+        } else if (reader.nextTokenEquals("full")) {
+          line = FULL;
+        } else {
+          continue;
+        }
+        int row = resource.ordinal() * 2 + line;
+        try {
+          for (int w = 0; w < WINDOWS.length; w++) {
+            reader.skipPast('=');
+            averages[row * WINDOWS.length + w] = reader.nextDouble();
+          }
+          reader.skipPast('=');
+          currentStall[row] = reader.nextLong();
+        } catch (NumberFormatException exception) {
+          currentStall[row] = -1;
+        }
+      } while (reader.nextLine());
+    }
+  }
+
+  /**
+   * Get the per-second rate of a counter over the last interval.
+   *
+   * @param field the counter index. e.g. {@link #PGMAJFAULT}
+   * @return the rate (per second); NaN before the second sample or if the
+   *         counter was reset
+   */
+  public synchronized double getRate(int field) {
+    return rates[field];
+  }
+
+  /**
+   * Get the cumulative (since boot) value of a counter at the last sample.
+   *
+   * @param field the counter index. e.g. {@link #OOM_KILL}
+   * @return the counter value
+   */
+  public synchronized long getValue(int field) {
+    return previous[field];
+  }
+
+  /**
+   * Get the percentage of the last interval during which tasks were stalled on
+   * a resource.
+   *
+   * @param resource the resource
+   * @param line     {@link #SOME} or {@link #FULL}
+   * @return the stall time (percent of wall time); NaN if not available
+   */
+  public synchronized double getStallPercent(EResource resource, int line) {
+    return stall[resource.ordinal() * 2 + line];
+  }
+
+  /**
+   * Get a kernel PSI running average.
+   *
+   * @param resource the resource
+   * @param line     {@link #SOME} or {@link #FULL}
+   * @param window   the averaging window (seconds): 10, 60 or 300
+   * @return the stall time (percent of wall time); NaN if not available
+   * @throws IllegalArgumentException if the window is not 10, 60 or 300
+   */
+  public synchronized double getAverage(EResource resource, int line, int window) {
+    for (int w = 0; w < WINDOWS.length; w++) {
+      if (WINDOWS[w] == window) {
+        int row = resource.ordinal() * 2 + line;
+        return previousStall[row] < 0 ? Double.NaN : averages[row * WINDOWS.length + w];
+      }
+    }
+    throw new IllegalArgumentException("Unsupported PSI window: " + window);
+  }
+
+  /**
+   * Pressure stall information resources. The name is the
+   * {@code /proc/pressure} file name.
+   */
+  public static enum EResource {
+    cpu, memory, io;
+  }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A mount point entry of the {@code /proc/[pid]/mountinfo} file.
+ * <p>
+ * Each line describes one mount:
+ * <pre>
+ * 36 35 98:0 /mnt1 /mnt2 rw,noatime master:1 - ext3 /dev/root rw,errors=continue
+ * (1)(2)(3)   (4)   (5)      (6)      (7)   (8) (9)   (10)         (11)
+ * </pre>
+ * (1) mount ID, (2) parent ID, (3) major:minor of the device, (4) root of the
+ * mount within the file system, (5) mount point, (6) mount options, (7)
+ * optional fields, (8) separator, (9) file system type, (10) mount source and
+ * (11) super block options. Unlike the output of {@code df} or
+ * {@code /proc/mounts}, the fields are unambiguous: white space in paths is
+ * octal escaped (e.g. "\040" for a space) and decoded here.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ * @see
+ * <a href="https://www.kernel.org/doc/Documentation/filesystems/proc.txt">The
+ * /proc Filesystem</a>
+ */
+public class MountInfo {
+
+  /**
+   * The mount ID.
+   */
+  private final int mountId;
+  /**
+   * The device major number.
+   */
+  private final int major;
+  /**
+   * The device minor number.
+   */
+  private final int minor;
+  /**
+   * The root of the mount within the file system.
+   */
+  private final String root;
+  /**
+   * The mount point, relative to the process root.
+   */
+  private final String mountPoint;
+  /**
+   * The per-mount options. e.g. "rw,relatime"
+   */
+  private final String options;
+  /**
+   * The file system type. e.g. "ext4", "nfs4", "tmpfs"
+   */
+  private final String type;
+  /**
+   * The file system specific mount source. e.g. "/dev/sda1"
+   */
+  private final String source;
+
+  private MountInfo(int mountId, int major, int minor, String root, String mountPoint, String options, String type, String source) {
+    this.mountId = mountId;
+    this.major = major;
+    this.minor = minor;
+    this.root = root;
+    this.mountPoint = mountPoint;
+    this.options = options;
+    this.type = type;
+    this.source = source;
+  }
+
+  /**
+   * Read the mount points of the current process.
+   *
+   * @return the mount points, in mount order
+   * @throws IOException if the {@code /proc/self/mountinfo} file cannot be
+   *                     read
+   */
+  public static List<MountInfo> getAllMounts() throws IOException {
+    return read(Paths.get("/proc/self/mountinfo"));
+  }
+
+  /**
+   * Read the mount points from a mountinfo file. Malformed lines are skipped.
+   *
+   * @param mountinfo the mountinfo file
+   * @return the mount points, in file order
+   * @throws IOException if the file cannot be read
+   */
+  public static List<MountInfo> read(Path mountinfo) throws IOException {
+    List<MountInfo> mounts = new ArrayList<>();
+    for (String line : Files.readAllLines(mountinfo, StandardCharsets.UTF_8)) {
+      MountInfo mount = parse(line);
+      if (mount != null) {
+        mounts.add(mount);
+      }
+    }
+    return mounts;
+  }
+
+  /**
+   * Parse one mountinfo line.
+   *
+   * @param line the line
+   * @return the mount point; null if the line is malformed
+   */
+  static MountInfo parse(String line) {
+    int separator = line.indexOf(" - ");
+    if (separator < 0) {
+      return null;
+    }
+    String[] fields = line.substring(0, separator).split(" ");
+    String[] filesystem = line.substring(separator + 3).split(" ");
+    if (fields.length < 6 || filesystem.length < 2) {
+      return null;
+    }
+    int colon = fields[2].indexOf(':');
+    try {
+      return new MountInfo(Integer.parseInt(fields[0]),
+                           Integer.parseInt(fields[2].substring(0, colon)),
+                           Integer.parseInt(fields[2].substring(colon + 1)),
+                           unescape(fields[3]),
+                           unescape(fields[4]),
+                           fields[5],
+                           filesystem[0],
+                           unescape(filesystem[1]));
+    } catch (NumberFormatException | StringIndexOutOfBoundsException exception) {
+      return null;
+    }
+  }
+
+  /**
+   * Decode the octal escapes (e.g. "\040" for a space) of a mountinfo field.
+   *
+   * @param field the field
+   * @return the decoded field
+   */
+  static String unescape(String field) {
+    if (field.indexOf('\\') < 0) {
+      return field;
+    }
+    StringBuilder sb = new StringBuilder(field.length());
+    for (int i = 0; i < field.length(); i++) {
+      char c = field.charAt(i);
+      if (c == '\\' && i + 3 < field.length()) {
+        sb.append((char) Integer.parseInt(field.substring(i + 1, i + 4), 8));
+        i += 3;
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  //<editor-fold defaultstate="collapsed" desc="Getter">
+  public int getMountId() {
+    return mountId;
+  }
+
+  public int getMajor() {
+    return major;
+  }
+
+  public int getMinor() {
+    return minor;
+  }
+
+  public String getRoot() {
+    return root;
+  }
+
+  public String getMountPoint() {
+    return mountPoint;
+  }
+
+  public String getOptions() {
+    return options;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getSource() {
+    return source;
+  }//</editor-fold>
+
+  /**
+   * Determine if the mount is read only.
+   *
+   * @return TRUE if the mount options include "ro"
+   */
+  public boolean isReadOnly() {
+    return options.equals("ro") || options.startsWith("ro,");
+  }
+
+  @Override
+  public String toString() {
+    return source + " on " + mountPoint + " type " + type + " (" + options + ")";
+  }
+
+}
@@ -15,12 +15,16 @@
  */
 package ch.keybridge.lib.sig.hw.net;
 
+import ch.keybridge.lib.sig.utility.ProcFileReader;
 import ch.keybridge.lib.sig.utility.SIGUtility;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -70,6 +74,11 @@ public class NetworkInterfaceInfo {
    * The interface duplex mode.
    */
   private EDuplex duplex;
+  /**
+   * The interface type. Only set by a {@link NetworkInterfaceQuery} that
+   * filters on type or loads the link attributes.
+   */
+  private EInterfaceType type;
 
   /**
    * The total number of bytes of data transmitted by the interface.
@@ -143,28 +152,282 @@ public class NetworkInterfaceInfo {
    * IPV6 multicast bytes sent.
    */
   private Long ip6OutMcastPkts;
+  /**
+   * The receive throughput (bytes per second) since the previous call to
+   * {@link #getAllInterfaces(boolean)} in the same mode, by any caller in this
+   * process. Null on the first call.
+   */
+  private Double rxRate;
+  /**
+   * The transmit throughput (bytes per second) since the previous call to
+   * {@link #getAllInterfaces(boolean)} in the same mode, by any caller in this
+   * process. Null on the first call.
+   */
+  private Double txRate;
+
+  /**
+   * The shared rate samplers used to compute the throughput in detailed mode
+   * (sysfs counters) and in {@code /proc/net/dev} mode. The two are kept apart
+   * because the sources do not count drops identically.
+   */
+  private static final NetworkRateSampler RATE_SAMPLER = new NetworkRateSampler();
+  private static final NetworkRateSampler DEV_RATE_SAMPLER = new NetworkRateSampler();
+
+  /**
+   * The statistics files read for each interface, in the order they are
+   * applied. The last entry is the {@code /proc/net/dev_snmp6} file.
+   */
+  private static final String[] STATISTICS = {"rx_bytes", "tx_bytes", "rx_packets", "tx_packets", "rx_dropped", "tx_dropped",
+                                              "rx_errors", "tx_errors", "tx_carrier_errors", "collisions", "multicast"};
+  /**
+   * A cache of the statistics file paths for each interface name. Entries are
+   * removed when the interface is no longer listed in {@code /proc/net/dev}.
+   */
+  private static final Map<String, Path[]> STATISTICS_PATHS = new ConcurrentHashMap<>();
+
+  /**
+   * The slowly changing sysfs attributes (MAC address, speed, duplex) of each
+   * interface, by ifindex. Entries are removed when the interface disappears.
+   */
+  private static final Map<Integer, Attributes> ATTRIBUTES = new ConcurrentHashMap<>();
 
   /**
    * Scan the system and read statistics for all available interfaces.
    * <p>
    * This method parses the file {@code /proc/net/dev} and then builds a
    * NetworkInterfaceInfo instance for each discovered interface entry.
+   * <p>
+   * The receive and transmit throughput are calculated from the counters read
+   * by this call over the interval since the previous call, using a shared
+   * {@link NetworkRateSampler}. The interval is shared by every caller in the
+   * process, including background sampling (see
+   * {@code SystemInspectorGeneral.startSampling}), so it is the time since
+   * whoever called last. For a controlled interval or smoothed rates create a
+   * dedicated NetworkRateSampler instance.
    *
    * @return a collection of NetworkInterfaceInfo configurations
    * @throws IOException if the file {@code /proc/net/dev} cannot be parsed
    */
   public static Collection<NetworkInterfaceInfo> getAllInterfaces() throws IOException {
     Collection<NetworkInterfaceInfo> networks = new HashSet<>();
-
+    Set<String> names = new HashSet<>();
     for (String line : SIGUtility.readFileLines(Paths.get("/proc/net/dev"))) {
       if (line.contains(":")) {
-        networks.add(NetworkInterfaceInfo.getInstance(line.trim().split(":")[0].trim()));
+        String name = line.trim().split(":")[0].trim();
+        names.add(name);
+        networks.add(NetworkInterfaceInfo.getInstance(name));
       }
     }
+    /**
+     * Drop the cached paths of interfaces that have been removed (e.g. veth
+     * pairs of stopped containers).
+     */
+    STATISTICS_PATHS.keySet().retainAll(names);
+    setRates(RATE_SAMPLER, networks);
+    return networks;
+  }
 
+  /**
+   * Scan the system and read statistics for all available interfaces.
+   * <p>
+   * In detailed mode this is identical to {@link #getAllInterfaces()}: about a
+   * dozen {@code /sys/class/net/{name}/statistics} files and the
+   * {@code /proc/net/dev_snmp6} file are read for each interface.
+   * <p>
+   * Otherwise all rx/tx counters are filled from a single read of
+   * {@code /proc/net/dev} and the IPv6 statistics are not read. Only the
+   * {@code ifindex} and {@code operstate} files are read per interface. The
+   * slowly changing attributes (MAC address, speed and duplex) are cached by
+   * ifindex and re-read only when the interface is new, renamed or its link
+   * state has changed. Note that the {@code /proc/net/dev} receive drop count
+   * also includes missed (FIFO overrun) packets. This mode is intended for
+   * hosts with hundreds of (e.g. veth or macvlan) interfaces. The throughput
+   * is computed from the counters already read, so {@code /proc/net/dev} is
+   * read once per call. As in detailed mode the rate interval is the time since
+   * the previous call in the same mode by any caller in the process.
+   * <p>
+   * For filtered queries and selective attribute loading see
+   * {@link #query()}.
+   *
+   * @param detailed TRUE to read the per-interface sysfs statistics and IPv6
+   *                 statistics; FALSE to read the counters from
+   *                 {@code /proc/net/dev} only
+   * @return a collection of NetworkInterfaceInfo configurations
+   * @throws IOException if the file {@code /proc/net/dev} cannot be parsed
+   */
+  public static Collection<NetworkInterfaceInfo> getAllInterfaces(boolean detailed) throws IOException {
+    if (detailed) {
+      return getAllInterfaces();
+    }
+    Collection<NetworkInterfaceInfo> networks = getAllInterfaces(Paths.get("/proc/net/dev"), Paths.get("/sys/class/net"));
+    setRates(DEV_RATE_SAMPLER, networks);
     return networks;
   }
 
+  /**
+   * Create a new interface query. A query selects interfaces by name and type
+   * and reads only the requested attribute groups. Example:
+   * <pre>
+   * NetworkInterfaceInfo.query().withName("eth*").list();
+   * </pre>
+   *
+   * @return a new query reading the system {@code /proc/net/dev} file
+   */
+  public static NetworkInterfaceQuery query() {
+    return new NetworkInterfaceQuery();
+  }
+
+  /**
+   * Read all interface counters from a {@code /proc/net/dev} file and the
+   * link attributes from a sysfs network class directory.
+   *
+   * @param procNetDev  the network device status file
+   * @param sysClassNet the sysfs network class directory
+   * @return a collection of NetworkInterfaceInfo configurations
+   * @throws IOException if the network device status file cannot be read
+   */
+  static Collection<NetworkInterfaceInfo> getAllInterfaces(Path procNetDev, Path sysClassNet) throws IOException {
+    return new NetworkInterfaceQuery(procNetDev, sysClassNet)
+      .withAttributes(NetworkInterfaceQuery.EAttributeGroup.COUNTERS, NetworkInterfaceQuery.EAttributeGroup.LINK)
+      .list();
+  }
+
+  /**
+   * Read the interface entries of a {@code /proc/net/dev} file in a single
+   * pass.
+   *
+   * @param procNetDev the network device status file
+   * @param filter     the interface name filter; entries not accepted are
+   *                   skipped without parsing their counters
+   * @param counters   TRUE to set the rx/tx counters from the file; FALSE to
+   *                   set only the name
+   * @return the interfaces, in file order
+   * @throws IOException if the network device status file cannot be read
+   */
+  static List<NetworkInterfaceInfo> readProcNetDev(Path procNetDev, Predicate<String> filter, boolean counters) throws IOException {
+    List<NetworkInterfaceInfo> parsed = new ArrayList<>();
+    ProcFileReader reader = ProcFileReader.get().read(procNetDev);
+    /**
+     * Skip the two header lines.
+     */
+    reader.nextLine();
+    while (reader.nextLine()) {
+      String name = NetworkRateSampler.nextName(reader);
+      if (name == null || !filter.test(name)) {
+        continue;
+      }
+      NetworkInterfaceInfo interfaceInfo = new NetworkInterfaceInfo();
+      interfaceInfo.setName(name);
+      if (counters) {
+        try {
+          interfaceInfo.setRxBytes(reader.nextLong());
+          interfaceInfo.setRxPackets(reader.nextLong());
+          interfaceInfo.setRxErrors(reader.nextLong());
+          interfaceInfo.setRxDropped(reader.nextLong());
+          reader.nextLong(); // fifo
+          reader.nextLong(); // frame
+          reader.nextLong(); // compressed
+          interfaceInfo.setMulticast(reader.nextLong());
+          interfaceInfo.setTxBytes(reader.nextLong());
+          interfaceInfo.setTxPackets(reader.nextLong());
+          interfaceInfo.setTxErrors(reader.nextLong());
+          interfaceInfo.setTxDropped(reader.nextLong());
+          reader.nextLong(); // fifo
+          interfaceInfo.setCollisions(reader.nextLong());
+          interfaceInfo.setTxCarrier(reader.nextLong());
+        } catch (NumberFormatException exception) {
+          Logger.getLogger(NetworkInterfaceInfo.class.getName()).log(Level.WARNING, "Error reading statistics for interface {0}", name);
+          continue;
+        }
+      }
+      parsed.add(interfaceInfo);
+    }
+    return parsed;
+  }
+
+  /**
+   * Set the link attributes (type, MAC address, link state, speed and duplex)
+   * of this interface. Only the {@code ifindex} and {@code operstate} files are
+   * read;
+   * the slowly changing attributes are cached by ifindex and re-read only when
+   * the interface is new, renamed or its link state has changed.
+   *
+   * @param sysClassNet the sysfs network class directory
+   * @param indexes     the set to which the interface index is added
+   * @return TRUE if the attributes were read; false if the interface has been
+   *         removed
+   */
+  boolean readLink(Path sysClassNet, Set<Integer> indexes) {
+    ProcFileReader reader = ProcFileReader.get();
+    Path path = sysClassNet.resolve(name);
+    int ifindex;
+    Attributes attributes;
+    try {
+      ifindex = reader.readInt(path.resolve("ifindex"));
+      attributes = ATTRIBUTES.get(ifindex);
+      reader.read(path.resolve("operstate"));
+      if (attributes == null
+          || !attributes.name.equals(name)
+          || !reader.nextTokenEquals(attributes.linkState.name())) {
+        attributes = new Attributes(name, path);
+        ATTRIBUTES.put(ifindex, attributes);
+      }
+    } catch (IOException | IllegalArgumentException exception) {
+      return false;
+    }
+    indexes.add(ifindex);
+    type = attributes.type;
+    macAddress = attributes.macAddress;
+    linkState = attributes.linkState;
+    speed = attributes.speed;
+    duplex = attributes.duplex;
+    return true;
+  }
+
+  /**
+   * Determine the type of an interface from its sysfs directory.
+   *
+   * @param path the interface sysfs directory
+   * @return the interface type; null if the interface has been removed
+   */
+  static EInterfaceType readType(Path path) {
+    if (Files.isDirectory(path.resolve("bridge"))) {
+      return EInterfaceType.BRIDGE;
+    }
+    if (Files.exists(path.resolve("device"))) {
+      return EInterfaceType.PHYSICAL;
+    }
+    return Files.isDirectory(path) ? EInterfaceType.VIRTUAL : null;
+  }
+
+  /**
+   * Remove the cached link attributes of interfaces that no longer exist.
+   *
+   * @param indexes the interface indexes of all current interfaces
+   */
+  static void retainLinks(Set<Integer> indexes) {
+    ATTRIBUTES.keySet().retainAll(indexes);
+  }
+
+  /**
+   * Feed the counters of each interface to a shared rate sampler and set the
+   * receive and transmit throughput from the resulting sample.
+   *
+   * @param sampler  the shared rate sampler
+   * @param networks the interfaces and their current counters
+   */
+  private static void setRates(NetworkRateSampler sampler, Collection<NetworkInterfaceInfo> networks) {
+    synchronized (sampler) {
+      sampler.sample(networks, System.nanoTime());
+      for (NetworkInterfaceInfo network : networks) {
+        double rx = sampler.getRate(network.getName(), NetworkRateSampler.RX_BYTES);
+        double tx = sampler.getRate(network.getName(), NetworkRateSampler.TX_BYTES);
+        network.setRxRate(Double.isNaN(rx) ? null : rx);
+        network.setTxRate(Double.isNaN(tx) ? null : tx);
+      }
+    }
+  }
+
   /**
    * Get a single NetworkInterfaceInfo instance for the indicated interface
    * name. This reads and parses configuration details from the appropriate
@@ -187,6 +450,7 @@ public class NetworkInterfaceInfo {
      * Ensure that a valid interface name is received.
      */
     if (!Paths.get(path).toFile().exists()) {
+      STATISTICS_PATHS.remove(name);
       throw new FileNotFoundException(name + " configuration files not found on this system.");
     }
     NetworkInterfaceInfo interfaceInfo = new NetworkInterfaceInfo();
@@ -205,26 +469,47 @@ public class NetworkInterfaceInfo {
      * Interface statistics typically read OK, but are optional. Try but don't
      * fail on error.
      */
+    interfaceInfo.readStatistics();
+    interfaceInfo.readIp6Statistics();
+
+    return interfaceInfo;
+  }
+
+  /**
+   * Read the rx/tx counters of this interface from the
+   * {@code /sys/class/net/{name}/statistics} files. Statistics are parsed
+   * directly from the read buffer using cached file paths.
+   */
+  void readStatistics() {
+    ProcFileReader reader = ProcFileReader.get();
+    Path[] statistics = STATISTICS_PATHS.computeIfAbsent(name, NetworkInterfaceInfo::buildStatisticsPaths);
     try {
-      interfaceInfo.setRxBytes(SIGUtility.readFileLong(Paths.get(path, "statistics", "rx_bytes")));
-      interfaceInfo.setTxBytes(SIGUtility.readFileLong(Paths.get(path, "statistics", "tx_bytes")));
+      setRxBytes(reader.readLong(statistics[0]));
+      setTxBytes(reader.readLong(statistics[1]));
 
-      interfaceInfo.setRxPackets(SIGUtility.readFileLong(Paths.get(path, "statistics", "rx_packets")));
-      interfaceInfo.setTxPackets(SIGUtility.readFileLong(Paths.get(path, "statistics", "tx_packets")));
+      setRxPackets(reader.readLong(statistics[2]));
+      setTxPackets(reader.readLong(statistics[3]));
 
-      interfaceInfo.setRxDropped(SIGUtility.readFileLong(Paths.get(path, "statistics", "rx_dropped")));
-      interfaceInfo.setTxDropped(SIGUtility.readFileLong(Paths.get(path, "statistics", "tx_dropped")));
+      setRxDropped(reader.readLong(statistics[4]));
+      setTxDropped(reader.readLong(statistics[5]));
 
-      interfaceInfo.setRxErrors(SIGUtility.readFileLong(Paths.get(path, "statistics", "rx_errors")));
-      interfaceInfo.setTxErrors(SIGUtility.readFileLong(Paths.get(path, "statistics", "tx_errors")));
+      setRxErrors(reader.readLong(statistics[6]));
+      setTxErrors(reader.readLong(statistics[7]));
 
-      interfaceInfo.setTxCarrier(SIGUtility.readFileLong(Paths.get(path, "statistics", "tx_carrier_errors")));
+      setTxCarrier(reader.readLong(statistics[8]));
 
-      interfaceInfo.setCollisions(SIGUtility.readFileLong(Paths.get(path, "statistics", "collisions")));
-      interfaceInfo.setMulticast(SIGUtility.readFileLong(Paths.get(path, "statistics", "multicast")));
+      setCollisions(reader.readLong(statistics[9]));
+      setMulticast(reader.readLong(statistics[10]));
     } catch (IOException | NumberFormatException iOException) {
       Logger.getLogger(NetworkInterfaceInfo.class.getName()).log(Level.WARNING, "Error reading statistics for interface {0}", name);
     }
+  }
+
+  /**
+   * Read the IPv6 statistics of this interface from the
+   * {@code /proc/net/dev_snmp6/{name}} file.
+   */
+  void readIp6Statistics() {
     /**
      * Build and populate a Stats container for the indicated IP address. This
      * method reads and parses the {@code /proc/net/dev_snmp} kernel run time
@@ -234,23 +519,79 @@ public class NetworkInterfaceInfo {
      * Ethernet) interface and NOT against the IP address. ONLY IPv6 statistics
      * are reported at the IP layer.
      */
+    ProcFileReader reader = ProcFileReader.get();
+    Path[] statistics = STATISTICS_PATHS.computeIfAbsent(name, NetworkInterfaceInfo::buildStatisticsPaths);
     try {
-      Map<String, Long> x = new HashMap<>();
-      for (String line : Files.readAllLines(Paths.get("/proc/net/dev_snmp6/", name))) {
-        String[] tokens = line.split("\\s+");
-        x.put(tokens[0], Long.valueOf(tokens[1]));
-      }
-      interfaceInfo.setIp6InOctets(x.get("Ip6InOctets"));
-      interfaceInfo.setIp6OutOctets(x.get("Ip6OutOctets"));
-      interfaceInfo.setIp6InMcastOctets(x.get("Ip6InMcastOctets"));
-      interfaceInfo.setIp6OutMcastOctets(x.get("Ip6OutMcastOctets"));
-      interfaceInfo.setIp6InMcastPkts(x.get("Ip6InMcastPkts"));
-      interfaceInfo.setIp6OutMcastPkts(x.get("Ip6OutMcastPkts"));
+      reader.read(statistics[STATISTICS.length]);
+      do {
+        if (reader.nextTokenEquals("Ip6InOctets")) {
+          setIp6InOctets(reader.nextLong());
+        } else if (reader.nextTokenEquals("Ip6OutOctets")) {
+          setIp6OutOctets(reader.nextLong());
+        } else if (reader.nextTokenEquals("Ip6InMcastOctets")) {
+          setIp6InMcastOctets(reader.nextLong());
+        } else if (reader.nextTokenEquals("Ip6OutMcastOctets")) {
+          setIp6OutMcastOctets(reader.nextLong());
+        } else if (reader.nextTokenEquals("Ip6InMcastPkts")) {
+          setIp6InMcastPkts(reader.nextLong());
+        } else if (reader.nextTokenEquals("Ip6OutMcastPkts")) {
+          setIp6OutMcastPkts(reader.nextLong());
+        }
+      } while (reader.nextLine());
     } catch (IOException | NumberFormatException iOException) {
     }
+  }
 
-    return interfaceInfo;
+  /**
+   * Build the array of statistics file paths for an interface.
+   *
+   * @param name the interface name
+   * @return the statistics file paths
+   */
+  private static Path[] buildStatisticsPaths(String name) {
+    Path[] paths = new Path[STATISTICS.length + 1];
+    for (int i = 0; i < STATISTICS.length; i++) {
+      paths[i] = Paths.get("/sys/class/net", name, "statistics", STATISTICS[i]);
+    }
+    paths[STATISTICS.length] = Paths.get("/proc/net/dev_snmp6", name);
+    return paths;
   }
+
+  /**
+   * Create a copy of this interface descriptor.
+   *
+   * @return a new NetworkInterfaceInfo instance with the same values
+   */
+  public NetworkInterfaceInfo copy() {
+    NetworkInterfaceInfo copy = new NetworkInterfaceInfo();
+    copy.name = name;
+    copy.macAddress = macAddress;
+    copy.speed = speed;
+    copy.linkState = linkState;
+    copy.duplex = duplex;
+    copy.type = type;
+    copy.rxBytes = rxBytes;
+    copy.rxPackets = rxPackets;
+    copy.rxDropped = rxDropped;
+    copy.rxErrors = rxErrors;
+    copy.txBytes = txBytes;
+    copy.txPackets = txPackets;
+    copy.txDropped = txDropped;
+    copy.txErrors = txErrors;
+    copy.txCarrier = txCarrier;
+    copy.collisions = collisions;
+    copy.multicast = multicast;
+    copy.ip6InOctets = ip6InOctets;
+    copy.ip6OutOctets = ip6OutOctets;
+    copy.ip6InMcastOctets = ip6InMcastOctets;
+    copy.ip6OutMcastOctets = ip6OutMcastOctets;
+    copy.ip6InMcastPkts = ip6InMcastPkts;
+    copy.ip6OutMcastPkts = ip6OutMcastPkts;
+    copy.rxRate = rxRate;
+    copy.txRate = txRate;
+    return copy;
+  }
+
   //<editor-fold defaultstate="collapsed" desc="Getter and Setter">
 
   public String getName() {
@@ -293,6 +634,14 @@ public class NetworkInterfaceInfo {
     this.duplex = duplex;
   }
 
+  public EInterfaceType getType() {
+    return type;
+  }
+
+  public void setType(EInterfaceType type) {
+    this.type = type;
+  }
+
   public Long getRxBytes() {
     return rxBytes;
   }
@@ -427,6 +776,22 @@ public class NetworkInterfaceInfo {
 
   public void setIp6OutMcastPkts(Long ip6OutMcastPkts) {
     this.ip6OutMcastPkts = ip6OutMcastPkts;
+  }
+
+  public Double getRxRate() {
+    return rxRate;
+  }
+
+  public void setRxRate(Double rxRate) {
+    this.rxRate = rxRate;
+  }
+
+  public Double getTxRate() {
+    return txRate;
+  }
+
+  public void setTxRate(Double txRate) {
+    this.txRate = txRate;
   }//</editor-fold>
 
   @Override
@@ -456,6 +821,41 @@ public class NetworkInterfaceInfo {
     return name + (macAddress != null ? " HWaddr " + macAddress : "");
   }
 
+  /**
+   * The slowly changing sysfs attributes of an interface.
+   */
+  private static final class Attributes {
+
+    private final String name;
+    private final EInterfaceType type;
+    private final String macAddress;
+    private final ELinkState linkState;
+    private Integer speed;
+    private EDuplex duplex;
+
+    /**
+     * Read the attributes from a {@code /sys/class/net/{name}} directory.
+     *
+     * @param name the interface name
+     * @param path the interface sysfs directory
+     * @throws IOException if the address or operstate file cannot be read
+     */
+    Attributes(String name, Path path) throws IOException {
+      this.name = name;
+      this.type = readType(path);
+      this.macAddress = SIGUtility.readFileString(path.resolve("address"));
+      this.linkState = ELinkState.valueOf(SIGUtility.readFileString(path.resolve("operstate")));
+      /**
+       * The speed and duplex files fail to read for loopback type interfaces.
+       */
+      try {
+        this.speed = SIGUtility.readFileInteger(path.resolve("speed"));
+        this.duplex = EDuplex.valueOf(SIGUtility.readFileString(path.resolve("duplex")));
+      } catch (IOException | IllegalArgumentException exception) {
+      }
+    }
+  }
+
   /**
    * Recognized operating states. This is read from the
    * {@code /sys/class/net/{name}/operstate} file.
@@ -473,7 +873,17 @@ public class NetworkInterfaceInfo {
    * {@code /sys/class/net/{name}/duplex} file.
    */
   public static enum EDuplex {
-    auto, full, half;
+    auto, full, half, unknown;
+  }
+
+  /**
+   * Interface types. This is determined from the presence of the
+   * {@code /sys/class/net/{name}/bridge} directory (a bridge) or the
+   * {@code /sys/class/net/{name}/device} link (a physical device). All other
+   * interfaces (e.g. loopback, veth, macvlan, tun) are virtual.
+   */
+  public static enum EInterfaceType {
+    PHYSICAL, VIRTUAL, BRIDGE;
   }
 
 }
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw.net;
+
+import ch.keybridge.lib.sig.hw.net.NetworkInterfaceInfo.EInterfaceType;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * A network interface query. Selects interfaces by name (glob or regular
+ * expression) and type, and reads only the requested attribute groups.
+ * <p>
+ * On container hosts {@code /proc/net/dev} may list hundreds of veth and
+ * similar interfaces. The query reads {@code /proc/net/dev} once; entries that
+ * do not match a name filter are skipped without parsing their counters, and
+ * sysfs is only read for the matching interfaces and requested attribute
+ * groups. Example:
+ * <pre>
+ * List&lt;NetworkInterfaceInfo&gt; uplinks = NetworkInterfaceInfo.query()
+ *   .withName("eth*")
+ *   .withType(EInterfaceType.PHYSICAL)
+ *   .withAttributes(EAttributeGroup.COUNTERS, EAttributeGroup.LINK)
+ *   .list();
+ * </pre>
+ * Name filters are combined with OR: an interface is selected if it matches any
+ * glob or pattern. If no attribute group is requested only the
+ * {@link EAttributeGroup#COUNTERS} are read.
+ * <p>
+ * Instances are not thread safe but may be re-used for repeated polls.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class NetworkInterfaceQuery {
+
+  /**
+   * The network device status file.
+   */
+  private final Path procNetDev;
+  /**
+   * The sysfs network class directory.
+   */
+  private final Path sysClassNet;
+  /**
+   * The interface name patterns. Empty selects all names.
+   */
+  private final List<Pattern> names = new ArrayList<>();
+  /**
+   * The interface types. Empty selects all types.
+   */
+  private final Set<EInterfaceType> types = EnumSet.noneOf(EInterfaceType.class);
+  /**
+   * The attribute groups to read.
+   */
+  private final Set<EAttributeGroup> attributes = EnumSet.noneOf(EAttributeGroup.class);
+
+  /**
+   * Construct a new query reading the system {@code /proc/net/dev} file.
+   */
+  public NetworkInterfaceQuery() {
+    this(Paths.get("/proc/net/dev"), Paths.get("/sys/class/net"));
+  }
+
+  /**
+   * Construct a new query reading the indicated files.
+   *
+   * @param procNetDev  the network device status file
+   * @param sysClassNet the sysfs network class directory
+   */
+  public NetworkInterfaceQuery(Path procNetDev, Path sysClassNet) {
+    this.procNetDev = procNetDev;
+    this.sysClassNet = sysClassNet;
+  }
+
+  /**
+   * Select interfaces whose name matches a glob. The glob supports the
+   * {@code *} (any characters), {@code ?} (one character), {@code [...]}
+   * (character class) and {@code [!...]} (negated character class) wildcards.
+   * e.g. "eth*", "veth?????", "en[ops]*".
+   *
+   * @param glob the name glob
+   * @return this query
+   * @throws IllegalArgumentException if the glob has an unterminated character
+   *                                  class. e.g. "eth["
+   */
+  public NetworkInterfaceQuery withName(String glob) {
+    names.add(Pattern.compile(toRegex(glob)));
+    return this;
+  }
+
+  /**
+   * Select interfaces whose (entire) name matches a regular expression.
+   *
+   * @param regex the name regular expression
+   * @return this query
+   */
+  public NetworkInterfaceQuery withPattern(String regex) {
+    names.add(Pattern.compile(regex));
+    return this;
+  }
+
+  /**
+   * Select interfaces of the indicated types.
+   *
+   * @param type the interface types
+   * @return this query
+   */
+  public NetworkInterfaceQuery withType(EInterfaceType... type) {
+    types.addAll(Arrays.asList(type));
+    return this;
+  }
+
+  /**
+   * Read the indicated attribute groups.
+   *
+   * @param group the attribute groups
+   * @return this query
+   */
+  public NetworkInterfaceQuery withAttributes(EAttributeGroup... group) {
+    attributes.addAll(Arrays.asList(group));
+    return this;
+  }
+
+  /**
+   * Run the query.
+   *
+   * @return the selected interfaces, in {@code /proc/net/dev} order
+   * @throws IOException if the {@code /proc/net/dev} file cannot be read
+   */
+  public List<NetworkInterfaceInfo> list() throws IOException {
+    Set<EAttributeGroup> groups = attributes.isEmpty() ? EnumSet.of(EAttributeGroup.COUNTERS) : attributes;
+    boolean link = groups.contains(EAttributeGroup.LINK);
+    List<NetworkInterfaceInfo> selected = NetworkInterfaceInfo.readProcNetDev(procNetDev, this::matches, groups.contains(EAttributeGroup.COUNTERS));
+    Set<Integer> indexes = new HashSet<>();
+    for (Iterator<NetworkInterfaceInfo> iterator = selected.iterator(); iterator.hasNext();) {
+      NetworkInterfaceInfo interfaceInfo = iterator.next();
+      if (link && !interfaceInfo.readLink(sysClassNet, indexes)) {
+        iterator.remove();
+        continue;
+      }
+      if (link || !types.isEmpty()) {
+        /**
+         * With LINK the type is cached with the link attributes.
+         */
+        EInterfaceType type = link ? interfaceInfo.getType() : NetworkInterfaceInfo.readType(sysClassNet.resolve(interfaceInfo.getName()));
+        if (type == null || (!types.isEmpty() && !types.contains(type))) {
+          iterator.remove();
+          continue;
+        }
+        interfaceInfo.setType(type);
+      }
+      if (groups.contains(EAttributeGroup.STATISTICS)) {
+        interfaceInfo.readStatistics();
+      }
+      if (groups.contains(EAttributeGroup.IPV6)) {
+        interfaceInfo.readIp6Statistics();
+      }
+    }
+    /**
+     * Only an unfiltered query sees every interface and may prune the link
+     * attribute cache.
+     */
+    if (link && names.isEmpty() && types.isEmpty()) {
+      NetworkInterfaceInfo.retainLinks(indexes);
+    }
+    return selected;
+  }
+
+  /**
+   * Determine if an interface name is selected by the name filters.
+   *
+   * @param name the interface name
+   * @return TRUE if selected
+   */
+  private boolean matches(String name) {
+    if (names.isEmpty()) {
+      return true;
+    }
+    for (Pattern pattern : names) {
+      if (pattern.matcher(name).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Convert a glob to a regular expression.
+   *
+   * @param glob the glob
+   * @return the regular expression
+   * @throws IllegalArgumentException if the glob has an unterminated character
+   *                                  class
+   */
+  static String toRegex(String glob) {
+    StringBuilder regex = new StringBuilder();
+    boolean inClass = false;
+    for (char c : glob.toCharArray()) {
+      if (inClass) {
+        if (c == '!' && regex.charAt(regex.length() - 1) == '[') {
+          c = '^';
+        } else if (c == ']') {
+          inClass = false;
+        } else if (c == '\\') {
+          regex.append('\\');
+        }
+        regex.append(c);
+      } else if (c == '*') {
+        regex.append(".*");
+      } else if (c == '?') {
+        regex.append('.');
+      } else if (c == '[') {
+        inClass = true;
+        regex.append(c);
+      } else if (Character.isLetterOrDigit(c)) {
+        regex.append(c);
+      } else {
+        regex.append('\\').append(c);
+      }
+    }
+    if (inClass) {
+      throw new IllegalArgumentException("Unterminated character class in glob: " + glob);
+    }
+    return regex.toString();
+  }
+
+  /**
+   * Interface attribute groups.
+   */
+  public static enum EAttributeGroup {
+    /**
+     * The rx/tx counters, read from {@code /proc/net/dev}.
+     */
+    COUNTERS,
+    /**
+     * The interface type, MAC address, link state, speed and duplex. Only the
+     * {@code ifindex} and {@code operstate} files are read on each query; the
+     * other attributes are cached by ifindex.
+     */
+    LINK,
+    /**
+     * The rx/tx counters, read from the
+     * {@code /sys/class/net/{name}/statistics} files (one file per counter).
+     */
+    STATISTICS,
+    /**
+     * The IPv6 statistics, read from {@code /proc/net/dev_snmp6/{name}}.
+     */
+    IPV6;
+  }
+
+}
@@ -0,0 +1,472 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw.net;
+
+import ch.keybridge.lib.sig.utility.ProcFileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * A delta-based network interface rate sampler built on the
+ * {@code /proc/net/dev} cumulative counters.
+ * <p>
+ * On each call to {@link #sample()} the counters of every interface are read
+ * in a single pass and compared with the previous counter vector, which is
+ * kept per interface in a primitive {@code long[]}. The sampler reports
+ * per-second rates over the last interval and exponentially weighted moving
+ * averages (EWMA) of those rates over 1, 5 and 15 second windows.
+ * <p>
+ * Counter anomalies are handled as follows:
+ * <ul>
+ * <li>A counter that goes backwards from a value below 2^32 is treated as a
+ * 32-bit counter wrap (some drivers still report 32-bit counters).</li>
+ * <li>A counter that goes backwards from a larger value is a counter reset;
+ * the interface baseline is reset and no rate is reported for the
+ * interval.</li>
+ * <li>If any counter goes backwards the interface index is re-read from
+ * {@code /sys/class/net/[name]/ifindex}. A changed index means the interface
+ * was deleted and re-created; the baseline is reset.</li>
+ * <li>An interface that disappears is dropped; if it re-appears it is treated
+ * as new.</li>
+ * </ul>
+ * The first sample of an interface only establishes its baseline; rates are
+ * NaN until the second sample.
+ * <p>
+ * Instances are thread safe.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class NetworkRateSampler {
+
+  /**
+   * Counter index: bytes received.
+   */
+  public static final int RX_BYTES = 0;
+  /**
+   * Counter index: packets received.
+   */
+  public static final int RX_PACKETS = 1;
+  /**
+   * Counter index: receive errors.
+   */
+  public static final int RX_ERRORS = 2;
+  /**
+   * Counter index: receive packets dropped.
+   */
+  public static final int RX_DROPPED = 3;
+  /**
+   * Counter index: bytes transmitted.
+   */
+  public static final int TX_BYTES = 4;
+  /**
+   * Counter index: packets transmitted.
+   */
+  public static final int TX_PACKETS = 5;
+  /**
+   * Counter index: transmit errors.
+   */
+  public static final int TX_ERRORS = 6;
+  /**
+   * Counter index: transmit packets dropped.
+   */
+  public static final int TX_DROPPED = 7;
+  /**
+   * The number of counters per interface.
+   */
+  public static final int FIELDS = 8;
+  /**
+   * The {@code /proc/net/dev} column of each counter index.
+   */
+  private static final int[] COLUMNS = {0, 1, 2, 3, 8, 9, 10, 11};
+  /**
+   * The number of {@code /proc/net/dev} counter columns.
+   */
+  private static final int DEV_COLUMNS = 16;
+  private static final long WRAP_32 = 1L << 32;
+  private static final EWindow[] WINDOWS = EWindow.values();
+
+  /**
+   * The network device status file.
+   */
+  private final Path procNetDev;
+  /**
+   * The sysfs network class directory; used to read interface indexes.
+   */
+  private final Path sysClassNet;
+
+  /**
+   * The row index of each interface.
+   */
+  private final Map<String, Integer> rows = new HashMap<>();
+  /**
+   * The interface name of each row; null for a free row.
+   */
+  private String[] names = new String[8];
+  /**
+   * The interface index of each row; -1 if unknown.
+   */
+  private int[] ifindex = new int[8];
+  /**
+   * TRUE if the row was present in the last sample.
+   */
+  private boolean[] present = new boolean[8];
+  /**
+   * The previous counter vectors (row * FIELDS).
+   */
+  private long[] previous = new long[8 * FIELDS];
+  /**
+   * Scratch space for the current counter vector of one interface.
+   */
+  private final long[] current = new long[FIELDS];
+  /**
+   * The per-second rates over the last interval (row * FIELDS).
+   */
+  private double[] rates = new double[8 * FIELDS];
+  /**
+   * The EWMA rates ((row * FIELDS + field) * windows + window).
+   */
+  private double[] averages = new double[8 * FIELDS * WINDOWS.length];
+  /**
+   * The time of the previous sample of each row (nanoseconds).
+   */
+  private long[] timestamp = new long[8];
+
+  /**
+   * Construct a new sampler reading the system {@code /proc/net/dev} file.
+   */
+  public NetworkRateSampler() {
+    this(Paths.get("/proc/net/dev"), Paths.get("/sys/class/net"));
+  }
+
+  /**
+   * Construct a new sampler reading the indicated files.
+   *
+   * @param procNetDev  the network device status file
+   * @param sysClassNet the sysfs network class directory
+   */
+  public NetworkRateSampler(Path procNetDev, Path sysClassNet) {
+    this.procNetDev = procNetDev;
+    this.sysClassNet = sysClassNet;
+  }
+
+  /**
+   * Read the current counters and compute the rates since the previous sample.
+   *
+   * @throws IOException if the {@code /proc/net/dev} file cannot be read
+   */
+  public void sample() throws IOException {
+    sample(System.nanoTime());
+  }
+
+  /**
+   * Read the current counters and compute the rates since the previous sample.
+   *
+   * @param now the sample time (nanoseconds)
+   * @throws IOException if the {@code /proc/net/dev} file cannot be read
+   */
+  synchronized void sample(long now) throws IOException {
+    Arrays.fill(present, false);
+    ProcFileReader reader = ProcFileReader.get().read(procNetDev);
+    /**
+     * Skip the two header lines.
+     */
+    reader.nextLine();
+    while (reader.nextLine()) {
+      String name = nextName(reader);
+      if (name == null) {
+        continue;
+      }
+      int column = 0;
+      try {
+        for (; column < DEV_COLUMNS; column++) {
+          long value = reader.nextLong();
+          int field = field(column);
+          if (field >= 0) {
+            current[field] = value;
+          }
+        }
+      } catch (NumberFormatException exception) {
+        continue;
+      }
+      update(name, now);
+    }
+    retainPresent();
+  }
+
+  /**
+   * Compute the rates since the previous sample from counters that have
+   * already been read (e.g. by an unfiltered {@link NetworkInterfaceQuery}
+   * with {@link NetworkInterfaceQuery.EAttributeGroup#COUNTERS}), without
+   * reading {@code /proc/net/dev} again. Interfaces without a complete set of
+   * counters are ignored; interfaces not in the collection are dropped.
+   *
+   * @param interfaces the interfaces and their current counters
+   * @param now        the sample time (nanoseconds)
+   */
+  synchronized void sample(Collection<NetworkInterfaceInfo> interfaces, long now) {
+    Arrays.fill(present, false);
+    for (NetworkInterfaceInfo interfaceInfo : interfaces) {
+      if (interfaceInfo.getRxBytes() == null || interfaceInfo.getRxPackets() == null
+          || interfaceInfo.getRxErrors() == null || interfaceInfo.getRxDropped() == null
+          || interfaceInfo.getTxBytes() == null || interfaceInfo.getTxPackets() == null
+          || interfaceInfo.getTxErrors() == null || interfaceInfo.getTxDropped() == null) {
+        continue;
+      }
+      current[RX_BYTES] = interfaceInfo.getRxBytes();
+      current[RX_PACKETS] = interfaceInfo.getRxPackets();
+      current[RX_ERRORS] = interfaceInfo.getRxErrors();
+      current[RX_DROPPED] = interfaceInfo.getRxDropped();
+      current[TX_BYTES] = interfaceInfo.getTxBytes();
+      current[TX_PACKETS] = interfaceInfo.getTxPackets();
+      current[TX_ERRORS] = interfaceInfo.getTxErrors();
+      current[TX_DROPPED] = interfaceInfo.getTxDropped();
+      update(interfaceInfo.getName(), now);
+    }
+    retainPresent();
+  }
+
+  /**
+   * Drop interfaces that have disappeared: those not present in the last
+   * sample.
+   */
+  private void retainPresent() {
+    for (int row = 0; row < names.length; row++) {
+      if (names[row] != null && !present[row]) {
+        rows.remove(names[row]);
+        names[row] = null;
+      }
+    }
+  }
+
+  /**
+   * Update the rates of one interface from the current counter vector.
+   *
+   * @param name the interface name
+   * @param now  the sample time (nanoseconds)
+   */
+  private void update(String name, long now) {
+    Integer existing = rows.get(name);
+    int row = existing == null ? allocate(name) : existing;
+    present[row] = true;
+    int offset = row * FIELDS;
+    if (existing == null) {
+      baseline(row, now);
+      return;
+    }
+    /**
+     * Check for counters going backwards: a 32-bit wrap, a counter reset or a
+     * re-created interface.
+     */
+    boolean backwards = false;
+    for (int i = 0; i < FIELDS; i++) {
+      if (current[i] < previous[offset + i]) {
+        backwards = true;
+        break;
+      }
+    }
+    if (backwards) {
+      int index = readIfindex(name);
+      if (index != ifindex[row]) {
+        ifindex[row] = index;
+        baseline(row, now);
+        return;
+      }
+    }
+    double seconds = (now - timestamp[row]) / 1e9;
+    if (seconds <= 0) {
+      return;
+    }
+    for (int i = 0; i < FIELDS; i++) {
+      long delta = current[i] - previous[offset + i];
+      if (delta < 0) {
+        if (previous[offset + i] < WRAP_32 && current[i] < WRAP_32) {
+          delta += WRAP_32;
+        } else {
+          baseline(row, now);
+          return;
+        }
+      }
+      rates[offset + i] = delta / seconds;
+    }
+    for (int i = 0; i < FIELDS; i++) {
+      double rate = rates[offset + i];
+      int average = (offset + i) * WINDOWS.length;
+      for (int w = 0; w < WINDOWS.length; w++) {
+        if (Double.isNaN(averages[average + w])) {
+          averages[average + w] = rate;
+        } else {
+          double alpha = 1 - Math.exp(-seconds / WINDOWS[w].getSeconds());
+          averages[average + w] += alpha * (rate - averages[average + w]);
+        }
+      }
+    }
+    System.arraycopy(current, 0, previous, offset, FIELDS);
+    timestamp[row] = now;
+  }
+
+  /**
+   * Reset the baseline of a row to the current counter vector. Rates and
+   * averages are NaN until the next sample.
+   *
+   * @param row the row
+   * @param now the sample time (nanoseconds)
+   */
+  private void baseline(int row, long now) {
+    int offset = row * FIELDS;
+    System.arraycopy(current, 0, previous, offset, FIELDS);
+    Arrays.fill(rates, offset, offset + FIELDS, Double.NaN);
+    Arrays.fill(averages, offset * WINDOWS.length, (offset + FIELDS) * WINDOWS.length, Double.NaN);
+    timestamp[row] = now;
+  }
+
+  /**
+   * Allocate a row for a new interface.
+   *
+   * @param name the interface name
+   * @return the row
+   */
+  private int allocate(String name) {
+    int row = 0;
+    while (row < names.length && names[row] != null) {
+      row++;
+    }
+    if (row == names.length) {
+      int capacity = names.length * 2;
+      names = Arrays.copyOf(names, capacity);
+      ifindex = Arrays.copyOf(ifindex, capacity);
+      present = Arrays.copyOf(present, capacity);
+      previous = Arrays.copyOf(previous, capacity * FIELDS);
+      rates = Arrays.copyOf(rates, capacity * FIELDS);
+      averages = Arrays.copyOf(averages, capacity * FIELDS * WINDOWS.length);
+      timestamp = Arrays.copyOf(timestamp, capacity);
+    }
+    names[row] = name;
+    ifindex[row] = readIfindex(name);
+    rows.put(name, row);
+    return row;
+  }
+
+  /**
+   * Read the interface index from sysfs. This is called while the thread's
+   * ProcFileReader holds the {@code /proc/net/dev} contents, so the file is
+   * read directly.
+   *
+   * @param name the interface name
+   * @return the interface index; -1 if not available
+   */
+  private int readIfindex(String name) {
+    try {
+      return Integer.parseInt(new String(Files.readAllBytes(sysClassNet.resolve(name).resolve("ifindex")), StandardCharsets.US_ASCII).trim());
+    } catch (IOException | NumberFormatException exception) {
+      return -1;
+    }
+  }
+
+  /**
+   * Get the interface names present in the last sample.
+   *
+   * @return a sorted set of interface names
+   */
+  public synchronized SortedSet<String> getInterfaceNames() {
+    return new TreeSet<>(rows.keySet());
+  }
+
+  /**
+   * Get the per-second rate of a counter over the last interval.
+   *
+   * @param name  the interface name
+   * @param field the counter index. e.g. {@link #RX_BYTES}
+   * @return the rate (per second); NaN if the interface is unknown or has no
+   *         baseline
+   */
+  public synchronized double getRate(String name, int field) {
+    Integer row = rows.get(name);
+    return row == null ? Double.NaN : rates[row * FIELDS + field];
+  }
+
+  /**
+   * Get the exponentially weighted moving average of a counter rate.
+   *
+   * @param name   the interface name
+   * @param field  the counter index. e.g. {@link #RX_BYTES}
+   * @param window the averaging window
+   * @return the average rate (per second); NaN if the interface is unknown or
+   *         has no baseline
+   */
+  public synchronized double getAverage(String name, int field, EWindow window) {
+    Integer row = rows.get(name);
+    return row == null ? Double.NaN : averages[(row * FIELDS + field) * WINDOWS.length + window.ordinal()];
+  }
+
+  /**
+   * Map a {@code /proc/net/dev} column to a counter index.
+   *
+   * @param column the column
+   * @return the counter index; -1 if the column is not sampled
+   */
+  private static int field(int column) {
+    for (int i = 0; i < COLUMNS.length; i++) {
+      if (COLUMNS[i] == column) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Read the interface name at the beginning of a {@code /proc/net/dev} line
+   * and advance the reader cursor past the ':' separator. (The separator may be
+   * followed directly by the first counter.)
+   *
+   * @param reader the reader, positioned at the beginning of a line
+   * @return the name; null if the line is not an interface entry
+   */
+  static String nextName(ProcFileReader reader) {
+    reader.skipSpaces();
+    int start = reader.position();
+    if (!reader.skipPast(':')) {
+      return null;
+    }
+    byte[] bytes = new byte[reader.position() - 1 - start];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = reader.byteAt(start + i);
+    }
+    return new String(bytes, StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * EWMA averaging windows.
+   */
+  public static enum EWindow {
+    ONE_SECOND(1), FIVE_SECONDS(5), FIFTEEN_SECONDS(15);
+
+    private final int seconds;
+
+    private EWindow(int seconds) {
+      this.seconds = seconds;
+    }
+
+    public int getSeconds() {
+      return seconds;
+    }
+  }
+
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw.net;
+
+import ch.keybridge.lib.sig.utility.ProcFileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Host-wide network protocol statistics. Contains the IP, ICMP, TCP and UDP
+ * counters of the {@code /proc/net/snmp}, {@code /proc/net/snmp6} and
+ * {@code /proc/net/netstat} kernel run time files (e.g. TCP retransmits,
+ * listen queue overflows, UDP receive buffer errors and SYN cookies).
+ * <p>
+ * Counters are keyed by {@code [group].[name]}, e.g. "Tcp.RetransSegs",
+ * "TcpExt.ListenOverflows", "Udp.RcvbufErrors" or "Udp6.InDatagrams", and are
+ * held in a primitive {@code long[]} table. The key layout is built from the
+ * file header lines on the first read and shared by later instances; a
+ * steady-state read verifies the cached header lines in place and parses the
+ * values straight from the read buffer without creating any String.
+ * <p>
+ * Counters are cumulative since boot. Use {@link #delta(ProtocolStatsInfo)} to
+ * calculate the change over an interval and {@link #getRate(String)} for
+ * per-second rates. Example:
+ * <pre>
+ * ProtocolStatsInfo before = ProtocolStatsInfo.getInstance();
+ * ...
+ * ProtocolStatsInfo delta = ProtocolStatsInfo.getInstance().delta(before);
+ * double overflows = delta.getRate(ProtocolStatsInfo.TCP_LISTEN_OVERFLOWS);
+ * </pre>
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class ProtocolStatsInfo {
+
+  /**
+   * Segments retransmitted.
+   */
+  public static final String TCP_RETRANS_SEGS = "Tcp.RetransSegs";
+  /**
+   * Segments sent.
+   */
+  public static final String TCP_OUT_SEGS = "Tcp.OutSegs";
+  /**
+   * Connections currently ESTABLISHED or CLOSE_WAIT (a gauge).
+   */
+  public static final String TCP_CURR_ESTAB = "Tcp.CurrEstab";
+  /**
+   * Connections dropped because the listen (accept) queue was full.
+   */
+  public static final String TCP_LISTEN_OVERFLOWS = "TcpExt.ListenOverflows";
+  /**
+   * SYNs dropped on a listening socket, for any reason.
+   */
+  public static final String TCP_LISTEN_DROPS = "TcpExt.ListenDrops";
+  /**
+   * SYN cookies sent (the SYN queue was full).
+   */
+  public static final String TCP_SYNCOOKIES_SENT = "TcpExt.SyncookiesSent";
+  /**
+   * UDP datagrams dropped because the socket receive buffer was full.
+   */
+  public static final String UDP_RCVBUF_ERRORS = "Udp.RcvbufErrors";
+  /**
+   * UDP datagrams received with errors.
+   */
+  public static final String UDP_IN_ERRORS = "Udp.InErrors";
+
+  /**
+   * Values that are configuration or current state rather than cumulative
+   * counters. A delta reports their current value.
+   */
+  private static final Set<String> GAUGES = new HashSet<>(Arrays.asList("Ip.Forwarding", "Ip.DefaultTTL",
+                                                                        "Tcp.RtoAlgorithm", "Tcp.RtoMin", "Tcp.RtoMax",
+                                                                        "Tcp.MaxConn", TCP_CURR_ESTAB));
+
+  private static final Path SNMP = Paths.get("/proc/net/snmp");
+  private static final Path SNMP6 = Paths.get("/proc/net/snmp6");
+  private static final Path NETSTAT = Paths.get("/proc/net/netstat");
+
+  /**
+   * The key layout of the system files.
+   */
+  private static volatile Layout systemLayout;
+
+  /**
+   * The key layout.
+   */
+  private final Layout layout;
+  /**
+   * The counter values, indexed as the layout keys.
+   */
+  private final long[] values;
+  /**
+   * The read time (nanoseconds).
+   */
+  private final long timestamp;
+  /**
+   * The delta interval (nanoseconds). Zero for cumulative values.
+   */
+  private final long interval;
+
+  private ProtocolStatsInfo(Layout layout, long[] values, long timestamp, long interval) {
+    this.layout = layout;
+    this.values = values;
+    this.timestamp = timestamp;
+    this.interval = interval;
+  }
+
+  /**
+   * Read the current host-wide protocol statistics.
+   *
+   * @return the protocol statistics
+   * @throws IOException if the {@code /proc/net/snmp} file cannot be read
+   */
+  public static ProtocolStatsInfo getInstance() throws IOException {
+    ProtocolStatsInfo info = read(new Path[]{SNMP, SNMP6, NETSTAT}, systemLayout);
+    systemLayout = info.layout;
+    return info;
+  }
+
+  /**
+   * Read protocol statistics files.
+   *
+   * @param files  the statistics files, in {@code /proc/net/snmp} (paired
+   *               header and value lines) or {@code /proc/net/snmp6} (one name
+   *               and value per line) format
+   * @param layout the key layout of a previous read of the same files; null if
+   *               not known
+   * @return the protocol statistics
+   * @throws IOException if the first file cannot be read
+   */
+  static ProtocolStatsInfo read(Path[] files, Layout layout) throws IOException {
+    long timestamp = System.nanoTime();
+    if (layout != null) {
+      long[] values = new long[layout.keys.length];
+      if (layout.parse(files, values)) {
+        return new ProtocolStatsInfo(layout, values, timestamp, 0);
+      }
+    }
+    /**
+     * First read or changed file layout.
+     */
+    Layout built = Layout.build(files);
+    long[] values = new long[built.keys.length];
+    if (!built.parse(files, values)) {
+      throw new IOException("Protocol statistics changed while reading");
+    }
+    return new ProtocolStatsInfo(built, values, timestamp, 0);
+  }
+
+  /**
+   * Calculate the change in the counters since a previous reading. Counters
+   * that have gone backwards (reset) report their current value; gauges (e.g.
+   * {@link #TCP_CURR_ESTAB}) report their current value.
+   *
+   * @param previous the previous reading
+   * @return the counter deltas over the interval between the two readings
+   */
+  public ProtocolStatsInfo delta(ProtocolStatsInfo previous) {
+    long[] delta = new long[values.length];
+    for (int i = 0; i < values.length; i++) {
+      int other = previous.layout == layout ? i : previous.indexOf(layout.keys[i]);
+      if (layout.gauge[i] || other < 0 || values[i] < previous.values[other]) {
+        delta[i] = values[i];
+      } else {
+        delta[i] = values[i] - previous.values[other];
+      }
+    }
+    return new ProtocolStatsInfo(layout, delta, timestamp, timestamp - previous.timestamp);
+  }
+
+  /**
+   * Get the index of a counter in the value table. Indexes are stable across
+   * readings of the same files and may be used with {@link #getValue(int)} to
+   * poll a counter without a key lookup.
+   *
+   * @param key the counter key. e.g. "Tcp.RetransSegs"
+   * @return the index; -1 if not available
+   */
+  public int indexOf(String key) {
+    Integer index = layout.index.get(key);
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * Get a counter value by index.
+   *
+   * @param index the index
+   * @return the value
+   */
+  public long getValue(int index) {
+    return values[index];
+  }
+
+  /**
+   * Get a counter value.
+   *
+   * @param key the counter key. e.g. "Tcp.RetransSegs"
+   * @return the value; null if not available on this system
+   */
+  public Long getValue(String key) {
+    int index = indexOf(key);
+    return index < 0 ? null : values[index];
+  }
+
+  /**
+   * Get the per-second rate of a counter. Only available on a delta.
+   *
+   * @param key the counter key. e.g. "TcpExt.ListenOverflows"
+   * @return the rate (per second); NaN if the counter is not available or this
+   *         is not a delta
+   */
+  public double getRate(String key) {
+    int index = indexOf(key);
+    return index < 0 || interval <= 0 ? Double.NaN : values[index] / (interval / 1e9);
+  }
+
+  /**
+   * Get the TCP retransmit ratio: segments retransmitted per segment sent. On
+   * a delta this is the ratio over the interval.
+   *
+   * @return the retransmit ratio (percent); NaN if no segments were sent
+   */
+  public double getRetransmitPercent() {
+    Long retrans = getValue(TCP_RETRANS_SEGS);
+    Long out = getValue(TCP_OUT_SEGS);
+    return retrans == null || out == null || out == 0 ? Double.NaN : 100.0 * retrans / out;
+  }
+
+  /**
+   * Get the key layout, for re-use by a later read of the same files.
+   *
+   * @return the key layout
+   */
+  Layout layout() {
+    return layout;
+  }
+
+  /**
+   * Get the delta interval.
+   *
+   * @return the interval (nanoseconds); zero for cumulative values
+   */
+  public long getInterval() {
+    return interval;
+  }
+
+  /**
+   * Get all counter values.
+   *
+   * @return a sorted map of {@code [key, value]}
+   */
+  public SortedMap<String, Long> toMap() {
+    SortedMap<String, Long> map = new TreeMap<>();
+    for (int i = 0; i < values.length; i++) {
+      map.put(layout.keys[i], values[i]);
+    }
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return "ProtocolStatsInfo retrans=" + getValue(TCP_RETRANS_SEGS)
+           + " listenOverflows=" + getValue(TCP_LISTEN_OVERFLOWS)
+           + " udpRcvbufErrors=" + getValue(UDP_RCVBUF_ERRORS);
+  }
+
+  /**
+   * The counter key layout of a set of statistics files. Each file is
+   * described by a list of signatures, each followed by a number of values:
+   * the complete header line of a paired file (the values are on the next
+   * line) or the counter name of a {@code snmp6} file line (one value on the
+   * same line). Instances are immutable.
+   */
+  static final class Layout {
+
+    private final String[] keys;
+    private final boolean[] gauge;
+    private final Map<String, Integer> index = new HashMap<>();
+    private final boolean[] paired;
+    private final String[][] signatures;
+    private final int[][] counts;
+
+    private Layout(List<String> keys, boolean[] paired, String[][] signatures, int[][] counts) {
+      this.keys = keys.toArray(new String[keys.size()]);
+      this.gauge = new boolean[this.keys.length];
+      for (int i = 0; i < this.keys.length; i++) {
+        index.put(this.keys[i], i);
+        gauge[i] = GAUGES.contains(this.keys[i]);
+      }
+      this.paired = paired;
+      this.signatures = signatures;
+      this.counts = counts;
+    }
+
+    /**
+     * Build the key layout from the file contents.
+     *
+     * @param files the statistics files
+     * @return the layout
+     * @throws IOException if the first file cannot be read
+     */
+    static Layout build(Path[] files) throws IOException {
+      List<String> keys = new ArrayList<>();
+      boolean[] paired = new boolean[files.length];
+      String[][] signatures = new String[files.length][];
+      int[][] counts = new int[files.length][];
+      for (int f = 0; f < files.length; f++) {
+        List<String> lines;
+        try {
+          lines = Files.readAllLines(files[f], StandardCharsets.US_ASCII);
+        } catch (IOException exception) {
+          if (f == 0) {
+            throw exception;
+          }
+          /**
+           * e.g. IPv6 is disabled.
+           */
+          signatures[f] = null;
+          continue;
+        }
+        List<String> signature = new ArrayList<>();
+        List<Integer> count = new ArrayList<>();
+        paired[f] = !lines.isEmpty() && lines.get(0).split("\\s+")[0].endsWith(":");
+        if (paired[f]) {
+          for (int i = 0; i + 1 < lines.size(); i += 2) {
+            String[] names = lines.get(i).trim().split("\\s+");
+            String group = names[0].substring(0, names[0].length() - 1);
+            for (int n = 1; n < names.length; n++) {
+              keys.add(group + "." + names[n]);
+            }
+            signature.add(lines.get(i));
+            count.add(names.length - 1);
+          }
+        } else {
+          for (String line : lines) {
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens.length != 2) {
+              continue;
+            }
+            int split = tokens[0].indexOf('6') + 1;
+            keys.add(tokens[0].substring(0, split) + "." + tokens[0].substring(split));
+            signature.add(tokens[0]);
+            count.add(1);
+          }
+        }
+        signatures[f] = signature.toArray(new String[signature.size()]);
+        counts[f] = new int[count.size()];
+        for (int i = 0; i < counts[f].length; i++) {
+          counts[f][i] = count.get(i);
+        }
+      }
+      return new Layout(keys, paired, signatures, counts);
+    }
+
+    /**
+     * Parse the file values into a value table, verifying the signatures in
+     * place.
+     *
+     * @param files  the statistics files
+     * @param values the value table
+     * @return TRUE if the files match this layout
+     * @throws IOException if the first file cannot be read
+     */
+    boolean parse(Path[] files, long[] values) throws IOException {
+      ProcFileReader reader = ProcFileReader.get();
+      int k = 0;
+      for (int f = 0; f < files.length; f++) {
+        try {
+          reader.read(files[f]);
+        } catch (IOException exception) {
+          if (f == 0) {
+            throw exception;
+          }
+          if (signatures[f] != null) {
+            return false;
+          }
+          continue;
+        }
+        if (signatures[f] == null) {
+          return false;
+        }
+        try {
+          for (int i = 0; i < signatures[f].length; i++) {
+            if (paired[f]) {
+              int end = reader.position() + signatures[f][i].length();
+              if (!reader.startsWith(signatures[f][i]) || reader.byteAt(end) != '\n') {
+                return false;
+              }
+              reader.nextLine();
+              reader.skipToken();
+            } else if (!reader.nextTokenEquals(signatures[f][i])) {
+              return false;
+            }
+            for (int n = 0; n < counts[f][i]; n++) {
+              values[k++] = reader.nextLong();
+            }
+            reader.nextLine();
+          }
+        } catch (NumberFormatException | IndexOutOfBoundsException exception) {
+          return false;
+        }
+        /**
+         * New lines have been added.
+         */
+        reader.skipSpaces();
+        if (reader.hasRemaining()) {
+          return false;
+        }
+      }
+      return k == values.length;
+    }
+  }
+
+}
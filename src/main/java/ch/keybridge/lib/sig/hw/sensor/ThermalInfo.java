@@ -15,6 +15,7 @@
  */
 package ch.keybridge.lib.sig.hw.sensor;
 
+import ch.keybridge.lib.sig.utility.ProcFileReader;
 import ch.keybridge.lib.sig.utility.SIGUtility;
 import java.io.File;
 import java.io.FilenameFilter;
@@ -172,16 +173,20 @@ public class ThermalInfo {
                          ? SIGUtility.readFileString(label)
                          : name);
 
-    thermalInfo.setCurrentTemperature(SIGUtility.readFileDouble(Paths.get(PATH_ROOT, hwmon, "device", name + "_input")) / 1000);
-    thermalInfo.setCriticalTemperature(SIGUtility.readFileDouble(Paths.get(PATH_ROOT, hwmon, "device", name + "_crit")) / 1000);
-    thermalInfo.setAlarmTemperature(SIGUtility.readFileDouble(Paths.get(PATH_ROOT, hwmon, "device", name + "_crit_alarm")) / 10000);
-    thermalInfo.setMaxTemperature(SIGUtility.readFileDouble(Paths.get(PATH_ROOT, hwmon, "device", name + "_max")));
+    /**
+     * Numeric sensor values are parsed directly from the read buffer.
+     */
+    ProcFileReader reader = ProcFileReader.get();
+    thermalInfo.setCurrentTemperature(reader.readDouble(Paths.get(PATH_ROOT, hwmon, "device", name + "_input")) / 1000);
+    thermalInfo.setCriticalTemperature(reader.readDouble(Paths.get(PATH_ROOT, hwmon, "device", name + "_crit")) / 1000);
+    thermalInfo.setAlarmTemperature(reader.readDouble(Paths.get(PATH_ROOT, hwmon, "device", name + "_crit_alarm")) / 10000);
+    thermalInfo.setMaxTemperature(reader.readDouble(Paths.get(PATH_ROOT, hwmon, "device", name + "_max")));
     /**
      * Core (CPU) sensors do not declare the type.
      */
     Path type = Paths.get(PATH_ROOT, hwmon, "device", name + "_type");
     thermalInfo.setType(type.toFile().exists()
-                        ? SIGUtility.readFileDouble(type)
+                        ? reader.readDouble(type)
                         : null);
 
     return thermalInfo;
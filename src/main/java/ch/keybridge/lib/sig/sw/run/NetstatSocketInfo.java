@@ -94,13 +94,13 @@ public class NetstatSocketInfo {
      * parse socket information from the nd {@code /proc/net/tcp} and
      * {@code /proc/net/tcp6} run time files.
      */
-    for (String entry : SIGUtility.execute("netstat", "-an4")) {// throws Exception
+    SIGUtility.execute(entry -> {
       try {
-        sockets.add(NetstatSocketInfo.parseNetstatEntry(entry));
+        sockets.add(NetstatSocketInfo.parseNetstatEntry(entry.toString()));
       } catch (UnknownHostException | NullPointerException | IllegalArgumentException unknownHostException) {
         // ignore parse errors.
       }
-    }
+    }, "netstat", "-an4");// throws Exception
     return sockets;
   }
 
@@ -16,12 +16,12 @@
 package ch.keybridge.lib.sig.sw.run;
 
 import ch.keybridge.lib.sig.utility.SIGUtility;
-import java.util.Calendar;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Objects;
 import java.util.TreeSet;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A process is an instance of a computer program that is being executed. It
@@ -50,7 +50,8 @@ public class ProcessInfo implements Comparable<ProcessInfo> {
   public String command;
   /**
    * The amount of time in milliseconds that the process has spent taking up CPU
-   * time since the process was started.
+   * time since the process was started. Clamped to {@code Integer.MAX_VALUE}
+   * (24.8 days); see {@link #getCpuTicks()} for the unclamped value.
    */
   public Integer cpuTime;
   /**
@@ -125,17 +126,95 @@ public class ProcessInfo implements Comparable<ProcessInfo> {
    * Cumulative CPU time, "[DD-]HH:MM:SS" format. (alias cputime).
    */
   private String time;
+  /**
+   * Resident set size: the non-swapped physical memory used by the process.
+   * (kByte). Only available when read from the {@code /proc} file system.
+   */
+  private Long rss;
+  /**
+   * Number of threads in this process. Only available when read from the
+   * {@code /proc} file system.
+   */
+  private Integer threads;
+  /**
+   * The time the process started after system boot, expressed in clock ticks.
+   * Together with the pid this uniquely identifies a process across pid reuse.
+   * Only available when read from the {@code /proc} file system.
+   */
+  private Long startTime;
+  /**
+   * The user plus system CPU time of the process, expressed in clock ticks.
+   * Unlike {@link #cpuTime} this is not clamped. Only available when read from
+   * the {@code /proc} file system.
+   */
+  private Long cpuTicks;
 
   /**
    * A Collection of currently running processes.
+   * <p>
+   * Processes are read directly from the {@code /proc/[pid]} kernel run time
+   * directories. If the {@code /proc} file system is not available (or cannot
+   * be read) this falls back to the {@code ps -elf} system command.
    *
    * @return a non-null collection instance
+   * @throws Exception if neither {@code /proc} nor {@code ps} can be read
    */
   public static Collection<ProcessInfo> getAllProcesses() throws Exception {
-    Collection<ProcessInfo> processes = new TreeSet<>();
-    for (String entry : SIGUtility.execute("ps", "-elf", "--no-headers")) {
-      processes.add(ProcessInfo.parsePSEntry(entry));
+    if (ProcessScanner.isAvailable()) {
+      try {
+        return new ProcessScanner().scan();
+      } catch (IOException iOException) {
+        Logger.getLogger(ProcessInfo.class.getName()).log(Level.WARNING, "Failed to scan /proc. Falling back to ps. {0}", iOException.getMessage());
+      }
     }
+    return getAllProcessesPS();
+  }
+
+  /**
+   * Read a single process from its {@code /proc/[pid]} directory, without
+   * scanning the process table.
+   *
+   * @param pid the process id
+   * @return the process; null if it is not running
+   * @throws IOException if the {@code /proc} file system cannot be read
+   */
+  public static ProcessInfo forPid(int pid) throws IOException {
+    return new ProcessScanner().read(pid);
+  }
+
+  /**
+   * Read a set of processes from their {@code /proc/[pid]} directories,
+   * without scanning the process table.
+   *
+   * @param pids the process ids
+   * @return a (pid sorted) collection of the processes that are running
+   * @throws IOException if the {@code /proc} file system cannot be read
+   */
+  public static Collection<ProcessInfo> forPids(int... pids) throws IOException {
+    return new ProcessWatcher(pids).refresh();
+  }
+
+  /**
+   * Create a reusable handle to repeatedly read a set of processes. This is
+   * the efficient way to monitor a few known processes periodically.
+   *
+   * @param pids the process ids
+   * @return a new process watcher
+   */
+  public static ProcessWatcher watch(int... pids) {
+    return new ProcessWatcher(pids);
+  }
+
+  /**
+   * A Collection of currently running processes read from the
+   * {@code ps -elf} system command.
+   *
+   * @return a non-null collection instance
+   * @throws Exception if the {@code ps} system command fails to execute
+   */
+  public static Collection<ProcessInfo> getAllProcessesPS() throws Exception {
+    Collection<ProcessInfo> processes = new TreeSet<>();
+    SIGUtility.execute(entry -> processes.add(ProcessInfo.parsePSEntry(entry.toString())), "ps", "-elf", "--no-headers");
     return processes;
   }
 
@@ -316,35 +395,68 @@ public class ProcessInfo implements Comparable<ProcessInfo> {
 
   public void setTime(String time) {
     this.time = time;
+  }
+
+  public Long getRss() {
+    return rss;
+  }
+
+  public void setRss(Long rss) {
+    this.rss = rss;
+  }
+
+  public Integer getThreads() {
+    return threads;
+  }
+
+  public void setThreads(Integer threads) {
+    this.threads = threads;
+  }
+
+  public Long getStartTime() {
+    return startTime;
+  }
+
+  public void setStartTime(Long startTime) {
+    this.startTime = startTime;
+  }
+
+  public Long getCpuTicks() {
+    return cpuTicks;
+  }
+
+  public void setCpuTicks(Long cpuTicks) {
+    this.cpuTicks = cpuTicks;
   }//</editor-fold>
 
   /**
    * Get the amount of time in milliseconds that the process has spent taking up
    * CPU time since the process was started.
+   * <p>
+   * This is the {@code cpuTime} value when read from {@code /proc}, otherwise
+   * the {@code ps} TIME column ("[DD-]HH:MM:SS") converted to milliseconds.
+   * The TIME column has a resolution of one second. For the CPU utilization
+   * over an interval see {@link ProcessSampler}.
    *
    * @return the process total CPU time (milliseconds); "-1" on error.
    */
   public Integer getCPUTime() {
-    /**
-     * Cumulative CPU time, "[DD-]HH:MM:SS" format. (alias cputime).
-     */
+    if (cpuTime != null) {
+      return cpuTime;
+    }
     if (time != null && !time.isEmpty()) {
-      Matcher m = Pattern.compile(time.contains("-")
-                                  ? "(\\d+)-(\\d+):(\\d\\d):(\\d\\d)"
-                                  : "(\\d+):(\\d\\d):(\\d\\d)").matcher(time);
-      if (m.find()) {
-        Calendar cal = Calendar.getInstance();
-        if (time.contains("-")) {
-          cal.add(Calendar.DAY_OF_YEAR, -Integer.valueOf(m.group(1)));
-          cal.add(Calendar.HOUR, -Integer.valueOf(m.group(2)));
-          cal.add(Calendar.MINUTE, -Integer.valueOf(m.group(3)));
-          cal.add(Calendar.SECOND, -Integer.valueOf(m.group(4)));
-        } else {
-          cal.add(Calendar.HOUR, -Integer.valueOf(m.group(1)));
-          cal.add(Calendar.MINUTE, -Integer.valueOf(m.group(2)));
-          cal.add(Calendar.SECOND, -Integer.valueOf(m.group(3)));
+      try {
+        int dash = time.indexOf('-');
+        long seconds = 0;
+        for (String field : time.substring(dash + 1).split(":")) {
+          seconds = seconds * 60 + Long.parseLong(field);
+        }
+        if (dash > 0) {
+          seconds += Long.parseLong(time.substring(0, dash)) * 86400;
         }
-        return (int) (System.currentTimeMillis() - cal.getTimeInMillis());
+        return (int) Math.min(Integer.MAX_VALUE, seconds * 1000);
+      } catch (NumberFormatException exception) {
+        return -1;
       }
     }
     return -1;
@@ -0,0 +1,408 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import ch.keybridge.lib.sig.utility.ProcFileReader;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A delta-based per-process CPU and I/O sampler built on the
+ * {@code /proc/[pid]/stat} and {@code /proc/[pid]/io} cumulative counters.
+ * <p>
+ * The {@code ps} C column (and {@link ProcessInfo#getCpuUtilization()}) is a
+ * lifetime average. This sampler keeps the previous user and system CPU
+ * ticks, page fault counts and storage read / write bytes of every process
+ * and, on each call to {@link #sample()}, reports the per-second rates over
+ * the interval and the CPU utilization in percent of one processor (e.g. 250
+ * = two and a half processors busy).
+ * <p>
+ * Processes are keyed by (pid, start time): a pid reused by a new process
+ * starts a new baseline rather than producing a bogus delta. The first sample
+ * of a process only establishes its baseline; rates are NaN until the second
+ * sample. The {@code io} file of processes owned by other users is not
+ * readable without privileges; their I/O rates are NaN.
+ * <p>
+ * The files are read with {@link ProcFileReader#readOnce(Path)}: a full scan
+ * touches two files per process, far more than the reader keeps open, so
+ * cached channels would be evicted before their next use.
+ * <p>
+ * {@link #top(int, int)} selects the N highest processes by any metric with a
+ * bounded heap: O(P log N) rather than sorting all P processes.
+ * <p>
+ * Instances are thread safe.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class ProcessSampler {
+
+  /**
+   * Metric index: user CPU time (clock ticks).
+   */
+  public static final int UTIME = 0;
+  /**
+   * Metric index: system CPU time (clock ticks).
+   */
+  public static final int STIME = 1;
+  /**
+   * Metric index: minor page faults.
+   */
+  public static final int MINOR_FAULTS = 2;
+  /**
+   * Metric index: major page faults (requiring disk I/O).
+   */
+  public static final int MAJOR_FAULTS = 3;
+  /**
+   * Metric index: bytes read from storage.
+   */
+  public static final int READ_BYTES = 4;
+  /**
+   * Metric index: bytes written to storage.
+   */
+  public static final int WRITE_BYTES = 5;
+  /**
+   * Metric index: CPU utilization (percent of one processor). Derived from
+   * {@link #UTIME} and {@link #STIME}.
+   */
+  public static final int CPU_PERCENT = 6;
+  /**
+   * The number of metrics.
+   */
+  public static final int METRICS = 7;
+  /**
+   * The number of cumulative counters read from {@code /proc}.
+   */
+  private static final int COUNTERS = 6;
+
+  /**
+   * The proc file system root directory.
+   */
+  private final Path procRoot;
+  /**
+   * The tracked processes, by pid.
+   */
+  private final Map<Integer, Entry> entries = new HashMap<>();
+  /**
+   * Scratch space for the current counters of one process.
+   */
+  private final long[] current = new long[COUNTERS];
+  private int generation;
+
+  /**
+   * Construct a new sampler reading from the system {@code /proc} directory.
+   */
+  public ProcessSampler() {
+    this(ProcessScanner.PROC);
+  }
+
+  /**
+   * Construct a new sampler reading from the indicated proc root directory.
+   *
+   * @param procRoot the proc file system root directory
+   */
+  public ProcessSampler(Path procRoot) {
+    this.procRoot = procRoot;
+  }
+
+  /**
+   * Read the current counters of all processes and compute the rates since
+   * the previous sample. Processes that have exited are dropped.
+   *
+   * @throws IOException if the proc root directory cannot be read
+   */
+  public void sample() throws IOException {
+    sample(System.nanoTime());
+  }
+
+  /**
+   * Read the current counters of all processes and compute the rates since
+   * the previous sample.
+   *
+   * @param now the sample time (nanoseconds)
+   * @throws IOException if the proc root directory cannot be read
+   */
+  synchronized void sample(long now) throws IOException {
+    generation++;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(procRoot, ProcessScanner::isPidDirectory)) {
+      for (Path directory : stream) {
+        sample(Integer.parseInt(directory.getFileName().toString()), directory, now);
+      }
+    }
+    entries.values().removeIf(entry -> entry.generation != generation);
+  }
+
+  /**
+   * Sample one process.
+   *
+   * @param pid       the process id
+   * @param directory the {@code /proc/[pid]} directory
+   * @param now       the sample time (nanoseconds)
+   */
+  private void sample(int pid, Path directory, long now) {
+    ProcFileReader reader = ProcFileReader.get();
+    long startTime;
+    try {
+      startTime = readStat(reader.readOnce(directory.resolve("stat")), current);
+    } catch (IOException | RuntimeException exception) {
+      /**
+       * The process has exited.
+       */
+      return;
+    }
+    Entry entry = entries.get(pid);
+    if (entry == null || entry.startTime != startTime) {
+      entry = new Entry(pid, startTime);
+      entries.put(pid, entry);
+    }
+    current[READ_BYTES] = -1;
+    current[WRITE_BYTES] = -1;
+    if (entry.ioReadable) {
+      try {
+        readIo(reader.readOnce(directory.resolve("io")), current);
+      } catch (IOException | RuntimeException exception) {
+        /**
+         * Access denied: do not retry for the life of the process.
+         */
+        entry.ioReadable = false;
+      }
+    }
+    entry.update(current, now);
+    entry.generation = generation;
+  }
+
+  /**
+   * Parse a {@code /proc/[pid]/stat} file. The comm field (2) is wrapped in
+   * parentheses and may contain spaces and parentheses; the following fields
+   * are located relative to the last closing parenthesis.
+   *
+   * @param reader   the reader holding the stat file
+   * @param counters the destination for the CPU time and fault counters
+   * @return the process start time (clock ticks after boot)
+   */
+  static long readStat(ProcFileReader reader, long[] counters) {
+    int end = -1;
+    while (reader.skipPast(')')) {
+      end = reader.position();
+    }
+    if (end < 0) {
+      throw new IllegalArgumentException("Invalid stat file");
+    }
+    reader.position(end);
+    /**
+     * Fields 3 (state) to 22 (starttime) in proc(5) numbering.
+     */
+    reader.skipToken();
+    long startTime = 0;
+    for (int field = 4; field <= 22; field++) {
+      long value = reader.nextLong();
+      switch (field) {
+        case 10:
+          counters[MINOR_FAULTS] = value;
+          break;
+        case 12:
+          counters[MAJOR_FAULTS] = value;
+          break;
+        case 14:
+          counters[UTIME] = value;
+          break;
+        case 15:
+          counters[STIME] = value;
+          break;
+        case 22:
+          startTime = value;
+          break;
+        default:
+      }
+    }
+    return startTime;
+  }
+
+  /**
+   * Parse a {@code /proc/[pid]/io} file for the storage read and write bytes.
+   *
+   * @param reader   the reader holding the io file
+   * @param counters the destination for the I/O counters
+   */
+  static void readIo(ProcFileReader reader, long[] counters) {
+    do {
+      if (reader.nextTokenEquals("read_bytes:")) {
+        counters[READ_BYTES] = reader.nextLong();
+      } else if (reader.nextTokenEquals("write_bytes:")) {
+        counters[WRITE_BYTES] = reader.nextLong();
+      }
+    } while (reader.nextLine());
+  }
+
+  /**
+   * Get the process ids present in the last sample.
+   *
+   * @return a sorted set of process ids
+   */
+  public synchronized SortedSet<Integer> getPids() {
+    return new TreeSet<>(entries.keySet());
+  }
+
+  /**
+   * Get a per-second rate of a process over the last interval.
+   *
+   * @param pid    the process id
+   * @param metric the metric index. e.g. {@link #READ_BYTES}
+   * @return the rate (per second), or for {@link #CPU_PERCENT} the percent of
+   *         one processor; NaN if the process is unknown, has no baseline or
+   *         the counter is not readable
+   */
+  public synchronized double getRate(int pid, int metric) {
+    Entry entry = entries.get(pid);
+    return entry == null ? Double.NaN : entry.rates[metric];
+  }
+
+  /**
+   * Get the CPU utilization of a process over the last interval.
+   *
+   * @param pid the process id
+   * @return the CPU utilization (percent of one processor); NaN if not
+   *         available
+   */
+  public synchronized double getCpuPercent(int pid) {
+    return getRate(pid, CPU_PERCENT);
+  }
+
+  /**
+   * Get the processes with the highest value of a metric over the last
+   * interval. Processes with no value (NaN) are excluded.
+   *
+   * @param n      the maximum number of processes
+   * @param metric the metric index. e.g. {@link #CPU_PERCENT}
+   * @return the processes, highest first
+   */
+  public synchronized List<Rates> top(int n, int metric) {
+    if (n <= 0) {
+      return Collections.emptyList();
+    }
+    /**
+     * A min-heap of the n highest entries: the root is the lowest retained.
+     */
+    Comparator<Entry> order = Comparator.comparingDouble(entry -> entry.rates[metric]);
+    PriorityQueue<Entry> heap = new PriorityQueue<>(n, order);
+    for (Entry entry : entries.values()) {
+      double value = entry.rates[metric];
+      if (Double.isNaN(value)) {
+        continue;
+      }
+      if (heap.size() < n) {
+        heap.add(entry);
+      } else if (value > heap.peek().rates[metric]) {
+        heap.poll();
+        heap.add(entry);
+      }
+    }
+    Rates[] top = new Rates[heap.size()];
+    for (int i = top.length - 1; i >= 0; i--) {
+      top[i] = new Rates(heap.poll());
+    }
+    return Arrays.asList(top);
+  }
+
+  /**
+   * The counters of one process.
+   */
+  private static final class Entry {
+
+    private final int pid;
+    private final long startTime;
+    private final long[] previous = new long[COUNTERS];
+    private final double[] rates = new double[METRICS];
+    /**
+     * The time of the previous sample (nanoseconds). Zero before the first.
+     */
+    private long timestamp;
+    private boolean ioReadable = true;
+    private int generation;
+
+    Entry(int pid, long startTime) {
+      this.pid = pid;
+      this.startTime = startTime;
+      Arrays.fill(rates, Double.NaN);
+    }
+
+    void update(long[] current, long now) {
+      if (timestamp != 0 && now > timestamp) {
+        double seconds = (now - timestamp) / 1e9;
+        for (int i = 0; i < COUNTERS; i++) {
+          long delta = current[i] - previous[i];
+          rates[i] = current[i] < 0 || previous[i] < 0 || delta < 0 ? Double.NaN : delta / seconds;
+        }
+        rates[CPU_PERCENT] = 100.0 * (rates[UTIME] + rates[STIME]) / ProcessScanner.CLOCK_TICKS;
+      }
+      System.arraycopy(current, 0, previous, 0, COUNTERS);
+      timestamp = now;
+    }
+  }
+
+  /**
+   * A snapshot of the rates of one process over the last interval.
+   */
+  public static final class Rates {
+
+    private final int pid;
+    private final long startTime;
+    private final double[] rates;
+
+    private Rates(Entry entry) {
+      this.pid = entry.pid;
+      this.startTime = entry.startTime;
+      this.rates = entry.rates.clone();
+    }
+
+    public int getPid() {
+      return pid;
+    }
+
+    /**
+     * The process start time (clock ticks after boot). Together with the pid
+     * this identifies the process.
+     *
+     * @return the start time
+     */
+    public long getStartTime() {
+      return startTime;
+    }
+
+    /**
+     * Get a metric.
+     *
+     * @param metric the metric index. e.g. {@link #READ_BYTES}
+     * @return the rate (per second) or CPU percent; NaN if not available
+     */
+    public double getRate(int metric) {
+      return rates[metric];
+    }
+
+    public double getCpuPercent() {
+      return rates[CPU_PERCENT];
+    }
+
+    @Override
+    public String toString() {
+      return pid + " " + String.format("%.1f%% CPU", rates[CPU_PERCENT]);
+    }
+  }
+
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import ch.keybridge.lib.sig.utility.CLibrary;
+import ch.keybridge.lib.sig.utility.ProcFileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * A pure-java process scanner that reads process information directly from the
+ * {@code /proc/[pid]} kernel run time directories.
+ * <p>
+ * This replaces the {@code ps -elf} system command: for each numeric directory
+ * under the {@code /proc} root the scanner reads the {@code stat},
+ * {@code statm}, {@code status} and {@code cmdline} files and populates a
+ * ProcessInfo instance with the same values (and formats) that {@code ps}
+ * would report. No child process is created.
+ * <p>
+ * The proc root is configurable so that the scanner may be pointed at a copy
+ * (or a synthetic tree) of the {@code /proc} file system.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ * @see <a href="http://man7.org/linux/man-pages/man5/proc.5.html">proc(5)</a>
+ */
+public class ProcessScanner {
+
+  /**
+   * The default proc file system mount point.
+   */
+  public static final Path PROC = Paths.get("/proc");
+  /**
+   * USER_HZ: the number of clock ticks per second reported by the kernel in the
+   * {@code /proc/[pid]/stat} time fields. Read with {@code sysconf(3)}; 100 if
+   * not available.
+   */
+  static final int CLOCK_TICKS = (int) CLibrary.sysconf(CLibrary.SC_CLK_TCK, 100);
+  /**
+   * The memory page size (kByte). Used to convert {@code statm} page counts.
+   * Read with {@code sysconf(3)} (e.g. 64 on some arm64 and ppc64 kernels); 4
+   * if not available.
+   */
+  static final int PAGE_SIZE_KB = (int) (CLibrary.sysconf(CLibrary.SC_PAGESIZE, 4096) / 1024);
+
+  private static final DateTimeFormatter STIME_TODAY = DateTimeFormatter.ofPattern("HH:mm", Locale.US);
+  private static final DateTimeFormatter STIME_YEAR = DateTimeFormatter.ofPattern("MMMdd", Locale.US);
+  private static final DateTimeFormatter STIME_OLD = DateTimeFormatter.ofPattern("yyyy", Locale.US);
+  /**
+   * The user account file.
+   */
+  private static final Path PASSWD = Paths.get("/etc/passwd");
+
+  /**
+   * The boot time of the system {@code /proc} root, shared by all scanners.
+   * Zero until first read.
+   */
+  private static volatile long systemBootTime;
+  /**
+   * The user names shared by all scanners and the modification time of the
+   * {@code /etc/passwd} file they were read from. Guarded by the class.
+   */
+  private static Map<String, String> sharedUserNames;
+  private static FileTime sharedUserNamesModified;
+
+  /**
+   * The proc file system root directory.
+   */
+  private final Path procRoot;
+
+  /**
+   * The system boot time (seconds since the epoch). Read from the "btime" entry
+   * in {@code /proc/stat}.
+   */
+  private long bootTime;
+  /**
+   * The system uptime (seconds). Read from {@code /proc/uptime}.
+   */
+  private double uptime;
+  /**
+   * A map of numeric user id to user name. Read from {@code /etc/passwd}.
+   */
+  private Map<String, String> userNames;
+
+  /**
+   * Construct a new process scanner reading from the system {@code /proc}
+   * directory.
+   */
+  public ProcessScanner() {
+    this(PROC);
+  }
+
+  /**
+   * Construct a new process scanner reading from the indicated proc root
+   * directory.
+   *
+   * @param procRoot the proc file system root directory
+   */
+  public ProcessScanner(Path procRoot) {
+    this.procRoot = procRoot;
+  }
+
+  /**
+   * Determine if the proc file system is available on the current system.
+   *
+   * @return TRUE if the {@code /proc/self/stat} file is readable
+   */
+  public static boolean isAvailable() {
+    return Files.isReadable(PROC.resolve("self").resolve("stat"));
+  }
+
+  /**
+   * Scan all numeric {@code /proc/[pid]} directories and build a ProcessInfo
+   * instance for each.
+   * <p>
+   * Processes that exit while the scan is in progress are silently skipped.
+   *
+   * @return a (pid sorted) collection of ProcessInfo instances
+   * @throws IOException if the proc root directory cannot be read
+   */
+  public Collection<ProcessInfo> scan() throws IOException {
+    refresh();
+    Collection<ProcessInfo> processes = new TreeSet<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(procRoot, ProcessScanner::isPidDirectory)) {
+      for (Path directory : stream) {
+        ProcessInfo process = readProcess(directory);
+        if (process != null) {
+          processes.add(process);
+        }
+      }
+    }
+    return processes;
+  }
+
+  /**
+   * Read a single process from the {@code /proc/[pid]} directory.
+   *
+   * @param pid the process id
+   * @return a ProcessInfo instance; null if the process does not exist
+   * @throws IOException if the system boot time or uptime cannot be read
+   */
+  public ProcessInfo read(int pid) throws IOException {
+    refresh();
+    return readProcess(procRoot.resolve(Integer.toString(pid)));
+  }
+
+  /**
+   * Refresh the system-wide values (boot time, uptime and user names) that are
+   * shared by all processes in a scan. The boot time and user names are read
+   * once per scanner, from a process-wide cache: the boot time of the system
+   * {@code /proc} root is read once per JVM and the user names once per change
+   * of {@code /etc/passwd}, so short-lived scanners (e.g.
+   * {@link ProcessInfo#forPid(int)}) read only the uptime.
+   *
+   * @throws IOException if the {@code /proc/stat} or {@code /proc/uptime}
+   *                     files cannot be read
+   */
+  void refresh() throws IOException {
+    if (bootTime == 0) {
+      if (procRoot.equals(PROC)) {
+        if (systemBootTime == 0) {
+          systemBootTime = readBootTime(PROC);
+        }
+        bootTime = systemBootTime;
+      } else {
+        bootTime = readBootTime(procRoot);
+      }
+    }
+    try {
+      uptime = ProcFileReader.get().read(procRoot.resolve("uptime")).nextDouble();
+    } catch (NumberFormatException exception) {
+      throw new IOException("Invalid uptime", exception);
+    }
+    if (userNames == null) {
+      userNames = userNames();
+    }
+  }
+
+  /**
+   * Read the "btime" entry of a {@code /proc/stat} file.
+   *
+   * @param procRoot the proc file system root directory
+   * @return the boot time (seconds since the epoch); zero if not present
+   * @throws IOException if the stat file cannot be read
+   */
+  private static long readBootTime(Path procRoot) throws IOException {
+    for (String line : Files.readAllLines(procRoot.resolve("stat"), StandardCharsets.US_ASCII)) {
+      if (line.startsWith("btime")) {
+        return Long.parseLong(line.substring(5).trim());
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Get the shared map of user id to user name, re-reading the
+   * {@code /etc/passwd} file if it has been modified since last read.
+   *
+   * @return an unmodifiable map of user id to user name
+   */
+  private static synchronized Map<String, String> userNames() {
+    FileTime modified;
+    try {
+      modified = Files.getLastModifiedTime(PASSWD);
+    } catch (IOException iOException) {
+      modified = null;
+    }
+    if (sharedUserNames == null || !Objects.equals(modified, sharedUserNamesModified)) {
+      sharedUserNames = Collections.unmodifiableMap(readUserNames());
+      sharedUserNamesModified = modified;
+    }
+    return sharedUserNames;
+  }
+
+  /**
+   * Read and parse a single process directory.
+   *
+   * @param directory the {@code /proc/[pid]} directory
+   * @return a new ProcessInfo instance; null if the process has exited
+   */
+  private ProcessInfo readProcess(Path directory) {
+    try {
+      ProcessInfo process = parseStat(new String(Files.readAllBytes(directory.resolve("stat")), StandardCharsets.US_ASCII));
+      parseStatm(process, new String(Files.readAllBytes(directory.resolve("statm")), StandardCharsets.US_ASCII));
+      parseStatus(process, new String(Files.readAllBytes(directory.resolve("status")), StandardCharsets.US_ASCII));
+      parseCmdline(process, Files.readAllBytes(directory.resolve("cmdline")));
+      return process;
+    } catch (IOException | RuntimeException exception) {
+      /**
+       * The process has exited or its directory is not readable. Skip.
+       */
+      return null;
+    }
+  }
+
+  /**
+   * Parse the contents of a {@code /proc/[pid]/stat} file.
+   * <p>
+   * The second field (comm) is wrapped in parentheses and may itself contain
+   * spaces and parentheses. Fields following comm are located relative to the
+   * last closing parenthesis.
+   *
+   * @param stat the stat file contents
+   * @return a new ProcessInfo instance
+   */
+  ProcessInfo parseStat(String stat) {
+    int open = stat.indexOf('(');
+    int close = stat.lastIndexOf(')');
+    ProcessInfo p = new ProcessInfo();
+    p.setPid(Integer.valueOf(stat.substring(0, open).trim()));
+    p.setCommand("[" + stat.substring(open + 1, close) + "]");
+    /**
+     * f[0] is field 3 (state) in proc(5) numbering.
+     */
+    String[] f = stat.substring(close + 2).trim().split(" ");
+    p.setProcessState(ProcessInfo.EState.fromValue(f[0]));
+    if (f[0].equals("R")) {
+      p.setWchan("-");
+    }
+    p.setPpid(Integer.valueOf(f[1]));
+    p.setTty(ttyName(Integer.parseInt(f[4])));
+    p.setFlag((int) ((Long.parseLong(f[6]) >> 6) & 0x7));
+    long ticks = Long.parseLong(f[11]) + Long.parseLong(f[12]);
+    p.setPriority(60 + Integer.parseInt(f[15]));
+    p.setNice(Integer.valueOf(f[16]));
+    p.setThreads(Integer.valueOf(f[17]));
+    long startTicks = Long.parseLong(f[19]);
+    p.setStartTime(startTicks);
+    /**
+     * Derive the ps-compatible TIME, C and STIME columns.
+     */
+    long seconds = ticks / CLOCK_TICKS;
+    /**
+     * The int millisecond value overflows after 24.8 days of CPU time, which is
+     * common for long lived multi-threaded processes. Clamp it.
+     */
+    p.setCpuTime((int) Math.min(Integer.MAX_VALUE, ticks * 1000 / CLOCK_TICKS));
+    p.setCpuTicks(ticks);
+    p.setTime(formatTime(seconds));
+    double elapsed = uptime - (double) startTicks / CLOCK_TICKS;
+    p.setCpuUtilization(elapsed > 0 ? (int) Math.min(99, seconds * 100 / elapsed) : 0);
+    p.setStime(formatStartTime(bootTime + startTicks / CLOCK_TICKS));
+    return p;
+  }
+
+  /**
+   * Parse the contents of a {@code /proc/[pid]/statm} file. The first field is
+   * the total program size, the second the resident set size; both in pages.
+   *
+   * @param process the process to update
+   * @param statm   the statm file contents
+   */
+  void parseStatm(ProcessInfo process, String statm) {
+    String[] f = statm.trim().split(" ");
+    process.setSize(Integer.valueOf(f[0]));
+    process.setRss(Long.parseLong(f[1]) * PAGE_SIZE_KB);
+  }
+
+  /**
+   * Parse the {@code /proc/[pid]/status} file for the effective user id (as
+   * reported in the {@code ps} UID column). The "Uid:" line lists the real,
+   * effective, saved and file system user ids.
+   *
+   * @param process the process to update
+   * @param status  the status file contents
+   */
+  void parseStatus(ProcessInfo process, String status) {
+    int index = status.indexOf("\nUid:");
+    if (index < 0) {
+      return;
+    }
+    int start = status.indexOf('\t', status.indexOf('\t', index + 5) + 1) + 1;
+    int end = status.indexOf('\t', start);
+    String uid = status.substring(start, end);
+    process.setUid(userNames.getOrDefault(uid, uid));
+  }
+
+  /**
+   * Parse the {@code /proc/[pid]/cmdline} file. Arguments are NUL separated.
+   * Kernel threads have an empty command line, in which case the bracketed
+   * {@code comm} value is retained, as {@code ps} does.
+   *
+   * @param process the process to update
+   * @param cmdline the cmdline file contents
+   */
+  void parseCmdline(ProcessInfo process, byte[] cmdline) {
+    int length = cmdline.length;
+    while (length > 0 && cmdline[length - 1] == 0) {
+      length--;
+    }
+    if (length == 0) {
+      return;
+    }
+    for (int i = 0; i < length; i++) {
+      if (cmdline[i] == 0) {
+        cmdline[i] = ' ';
+      }
+    }
+    process.setCommand(new String(cmdline, 0, length, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Read the {@code /etc/passwd} file into a map of user id to user name.
+   *
+   * @return a map of user id to user name; empty if not readable
+   */
+  private static Map<String, String> readUserNames() {
+    Map<String, String> names = new HashMap<>();
+    try {
+      for (String entry : Files.readAllLines(PASSWD)) {
+        String[] t = entry.split(":");
+        if (t.length > 2) {
+          names.putIfAbsent(t[2], t[0]);
+        }
+      }
+    } catch (IOException iOException) {
+    }
+    return names;
+  }
+
+  /**
+   * Directory filter accepting only numeric (pid) directory names.
+   *
+   * @param path the directory entry
+   * @return TRUE if the file name is all digits
+   */
+  static boolean isPidDirectory(Path path) {
+    String name = path.getFileName().toString();
+    for (int i = 0; i < name.length(); i++) {
+      if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+        return false;
+      }
+    }
+    return !name.isEmpty();
+  }
+
+  /**
+   * Decode the {@code tty_nr} stat field into a terminal name, as reported in
+   * the {@code ps} TTY column.
+   *
+   * @param ttyNr the controlling terminal device number
+   * @return the terminal name; "?" if none
+   */
+  static String ttyName(int ttyNr) {
+    int major = (ttyNr >> 8) & 0xfff;
+    int minor = (ttyNr & 0xff) | ((ttyNr >> 12) & 0xfff00);
+    if (major >= 136 && major <= 143) {
+      return "pts/" + ((major - 136) * 256 + minor);
+    }
+    if (major == 4) {
+      return minor < 64 ? "tty" + minor : "ttyS" + (minor - 64);
+    }
+    return "?";
+  }
+
+  /**
+   * Format a cumulative CPU time in the {@code ps} "[DD-]HH:MM:SS" format.
+   *
+   * @param seconds the CPU time (seconds)
+   * @return the formatted time
+   */
+  static String formatTime(long seconds) {
+    StringBuilder sb = new StringBuilder(12);
+    if (seconds >= 86400) {
+      sb.append(seconds / 86400).append('-');
+    }
+    return appendTwoDigits(appendTwoDigits(appendTwoDigits(sb, (seconds / 3600) % 24).append(':'), (seconds / 60) % 60).append(':'), seconds % 60).toString();
+  }
+
+  private static StringBuilder appendTwoDigits(StringBuilder sb, long value) {
+    return sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+  }
+
+  /**
+   * Format a process start time in the {@code ps} STIME format: "HH:MM" if
+   * started in the last day, "MmmDD" if started in the last year, otherwise
+   * the year.
+   *
+   * @param epochSecond the process start time (seconds since the epoch)
+   * @return the formatted start time
+   */
+  static String formatStartTime(long epochSecond) {
+    long age = System.currentTimeMillis() / 1000 - epochSecond;
+    DateTimeFormatter formatter = age > 365 * 86400
+                                  ? STIME_OLD
+                                  : age > 86400 ? STIME_YEAR : STIME_TODAY;
+    return formatter.format(Instant.ofEpochSecond(epochSecond).atZone(ZoneId.systemDefault()));
+  }
+
+}
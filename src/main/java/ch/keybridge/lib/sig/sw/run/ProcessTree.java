@@ -0,0 +1,588 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A process parent / child index with subtree resource aggregation. e.g. "the
+ * total RSS and CPU time of this service and all of its children".
+ * <p>
+ * Processes are stored in slots of parallel primitive arrays. The tree is a
+ * first-child / next-sibling linked structure over the slots (with a previous
+ * sibling link for O(1) removal) and pids are mapped to slots through an open
+ * addressed int hash table. Building the tree from a scan is a single pass
+ * over the processes plus a linking pass over the slots.
+ * <p>
+ * {@link #update(Collection)} applies a new scan incrementally: unchanged
+ * processes only have their resource values refreshed, and only processes
+ * that appeared, disappeared, were re-parented or whose pid was reused (a
+ * different start time) are re-linked. {@link #getTotals(int)} walks only the
+ * requested subtree.
+ * <p>
+ * A process whose parent is not in the tree (e.g. init, kthreadd, or a
+ * process whose parent exited before it was re-parented) is a root.
+ * <p>
+ * Instances are thread safe.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class ProcessTree {
+
+  /**
+   * Marks no slot.
+   */
+  private static final int NONE = -1;
+
+  /**
+   * The process id, parent process id and start time of each slot. pid is -1
+   * for a free slot.
+   */
+  private int[] pids = new int[64];
+  private int[] ppids = new int[64];
+  private long[] startTimes = new long[64];
+  /**
+   * The resource values of each slot: cumulative CPU time (milliseconds),
+   * resident set size (kByte) and thread count.
+   */
+  private long[] cpuTimes = new long[64];
+  private long[] rss = new long[64];
+  private int[] threads = new int[64];
+  /**
+   * The tree links of each slot. The parent of a root is NONE.
+   */
+  private int[] parent = new int[64];
+  private int[] firstChild = new int[64];
+  private int[] nextSibling = new int[64];
+  private int[] previousSibling = new int[64];
+  /**
+   * The update generation in which each slot was last seen.
+   */
+  private int[] seen = new int[64];
+  /**
+   * The first root slot. Roots are linked through the sibling arrays.
+   */
+  private int firstRoot = NONE;
+  /**
+   * The first free slot. Free slots are linked through nextSibling.
+   */
+  private int firstFree = NONE;
+  /**
+   * The number of slots ever allocated (the high water mark).
+   */
+  private int allocated;
+  /**
+   * The number of processes in the tree.
+   */
+  private int size;
+  /**
+   * The pid to slot hash table. Empty entries are NONE.
+   */
+  private int[] keys = new int[128];
+  private int[] values = new int[128];
+  private int generation;
+
+  /**
+   * Construct a new, empty process tree.
+   */
+  public ProcessTree() {
+    Arrays.fill(keys, NONE);
+  }
+
+  /**
+   * Build a process tree of all running processes.
+   *
+   * @return a new process tree
+   * @throws Exception if the processes cannot be read
+   */
+  public static ProcessTree getInstance() throws Exception {
+    return new ProcessTree().update(ProcessInfo.getAllProcesses());
+  }
+
+  /**
+   * Apply a new process scan. Processes not in the scan are removed.
+   *
+   * @param processes all running processes. e.g.
+   *                  {@link ProcessInfo#getAllProcesses()}
+   * @return this tree
+   */
+  public synchronized ProcessTree update(Collection<ProcessInfo> processes) {
+    generation++;
+    int[] relink = new int[16];
+    int count = 0;
+    for (ProcessInfo process : processes) {
+      if (process.getPid() == null) {
+        continue;
+      }
+      int pid = process.getPid();
+      int ppid = process.getPpid() == null ? 0 : process.getPpid();
+      long startTime = process.getStartTime() == null ? 0 : process.getStartTime();
+      int slot = find(pid);
+      if (slot != NONE && startTimes[slot] != startTime) {
+        /**
+         * The pid was reused by a new process.
+         */
+        remove(slot);
+        slot = NONE;
+      }
+      if (slot == NONE) {
+        slot = allocate(pid, ppid, startTime);
+      } else if (ppids[slot] == ppid) {
+        set(slot, process);
+        continue;
+      } else {
+        ppids[slot] = ppid;
+        unlink(slot);
+      }
+      set(slot, process);
+      if (count == relink.length) {
+        relink = Arrays.copyOf(relink, count * 2);
+      }
+      relink[count++] = slot;
+    }
+    for (int slot = 0; slot < allocated; slot++) {
+      if (pids[slot] != NONE && seen[slot] != generation) {
+        remove(slot);
+      }
+    }
+    /**
+     * Link after all new processes are present, so that a child may precede
+     * its parent in the scan.
+     */
+    for (int i = 0; i < count; i++) {
+      if (pids[relink[i]] != NONE) {
+        link(relink[i]);
+      }
+    }
+    if (count > 0) {
+      adoptRoots();
+    }
+    return this;
+  }
+
+  /**
+   * Get the number of processes in the tree.
+   *
+   * @return the number of processes
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Determine if a process is in the tree.
+   *
+   * @param pid the process id
+   * @return TRUE if present
+   */
+  public synchronized boolean contains(int pid) {
+    return find(pid) != NONE;
+  }
+
+  /**
+   * Get the parent of a process.
+   *
+   * @param pid the process id
+   * @return the parent process id; -1 if the process is unknown or is a root
+   */
+  public synchronized int getParent(int pid) {
+    int slot = find(pid);
+    return slot == NONE || parent[slot] == NONE ? -1 : pids[parent[slot]];
+  }
+
+  /**
+   * Get the direct children of a process.
+   *
+   * @param pid the process id
+   * @return the child process ids; empty if the process is unknown
+   */
+  public synchronized int[] getChildren(int pid) {
+    int slot = find(pid);
+    if (slot == NONE) {
+      return new int[0];
+    }
+    int count = 0;
+    for (int child = firstChild[slot]; child != NONE; child = nextSibling[child]) {
+      count++;
+    }
+    int[] children = new int[count];
+    count = 0;
+    for (int child = firstChild[slot]; child != NONE; child = nextSibling[child]) {
+      children[count++] = pids[child];
+    }
+    return children;
+  }
+
+  /**
+   * Get the root processes: those whose parent is not in the tree.
+   *
+   * @return the root process ids
+   */
+  public synchronized int[] getRoots() {
+    int count = 0;
+    for (int slot = firstRoot; slot != NONE; slot = nextSibling[slot]) {
+      count++;
+    }
+    int[] roots = new int[count];
+    count = 0;
+    for (int slot = firstRoot; slot != NONE; slot = nextSibling[slot]) {
+      roots[count++] = pids[slot];
+    }
+    return roots;
+  }
+
+  /**
+   * Get all descendants of a process (children, grandchildren, etc.) in depth
+   * first order.
+   *
+   * @param pid the process id
+   * @return the descendant process ids; empty if the process is unknown
+   */
+  public synchronized int[] getDescendants(int pid) {
+    int slot = find(pid);
+    if (slot == NONE) {
+      return new int[0];
+    }
+    int[] descendants = new int[16];
+    int count = 0;
+    for (int node = next(slot, slot); node != NONE; node = next(node, slot)) {
+      if (count == descendants.length) {
+        descendants = Arrays.copyOf(descendants, count * 2);
+      }
+      descendants[count++] = pids[node];
+    }
+    return Arrays.copyOf(descendants, count);
+  }
+
+  /**
+   * Aggregate the resources of a process and all of its descendants. This
+   * visits only the subtree.
+   *
+   * @param pid the process id
+   * @return the subtree totals; null if the process is unknown
+   */
+  public synchronized Totals getTotals(int pid) {
+    int slot = find(pid);
+    if (slot == NONE) {
+      return null;
+    }
+    Totals totals = new Totals();
+    for (int node = slot; node != NONE; node = next(node, slot)) {
+      totals.processes++;
+      totals.cpuTime += cpuTimes[node];
+      totals.rss += rss[node];
+      totals.threads += threads[node];
+    }
+    return totals;
+  }
+
+  /**
+   * Get the next slot of a depth first (pre-order) walk of a subtree without
+   * a stack: descend to the first child, else move to the next sibling of the
+   * node or of its nearest ancestor below the subtree root.
+   *
+   * @param node the current slot
+   * @param root the subtree root slot
+   * @return the next slot; NONE when the walk is complete
+   */
+  private int next(int node, int root) {
+    if (firstChild[node] != NONE) {
+      return firstChild[node];
+    }
+    while (node != root) {
+      if (nextSibling[node] != NONE) {
+        return nextSibling[node];
+      }
+      node = parent[node];
+    }
+    return NONE;
+  }
+
+  /**
+   * Copy the resource values of a process into a slot and mark it seen.
+   */
+  private void set(int slot, ProcessInfo process) {
+    /**
+     * Prefer the unclamped tick count: the millisecond value saturates after
+     * 24.8 days of CPU time.
+     */
+    if (process.getCpuTicks() != null) {
+      cpuTimes[slot] = process.getCpuTicks() * 1000 / ProcessScanner.CLOCK_TICKS;
+    } else {
+      cpuTimes[slot] = process.getCpuTime() == null ? 0 : process.getCpuTime();
+    }
+    rss[slot] = process.getRss() == null ? 0 : process.getRss();
+    threads[slot] = process.getThreads() == null ? 0 : process.getThreads();
+    seen[slot] = generation;
+  }
+
+  /**
+   * Allocate an unlinked slot for a new process.
+   */
+  private int allocate(int pid, int ppid, long startTime) {
+    int slot;
+    if (firstFree != NONE) {
+      slot = firstFree;
+      firstFree = nextSibling[slot];
+    } else {
+      if (allocated == pids.length) {
+        grow();
+      }
+      slot = allocated++;
+    }
+    pids[slot] = pid;
+    ppids[slot] = ppid;
+    startTimes[slot] = startTime;
+    parent[slot] = NONE;
+    firstChild[slot] = NONE;
+    nextSibling[slot] = NONE;
+    previousSibling[slot] = NONE;
+    put(pid, slot);
+    size++;
+    return slot;
+  }
+
+  /**
+   * Remove a process. Its children become roots until they are re-parented
+   * by a later scan.
+   */
+  private void remove(int slot) {
+    unlink(slot);
+    for (int child = firstChild[slot]; child != NONE;) {
+      int next = nextSibling[child];
+      parent[child] = NONE;
+      pushRoot(child);
+      child = next;
+    }
+    delete(pids[slot]);
+    pids[slot] = NONE;
+    nextSibling[slot] = firstFree;
+    firstFree = slot;
+    size--;
+  }
+
+  /**
+   * Link a slot under its parent process, or as a root if the parent is not
+   * in the tree or linking would create a cycle (possible when a pid is
+   * reused within one scan).
+   */
+  private void link(int slot) {
+    int parentSlot = ppids[slot] == pids[slot] ? NONE : find(ppids[slot]);
+    for (int ancestor = parentSlot; ancestor != NONE; ancestor = parent[ancestor]) {
+      if (ancestor == slot) {
+        parentSlot = NONE;
+        break;
+      }
+    }
+    if (parentSlot == NONE) {
+      pushRoot(slot);
+      return;
+    }
+    parent[slot] = parentSlot;
+    previousSibling[slot] = NONE;
+    nextSibling[slot] = firstChild[parentSlot];
+    if (firstChild[parentSlot] != NONE) {
+      previousSibling[firstChild[parentSlot]] = slot;
+    }
+    firstChild[parentSlot] = slot;
+  }
+
+  private void pushRoot(int slot) {
+    parent[slot] = NONE;
+    previousSibling[slot] = NONE;
+    nextSibling[slot] = firstRoot;
+    if (firstRoot != NONE) {
+      previousSibling[firstRoot] = slot;
+    }
+    firstRoot = slot;
+  }
+
+  /**
+   * Remove a slot from its sibling list. Its own children are retained.
+   */
+  private void unlink(int slot) {
+    int previous = previousSibling[slot];
+    int next = nextSibling[slot];
+    if (previous != NONE) {
+      nextSibling[previous] = next;
+    } else if (parent[slot] != NONE) {
+      firstChild[parent[slot]] = next;
+    } else if (firstRoot == slot) {
+      firstRoot = next;
+    }
+    if (next != NONE) {
+      previousSibling[next] = previous;
+    }
+    parent[slot] = NONE;
+    nextSibling[slot] = NONE;
+    previousSibling[slot] = NONE;
+  }
+
+  /**
+   * Re-link roots whose parent process has since been added.
+   */
+  private void adoptRoots() {
+    for (int slot = firstRoot; slot != NONE;) {
+      int next = nextSibling[slot];
+      if (ppids[slot] != 0 && find(ppids[slot]) != NONE) {
+        unlink(slot);
+        link(slot);
+      }
+      slot = next;
+    }
+  }
+
+  private void grow() {
+    int capacity = pids.length * 2;
+    pids = Arrays.copyOf(pids, capacity);
+    ppids = Arrays.copyOf(ppids, capacity);
+    startTimes = Arrays.copyOf(startTimes, capacity);
+    cpuTimes = Arrays.copyOf(cpuTimes, capacity);
+    rss = Arrays.copyOf(rss, capacity);
+    threads = Arrays.copyOf(threads, capacity);
+    parent = Arrays.copyOf(parent, capacity);
+    firstChild = Arrays.copyOf(firstChild, capacity);
+    nextSibling = Arrays.copyOf(nextSibling, capacity);
+    previousSibling = Arrays.copyOf(previousSibling, capacity);
+    seen = Arrays.copyOf(seen, capacity);
+  }
+
+  //<editor-fold defaultstate="collapsed" desc="pid to slot hash table">
+  private int find(int pid) {
+    int mask = keys.length - 1;
+    for (int index = hash(pid) & mask; keys[index] != NONE; index = (index + 1) & mask) {
+      if (keys[index] == pid) {
+        return values[index];
+      }
+    }
+    return NONE;
+  }
+
+  private void put(int pid, int slot) {
+    if (size * 2 >= keys.length) {
+      int[] oldKeys = keys;
+      int[] oldValues = values;
+      keys = new int[oldKeys.length * 2];
+      values = new int[oldKeys.length * 2];
+      Arrays.fill(keys, NONE);
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != NONE) {
+          insert(oldKeys[i], oldValues[i]);
+        }
+      }
+    }
+    insert(pid, slot);
+  }
+
+  private void insert(int pid, int slot) {
+    int mask = keys.length - 1;
+    int index = hash(pid) & mask;
+    while (keys[index] != NONE && keys[index] != pid) {
+      index = (index + 1) & mask;
+    }
+    keys[index] = pid;
+    values[index] = slot;
+  }
+
+  /**
+   * Delete a key with backward shift, so that no tombstones are needed.
+   */
+  private void delete(int pid) {
+    int mask = keys.length - 1;
+    int index = hash(pid) & mask;
+    while (keys[index] != pid) {
+      if (keys[index] == NONE) {
+        return;
+      }
+      index = (index + 1) & mask;
+    }
+    int gap = index;
+    for (int next = (gap + 1) & mask; keys[next] != NONE; next = (next + 1) & mask) {
+      int home = hash(keys[next]) & mask;
+      /**
+       * Move the entry into the gap unless its home lies cyclically in
+       * (gap, next].
+       */
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+        keys[gap] = keys[next];
+        values[gap] = values[next];
+        gap = next;
+      }
+    }
+    keys[gap] = NONE;
+  }
+
+  private static int hash(int pid) {
+    int h = pid * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }//</editor-fold>
+
+  /**
+   * The aggregated resources of a process subtree.
+   */
+  public static class Totals {
+
+    private int processes;
+    private long cpuTime;
+    private long rss;
+    private long threads;
+
+    /**
+     * The number of processes in the subtree, including the root.
+     *
+     * @return the process count
+     */
+    public int getProcesses() {
+      return processes;
+    }
+
+    /**
+     * The cumulative CPU time of the subtree.
+     *
+     * @return the CPU time (milliseconds)
+     */
+    public long getCpuTime() {
+      return cpuTime;
+    }
+
+    /**
+     * The resident set size of the subtree. Shared pages are counted once per
+     * process.
+     *
+     * @return the resident set size (kByte)
+     */
+    public long getRss() {
+      return rss;
+    }
+
+    /**
+     * The thread count of the subtree.
+     *
+     * @return the number of threads
+     */
+    public long getThreads() {
+      return threads;
+    }
+
+    @Override
+    public String toString() {
+      return processes + " processes, " + threads + " threads, " + rss + " kB RSS, " + cpuTime + " ms CPU";
+    }
+  }
+
+}
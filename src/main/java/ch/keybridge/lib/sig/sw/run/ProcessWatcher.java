@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import ch.keybridge.lib.sig.utility.ProcFileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reusable handle that refreshes a fixed set of known processes (e.g. this
+ * JVM, a sidecar or a database) without scanning the whole process table.
+ * <p>
+ * The {@code /proc/[pid]} file paths are resolved once when the watcher is
+ * created and the {@code stat} and {@code statm} files are read through the
+ * thread's {@link ProcFileReader}, which keeps their file channels open
+ * between refreshes. The command line and user (the {@code cmdline} and
+ * {@code status} files) are cached per process and re-read only if the pid is
+ * reused by a new process (a different start time), the process executes a new
+ * program (a different {@code comm} name) or {@link #IDENTITY_INTERVAL} has
+ * elapsed (e.g. the process changed its user id).
+ * <p>
+ * Create a watcher with {@link ProcessInfo#watch(int...)}. Instances are
+ * thread safe.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class ProcessWatcher {
+
+  /**
+   * The maximum time (nanoseconds) the command line and user of a process are
+   * cached: 60 seconds.
+   */
+  static final long IDENTITY_INTERVAL = TimeUnit.SECONDS.toNanos(60);
+
+  /**
+   * The scanner providing the parsers and the system-wide values.
+   */
+  private final ProcessScanner scanner;
+  /**
+   * The watched processes.
+   */
+  private final Target[] targets;
+
+  /**
+   * Construct a new watcher reading from the system {@code /proc} directory.
+   *
+   * @param pids the process ids to watch
+   */
+  public ProcessWatcher(int... pids) {
+    this(ProcessScanner.PROC, pids);
+  }
+
+  /**
+   * Construct a new watcher reading from the indicated proc root directory.
+   *
+   * @param procRoot the proc file system root directory
+   * @param pids     the process ids to watch
+   */
+  public ProcessWatcher(Path procRoot, int... pids) {
+    this.scanner = new ProcessScanner(procRoot);
+    this.targets = new Target[pids.length];
+    for (int i = 0; i < pids.length; i++) {
+      targets[i] = new Target(procRoot.resolve(Integer.toString(pids[i])));
+    }
+  }
+
+  /**
+   * Read the current state of the watched processes.
+   *
+   * @return a (pid sorted) collection of the watched processes that are
+   *         running; processes that have exited are omitted
+   * @throws IOException if the system uptime cannot be read
+   */
+  public Collection<ProcessInfo> refresh() throws IOException {
+    return refresh(System.nanoTime());
+  }
+
+  /**
+   * Read the current state of the watched processes.
+   *
+   * @param now the refresh time (nanoseconds)
+   * @return a (pid sorted) collection of the running watched processes
+   * @throws IOException if the system uptime cannot be read
+   */
+  synchronized Collection<ProcessInfo> refresh(long now) throws IOException {
+    scanner.refresh();
+    Collection<ProcessInfo> processes = new TreeSet<>();
+    for (Target target : targets) {
+      ProcessInfo process = read(target, now);
+      if (process != null) {
+        processes.add(process);
+      }
+    }
+    return processes;
+  }
+
+  /**
+   * Read one watched process.
+   *
+   * @param target the watched process
+   * @param now    the refresh time (nanoseconds)
+   * @return a new ProcessInfo instance; null if the process has exited
+   */
+  private ProcessInfo read(Target target, long now) {
+    ProcFileReader reader = ProcFileReader.get();
+    try {
+      ProcessInfo process = scanner.parseStat(new String(reader.read(target.stat).remaining(), StandardCharsets.US_ASCII));
+      scanner.parseStatm(process, new String(reader.read(target.statm).remaining(), StandardCharsets.US_ASCII));
+      /**
+       * The bracketed comm name, before it is replaced by the command line.
+       */
+      String comm = process.getCommand();
+      ProcessInfo previous = target.previous;
+      if (previous != null
+          && Objects.equals(previous.getStartTime(), process.getStartTime())
+          && comm.equals(target.comm)
+          && now - target.identityTime < IDENTITY_INTERVAL) {
+        process.setUid(previous.getUid());
+        process.setCommand(previous.getCommand());
+      } else {
+        /**
+         * Read once: these files are not read again for a while, so their
+         * channels are not worth holding open.
+         */
+        scanner.parseStatus(process, new String(reader.readOnce(target.status).remaining(), StandardCharsets.US_ASCII));
+        scanner.parseCmdline(process, reader.readOnce(target.cmdline).remaining());
+        target.comm = comm;
+        target.identityTime = now;
+      }
+      target.previous = process;
+      return process;
+    } catch (IOException | RuntimeException exception) {
+      /**
+       * The process has exited or its directory is not readable.
+       */
+      target.previous = null;
+      return null;
+    }
+  }
+
+  /**
+   * The cached file paths and last state of a watched process.
+   */
+  private static final class Target {
+
+    private final Path stat;
+    private final Path statm;
+    private final Path status;
+    private final Path cmdline;
+    private ProcessInfo previous;
+    /**
+     * The comm name of the previous process and the time its command line and
+     * user were read.
+     */
+    private String comm;
+    private long identityTime;
+
+    Target(Path directory) {
+      this.stat = directory.resolve("stat");
+      this.statm = directory.resolve("statm");
+      this.status = directory.resolve("status");
+      this.cmdline = directory.resolve("cmdline");
+    }
+  }
+
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * A socket address codec. Parses IPv4 and IPv6 address literals (as printed by
+ * {@code ss}, {@code netstat} and friends) and port numbers from a
+ * CharSequence without creating intermediate Strings, and converts addresses
+ * to InetAddress instances through a small intern cache.
+ * <p>
+ * Addresses are handled in a packed primitive form: a 128-bit IPv6 address
+ * held in two longs ({@code hi}, {@code lo}). IPv4 addresses are packed as
+ * IPv4-mapped IPv6 addresses ({@code ::ffff:a.b.c.d}), so that one
+ * representation serves both address families.
+ * <p>
+ * Address literals may be wrapped in {@code [brackets]} and may carry a
+ * {@code %iface} scope suffix. The scope is ignored: the packed form (and the
+ * interned InetAddress) represents the address only.
+ * <p>
+ * The intern cache is a fixed-size, direct-mapped table of immutable entries.
+ * It is lock-free; concurrent updates may occasionally evict each other, which
+ * only costs an extra InetAddress allocation. On a busy host most sockets share
+ * a handful of local addresses, so a large socket census allocates few
+ * InetAddress instances.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public final class SocketAddressCodec {
+
+  /**
+   * The IPv4-mapped IPv6 address prefix in the packed {@code lo} word.
+   */
+  public static final long IPV4_MAPPED = 0x0000_FFFF_0000_0000L;
+  /**
+   * The number of intern cache slots. Must be a power of two.
+   */
+  private static final int CACHE_SIZE = 4096;
+  /**
+   * The intern cache.
+   */
+  private static final Entry[] CACHE = new Entry[CACHE_SIZE];
+  /**
+   * Per-thread scratch space for the packed form.
+   */
+  private static final ThreadLocal<long[]> PACKED = ThreadLocal.withInitial(() -> new long[2]);
+
+  private SocketAddressCodec() {
+  }
+
+  /**
+   * Parse an address literal into packed form.
+   *
+   * @param text   the text
+   * @param start  the literal start index (inclusive)
+   * @param end    the literal end index (exclusive)
+   * @param packed a two element array receiving the packed {@code hi} and
+   *               {@code lo} words; undefined if the literal is invalid
+   * @return TRUE if the literal is a valid IPv4 or IPv6 address
+   */
+  public static boolean parse(CharSequence text, int start, int end, long[] packed) {
+    if (end - start >= 2 && text.charAt(start) == '[' && text.charAt(end - 1) == ']') {
+      start++;
+      end--;
+    }
+    int scope = indexOf(text, '%', start, end);
+    if (scope >= 0) {
+      end = scope;
+    }
+    if (start >= end) {
+      return false;
+    }
+    if (indexOf(text, ':', start, end) < 0) {
+      long address = parseIPv4(text, start, end);
+      if (address < 0) {
+        return false;
+      }
+      packed[0] = 0;
+      packed[1] = IPV4_MAPPED | address;
+      return true;
+    }
+    return parseIPv6(text, start, end, packed);
+  }
+
+  /**
+   * Parse an address literal and return the interned InetAddress. A single
+   * {@code *} is read as the IPv4 wildcard address {@code 0.0.0.0}.
+   *
+   * @param text  the text
+   * @param start the literal start index (inclusive)
+   * @param end   the literal end index (exclusive)
+   * @return the interned address
+   * @throws UnknownHostException if the literal is not a valid address
+   */
+  public static InetAddress parseAddress(CharSequence text, int start, int end) throws UnknownHostException {
+    long[] packed = PACKED.get();
+    if (end - start == 1 && text.charAt(start) == '*') {
+      return toInetAddress(0, IPV4_MAPPED);
+    }
+    if (!parse(text, start, end, packed)) {
+      throw new UnknownHostException("Invalid address literal: " + text.subSequence(start, end));
+    }
+    return toInetAddress(packed[0], packed[1]);
+  }
+
+  /**
+   * Parse a decimal port number. A {@code *} is read as zero (any port).
+   *
+   * @param text  the text
+   * @param start the port start index (inclusive)
+   * @param end   the port end index (exclusive)
+   * @return the port number
+   * @throws NumberFormatException if the port is not a number in the range 0 -
+   *                               65535
+   */
+  public static int parsePort(CharSequence text, int start, int end) throws NumberFormatException {
+    if (end - start == 1 && text.charAt(start) == '*') {
+      return 0;
+    }
+    if (start >= end || end - start > 5) {
+      throw new NumberFormatException("Invalid port: " + text.subSequence(start, end));
+    }
+    int port = 0;
+    for (int i = start; i < end; i++) {
+      int digit = text.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException("Invalid port: " + text.subSequence(start, end));
+      }
+      port = port * 10 + digit;
+    }
+    if (port > 0xFFFF) {
+      throw new NumberFormatException("Invalid port: " + port);
+    }
+    return port;
+  }
+
+  /**
+   * Find the index of the ':' separating the address from the port in a
+   * {@code address:port} endpoint. This is the last ':' in the endpoint, which
+   * is correct for both bracketed and unbracketed IPv6 literals as printed by
+   * {@code ss} and {@code netstat}.
+   *
+   * @param text  the text
+   * @param start the endpoint start index (inclusive)
+   * @param end   the endpoint end index (exclusive)
+   * @return the separator index; -1 if not found
+   */
+  public static int indexOfPort(CharSequence text, int start, int end) {
+    for (int i = end - 1; i >= start; i--) {
+      if (text.charAt(i) == ':') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Pack an IPv4 address.
+   *
+   * @param address the IPv4 address in network (big-endian) order
+   * @return the packed {@code lo} word; the {@code hi} word is zero
+   */
+  public static long packIPv4(int address) {
+    return IPV4_MAPPED | (address & 0xFFFF_FFFFL);
+  }
+
+  /**
+   * Determine if a packed address is an IPv4 (mapped) address.
+   *
+   * @param hi the packed high word
+   * @param lo the packed low word
+   * @return TRUE if IPv4
+   */
+  public static boolean isIPv4(long hi, long lo) {
+    return hi == 0 && (lo & 0xFFFF_FFFF_0000_0000L) == IPV4_MAPPED;
+  }
+
+  /**
+   * Get the interned InetAddress for a packed address. IPv4-mapped addresses
+   * are returned as Inet4Address instances.
+   *
+   * @param hi the packed high word
+   * @param lo the packed low word
+   * @return the interned address
+   */
+  public static InetAddress toInetAddress(long hi, long lo) {
+    int slot = hash(hi, lo) & (CACHE_SIZE - 1);
+    Entry entry = CACHE[slot];
+    if (entry != null && entry.hi == hi && entry.lo == lo) {
+      return entry.address;
+    }
+    byte[] bytes;
+    if (isIPv4(hi, lo)) {
+      bytes = new byte[4];
+      putInt(bytes, 0, (int) lo);
+    } else {
+      bytes = new byte[16];
+      putInt(bytes, 0, (int) (hi >>> 32));
+      putInt(bytes, 4, (int) hi);
+      putInt(bytes, 8, (int) (lo >>> 32));
+      putInt(bytes, 12, (int) lo);
+    }
+    try {
+      InetAddress address = InetAddress.getByAddress(bytes);
+      CACHE[slot] = new Entry(hi, lo, address);
+      return address;
+    } catch (UnknownHostException exception) {
+      /**
+       * Not possible: the address is always 4 or 16 bytes.
+       */
+      throw new IllegalStateException(exception);
+    }
+  }
+
+  /**
+   * Parse a dotted-quad IPv4 literal.
+   *
+   * @return the address as an unsigned 32-bit value; -1 if invalid
+   */
+  private static long parseIPv4(CharSequence text, int start, int end) {
+    long address = 0;
+    int octets = 0;
+    int octet = -1;
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (c >= '0' && c <= '9') {
+        octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+        if (octet > 255) {
+          return -1;
+        }
+      } else if (c == '.' && octet >= 0 && octets < 3) {
+        address = (address << 8) | octet;
+        octets++;
+        octet = -1;
+      } else {
+        return -1;
+      }
+    }
+    if (octet < 0 || octets != 3) {
+      return -1;
+    }
+    return (address << 8) | octet;
+  }
+
+  /**
+   * Parse an IPv6 literal, with optional "::" compression and an optional
+   * trailing dotted-quad IPv4 address.
+   *
+   * @return TRUE if valid
+   */
+  private static boolean parseIPv6(CharSequence text, int start, int end, long[] packed) {
+    int gap = -1;
+    for (int i = start; i < end - 1; i++) {
+      if (text.charAt(i) == ':' && text.charAt(i + 1) == ':') {
+        if (gap >= 0) {
+          return false;
+        }
+        gap = i;
+      }
+    }
+    packed[0] = 0;
+    packed[1] = 0;
+    if (gap < 0) {
+      return parseGroups(text, start, end, 0, packed, true) == 8;
+    }
+    int head = parseGroups(text, start, gap, 0, packed, true);
+    int tail = parseGroups(text, gap + 2, end, 0, packed, false);
+    if (head < 0 || tail < 0 || head + tail > 7) {
+      return false;
+    }
+    parseGroups(text, gap + 2, end, 8 - tail, packed, true);
+    return true;
+  }
+
+  /**
+   * Parse a run of ':' separated 16-bit hex groups. A trailing dotted-quad
+   * IPv4 address counts as two groups.
+   *
+   * @param index the group index of the first group
+   * @param write TRUE to write the groups into the packed address
+   * @return the number of groups; -1 if invalid
+   */
+  private static int parseGroups(CharSequence text, int start, int end, int index, long[] packed, boolean write) {
+    if (start == end) {
+      return 0;
+    }
+    int count = 0;
+    int segment = start;
+    for (int i = start; i <= end; i++) {
+      if (i < end && text.charAt(i) != ':') {
+        continue;
+      }
+      if (i == segment) {
+        return -1;
+      }
+      if (i == end && indexOf(text, '.', segment, end) >= 0) {
+        long address = parseIPv4(text, segment, end);
+        if (address < 0 || index + count + 2 > 8) {
+          return -1;
+        }
+        if (write) {
+          setGroup(packed, index + count, (int) (address >>> 16));
+          setGroup(packed, index + count + 1, (int) (address & 0xFFFF));
+        }
+        count += 2;
+      } else {
+        if (i - segment > 4 || index + count + 1 > 8) {
+          return -1;
+        }
+        int group = 0;
+        for (int j = segment; j < i; j++) {
+          int digit = Character.digit(text.charAt(j), 16);
+          if (digit < 0) {
+            return -1;
+          }
+          group = (group << 4) | digit;
+        }
+        if (write) {
+          setGroup(packed, index + count, group);
+        }
+        count++;
+      }
+      segment = i + 1;
+    }
+    return count;
+  }
+
+  /**
+   * Set a 16-bit group (0 - 7) in a packed address.
+   */
+  private static void setGroup(long[] packed, int index, int group) {
+    if (index < 4) {
+      packed[0] |= (long) group << (48 - 16 * index);
+    } else {
+      packed[1] |= (long) group << (48 - 16 * (index - 4));
+    }
+  }
+
+  private static void putInt(byte[] bytes, int offset, int value) {
+    bytes[offset] = (byte) (value >>> 24);
+    bytes[offset + 1] = (byte) (value >>> 16);
+    bytes[offset + 2] = (byte) (value >>> 8);
+    bytes[offset + 3] = (byte) value;
+  }
+
+  private static int indexOf(CharSequence text, char c, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (text.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int hash(long hi, long lo) {
+    long h = hi * 31 + lo;
+    h ^= h >>> 33;
+    h *= 0xFF51_AFD7_ED55_8CCDL;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  /**
+   * An immutable intern cache entry.
+   */
+  private static final class Entry {
+
+    private final long hi;
+    private final long lo;
+    private final InetAddress address;
+
+    Entry(long hi, long lo, InetAddress address) {
+      this.hi = hi;
+      this.lo = lo;
+      this.address = address;
+    }
+  }
+
+}
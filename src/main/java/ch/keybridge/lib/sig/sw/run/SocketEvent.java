@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import ch.keybridge.lib.sig.sw.run.SocketInfo.SocketState;
+
+/**
+ * A socket change between two successive socket censuses, reported by a
+ * {@link SocketMonitor}.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class SocketEvent {
+
+  /**
+   * The event type.
+   */
+  private final EType type;
+  /**
+   * The socket. For a CLOSED event this is the socket as last seen.
+   */
+  private final SocketInfo socket;
+  /**
+   * The previous socket state. Null for an OPENED event.
+   */
+  private final SocketState previousState;
+
+  SocketEvent(EType type, SocketInfo socket, SocketState previousState) {
+    this.type = type;
+    this.socket = socket;
+    this.previousState = previousState;
+  }
+
+  public EType getType() {
+    return type;
+  }
+
+  public SocketInfo getSocket() {
+    return socket;
+  }
+
+  public SocketState getPreviousState() {
+    return previousState;
+  }
+
+  @Override
+  public String toString() {
+    return type + (type == EType.STATE_CHANGED ? " " + previousState + " -> " : " ") + socket;
+  }
+
+  /**
+   * Socket event types.
+   */
+  public static enum EType {
+    /**
+     * The socket was not present in the previous census.
+     */
+    OPENED,
+    /**
+     * The socket is no longer present.
+     */
+    CLOSED,
+    /**
+     * The socket connection state changed; e.g. ESTABLISHED to CLOSE_WAIT.
+     */
+    STATE_CHANGED;
+  }
+
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import java.util.List;
+
+/**
+ * A subscriber to socket changes reported by a {@link SocketMonitor}.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public interface SocketEventListener {
+
+  /**
+   * Called after each poll that found at least one socket change.
+   *
+   * @param events the socket changes since the previous poll
+   */
+  void socketsChanged(List<SocketEvent> events);
+
+}
@@ -74,15 +74,50 @@ public class SocketInfo {
    * the receive queue.
    */
   private Integer rxQueue;
+  /**
+   * The effective user id of the socket owner. Only available from the
+   * {@code /proc/net} socket tables.
+   */
+  private Integer uid;
+  /**
+   * The socket inode number. Only available from the {@code /proc/net} socket
+   * tables.
+   */
+  private Long inode;
+  /**
+   * The id of the process owning the socket. Set by a {@link SocketOwnerIndex}
+   * or from the {@code ss -p} process column.
+   */
+  private Integer pid;
 
   /**
-   * Read and parse TCP-IPv4 (but not IPv6) socket information from the
-   * {@code netstat} system command.
+   * Read and parse all TCP and UDP socket information.
+   * <p>
+   * Sockets are read directly from the {@code /proc/net/tcp}, {@code tcp6},
+   * {@code udp} and {@code udp6} kernel socket tables (IPv4 and IPv6) by a
+   * {@link SocketScanner}. If the proc file system is not available this falls
+   * back to the {@code ss} system command, which reports IPv4 sockets only.
    *
-   * @return a TreeSet containing all open sockets.
-   * @throws IOException if the {@code netstat} system command failed to execute
+   * @return a collection containing all open sockets.
+   * @throws Exception if the socket tables cannot be read and the {@code ss}
+   *                   system command failed to execute
    */
   public static Collection<SocketInfo> getAllSockets() throws Exception {
+    if (SocketScanner.isAvailable()) {
+      return new SocketScanner().scan();
+    }
+    return getAllSocketsSS();
+  }
+
+  /**
+   * Read and parse TCP-IPv4 (but not IPv6) socket information from the
+   * {@code ss} system command.
+   *
+   * @return a collection containing all open IPv4 sockets.
+   * @throws Exception if the {@code ss} system command failed to execute
+   * @since 2.1.0
+   */
+  public static Collection<SocketInfo> getAllSocketsSS() throws Exception {
     Collection<SocketInfo> sockets = new HashSet<>();
     /**
      * Add all IPv4 sockets: TCP and UDP.
@@ -90,18 +125,14 @@ public class SocketInfo {
      * `ss` is used to dump socket statistics. It allows showing information
      * similar to netstat. It can display more TCP and state information than
      * other tools.
-     *
-     * @TODO: If {@code ss} is not available then fall back to read and parse
-     * socket information from the nd {@code /proc/net/tcp} and
-     * {@code /proc/net/tcp6} run time files.
      */
-    for (String entry : SIGUtility.execute("ss", "-an4")) {// throws Exception
+    SIGUtility.execute(entry -> {
       try {
-        sockets.add(SocketInfo.parseSocketEntry(entry));
+        sockets.add(SocketInfo.parseSocketEntry(entry.toString()));
       } catch (Exception exception) {
         // ignore parse errors.
       }
-    }
+    }, "ss", "-an4");// throws Exception
     return sockets;
   }
 
@@ -114,8 +145,8 @@ public class SocketInfo {
    */
   public static SocketInfo parseSocketEntry(String entry) throws UnknownHostException, NullPointerException, IllegalArgumentException {
     String[] tokens = entry.trim().split("\\s+");
-    if (tokens.length != 6 && tokens.length != 5) {
-      throw new IllegalArgumentException("Invalid entry: " + entry + ". Length must be 5 or 6; is " + tokens.length);
+    if (tokens.length != 6 && tokens.length != 7) {
+      throw new IllegalArgumentException("Invalid entry: " + entry + ". Length must be 6 or 7; is " + tokens.length);
     }
     /**
      * `ss` returns a 6 element, space separated column.
@@ -139,16 +170,37 @@ public class SocketInfo {
     socket.setRxQueue(Integer.valueOf(tokens[2]));
     socket.setTxQueue(Integer.valueOf(tokens[3]));
 
-    socket.setLocalAddress(InetAddress.getByName(tokens[4].split(":")[0]));
-    socket.setLocalPort(parsePort(tokens[4].split(":")[1]));
-    socket.setRemoteAddress(InetAddress.getByName(tokens[5].split(":")[0]));
-    socket.setRemotePort(parsePort(tokens[5].split(":")[1]));
+    /**
+     * Addresses may be IPv4 or IPv6 literals, with a %iface scope and [::]
+     * brackets; e.g. "127.0.0.53%lo:53" or "[::]:22".
+     */
+    int local = SocketAddressCodec.indexOfPort(tokens[4], 0, tokens[4].length());
+    socket.setLocalAddress(SocketAddressCodec.parseAddress(tokens[4], 0, local));
+    socket.setLocalPort(parsePort(tokens[4], local));
+    int remote = SocketAddressCodec.indexOfPort(tokens[5], 0, tokens[5].length());
+    socket.setRemoteAddress(SocketAddressCodec.parseAddress(tokens[5], 0, remote));
+    socket.setRemotePort(parsePort(tokens[5], remote));
     /**
      * The rest of this data is informative only and not essential. Ignore any
      * subsequent parsing errors..
      */
-    if (tokens.length == 6) {
-      // capture the process
+    if (tokens.length == 7) {
+      /**
+       * Capture the (first) process from `ss -p`; e.g.
+       * users:(("sshd",pid=812,fd=3))
+       */
+      int pid = tokens[6].indexOf("pid=");
+      if (pid >= 0) {
+        int end = pid + 4;
+        while (end < tokens[6].length() && Character.isDigit(tokens[6].charAt(end))) {
+          end++;
+        }
+        try {
+          socket.setPid(Integer.valueOf(tokens[6].substring(pid + 4, end)));
+        } catch (NumberFormatException numberFormatException) {
+          // informative only
+        }
+      }
     }
     /**
      * Done
@@ -219,6 +271,30 @@ public class SocketInfo {
 
   public void setRxQueue(Integer rxQueue) {
     this.rxQueue = rxQueue;
+  }
+
+  public Integer getUid() {
+    return uid;
+  }
+
+  public void setUid(Integer uid) {
+    this.uid = uid;
+  }
+
+  public Long getInode() {
+    return inode;
+  }
+
+  public void setInode(Long inode) {
+    this.inode = inode;
+  }
+
+  public Integer getPid() {
+    return pid;
+  }
+
+  public void setPid(Integer pid) {
+    this.pid = pid;
   }//</editor-fold>
 
   /**
@@ -240,18 +316,25 @@ public class SocketInfo {
   }
 
   /**
-   * Parse a port value.
+   * Parse the port value of an {@code address:port} endpoint.
    *
-   * @param port the port string value
-   * @return the port, null if zero.
+   * @param endpoint  the endpoint
+   * @param separator the index of the address:port separator
+   * @return the port, null if zero (or "*").
+   * @throws IllegalArgumentException if the endpoint has no port
    */
-  private static Integer parsePort(String port) {
-    return ("*".equals(port) || "0".equals(port)) ? null : Integer.valueOf(port);
+  private static Integer parsePort(String endpoint, int separator) throws IllegalArgumentException {
+    if (separator < 0) {
+      throw new IllegalArgumentException("Invalid endpoint: " + endpoint);
+    }
+    int port = SocketAddressCodec.parsePort(endpoint, separator + 1, endpoint.length());
+    return port == 0 ? null : port;
   }
 
   @Override
   public int hashCode() {
     int hash = 7;
+    hash = 37 * hash + Objects.hashCode(this.protocol);
     hash = 37 * hash + Objects.hashCode(this.localAddress);
     hash = 37 * hash + Objects.hashCode(this.localPort);
     hash = 37 * hash + Objects.hashCode(this.remoteAddress);
@@ -271,6 +354,9 @@ public class SocketInfo {
       return false;
     }
     final SocketInfo other = (SocketInfo) obj;
+    if (this.protocol != other.protocol) {
+      return false;
+    }
     if (!Objects.equals(this.localAddress, other.localAddress)) {
       return false;
     }
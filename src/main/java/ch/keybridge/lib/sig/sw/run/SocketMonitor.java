@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import ch.keybridge.lib.sig.sw.run.SocketEvent.EType;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An incremental socket monitor. Each {@link #poll()} scans the kernel socket
+ * tables into a columnar {@link SocketTable}, compares it with the previous
+ * census and reports only the differences: sockets opened, sockets closed and
+ * socket state transitions (e.g. ESTABLISHED to CLOSE_WAIT).
+ * <p>
+ * Sockets are matched on their protocol and 4-tuple (local and remote address
+ * and port), the same identity as {@link SocketInfo#equals(Object)}, and on
+ * their inode, since several sockets may share a 4-tuple (e.g. SO_REUSEPORT
+ * listeners). A connection entering TIME_WAIT (where the kernel reports no
+ * inode) is matched to its previous entry as a state change. The comparison
+ * runs over the table columns through a hash index; SocketInfo
+ * instances are only created for changed sockets, so downstream work grows
+ * with the amount of churn rather than the total socket count.
+ * <p>
+ * The first poll establishes the baseline census and reports no events.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class SocketMonitor {
+
+  /**
+   * The socket scanner.
+   */
+  private final SocketScanner scanner;
+  /**
+   * The event subscribers.
+   */
+  private final List<SocketEventListener> listeners = new CopyOnWriteArrayList<>();
+  /**
+   * The previous socket census. Null before the first poll.
+   */
+  private SocketTable previous;
+  /**
+   * The hash index of the previous socket census.
+   */
+  private int[] previousIndex;
+
+  /**
+   * Construct a new socket monitor reading from the system {@code /proc}
+   * directory.
+   */
+  public SocketMonitor() {
+    this(new SocketScanner());
+  }
+
+  /**
+   * Construct a new socket monitor.
+   *
+   * @param scanner the socket scanner
+   */
+  public SocketMonitor(SocketScanner scanner) {
+    this.scanner = scanner;
+  }
+
+  /**
+   * Subscribe to socket changes.
+   *
+   * @param listener the listener
+   */
+  public void addListener(SocketEventListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Unsubscribe from socket changes.
+   *
+   * @param listener the listener
+   */
+  public void removeListener(SocketEventListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Scan the socket tables and report the changes since the previous poll to
+   * all subscribers.
+   *
+   * @return the changes since the previous poll; empty on the first poll
+   * @throws IOException if the socket tables cannot be read
+   */
+  public List<SocketEvent> poll() throws IOException {
+    return update(scanner.scanTable());
+  }
+
+  /**
+   * Get the most recent socket census.
+   *
+   * @return the socket table; null before the first poll
+   */
+  public synchronized SocketTable getCurrent() {
+    return previous;
+  }
+
+  /**
+   * Compare a new socket census with the previous census, report the changes
+   * and retain the new census.
+   *
+   * @param current the new socket census
+   * @return the changes
+   */
+  synchronized List<SocketEvent> update(SocketTable current) {
+    int[] currentIndex = current.buildIndex();
+    if (previous == null) {
+      previous = current;
+      previousIndex = currentIndex;
+      return Collections.emptyList();
+    }
+    List<SocketEvent> events = new ArrayList<>();
+    boolean[] seen = new boolean[previous.size()];
+    int[] matches = new int[current.size()];
+    /**
+     * Match the same inode first, then pair the remaining rows where one side
+     * has no inode.
+     */
+    for (int row = 0; row < matches.length; row++) {
+      matches[row] = previous.find(previousIndex, current, row, seen, true);
+      if (matches[row] >= 0) {
+        seen[matches[row]] = true;
+      }
+    }
+    for (int row = 0; row < matches.length; row++) {
+      if (matches[row] < 0) {
+        matches[row] = previous.find(previousIndex, current, row, seen, false);
+        if (matches[row] >= 0) {
+          seen[matches[row]] = true;
+        }
+      }
+    }
+    for (int row = 0; row < matches.length; row++) {
+      int match = matches[row];
+      if (match < 0) {
+        events.add(new SocketEvent(EType.OPENED, current.toSocketInfo(row), null));
+      } else {
+        if (previous.getState(match) != current.getState(row)) {
+          events.add(new SocketEvent(EType.STATE_CHANGED, current.toSocketInfo(row), previous.getState(match)));
+        }
+      }
+    }
+    for (int row = 0; row < seen.length; row++) {
+      if (!seen[row]) {
+        events.add(new SocketEvent(EType.CLOSED, previous.toSocketInfo(row), previous.getState(row)));
+      }
+    }
+    previous = current;
+    previousIndex = currentIndex;
+    if (!events.isEmpty()) {
+      List<SocketEvent> unmodifiable = Collections.unmodifiableList(events);
+      for (SocketEventListener listener : listeners) {
+        try {
+          listener.socketsChanged(unmodifiable);
+        } catch (RuntimeException exception) {
+          Logger.getLogger(SocketMonitor.class.getName()).log(Level.WARNING, "Socket event listener failed", exception);
+        }
+      }
+    }
+    return events;
+  }
+
+}
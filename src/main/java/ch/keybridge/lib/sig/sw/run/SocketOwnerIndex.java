@@ -0,0 +1,311 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A socket inode to process id index, built from the {@code socket:[inode]}
+ * symbolic links in the {@code /proc/[pid]/fd} directories.
+ * <p>
+ * The index is refreshed incrementally: each {@link #refresh()} only re-reads
+ * the fd directory of a process whose directory signature has changed since
+ * the previous refresh. The signature is the fd directory modification time
+ * and size. The modification time is set when the proc inode is created, not
+ * when descriptors are opened or closed, so it only changes when a pid is
+ * reused. Since Linux 6.2 the size is the number of open file descriptors;
+ * older kernels report zero. Every process is also re-read once its cached
+ * entry exceeds a maximum age (default 30 seconds).
+ * <p>
+ * On kernels before 6.2 the signature therefore never changes for a running
+ * process, and new sockets are found only when the entry expires:
+ * {@link #setMaxAge(long, TimeUnit)} is the real freshness control there. Even
+ * on newer kernels a process that closes one socket and opens another between
+ * refreshes keeps the same signature until its entry expires.
+ * <p>
+ * Socket inodes are joined to SocketInfo instances (or SocketTable rows) in a
+ * single pass through a primitive inode to pid hash table. Processes whose fd
+ * directory is not readable (i.e. owned by another user when not running as
+ * root) are not indexed.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class SocketOwnerIndex {
+
+  /**
+   * The symbolic link target prefix of a socket file descriptor.
+   */
+  private static final String SOCKET_PREFIX = "socket:[";
+
+  /**
+   * The proc file system root directory.
+   */
+  private final Path procRoot;
+  /**
+   * The cached socket inodes of each process, by pid.
+   */
+  private final Map<Integer, Entry> entries = new HashMap<>();
+  /**
+   * The maximum age of a cached process entry (nanoseconds).
+   */
+  private long maxAge = TimeUnit.SECONDS.toNanos(30);
+  /**
+   * The inode hash table keys. Zero marks an empty slot.
+   */
+  private long[] inodes = new long[16];
+  /**
+   * The inode hash table values (pid).
+   */
+  private int[] pids = new int[16];
+  /**
+   * The number of process fd directories read in the last refresh.
+   */
+  private int rescanned;
+
+  /**
+   * Construct a new socket owner index reading from the system {@code /proc}
+   * directory.
+   */
+  public SocketOwnerIndex() {
+    this(ProcessScanner.PROC);
+  }
+
+  /**
+   * Construct a new socket owner index reading from the indicated proc root
+   * directory.
+   *
+   * @param procRoot the proc file system root directory
+   */
+  public SocketOwnerIndex(Path procRoot) {
+    this.procRoot = procRoot;
+  }
+
+  /**
+   * Set the maximum age of a cached process entry, after which the process fd
+   * directory is re-read even if its signature has not changed. On kernels
+   * before Linux 6.2 this bounds how long a newly opened socket may go
+   * unattributed.
+   *
+   * @param maxAge the maximum age
+   * @param unit   the maximum age time unit
+   * @return this index
+   */
+  public synchronized SocketOwnerIndex setMaxAge(long maxAge, TimeUnit unit) {
+    this.maxAge = unit.toNanos(maxAge);
+    return this;
+  }
+
+  /**
+   * Refresh the index. Only the fd directories of new processes, processes
+   * with a changed fd directory signature and processes whose entry exceeds
+   * the maximum age are read.
+   *
+   * @throws IOException if the proc root directory cannot be read
+   */
+  public synchronized void refresh() throws IOException {
+    long now = System.nanoTime();
+    int count = 0;
+    for (Entry entry : entries.values()) {
+      entry.alive = false;
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(procRoot, ProcessScanner::isPidDirectory)) {
+      for (Path directory : stream) {
+        int pid = Integer.parseInt(directory.getFileName().toString());
+        Path fd = directory.resolve("fd");
+        BasicFileAttributes attributes;
+        try {
+          attributes = Files.readAttributes(fd, BasicFileAttributes.class);
+        } catch (IOException exception) {
+          /**
+           * The process has exited.
+           */
+          continue;
+        }
+        long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        long size = attributes.size();
+        Entry entry = entries.get(pid);
+        if (entry == null || entry.modified != modified || entry.size != size || now - entry.timestamp > maxAge) {
+          entry = new Entry(modified, size, now, readSocketInodes(fd));
+          entries.put(pid, entry);
+          count++;
+        }
+        entry.alive = true;
+      }
+    }
+    for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext();) {
+      if (!iterator.next().alive) {
+        iterator.remove();
+      }
+    }
+    rescanned = count;
+    rebuild();
+  }
+
+  /**
+   * Get the id of the process owning a socket.
+   *
+   * @param inode the socket inode
+   * @return the process id; -1 if unknown
+   */
+  public synchronized int getPid(long inode) {
+    if (inode == 0) {
+      return -1;
+    }
+    int mask = inodes.length - 1;
+    int slot = hash(inode) & mask;
+    while (inodes[slot] != 0) {
+      if (inodes[slot] == inode) {
+        return pids[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Set the owning process id of each socket with a known inode.
+   *
+   * @param sockets the sockets
+   */
+  public void assign(Collection<SocketInfo> sockets) {
+    for (SocketInfo socket : sockets) {
+      if (socket.getInode() != null) {
+        int pid = getPid(socket.getInode());
+        socket.setPid(pid < 0 ? null : pid);
+      }
+    }
+  }
+
+  /**
+   * Get the number of process fd directories read in the last refresh.
+   *
+   * @return the number of processes re-read
+   */
+  public synchronized int getRescanned() {
+    return rescanned;
+  }
+
+  /**
+   * Read the socket inodes from a process fd directory.
+   *
+   * @param fd the {@code /proc/[pid]/fd} directory
+   * @return the socket inodes; empty if the directory is not readable
+   */
+  private static long[] readSocketInodes(Path fd) {
+    long[] found = new long[8];
+    int count = 0;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(fd)) {
+      for (Path link : stream) {
+        String target;
+        try {
+          target = Files.readSymbolicLink(link).toString();
+        } catch (IOException | UnsupportedOperationException exception) {
+          /**
+           * The descriptor was closed.
+           */
+          continue;
+        }
+        if (target.startsWith(SOCKET_PREFIX) && target.endsWith("]")) {
+          try {
+            long inode = Long.parseLong(target.substring(SOCKET_PREFIX.length(), target.length() - 1));
+            if (count == found.length) {
+              found = Arrays.copyOf(found, count * 2);
+            }
+            found[count++] = inode;
+          } catch (NumberFormatException exception) {
+            // not a socket inode
+          }
+        }
+      }
+    } catch (IOException exception) {
+      /**
+       * Access denied or the process has exited.
+       */
+    }
+    return Arrays.copyOf(found, count);
+  }
+
+  /**
+   * Rebuild the inode hash table from the cached process entries.
+   */
+  private void rebuild() {
+    int total = 0;
+    for (Entry entry : entries.values()) {
+      total += entry.inodes.length;
+    }
+    int capacity = Integer.highestOneBit(Math.max(16, total * 2 - 1)) << 1;
+    if (capacity != inodes.length) {
+      inodes = new long[capacity];
+      pids = new int[capacity];
+    } else {
+      Arrays.fill(inodes, 0);
+    }
+    int mask = capacity - 1;
+    for (Map.Entry<Integer, Entry> entry : entries.entrySet()) {
+      int pid = entry.getKey();
+      for (long inode : entry.getValue().inodes) {
+        int slot = hash(inode) & mask;
+        while (inodes[slot] != 0 && inodes[slot] != inode) {
+          slot = (slot + 1) & mask;
+        }
+        /**
+         * A socket shared by several processes (e.g. after fork) is assigned
+         * to the lowest pid: normally the parent.
+         */
+        if (inodes[slot] == 0 || pid < pids[slot]) {
+          inodes[slot] = inode;
+          pids[slot] = pid;
+        }
+      }
+    }
+  }
+
+  private static int hash(long inode) {
+    long h = inode * 0x9E37_79B9_7F4A_7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /**
+   * The cached socket inodes of a process.
+   */
+  private static final class Entry {
+
+    private final long modified;
+    private final long size;
+    private final long timestamp;
+    private final long[] inodes;
+    private boolean alive;
+
+    Entry(long modified, long size, long timestamp, long[] inodes) {
+      this.modified = modified;
+      this.size = size;
+      this.timestamp = timestamp;
+      this.inodes = inodes;
+    }
+  }
+
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import ch.keybridge.lib.sig.sw.run.SocketInfo.ProtocolType;
+import ch.keybridge.lib.sig.sw.run.SocketInfo.SocketState;
+import ch.keybridge.lib.sig.utility.ProcFileReader;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.EnumSet;
+
+/**
+ * A pure-java socket scanner that reads the kernel socket tables directly from
+ * the {@code /proc/net/tcp}, {@code /proc/net/tcp6}, {@code /proc/net/udp} and
+ * {@code /proc/net/udp6} run time files.
+ * <p>
+ * This replaces the {@code ss} system command: each socket table row is
+ * decoded in place from the hexadecimal address, port, state and queue fields
+ * (plus the decimal uid and inode fields) into a row of a columnar
+ * {@link SocketTable}. Addresses are decoded to the packed form of the
+ * {@link SocketAddressCodec}; SocketInfo and (interned) InetAddress instances
+ * are created only on demand. No child process is created and no address is
+ * resolved.
+ * <p>
+ * The proc root is configurable so that the scanner may be pointed at a copy
+ * (or a synthetic tree) of the {@code /proc} file system.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ * @see
+ * <a href="https://www.kernel.org/doc/Documentation/networking/proc_net_tcp.txt">/proc/net/tcp</a>
+ */
+public class SocketScanner {
+
+  /**
+   * The socket table protocols. Each is read from the {@code /proc/net} file
+   * of the same name.
+   */
+  public static final EnumSet<ProtocolType> PROTOCOLS = EnumSet.of(ProtocolType.tcp, ProtocolType.tcp6, ProtocolType.udp, ProtocolType.udp6);
+
+  /**
+   * The socket state, indexed by the kernel state code ({@code tcp_states.h}).
+   */
+  private static final SocketState[] STATES = buildStates();
+  /**
+   * The kernel TCP_CLOSE state code. An unconnected UDP socket reports this
+   * state.
+   */
+  private static final int TCP_CLOSE = 0x07;
+  /**
+   * TRUE if the kernel prints the 32-bit address words in little-endian (host)
+   * byte order.
+   */
+  private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+  /**
+   * The proc file system root directory.
+   */
+  private final Path procRoot;
+
+  /**
+   * Construct a new socket scanner reading from the system {@code /proc}
+   * directory.
+   */
+  public SocketScanner() {
+    this(ProcessScanner.PROC);
+  }
+
+  /**
+   * Construct a new socket scanner reading from the indicated proc root
+   * directory.
+   *
+   * @param procRoot the proc file system root directory
+   */
+  public SocketScanner(Path procRoot) {
+    this.procRoot = procRoot;
+  }
+
+  /**
+   * Determine if the proc socket tables are available on the current system.
+   *
+   * @return TRUE if the {@code /proc/net/tcp} file is readable
+   */
+  public static boolean isAvailable() {
+    return Files.isReadable(Paths.get("/proc/net/tcp"));
+  }
+
+  /**
+   * Scan all TCP and UDP socket tables, both IPv4 and IPv6.
+   *
+   * @return a collection of SocketInfo instances
+   * @throws IOException if the IPv4 TCP socket table cannot be read
+   */
+  public Collection<SocketInfo> scan() throws IOException {
+    return scanTable(PROTOCOLS).toSocketInfo();
+  }
+
+  /**
+   * Scan the socket tables of the indicated protocols.
+   *
+   * @param protocols the protocols to scan; must be a subset of
+   *                  {@link #PROTOCOLS}
+   * @return a collection of SocketInfo instances
+   * @throws IOException if a socket table cannot be read
+   */
+  public Collection<SocketInfo> scan(Collection<ProtocolType> protocols) throws IOException {
+    return scanTable(protocols).toSocketInfo();
+  }
+
+  /**
+   * Scan all TCP and UDP socket tables, both IPv4 and IPv6, into a columnar
+   * SocketTable. No SocketInfo or InetAddress instances are created.
+   *
+   * @return a new socket table
+   * @throws IOException if the IPv4 TCP socket table cannot be read
+   */
+  public SocketTable scanTable() throws IOException {
+    return scanTable(PROTOCOLS);
+  }
+
+  /**
+   * Scan the socket tables of the indicated protocols into a columnar
+   * SocketTable. A missing IPv6 table (i.e. when IPv6 is disabled) is silently
+   * skipped.
+   *
+   * @param protocols the protocols to scan; must be a subset of
+   *                  {@link #PROTOCOLS}
+   * @return a new socket table
+   * @throws IOException if a socket table cannot be read
+   */
+  public SocketTable scanTable(Collection<ProtocolType> protocols) throws IOException {
+    SocketTable sockets = new SocketTable();
+    for (ProtocolType protocol : protocols) {
+      if (!PROTOCOLS.contains(protocol)) {
+        throw new IllegalArgumentException("Unsupported socket table: " + protocol);
+      }
+      Path table = procRoot.resolve("net").resolve(protocol.name());
+      if ((protocol == ProtocolType.tcp6 || protocol == ProtocolType.udp6) && !Files.exists(table)) {
+        continue;
+      }
+      parse(table, protocol, sockets);
+    }
+    return sockets;
+  }
+
+  /**
+   * Parse a socket table file into SocketInfo instances.
+   *
+   * @param table    the socket table file
+   * @param protocol the socket table protocol
+   * @param sockets  the collection to which the parsed sockets are added
+   * @throws IOException if the file cannot be read
+   */
+  static void parse(Path table, ProtocolType protocol, Collection<SocketInfo> sockets) throws IOException {
+    SocketTable socketTable = new SocketTable();
+    parse(table, protocol, socketTable);
+    sockets.addAll(socketTable.toSocketInfo());
+  }
+
+  /**
+   * Parse a socket table file. Each row has the form:
+   * <pre>
+   *   sl  local_address rem_address   st tx_queue rx_queue tr tm-&gt;when retrnsmt   uid  timeout inode
+   *    0: 0100007F:0035 00000000:0000 0A 00000000:00000000 00:00000000 00000000   101        0 17343 ...
+   * </pre> IPv6 addresses are printed as four 32-bit words (32 hex digits).
+   * Malformed rows are skipped.
+   *
+   * @param table    the socket table file
+   * @param protocol the socket table protocol
+   * @param sockets  the socket table to which the parsed rows are added
+   * @throws IOException if the file cannot be read
+   */
+  static void parse(Path table, ProtocolType protocol, SocketTable sockets) throws IOException {
+    boolean udp = protocol == ProtocolType.udp || protocol == ProtocolType.udp6;
+    long[] packed = new long[4];
+    ProcFileReader reader = ProcFileReader.get().read(table);
+    /**
+     * Skip the header line.
+     */
+    while (reader.nextLine()) {
+      try {
+        reader.skipToken(); // sl
+        nextAddress(reader, packed, 0);
+        int localPort = (int) reader.nextHex();
+        nextAddress(reader, packed, 2);
+        int remotePort = (int) reader.nextHex();
+        int state = (int) reader.nextHex();
+        int txQueue = (int) reader.nextHex();
+        reader.skipPast(':');
+        int rxQueue = (int) reader.nextHex();
+        reader.skipToken(); // tr:tm->when
+        reader.skipToken(); // retrnsmt
+        int uid = reader.nextInt();
+        reader.skipToken(); // timeout
+        long inode = reader.nextLong();
+        sockets.add(protocol, udp && state == TCP_CLOSE ? SocketState.UNCONNECTED : STATES[state & 0xFF],
+                    packed[0], packed[1], localPort,
+                    packed[2], packed[3], remotePort,
+                    txQueue, rxQueue, uid, inode);
+      } catch (NumberFormatException | IndexOutOfBoundsException exception) {
+        /**
+         * Malformed row. Ignore and continue with the next line.
+         */
+      }
+    }
+  }
+
+  /**
+   * Decode the next hexadecimal address into packed form and advance the
+   * cursor past the trailing ':' port separator.
+   *
+   * @param reader the reader, positioned before the address
+   * @param packed the packed address array
+   * @param offset the offset in the packed array of the high word
+   * @throws NumberFormatException if the address is not 8 or 32 hex digits
+   */
+  private static void nextAddress(ProcFileReader reader, long[] packed, int offset) throws NumberFormatException {
+    reader.skipSpaces();
+    int start = reader.position();
+    if (!reader.skipPast(':')) {
+      throw new NumberFormatException("Missing port separator at offset " + start);
+    }
+    int digits = reader.position() - 1 - start;
+    if (digits == 8) {
+      packed[offset] = 0;
+      packed[offset + 1] = SocketAddressCodec.packIPv4(hexWord(reader, start));
+    } else if (digits == 32) {
+      packed[offset] = ((long) hexWord(reader, start) << 32) | (hexWord(reader, start + 8) & 0xFFFF_FFFFL);
+      packed[offset + 1] = ((long) hexWord(reader, start + 16) << 32) | (hexWord(reader, start + 24) & 0xFFFF_FFFFL);
+    } else {
+      throw new NumberFormatException("Invalid address length at offset " + start);
+    }
+  }
+
+  /**
+   * Decode one 32-bit address word. Each word is the network-order address
+   * word printed as a host-order integer.
+   *
+   * @param reader the reader
+   * @param start  the offset of the 8 hex digit word
+   * @return the address word in network (big-endian) order
+   * @throws NumberFormatException if the word is not hexadecimal
+   */
+  private static int hexWord(ProcFileReader reader, int start) throws NumberFormatException {
+    int value = 0;
+    for (int i = start; i < start + 8; i++) {
+      int digit = Character.digit(reader.byteAt(i), 16);
+      if (digit < 0) {
+        throw new NumberFormatException("Not a hex number at offset " + start);
+      }
+      value = (value << 4) | digit;
+    }
+    return LITTLE_ENDIAN ? Integer.reverseBytes(value) : value;
+  }
+
+  /**
+   * Build the kernel state code lookup table from the codes defined in
+   * {@link NetstatSocketInfo.ESocketState}.
+   *
+   * @return the state table
+   */
+  @SuppressWarnings("deprecation")
+  private static SocketState[] buildStates() {
+    SocketState[] states = new SocketState[256];
+    for (NetstatSocketInfo.ESocketState state : NetstatSocketInfo.ESocketState.values()) {
+      states[Integer.parseInt(state.getCode(), 16)] = SocketState.valueOf(state.name());
+    }
+    return states;
+  }
+
+}
@@ -0,0 +1,549 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import ch.keybridge.lib.sig.sw.run.SocketInfo.ProtocolType;
+import ch.keybridge.lib.sig.sw.run.SocketInfo.SocketState;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.*;
+
+/**
+ * A columnar socket table for large socket censuses.
+ * <p>
+ * Each socket is a row stored across parallel primitive arrays (protocol,
+ * state, packed local and remote address, ports, queues, uid and inode). A
+ * table of 100k sockets therefore holds a dozen arrays rather than 100k
+ * SocketInfo objects with boxed fields. Rows are read with a {@link Cursor};
+ * SocketInfo instances (and InetAddress instances) are only created on demand.
+ * <p>
+ * Aggregate queries (counts by state, by local port and the top remote peers)
+ * are computed directly over the columns.
+ * <p>
+ * A SocketTable is populated by a {@link SocketScanner} and is not modified
+ * thereafter. It is not thread safe while being populated.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class SocketTable {
+
+  private static final ProtocolType[] PROTOCOLS = ProtocolType.values();
+  private static final SocketState[] STATES = SocketState.values();
+
+  /**
+   * The number of rows.
+   */
+  private int size;
+  private byte[] protocol;
+  /**
+   * The SocketState ordinal; -1 if unknown.
+   */
+  private byte[] state;
+  private long[] localHi;
+  private long[] localLo;
+  private int[] localPort;
+  private long[] remoteHi;
+  private long[] remoteLo;
+  private int[] remotePort;
+  private int[] txQueue;
+  private int[] rxQueue;
+  private int[] uid;
+  private long[] inode;
+  /**
+   * The owning process id; -1 if unknown. Set by
+   * {@link #assignOwners(SocketOwnerIndex)}.
+   */
+  private int[] pid;
+
+  /**
+   * Construct a new, empty socket table.
+   */
+  public SocketTable() {
+    this(1024);
+  }
+
+  /**
+   * Construct a new, empty socket table.
+   *
+   * @param capacity the initial row capacity
+   */
+  public SocketTable(int capacity) {
+    allocate(Math.max(16, capacity));
+  }
+
+  /**
+   * Read all TCP and UDP sockets (IPv4 and IPv6) from the {@code /proc/net}
+   * socket tables.
+   *
+   * @return a new socket table
+   * @throws IOException if the socket tables cannot be read
+   */
+  public static SocketTable getAllSockets() throws IOException {
+    return new SocketScanner().scanTable();
+  }
+
+  /**
+   * Append a row.
+   *
+   * @param protocol   the protocol
+   * @param state      the state; null if unknown
+   * @param localHi    the packed local address high word
+   * @param localLo    the packed local address low word
+   * @param localPort  the local port; zero for any
+   * @param remoteHi   the packed remote address high word
+   * @param remoteLo   the packed remote address low word
+   * @param remotePort the remote port; zero for any
+   * @param txQueue    the transmit queue
+   * @param rxQueue    the receive queue
+   * @param uid        the owner uid
+   * @param inode      the socket inode
+   */
+  void add(ProtocolType protocol, SocketState state,
+           long localHi, long localLo, int localPort,
+           long remoteHi, long remoteLo, int remotePort,
+           int txQueue, int rxQueue, int uid, long inode) {
+    if (size == this.protocol.length) {
+      allocate(size * 2);
+    }
+    this.protocol[size] = (byte) protocol.ordinal();
+    this.state[size] = (byte) (state == null ? -1 : state.ordinal());
+    this.localHi[size] = localHi;
+    this.localLo[size] = localLo;
+    this.localPort[size] = localPort;
+    this.remoteHi[size] = remoteHi;
+    this.remoteLo[size] = remoteLo;
+    this.remotePort[size] = remotePort;
+    this.txQueue[size] = txQueue;
+    this.rxQueue[size] = rxQueue;
+    this.uid[size] = uid;
+    this.inode[size] = inode;
+    this.pid[size] = -1;
+    size++;
+  }
+
+  /**
+   * Get the number of sockets (rows) in this table.
+   *
+   * @return the number of sockets
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get a cursor positioned before the first row.
+   *
+   * @return a new cursor
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  /**
+   * Build a SocketInfo instance for every row.
+   *
+   * @return a new list of SocketInfo instances, in table order
+   */
+  public List<SocketInfo> toSocketInfo() {
+    List<SocketInfo> sockets = new ArrayList<>(size);
+    Cursor cursor = cursor();
+    while (cursor.next()) {
+      sockets.add(cursor.toSocketInfo());
+    }
+    return sockets;
+  }
+
+  /**
+   * Set the owning process id of every socket, joining the socket inode column
+   * to a (refreshed) socket owner index.
+   *
+   * @param owners the socket owner index
+   * @return this table
+   */
+  public SocketTable assignOwners(SocketOwnerIndex owners) {
+    for (int row = 0; row < size; row++) {
+      pid[row] = owners.getPid(inode[row]);
+    }
+    return this;
+  }
+
+  /**
+   * Get the processes owning sockets on a local port; e.g. the listening
+   * process of a service. Requires {@link #assignOwners(SocketOwnerIndex)}.
+   *
+   * @param port the local port
+   * @return the sorted set of owning process ids
+   */
+  public SortedSet<Integer> getOwners(int port) {
+    SortedSet<Integer> owners = new TreeSet<>();
+    for (int row = 0; row < size; row++) {
+      if (localPort[row] == port && pid[row] >= 0) {
+        owners.add(pid[row]);
+      }
+    }
+    return owners;
+  }
+
+  /**
+   * Count the sockets in each state.
+   *
+   * @return a map of state to socket count; states with no sockets are
+   *         omitted
+   */
+  public Map<SocketState, Integer> countByState() {
+    int[] counts = new int[STATES.length];
+    for (int row = 0; row < size; row++) {
+      if (state[row] >= 0) {
+        counts[state[row]]++;
+      }
+    }
+    Map<SocketState, Integer> map = new EnumMap<>(SocketState.class);
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0) {
+        map.put(STATES[i], counts[i]);
+      }
+    }
+    return map;
+  }
+
+  /**
+   * Count the sockets on each local port.
+   *
+   * @return a port-sorted map of local port to socket count
+   */
+  public SortedMap<Integer, Integer> countByLocalPort() {
+    return countByLocalPort(null);
+  }
+
+  /**
+   * Count the sockets in a given state on each local port. For example, count
+   * the established connections per service port.
+   *
+   * @param state the socket state; null for all states
+   * @return a port-sorted map of local port to socket count
+   */
+  public SortedMap<Integer, Integer> countByLocalPort(SocketState state) {
+    int[] counts = new int[0x10000];
+    for (int row = 0; row < size; row++) {
+      if (localPort[row] != 0 && (state == null || this.state[row] == state.ordinal())) {
+        counts[localPort[row]]++;
+      }
+    }
+    SortedMap<Integer, Integer> map = new TreeMap<>();
+    for (int port = 1; port < counts.length; port++) {
+      if (counts[port] > 0) {
+        map.put(port, counts[port]);
+      }
+    }
+    return map;
+  }
+
+  /**
+   * Get the remote peers with the most sockets. Unconnected sockets (with a
+   * wildcard remote address) are not counted.
+   *
+   * @param limit the maximum number of peers to return
+   * @return an ordered map of remote address to socket count, most sockets
+   *         first
+   */
+  public Map<InetAddress, Integer> topRemotePeers(int limit) {
+    /**
+     * Count sockets per packed remote address in an open-addressed table.
+     */
+    int capacity = Integer.highestOneBit(Math.max(16, size * 2 - 1)) << 1;
+    long[] keyHi = new long[capacity];
+    long[] keyLo = new long[capacity];
+    int[] counts = new int[capacity];
+    for (int row = 0; row < size; row++) {
+      long hi = remoteHi[row];
+      long lo = remoteLo[row];
+      if (hi == 0 && (lo == 0 || lo == SocketAddressCodec.IPV4_MAPPED)) {
+        continue;
+      }
+      int slot = hash(hi, lo) & (capacity - 1);
+      while (counts[slot] > 0 && (keyHi[slot] != hi || keyLo[slot] != lo)) {
+        slot = (slot + 1) & (capacity - 1);
+      }
+      keyHi[slot] = hi;
+      keyLo[slot] = lo;
+      counts[slot]++;
+    }
+    /**
+     * Select the top entries with a bounded min-heap of slots.
+     */
+    PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(1, limit) + 1, (a, b) -> Integer.compare(counts[a], counts[b]));
+    for (int slot = 0; slot < capacity && limit > 0; slot++) {
+      if (counts[slot] == 0) {
+        continue;
+      }
+      if (heap.size() < limit) {
+        heap.add(slot);
+      } else if (counts[slot] > counts[heap.peek()]) {
+        heap.poll();
+        heap.add(slot);
+      }
+    }
+    Integer[] top = heap.toArray(new Integer[heap.size()]);
+    Arrays.sort(top, (a, b) -> Integer.compare(counts[b], counts[a]));
+    Map<InetAddress, Integer> peers = new LinkedHashMap<>();
+    for (Integer slot : top) {
+      peers.put(SocketAddressCodec.toInetAddress(keyHi[slot], keyLo[slot]), counts[slot]);
+    }
+    return peers;
+  }
+
+  /**
+   * Build a SocketInfo instance for a row.
+   *
+   * @param row the row
+   * @return a new SocketInfo instance
+   */
+  SocketInfo toSocketInfo(int row) {
+    SocketInfo socket = new SocketInfo();
+    socket.setProtocol(PROTOCOLS[protocol[row]]);
+    socket.setConnectionState(getState(row));
+    socket.setLocalAddress(SocketAddressCodec.toInetAddress(localHi[row], localLo[row]));
+    socket.setLocalPort(localPort[row] == 0 ? null : localPort[row]);
+    socket.setRemoteAddress(SocketAddressCodec.toInetAddress(remoteHi[row], remoteLo[row]));
+    socket.setRemotePort(remotePort[row] == 0 ? null : remotePort[row]);
+    socket.setTxQueue(txQueue[row]);
+    socket.setRxQueue(rxQueue[row]);
+    socket.setUid(uid[row]);
+    socket.setInode(inode[row]);
+    socket.setPid(pid[row] < 0 ? null : pid[row]);
+    return socket;
+  }
+
+  /**
+   * Get the state of a row.
+   *
+   * @param row the row
+   * @return the socket state; null if unknown
+   */
+  SocketState getState(int row) {
+    return state[row] < 0 ? null : STATES[state[row]];
+  }
+
+  /**
+   * Build a hash index of the rows in this table, keyed on the socket protocol
+   * and 4-tuple (local and remote address and port); the same identity as
+   * {@link SocketInfo#equals(Object)}.
+   *
+   * @return an open-addressed index of row + 1 (zero marks an empty slot)
+   */
+  int[] buildIndex() {
+    int[] index = new int[Integer.highestOneBit(Math.max(16, size * 2 - 1)) << 1];
+    int mask = index.length - 1;
+    for (int row = 0; row < size; row++) {
+      int slot = hashRow(row) & mask;
+      while (index[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      index[slot] = row + 1;
+    }
+    return index;
+  }
+
+  /**
+   * Find the row in this table that is the same socket as a row in another
+   * table.
+   * <p>
+   * Several sockets may share a protocol and 4-tuple (e.g. SO_REUSEPORT
+   * listeners, UDP sockets bound to one address, or a TIME_WAIT entry beside a
+   * new connection), so rows are also matched on the socket inode and rows
+   * already matched to another socket are skipped. In exact mode the inodes
+   * must be equal. Otherwise a row without an inode (a TIME_WAIT entry, whose
+   * inode the kernel reports as zero) matches any inode.
+   *
+   * @param index    the index of this table, from {@link #buildIndex()}
+   * @param other    the other table
+   * @param otherRow the row in the other table
+   * @param consumed the rows in this table already matched; skipped
+   * @param exact    TRUE to require equal inodes
+   * @return the matching row in this table; -1 if not found
+   */
+  int find(int[] index, SocketTable other, int otherRow, boolean[] consumed, boolean exact) {
+    int mask = index.length - 1;
+    int slot = other.hashRow(otherRow) & mask;
+    while (index[slot] != 0) {
+      int row = index[slot] - 1;
+      if (!consumed[row]
+        && (inode[row] == other.inode[otherRow] || !exact && (inode[row] == 0 || other.inode[otherRow] == 0))
+        && protocol[row] == other.protocol[otherRow]
+        && localPort[row] == other.localPort[otherRow]
+        && remotePort[row] == other.remotePort[otherRow]
+        && localLo[row] == other.localLo[otherRow]
+        && remoteLo[row] == other.remoteLo[otherRow]
+        && localHi[row] == other.localHi[otherRow]
+        && remoteHi[row] == other.remoteHi[otherRow]) {
+        return row;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Hash the protocol and 4-tuple of a row.
+   *
+   * @param row the row
+   * @return the hash
+   */
+  private int hashRow(int row) {
+    long h = hash(localHi[row], localLo[row]);
+    h = h * 31 + hash(remoteHi[row], remoteLo[row]);
+    h = h * 31 + ((long) localPort[row] << 16 | remotePort[row]);
+    h = h * 31 + protocol[row];
+    return hash(h, h >>> 32);
+  }
+
+  /**
+   * (Re)allocate the column arrays.
+   *
+   * @param capacity the new row capacity
+   */
+  private void allocate(int capacity) {
+    protocol = protocol == null ? new byte[capacity] : Arrays.copyOf(protocol, capacity);
+    state = state == null ? new byte[capacity] : Arrays.copyOf(state, capacity);
+    localHi = localHi == null ? new long[capacity] : Arrays.copyOf(localHi, capacity);
+    localLo = localLo == null ? new long[capacity] : Arrays.copyOf(localLo, capacity);
+    localPort = localPort == null ? new int[capacity] : Arrays.copyOf(localPort, capacity);
+    remoteHi = remoteHi == null ? new long[capacity] : Arrays.copyOf(remoteHi, capacity);
+    remoteLo = remoteLo == null ? new long[capacity] : Arrays.copyOf(remoteLo, capacity);
+    remotePort = remotePort == null ? new int[capacity] : Arrays.copyOf(remotePort, capacity);
+    txQueue = txQueue == null ? new int[capacity] : Arrays.copyOf(txQueue, capacity);
+    rxQueue = rxQueue == null ? new int[capacity] : Arrays.copyOf(rxQueue, capacity);
+    uid = uid == null ? new int[capacity] : Arrays.copyOf(uid, capacity);
+    inode = inode == null ? new long[capacity] : Arrays.copyOf(inode, capacity);
+    pid = pid == null ? new int[capacity] : Arrays.copyOf(pid, capacity);
+  }
+
+  private static int hash(long hi, long lo) {
+    long h = hi * 31 + lo;
+    h ^= h >>> 33;
+    h *= 0xFF51_AFD7_ED55_8CCDL;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  @Override
+  public String toString() {
+    return "SocketTable " + size + " sockets " + countByState();
+  }
+
+  /**
+   * A forward-only cursor over the rows of a SocketTable. Accessors read the
+   * current row; no objects are created except by {@link #getLocalAddress()},
+   * {@link #getRemoteAddress()} (interned) and {@link #toSocketInfo()}.
+   */
+  public final class Cursor {
+
+    private int row = -1;
+
+    private Cursor() {
+    }
+
+    /**
+     * Advance to the next row.
+     *
+     * @return TRUE if there is a next row
+     */
+    public boolean next() {
+      if (row < size) {
+        row++;
+      }
+      return row < size;
+    }
+
+    public int getRow() {
+      return row;
+    }
+
+    public ProtocolType getProtocol() {
+      return PROTOCOLS[protocol[row]];
+    }
+
+    /**
+     * @return the socket state; null if unknown
+     */
+    public SocketState getState() {
+      return SocketTable.this.getState(row);
+    }
+
+    public InetAddress getLocalAddress() {
+      return SocketAddressCodec.toInetAddress(localHi[row], localLo[row]);
+    }
+
+    /**
+     * @return the local port; zero for any
+     */
+    public int getLocalPort() {
+      return localPort[row];
+    }
+
+    public InetAddress getRemoteAddress() {
+      return SocketAddressCodec.toInetAddress(remoteHi[row], remoteLo[row]);
+    }
+
+    /**
+     * @return the remote port; zero for any
+     */
+    public int getRemotePort() {
+      return remotePort[row];
+    }
+
+    public int getTxQueue() {
+      return txQueue[row];
+    }
+
+    public int getRxQueue() {
+      return rxQueue[row];
+    }
+
+    public int getUid() {
+      return uid[row];
+    }
+
+    public long getInode() {
+      return inode[row];
+    }
+
+    /**
+     * @return the owning process id; -1 if unknown
+     */
+    public int getPid() {
+      return pid[row];
+    }
+
+    /**
+     * @return TRUE if the local address is an IPv4 address
+     */
+    public boolean isIPv4() {
+      return SocketAddressCodec.isIPv4(localHi[row], localLo[row]);
+    }
+
+    /**
+     * Build a SocketInfo instance for the current row.
+     *
+     * @return a new SocketInfo instance
+     */
+    public SocketInfo toSocketInfo() {
+      return SocketTable.this.toSocketInfo(row);
+    }
+  }
+
+}
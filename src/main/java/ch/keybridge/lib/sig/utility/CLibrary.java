@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.utility;
+
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The few C library functions used where the kernel exposes a value through
+ * neither {@code /proc} nor the Java API.
+ * <p>
+ * The library is loaded on first use and only on 64-bit Linux, where
+ * {@code long} and the {@code struct} layouts used by this library are fixed.
+ * Use {@link #get()}; callers must fall back to a default when it returns
+ * null.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public interface CLibrary extends Library {
+
+  /**
+   * sysconf name: clock ticks per second (USER_HZ).
+   */
+  int SC_CLK_TCK = 2;
+  /**
+   * sysconf name: memory page size (bytes).
+   */
+  int SC_PAGESIZE = 30;
+
+  /**
+   * Get a system configuration value. See {@code sysconf(3)}.
+   *
+   * @param name the configuration name. e.g. {@link #SC_CLK_TCK}
+   * @return the value; -1 if not supported
+   */
+  long sysconf(int name);
+
+  /**
+   * Get file system statistics. See {@code statvfs(3)}.
+   *
+   * @param path   a path on the file system
+   * @param buffer the destination for the {@code struct statvfs}
+   * @return zero on success; -1 on error
+   */
+  int statvfs(String path, byte[] buffer);
+
+  /**
+   * Get the C library.
+   *
+   * @return the C library; null if not available on this platform
+   */
+  static CLibrary get() {
+    return Holder.INSTANCE;
+  }
+
+  /**
+   * Get a system configuration value, or a default if the C library is not
+   * available.
+   *
+   * @param name         the configuration name. e.g. {@link #SC_PAGESIZE}
+   * @param defaultValue the value to use if not available
+   * @return the value
+   */
+  static long sysconf(int name, long defaultValue) {
+    CLibrary libc = get();
+    if (libc == null) {
+      return defaultValue;
+    }
+    try {
+      long value = libc.sysconf(name);
+      return value > 0 ? value : defaultValue;
+    } catch (RuntimeException | UnsatisfiedLinkError exception) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Lazy loader.
+   */
+  final class Holder {
+
+    static final CLibrary INSTANCE = load();
+
+    private static CLibrary load() {
+      if (!Platform.isLinux() || Native.LONG_SIZE != 8) {
+        return null;
+      }
+      try {
+        return (CLibrary) Native.loadLibrary("c", CLibrary.class);
+      } catch (UnsatisfiedLinkError | RuntimeException exception) {
+        Logger.getLogger(CLibrary.class.getName()).log(Level.FINE, "C library not available", exception);
+        return null;
+      }
+    }
+  }
+
+}
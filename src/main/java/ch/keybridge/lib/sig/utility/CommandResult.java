@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.utility;
+
+import java.util.Collection;
+
+/**
+ * The result of a system command executed by a {@link CommandRunner}.
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class CommandResult {
+
+  /**
+   * The process exit code.
+   */
+  private final int exitCode;
+  /**
+   * The standard output lines (trimmed). Null if the output was streamed to a
+   * line handler.
+   */
+  private final Collection<String> output;
+  /**
+   * The standard error output, up to the runner's maximum error size.
+   */
+  private final String error;
+  /**
+   * TRUE if the standard output exceeded the runner's maximum output size and
+   * the process was terminated.
+   */
+  private final boolean truncated;
+  /**
+   * The wall time taken to execute the command (milliseconds).
+   */
+  private final long elapsed;
+
+  CommandResult(int exitCode, Collection<String> output, String error, boolean truncated, long elapsed) {
+    this.exitCode = exitCode;
+    this.output = output;
+    this.error = error;
+    this.truncated = truncated;
+    this.elapsed = elapsed;
+  }
+
+  public int getExitCode() {
+    return exitCode;
+  }
+
+  public Collection<String> getOutput() {
+    return output;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public boolean isTruncated() {
+    return truncated;
+  }
+
+  public long getElapsed() {
+    return elapsed;
+  }
+
+  /**
+   * Determine if the command completed normally: with a zero exit code and
+   * without truncation.
+   *
+   * @return TRUE if the command succeeded
+   */
+  public boolean isSuccess() {
+    return exitCode == 0 && !truncated;
+  }
+
+  @Override
+  public String toString() {
+    return "exit " + exitCode + " in " + elapsed + " ms" + (truncated ? " (truncated)" : "");
+  }
+
+}
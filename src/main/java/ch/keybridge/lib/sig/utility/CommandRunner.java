@@ -0,0 +1,356 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.utility;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * A bounded system command execution engine built on ProcessBuilder.
+ * <p>
+ * Every command executed by a CommandRunner is subject to:
+ * <ul>
+ * <li>a timeout, after which the child process is forcibly destroyed;</li>
+ * <li>a maximum standard output size, after which the child process is
+ * destroyed and the result is marked as truncated;</li>
+ * <li>a host-wide cap on the number of concurrently running child processes.
+ * The cap is read from the {@code sig.command.maxProcesses} system property
+ * (default 8).</li>
+ * </ul>
+ * Standard error is drained concurrently on a separate thread so that a chatty
+ * command cannot fill the pipe and deadlock. The process exit code is always
+ * captured.
+ * <p>
+ * Example:
+ * <pre>
+ * CommandResult result = new CommandRunner("iw", "wlan0", "scan")
+ *   .setTimeout(10, TimeUnit.SECONDS)
+ *   .run();
+ * </pre>
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public class CommandRunner {
+
+  /**
+   * The default command timeout (milliseconds).
+   */
+  public static final long DEFAULT_TIMEOUT = 30_000;
+  /**
+   * The default maximum standard output size (characters).
+   */
+  public static final long DEFAULT_MAX_OUTPUT = 64L * 1024 * 1024;
+  /**
+   * The maximum standard error size retained (characters).
+   */
+  private static final int MAX_ERROR = 64 * 1024;
+
+  /**
+   * Host-wide permits limiting the number of concurrently running child
+   * processes.
+   */
+  private static final Semaphore PROCESS_PERMITS = new Semaphore(Integer.getInteger("sig.command.maxProcesses", 8), true);
+  /**
+   * Daemon threads used to drain standard error.
+   */
+  private static final ExecutorService DRAIN_EXECUTOR = Executors.newCachedThreadPool(daemonThreadFactory("sig-command-stderr"));
+  /**
+   * Daemon thread used to destroy processes that exceed their timeout.
+   */
+  private static final ScheduledThreadPoolExecutor WATCHDOG = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("sig-command-watchdog"));
+
+  static {
+    WATCHDOG.setRemoveOnCancelPolicy(true);
+  }
+
+  /**
+   * The system command and arguments.
+   */
+  private final String[] command;
+  /**
+   * The command timeout (milliseconds).
+   */
+  private long timeout = DEFAULT_TIMEOUT;
+  /**
+   * The maximum standard output size (characters).
+   */
+  private long maxOutput = DEFAULT_MAX_OUTPUT;
+
+  /**
+   * Construct a new command runner.
+   *
+   * @param command the system command and arguments
+   */
+  public CommandRunner(String... command) {
+    if (command == null || command.length == 0) {
+      throw new IllegalArgumentException("A command is required.");
+    }
+    this.command = command.clone();
+  }
+
+  /**
+   * Set the command timeout. The timeout includes any time spent waiting for a
+   * process permit.
+   *
+   * @param timeout the timeout
+   * @param unit    the timeout time unit
+   * @return this runner
+   */
+  public CommandRunner setTimeout(long timeout, TimeUnit unit) {
+    this.timeout = unit.toMillis(timeout);
+    return this;
+  }
+
+  /**
+   * Set the maximum standard output size.
+   *
+   * @param maxOutput the maximum output size (characters)
+   * @return this runner
+   */
+  public CommandRunner setMaxOutput(long maxOutput) {
+    this.maxOutput = maxOutput;
+    return this;
+  }
+
+  /**
+   * Execute the command and collect the (trimmed) standard output lines.
+   *
+   * @return the command result
+   * @throws IOException          if the command cannot be started or its output
+   *                              cannot be read
+   * @throws TimeoutException     if the command did not complete within the
+   *                              timeout
+   * @throws InterruptedException if the calling thread is interrupted
+   */
+  public CommandResult run() throws IOException, TimeoutException, InterruptedException {
+    Collection<String> output = new ArrayList<>();
+    return execute(line -> output.add(line.toString()), output);
+  }
+
+  /**
+   * Execute the command and stream each (trimmed) standard output line to a
+   * consumer as it is read. The output is never materialized: the consumer
+   * receives a reused buffer that is only valid for the duration of the call,
+   * so it must copy (e.g. {@code toString()}) anything it retains.
+   * <p>
+   * An unchecked exception thrown by the consumer destroys the process and is
+   * propagated to the caller.
+   *
+   * @param consumer the line consumer
+   * @return the command result, with a null output collection
+   * @throws IOException          if the command cannot be started or its output
+   *                              cannot be read
+   * @throws TimeoutException     if the command did not complete within the
+   *                              timeout
+   * @throws InterruptedException if the calling thread is interrupted
+   */
+  public CommandResult run(Consumer<CharSequence> consumer) throws IOException, TimeoutException, InterruptedException {
+    return execute(consumer, null);
+  }
+
+  /**
+   * Execute the command, passing each standard output line to a consumer.
+   *
+   * @param consumer the line consumer
+   * @param output   the collected output to report in the result; may be null
+   * @return the command result
+   * @throws IOException          if the command cannot be started or its output
+   *                              cannot be read
+   * @throws TimeoutException     if the command did not complete within the
+   *                              timeout
+   * @throws InterruptedException if the calling thread is interrupted
+   */
+  private CommandResult execute(Consumer<CharSequence> consumer, Collection<String> output) throws IOException, TimeoutException, InterruptedException {
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+    if (!PROCESS_PERMITS.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+      throw new TimeoutException("No process permit available within " + timeout + " ms: " + this);
+    }
+    Process process = null;
+    ScheduledFuture<?> watchdog = null;
+    try {
+      /**
+       * The permit wait counts against the timeout.
+       */
+      long available = deadline - System.nanoTime();
+      if (available <= 0) {
+        throw new TimeoutException("No time left after waiting for a process permit within " + timeout + " ms: " + this);
+      }
+      process = new ProcessBuilder(command).start();
+      process.getOutputStream().close();
+      /**
+       * Destroy the process at the deadline. This closes its pipes and unblocks
+       * the standard output reader below.
+       */
+      AtomicBoolean timedOut = new AtomicBoolean();
+      Process child = process;
+      watchdog = WATCHDOG.schedule(() -> {
+        timedOut.set(true);
+        child.destroyForcibly();
+      }, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      Future<String> error = DRAIN_EXECUTOR.submit(() -> drain(child.getErrorStream()));
+      /**
+       * Read standard output on the calling thread.
+       */
+      boolean truncated;
+      try (Reader reader = new InputStreamReader(process.getInputStream(), Charset.defaultCharset())) {
+        truncated = readLines(reader, consumer);
+        if (truncated) {
+          process.destroyForcibly();
+        }
+      } catch (IOException exception) {
+        if (!timedOut.get()) {
+          throw exception;
+        }
+        truncated = false;
+      }
+      long remaining = deadline - System.nanoTime();
+      if (timedOut.get() || !process.waitFor(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+        throw new TimeoutException("Command did not complete within " + timeout + " ms: " + this);
+      }
+      String errorOutput;
+      try {
+        errorOutput = error.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } catch (ExecutionException | TimeoutException exception) {
+        errorOutput = "";
+      }
+      return new CommandResult(process.exitValue(), output, errorOutput, truncated, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    } finally {
+      if (watchdog != null) {
+        watchdog.cancel(false);
+      }
+      if (process != null && process.isAlive()) {
+        process.destroyForcibly();
+      }
+      PROCESS_PERMITS.release();
+    }
+  }
+
+  /**
+   * Split a character stream into trimmed lines using a single reused line
+   * buffer.
+   *
+   * @param reader   the character stream
+   * @param consumer the line consumer
+   * @return TRUE if the output exceeded the maximum output size
+   * @throws IOException          if the stream cannot be read
+   * @throws InterruptedException if the calling thread is interrupted
+   */
+  private boolean readLines(Reader reader, Consumer<CharSequence> consumer) throws IOException, InterruptedException {
+    char[] buffer = new char[8192];
+    StringBuilder line = new StringBuilder(256);
+    long size = 0;
+    int count;
+    while ((count = reader.read(buffer)) >= 0) {
+      size += count;
+      if (size > maxOutput) {
+        return true;
+      }
+      for (int i = 0; i < count; i++) {
+        char c = buffer[i];
+        if (c == '\n') {
+          accept(line, consumer);
+        } else {
+          line.append(c);
+        }
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException("Interrupted while executing " + this);
+      }
+    }
+    if (line.length() > 0) {
+      accept(line, consumer);
+    }
+    return false;
+  }
+
+  /**
+   * Trim a line buffer in place, pass it to a consumer and then clear it.
+   *
+   * @param line     the line buffer
+   * @param consumer the line consumer
+   */
+  private static void accept(StringBuilder line, Consumer<CharSequence> consumer) {
+    int end = line.length();
+    while (end > 0 && line.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    line.setLength(end);
+    int begin = 0;
+    while (begin < end && line.charAt(begin) <= ' ') {
+      begin++;
+    }
+    if (begin > 0) {
+      line.delete(0, begin);
+    }
+    consumer.accept(line);
+    line.setLength(0);
+  }
+
+  /**
+   * Drain an input stream, retaining at most {@link #MAX_ERROR} characters.
+   *
+   * @param inputStream the input stream
+   * @return the retained content
+   * @throws IOException if the stream cannot be read
+   */
+  private static String drain(InputStream inputStream) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, Charset.defaultCharset()))) {
+      char[] buffer = new char[4096];
+      int count;
+      while ((count = reader.read(buffer)) >= 0) {
+        sb.append(buffer, 0, Math.min(count, Math.max(0, MAX_ERROR - sb.length())));
+      }
+    } catch (IOException exception) {
+      /**
+       * The stream is closed when the process is destroyed.
+       */
+    }
+    return sb.toString().trim();
+  }
+
+  /**
+   * Build a thread factory producing named daemon threads.
+   *
+   * @param name the thread name
+   * @return a thread factory
+   */
+  private static ThreadFactory daemonThreadFactory(String name) {
+    return runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  @Override
+  public String toString() {
+    return String.join(" ", Arrays.asList(command));
+  }
+
+}
@@ -0,0 +1,599 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.utility;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A buffer-based reader for {@code /proc} and {@code /sys} kernel run time
+ * files.
+ * <p>
+ * Kernel run time files are small, ASCII encoded and re-generated by the kernel
+ * on every read. This reader keeps an open FileChannel for each recently read
+ * file and re-reads its contents from offset zero into a direct ByteBuffer.
+ * Decimal fields are parsed straight from the buffer into primitive
+ * {@code long}, {@code int} and {@code double} values. Once the channels are
+ * open a steady-state read creates no String, List or boxed Number objects.
+ * <p>
+ * Instances are NOT thread safe. Use {@link #get()} to obtain the reader bound
+ * to the current thread. Each reader holds at most {@link #MAX_OPEN_CHANNELS}
+ * open files and a buffer of at most {@link #MAX_RETAINED_CAPACITY} bytes
+ * between reads. Threads of a pool that is shut down or shrinks dynamically
+ * should call {@link #release()} when they have finished reading.
+ * <p>
+ * The reader maintains a cursor into the current file contents. Call
+ * {@link #read(Path)} to load a file, then the {@code next*} and {@code skip*}
+ * methods to scan its fields. Example:
+ * <pre>
+ * ProcFileReader reader = ProcFileReader.get().read(path);
+ * reader.skipToken();            // "cpu"
+ * long user = reader.nextLong();
+ * </pre>
+ *
+ * @author Key Bridge LLC
+ * @since 2.1.0
+ */
+public final class ProcFileReader implements Closeable {
+
+  /**
+   * The initial buffer capacity (bytes). The buffer grows as needed to hold the
+   * file being read.
+   */
+  private static final int INITIAL_CAPACITY = 16 * 1024;
+  /**
+   * The maximum buffer capacity (bytes) retained between reads. A larger buffer
+   * (e.g. grown for the socket table of a busy server) is released at the start
+   * of the next read.
+   */
+  public static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+  /**
+   * The maximum number of FileChannels held open by a single reader. The least
+   * recently used channel is closed when this limit is exceeded.
+   */
+  public static final int MAX_OPEN_CHANNELS = 32;
+
+  /**
+   * The per-thread reader instances.
+   */
+  private static final ThreadLocal<ProcFileReader> READER = ThreadLocal.withInitial(ProcFileReader::new);
+
+  /**
+   * The recently read file channels, in access order.
+   */
+  private final Map<Path, FileChannel> channels = new LinkedHashMap<Path, FileChannel>(64, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Path, FileChannel> eldest) {
+      if (size() > MAX_OPEN_CHANNELS) {
+        closeQuietly(eldest.getValue());
+        return true;
+      }
+      return false;
+    }
+  };
+
+  /**
+   * The file contents buffer. After a read the buffer position is zero and the
+   * limit is the file length.
+   */
+  private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+  /**
+   * The cursor position in the buffer.
+   */
+  private int cursor;
+
+  /**
+   * Private constructor - use {@link #get()}
+   */
+  private ProcFileReader() {
+  }
+
+  /**
+   * Get the reader bound to the current thread.
+   *
+   * @return the current thread's reader
+   */
+  public static ProcFileReader get() {
+    return READER.get();
+  }
+
+  /**
+   * Close the open files of the reader bound to the current thread and unbind
+   * it, releasing its buffer. A subsequent call to {@link #get()} creates a new
+   * reader.
+   */
+  public static void release() {
+    READER.get().close();
+    READER.remove();
+  }
+
+  /**
+   * Read the entire contents of a file into the internal buffer and reset the
+   * cursor to the beginning.
+   *
+   * @param file the file
+   * @return this reader
+   * @throws IOException if the file cannot be opened or read
+   */
+  public ProcFileReader read(Path file) throws IOException {
+    FileChannel channel = channels.get(file);
+    if (channel == null) {
+      channel = FileChannel.open(file, StandardOpenOption.READ);
+      channels.put(file, channel);
+    }
+    try {
+      return fill(channel);
+    } catch (IOException exception) {
+      /**
+       * The underlying file has gone away (e.g. the process exited or the
+       * device was removed). Discard the channel so that a subsequent read
+       * will re-open the file.
+       */
+      channels.remove(file);
+      closeQuietly(channel);
+      throw exception;
+    }
+  }
+
+  /**
+   * Read the entire contents of a file into the internal buffer and reset the
+   * cursor to the beginning, closing the file afterwards.
+   * <p>
+   * Use this rather than {@link #read(Path)} for files that are read once per
+   * scan across many directories (e.g. {@code /proc/[pid]/stat} of every
+   * process): caching their channels would only evict the channels of
+   * frequently read files and hold thousands of descriptors open.
+   *
+   * @param file the file
+   * @return this reader
+   * @throws IOException if the file cannot be opened or read
+   */
+  public ProcFileReader readOnce(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return fill(channel);
+    }
+  }
+
+  /**
+   * Read a channel from offset zero into the internal buffer, growing the
+   * buffer as needed, and reset the cursor.
+   *
+   * @param channel the open file channel
+   * @return this reader
+   * @throws IOException if the channel cannot be read
+   */
+  private ProcFileReader fill(FileChannel channel) throws IOException {
+    if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+      buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+    }
+    buffer.clear();
+    long position = 0;
+    int count;
+    while ((count = channel.read(buffer, position)) >= 0) {
+      position += count;
+      if (!buffer.hasRemaining()) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+      }
+    }
+    buffer.flip();
+    cursor = 0;
+    return this;
+  }
+
+  /**
+   * Read a file containing a single decimal integer value.
+   *
+   * @param file the file
+   * @return the value
+   * @throws IOException           if the file cannot be read
+   * @throws NumberFormatException if the file does not contain a number
+   */
+  public long readLong(Path file) throws IOException, NumberFormatException {
+    long value = read(file).nextLong();
+    requireEnd();
+    return value;
+  }
+
+  /**
+   * Read a file containing a single decimal integer value.
+   *
+   * @param file the file
+   * @return the value
+   * @throws IOException           if the file cannot be read
+   * @throws NumberFormatException if the file does not contain a number
+   */
+  public int readInt(Path file) throws IOException, NumberFormatException {
+    int value = read(file).nextInt();
+    requireEnd();
+    return value;
+  }
+
+  /**
+   * Read a file containing a single decimal value.
+   *
+   * @param file the file
+   * @return the value
+   * @throws IOException           if the file cannot be read
+   * @throws NumberFormatException if the file does not contain a number
+   */
+  public double readDouble(Path file) throws IOException, NumberFormatException {
+    double value = read(file).nextDouble();
+    requireEnd();
+    return value;
+  }
+
+  /**
+   * Determine if there are unread bytes after the cursor.
+   *
+   * @return TRUE if the cursor is not at the end of the file
+   */
+  public boolean hasRemaining() {
+    return cursor < buffer.limit();
+  }
+
+  /**
+   * Get the cursor position. This is the byte offset into the current file.
+   *
+   * @return the cursor position
+   */
+  public int position() {
+    return cursor;
+  }
+
+  /**
+   * Move the cursor to a byte offset in the current file.
+   *
+   * @param position the byte offset
+   * @return this reader
+   */
+  public ProcFileReader position(int position) {
+    this.cursor = Math.min(position, buffer.limit());
+    return this;
+  }
+
+  /**
+   * Get the byte at a position in the current file.
+   *
+   * @param position the byte offset
+   * @return the byte
+   */
+  public byte byteAt(int position) {
+    return buffer.get(position);
+  }
+
+  /**
+   * Advance the cursor past any space or tab characters. Line breaks are NOT
+   * skipped.
+   *
+   * @return this reader
+   */
+  public ProcFileReader skipSpaces() {
+    int limit = buffer.limit();
+    while (cursor < limit) {
+      byte b = buffer.get(cursor);
+      if (b != ' ' && b != '\t') {
+        break;
+      }
+      cursor++;
+    }
+    return this;
+  }
+
+  /**
+   * Advance the cursor past the next whitespace-delimited token on the current
+   * line.
+   *
+   * @return this reader
+   */
+  public ProcFileReader skipToken() {
+    skipSpaces();
+    int limit = buffer.limit();
+    while (cursor < limit && !isWhitespace(buffer.get(cursor))) {
+      cursor++;
+    }
+    return this;
+  }
+
+  /**
+   * Advance the cursor past the next occurrence of a delimiter character on
+   * the current line. If the delimiter is not found the cursor is left at the
+   * end of the line.
+   *
+   * @param delimiter the delimiter character (ASCII)
+   * @return TRUE if the delimiter was found
+   */
+  public boolean skipPast(char delimiter) {
+    int limit = buffer.limit();
+    while (cursor < limit) {
+      byte b = buffer.get(cursor);
+      if (b == '\n') {
+        return false;
+      }
+      cursor++;
+      if (b == delimiter) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Advance the cursor to the beginning of the next line.
+   *
+   * @return TRUE if there is a next line; false if the end of the file was
+   *         reached
+   */
+  public boolean nextLine() {
+    int limit = buffer.limit();
+    while (cursor < limit) {
+      if (buffer.get(cursor++) == '\n') {
+        return cursor < limit;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Determine if the content at the cursor starts with the indicated prefix.
+   * The cursor is not moved.
+   *
+   * @param prefix the prefix (ASCII)
+   * @return TRUE if the content at the cursor starts with the prefix
+   */
+  public boolean startsWith(CharSequence prefix) {
+    int length = prefix.length();
+    if (cursor + length > buffer.limit()) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (buffer.get(cursor + i) != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Determine if the next whitespace-delimited token equals the indicated
+   * value. If yes the cursor is advanced past the token, otherwise the cursor
+   * is left at the start of the token.
+   *
+   * @param token the token value (ASCII)
+   * @return TRUE if the next token matches
+   */
+  public boolean nextTokenEquals(CharSequence token) {
+    skipSpaces();
+    int end = cursor + token.length();
+    if (startsWith(token) && (end == buffer.limit() || isWhitespace(buffer.get(end)))) {
+      cursor = end;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Append the next whitespace-delimited token to a StringBuilder. This is
+   * intended for the (rare) text fields that must be retained.
+   *
+   * @param sb the destination
+   * @return the destination
+   */
+  public StringBuilder nextToken(StringBuilder sb) {
+    skipSpaces();
+    int limit = buffer.limit();
+    while (cursor < limit && !isWhitespace(buffer.get(cursor))) {
+      sb.append((char) buffer.get(cursor++));
+    }
+    return sb;
+  }
+
+  /**
+   * Copy the unread bytes of the current file and move the cursor to the end
+   * of the file. This is intended for small files handled by existing byte or
+   * String based parsers, which still benefit from the cached file channel.
+   *
+   * @return the remaining bytes
+   */
+  public byte[] remaining() {
+    byte[] bytes = new byte[buffer.limit() - cursor];
+    buffer.position(cursor);
+    buffer.get(bytes);
+    buffer.position(0);
+    cursor = buffer.limit();
+    return bytes;
+  }
+
+  /**
+   * Parse the next whitespace-delimited signed decimal integer.
+   *
+   * @return the value
+   * @throws NumberFormatException if the next token is not a number
+   */
+  public long nextLong() throws NumberFormatException {
+    skipSpaces();
+    int limit = buffer.limit();
+    boolean negative = false;
+    if (cursor < limit && (buffer.get(cursor) == '-' || buffer.get(cursor) == '+')) {
+      negative = buffer.get(cursor++) == '-';
+    }
+    int start = cursor;
+    long value = 0;
+    while (cursor < limit) {
+      int digit = buffer.get(cursor) - '0';
+      if (digit < 0 || digit > 9) {
+        break;
+      }
+      if (value > (Long.MAX_VALUE - digit) / 10) {
+        throw new NumberFormatException("Value out of range at offset " + start);
+      }
+      value = value * 10 + digit;
+      cursor++;
+    }
+    if (cursor == start) {
+      throw new NumberFormatException("Not a number at offset " + start);
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Parse the next whitespace-delimited signed decimal integer.
+   *
+   * @return the value
+   * @throws NumberFormatException if the next token is not a number or does
+   *                               not fit an int
+   */
+  public int nextInt() throws NumberFormatException {
+    long value = nextLong();
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      throw new NumberFormatException("Value out of range: " + value);
+    }
+    return (int) value;
+  }
+
+  /**
+   * Parse the next whitespace-delimited signed decimal value with an optional
+   * fraction. e.g. "12", "-3.25". Exponent notation, NaN and Infinity are not
+   * supported.
+   *
+   * @return the value
+   * @throws NumberFormatException if the next token is not a number
+   */
+  public double nextDouble() throws NumberFormatException {
+    skipSpaces();
+    int limit = buffer.limit();
+    boolean negative = false;
+    if (cursor < limit && (buffer.get(cursor) == '-' || buffer.get(cursor) == '+')) {
+      negative = buffer.get(cursor++) == '-';
+    }
+    int start = cursor;
+    double value = 0;
+    while (cursor < limit) {
+      int digit = buffer.get(cursor) - '0';
+      if (digit < 0 || digit > 9) {
+        break;
+      }
+      value = value * 10 + digit;
+      cursor++;
+    }
+    if (cursor == start) {
+      throw new NumberFormatException("Not a number at offset " + start);
+    }
+    if (cursor < limit && buffer.get(cursor) == '.') {
+      cursor++;
+      double scale = 0.1;
+      while (cursor < limit) {
+        int digit = buffer.get(cursor) - '0';
+        if (digit < 0 || digit > 9) {
+          break;
+        }
+        value += digit * scale;
+        scale /= 10;
+        cursor++;
+      }
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Parse the next whitespace-delimited unsigned hexadecimal integer. e.g.
+   * "0A", "0100007F".
+   *
+   * @return the value
+   * @throws NumberFormatException if the next token is not a hex number
+   */
+  public long nextHex() throws NumberFormatException {
+    skipSpaces();
+    int start = cursor;
+    long value = 0;
+    int limit = buffer.limit();
+    while (cursor < limit) {
+      int digit = Character.digit(buffer.get(cursor), 16);
+      if (digit < 0) {
+        break;
+      }
+      value = (value << 4) | digit;
+      cursor++;
+    }
+    if (cursor == start) {
+      throw new NumberFormatException("Not a hex number at offset " + start);
+    }
+    return value;
+  }
+
+  /**
+   * Verify that only whitespace remains after the cursor.
+   *
+   * @throws NumberFormatException if non-whitespace content remains
+   */
+  private void requireEnd() throws NumberFormatException {
+    int limit = buffer.limit();
+    for (int i = cursor; i < limit; i++) {
+      if (!isWhitespace(buffer.get(i))) {
+        throw new NumberFormatException("Unexpected content at offset " + i);
+      }
+    }
+  }
+
+  /**
+   * Close all open file channels held by this reader and release an oversized
+   * buffer. The reader remains usable and will re-open files as needed.
+   */
+  @Override
+  public void close() {
+    for (Iterator<FileChannel> it = channels.values().iterator(); it.hasNext();) {
+      closeQuietly(it.next());
+      it.remove();
+    }
+    if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+      buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+      buffer.limit(0);
+      cursor = 0;
+    }
+  }
+
+  /**
+   * Whitespace test: space, tab, carriage return or line feed.
+   *
+   * @param b the byte
+   * @return TRUE if whitespace
+   */
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+  }
+
+  /**
+   * Close a channel and ignore any error.
+   *
+   * @param channel the channel
+   */
+  private static void closeQuietly(FileChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException iOException) {
+    }
+  }
+
+}
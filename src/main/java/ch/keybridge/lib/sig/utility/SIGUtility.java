@@ -15,14 +15,12 @@
  */
 package ch.keybridge.lib.sig.utility;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -50,7 +48,11 @@ public class SIGUtility {
    */
   public static boolean canExecute(String command) {
     try {
-      return !execute("which", command).isEmpty();
+      /**
+       * which exits with status 1 (and no output) if the command is not found.
+       */
+      CommandResult result = new CommandRunner("which", command).run();
+      return result.isSuccess() && !result.getOutput().isEmpty();
     } catch (Exception ex) {
       Logger.getLogger(SIGUtility.class.getName()).log(Level.SEVERE, null, ex);
       return false;
@@ -60,21 +62,40 @@ public class SIGUtility {
 
   /**
    * Execute a system command and return the output in a String array.
+   * <p>
+   * The command is executed by a {@link CommandRunner} with the default
+   * timeout, maximum output size and process cap. A non-zero exit code is
+   * logged together with the standard error output and the output is returned
+   * (some commands, e.g. {@code df}, exit with an error after printing partial
+   * results). Output that exceeds the maximum size is an error.
    *
    * @param command the system command and arguments
    * @return the system command output
-   * @throws Exception if the command fails to execute.
+   * @throws Exception if the command fails to execute, times out or its output
+   *                   is truncated.
    */
   public static Collection<String> execute(String... command) throws Exception {
-    Process p = Runtime.getRuntime().exec(command);
-    Collection<String> output = new ArrayList<>();
-    try (BufferedReader input = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
-      String line;
-      while ((line = input.readLine()) != null) {
-        output.add(line.trim());
-      }
-    }
-    return output;
+    return check(new CommandRunner(command).run(), command).getOutput();
+  }
+
+  /**
+   * Execute a system command and stream each (trimmed) output line to a
+   * consumer as it is read, without materializing the output.
+   * <p>
+   * The consumer receives a reused buffer that is only valid for the duration
+   * of the call; copy (e.g. {@code toString()}) anything that must be retained.
+   * As with {@link #execute(String...)} a non-zero exit code is logged and
+   * output that exceeds the maximum size is an error.
+   *
+   * @param consumer the output line consumer
+   * @param command  the system command and arguments
+   * @return the command result (exit code and standard error)
+   * @throws Exception if the command fails to execute, times out or its output
+   *                   is truncated.
+   * @since 2.1.0
+   */
+  public static CommandResult execute(Consumer<CharSequence> consumer, String... command) throws Exception {
+    return check(new CommandRunner(command).run(consumer), command);
   }
 
   /**
@@ -110,20 +131,34 @@ public class SIGUtility {
    *
    * @param command the system command and arguments
    * @return the system command output
-   * @throws Exception if the command fails to execute.
+   * @throws Exception if the command fails to execute, times out or its output
+   *                   is truncated.
    */
   public static String executeSimple(String... command) throws Exception {
-    Process p = Runtime.getRuntime().exec(command);
     StringBuilder sb = new StringBuilder();
-    try (BufferedReader input = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
-      String line;
-      while ((line = input.readLine()) != null) {
-        sb.append(line.trim());
-      }
-    }
+    check(new CommandRunner(command).run(sb::append), command);
     return sb.toString();
   }
 
+  /**
+   * Check the result of a command. A non-zero exit code is logged.
+   *
+   * @param result  the command result
+   * @param command the system command and arguments
+   * @return the command result
+   * @throws IOException if the command output was truncated
+   */
+  private static CommandResult check(CommandResult result, String... command) throws IOException {
+    if (result.isTruncated()) {
+      throw new IOException(String.join(" ", command) + " output exceeded the maximum size and was truncated");
+    }
+    if (result.getExitCode() != 0) {
+      Logger.getLogger(SIGUtility.class.getName()).log(Level.WARNING, "{0} exited with status {1}: {2}",
+                                                       new Object[]{String.join(" ", command), result.getExitCode(), result.getError()});
+    }
+    return result;
+  }
+
   /**
    * Internal method read a file.
    *
@@ -148,6 +183,11 @@ public class SIGUtility {
 
   /**
    * Read a file and interpret its contents at a Double.
+   * <p>
+   * This reads the file via the current thread's {@link ProcFileReader} and
+   * does not create an intermediate String. Contents the reader does not
+   * accept (e.g. exponent notation, NaN) are parsed with
+   * {@code Double.valueOf(String)} as before.
    *
    * @param file the file
    * @return the file contents converted to the desired type
@@ -155,11 +195,19 @@ public class SIGUtility {
    * @throws NumberFormatException if the value fails to parse
    */
   public static Double readFileDouble(Path file) throws IOException, NumberFormatException {
-    return new Double(readFileString(file));
+    try {
+      return ProcFileReader.get().readDouble(file);
+    } catch (NumberFormatException exception) {
+      return Double.valueOf(readFileString(file));
+    }
   }
 
   /**
    * Read a file and interpret its contents at a Long.
+   * <p>
+   * This reads the file via the current thread's {@link ProcFileReader} and
+   * does not create an intermediate String. Contents the reader does not
+   * accept are parsed with {@code Long.valueOf(String)} as before.
    *
    * @param file the file
    * @return the file contents converted to the desired type
@@ -167,11 +215,19 @@ public class SIGUtility {
    * @throws NumberFormatException if the value fails to parse
    */
   public static Long readFileLong(Path file) throws IOException, NumberFormatException {
-    return new Long(readFileString(file));
+    try {
+      return ProcFileReader.get().readLong(file);
+    } catch (NumberFormatException exception) {
+      return Long.valueOf(readFileString(file));
+    }
   }
 
   /**
    * Read a file and interpret its contents at an Integer.
+   * <p>
+   * This reads the file via the current thread's {@link ProcFileReader} and
+   * does not create an intermediate String. Contents the reader does not
+   * accept are parsed with {@code Integer.valueOf(String)} as before.
    *
    * @param file the file
    * @return the file contents converted to the desired type
@@ -179,7 +235,11 @@ public class SIGUtility {
    * @throws NumberFormatException if the value fails to parse
    */
   public static Integer readFileInteger(Path file) throws IOException, NumberFormatException {
-    return new Integer(readFileString(file));
+    try {
+      return ProcFileReader.get().readInt(file);
+    } catch (NumberFormatException exception) {
+      return Integer.valueOf(readFileString(file));
+    }
   }
 
 }
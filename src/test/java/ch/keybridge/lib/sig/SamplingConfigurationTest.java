@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig;
+
+import ch.keybridge.lib.sig.SamplingConfiguration.ESubsystem;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Key Bridge LLC
+ */
+public class SamplingConfigurationTest {
+
+  @Test
+  public void testDefaults() {
+    SamplingConfiguration configuration = new SamplingConfiguration();
+    assertEquals(1000, configuration.getInterval(ESubsystem.CPU));
+    assertEquals(1000, configuration.getInterval(ESubsystem.MEMORY));
+    assertEquals(5000, configuration.getInterval(ESubsystem.NETWORK_INTERFACE));
+    assertEquals(30000, configuration.getInterval(ESubsystem.FILE_SYSTEM));
+    assertEquals(90000, configuration.getMaxAge(ESubsystem.FILE_SYSTEM));
+    for (ESubsystem subsystem : ESubsystem.values()) {
+      assertTrue(configuration.isEnabled(subsystem));
+    }
+  }
+
+  @Test
+  public void testSetInterval() {
+    SamplingConfiguration configuration = new SamplingConfiguration()
+      .setMaxAge(ESubsystem.CPU, 10, TimeUnit.SECONDS)
+      .setInterval(ESubsystem.CPU, 250, TimeUnit.MILLISECONDS)
+      .setInterval(ESubsystem.FILE_SYSTEM, 0, TimeUnit.SECONDS);
+    /**
+     * Setting the interval resets the maximum age.
+     */
+    assertEquals(250, configuration.getInterval(ESubsystem.CPU));
+    assertEquals(750, configuration.getMaxAge(ESubsystem.CPU));
+    configuration.setMaxAge(ESubsystem.CPU, 2, TimeUnit.SECONDS);
+    assertEquals(2000, configuration.getMaxAge(ESubsystem.CPU));
+    assertFalse(configuration.isEnabled(ESubsystem.FILE_SYSTEM));
+    assertTrue(configuration.isEnabled(ESubsystem.MEMORY));
+  }
+
+}
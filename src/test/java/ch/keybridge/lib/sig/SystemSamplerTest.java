@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig;
+
+import ch.keybridge.lib.sig.SamplingConfiguration.ESubsystem;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Key Bridge LLC
+ */
+public class SystemSamplerTest {
+
+  @Test
+  public void testGet() throws Exception {
+    SamplingConfiguration configuration = new SamplingConfiguration()
+      .setInterval(ESubsystem.CPU, 0, TimeUnit.SECONDS)
+      .setMaxAge(ESubsystem.CPU, 1, TimeUnit.HOURS)
+      .setInterval(ESubsystem.MEMORY, 0, TimeUnit.SECONDS);
+    SystemSampler sampler = new SystemSampler(configuration, new EnumMap<>(ESubsystem.class));
+    try {
+      AtomicInteger loads = new AtomicInteger();
+      Callable<Integer> loader = loads::incrementAndGet;
+      /**
+       * The first call loads and publishes; later calls within the maximum age
+       * return the cached value.
+       */
+      assertNull(sampler.getSample(ESubsystem.CPU));
+      assertEquals(Integer.valueOf(1), sampler.get(ESubsystem.CPU, loader));
+      assertEquals(Integer.valueOf(1), sampler.get(ESubsystem.CPU, loader));
+      assertEquals(1, sampler.getSample(ESubsystem.CPU).getValue());
+      /**
+       * A zero maximum age forces a synchronous reload once the value ages.
+       */
+      configuration.setMaxAge(ESubsystem.MEMORY, 0, TimeUnit.MILLISECONDS);
+      sampler.publish(ESubsystem.MEMORY, 0);
+      Thread.sleep(2);
+      assertEquals(Integer.valueOf(2), sampler.get(ESubsystem.MEMORY, loader));
+    } finally {
+      sampler.shutdown();
+    }
+  }
+
+  @Test
+  public void testIndependentSubsystems() throws Exception {
+    SamplingConfiguration configuration = new SamplingConfiguration()
+      .setInterval(ESubsystem.CPU, 10, TimeUnit.MILLISECONDS)
+      .setInterval(ESubsystem.FILE_SYSTEM, 10, TimeUnit.MILLISECONDS)
+      .setInterval(ESubsystem.MEMORY, 0, TimeUnit.SECONDS)
+      .setInterval(ESubsystem.NETWORK_INTERFACE, 0, TimeUnit.SECONDS);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch refreshed = new CountDownLatch(3);
+    AtomicInteger disabled = new AtomicInteger();
+    Map<ESubsystem, Callable<?>> loaders = new EnumMap<>(ESubsystem.class);
+    loaders.put(ESubsystem.CPU, () -> {
+      refreshed.countDown();
+      return "cpu";
+    });
+    /**
+     * A file system loader that hangs (e.g. a dead network mount).
+     */
+    loaders.put(ESubsystem.FILE_SYSTEM, () -> {
+      release.await();
+      return "fs";
+    });
+    loaders.put(ESubsystem.MEMORY, disabled::incrementAndGet);
+    SystemSampler sampler = new SystemSampler(configuration, loaders);
+    try {
+      assertTrue("CPU refresh blocked by the file system loader", refreshed.await(5, TimeUnit.SECONDS));
+      assertEquals("cpu", sampler.getSample(ESubsystem.CPU).getValue());
+      assertNull(sampler.getSample(ESubsystem.FILE_SYSTEM));
+      assertNull(sampler.getSample(ESubsystem.MEMORY));
+      assertEquals(0, disabled.get());
+    } finally {
+      release.countDown();
+      sampler.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig;
+
+import ch.keybridge.lib.sig.SystemSnapshot.ECollector;
+import ch.keybridge.lib.sig.hw.MemoryInfo;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Key Bridge LLC
+ */
+public class SystemSnapshotTest {
+
+  @Test
+  public void testSnapshot() throws Exception {
+    MemoryInfo memory = new MemoryInfo();
+    Map<ECollector, Callable<?>> collectors = new EnumMap<>(ECollector.class);
+    collectors.put(ECollector.MEMORY, () -> memory);
+    collectors.put(ECollector.SOCKET, () -> {
+      throw new IOException("denied");
+    });
+    SystemSnapshot snapshot = SystemInspectorGeneral.snapshot(collectors, 5, TimeUnit.SECONDS);
+    assertSame(memory, snapshot.getMemory());
+    assertNull(snapshot.getSockets());
+    assertNull(snapshot.getCpu());
+    assertFalse(snapshot.isComplete());
+    assertEquals(1, snapshot.getFailures().size());
+    assertEquals("denied", snapshot.getFailures().get(ECollector.SOCKET).getMessage());
+    assertTrue(snapshot.getTimestamp() > 0);
+  }
+
+  @Test
+  public void testHungCollector() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+    Map<ECollector, Callable<?>> collectors = new EnumMap<>(ECollector.class);
+    /**
+     * A collector that ignores interruption (e.g. blocked in a system call).
+     */
+    collectors.put(ECollector.NTP, () -> {
+      calls.incrementAndGet();
+      while (release.getCount() > 0) {
+        try {
+          release.await();
+        } catch (InterruptedException exception) {
+        }
+      }
+      return null;
+    });
+    collectors.put(ECollector.CPU, () -> "cpu");
+    try {
+      SystemSnapshot first = SystemInspectorGeneral.snapshot(collectors, 100, TimeUnit.MILLISECONDS);
+      assertTrue(first.getFailures().get(ECollector.NTP) instanceof TimeoutException);
+      /**
+       * The second snapshot skips the hung collector instead of queueing it.
+       */
+      SystemSnapshot second = SystemInspectorGeneral.snapshot(collectors, 5, TimeUnit.SECONDS);
+      assertTrue(second.getFailures().get(ECollector.NTP) instanceof RejectedExecutionException);
+      assertEquals(1, second.getFailures().size());
+      assertNotNull(second.getValue(ECollector.CPU));
+      assertTrue(second.getElapsed() < 5000);
+      assertEquals(1, calls.get());
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testSnapshotAll() {
+    SystemSnapshot snapshot = SystemInspectorGeneral.getInstance().snapshotAll(30, TimeUnit.SECONDS);
+    System.out.println(snapshot);
+    assertNotNull(snapshot.getMemory());
+    assertNotNull(snapshot.getProcesses());
+    assertTrue(snapshot.getElapsed() <= TimeUnit.SECONDS.toMillis(31));
+  }
+
+}
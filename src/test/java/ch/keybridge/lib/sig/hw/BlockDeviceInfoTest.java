@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Key Bridge LLC
+ */
+public class BlockDeviceInfoTest {
+
+  @Test
+  public void testRead() throws Exception {
+    Path sysClassBlock = Files.createTempDirectory("block");
+    Path sda = Files.createDirectories(sysClassBlock.resolve("sda").resolve("queue"));
+    write(sda.resolve("rotational"), "1\n");
+    write(sda.resolve("scheduler"), "mq-deadline kyber [bfq] none\n");
+    write(sda.resolve("logical_block_size"), "512\n");
+    write(sda.resolve("nr_requests"), "64\n");
+    Path sda1 = Files.createDirectories(sysClassBlock.resolve("sda").resolve("sda1"));
+    write(sda1.resolve("partition"), "1\n");
+    Files.createSymbolicLink(sysClassBlock.resolve("sda1"), sda1);
+
+    List<BlockDeviceInfo> devices = BlockDeviceInfo.read(resource("proc.diskstats.txt"), sysClassBlock, Arrays.asList(
+                                                         MountInfo.parse("1 0 8:1 / / rw - ext4 /dev/sda1 rw"),
+                                                         MountInfo.parse("2 1 8:1 /srv /srv rw - ext4 /dev/sda1 rw"),
+                                                         MountInfo.parse("3 1 253:0 / /home rw - xfs /dev/mapper/vg-home rw")));
+    assertEquals(4, devices.size());
+    assertTrue(devices.get(0).isIdle());
+    assertNull(devices.get(0).getRotational());
+
+    BlockDeviceInfo disk = devices.get(1);
+    assertEquals("sda", disk.getName());
+    assertEquals(8, disk.getMajor());
+    assertEquals(0, disk.getMinor());
+    assertFalse(disk.isPartition());
+    assertEquals(120432, disk.getCounter(BlockDeviceInfo.READS));
+    assertEquals(9876544L * 512, disk.getReadBytes());
+    assertEquals(2, disk.getCounter(BlockDeviceInfo.IN_FLIGHT));
+    assertEquals(900, disk.getCounter(BlockDeviceInfo.FLUSH_TIME));
+    assertEquals(Boolean.TRUE, disk.getRotational());
+    assertEquals("bfq", disk.getScheduler());
+    assertEquals(Integer.valueOf(512), disk.getLogicalBlockSize());
+    assertEquals(Integer.valueOf(64), disk.getNrRequests());
+    assertTrue(disk.getMountPoints().isEmpty());
+
+    BlockDeviceInfo partition = devices.get(2);
+    assertTrue(partition.isPartition());
+    assertEquals("bfq", partition.getScheduler());
+    assertEquals(Arrays.asList("/", "/srv"), partition.getMountPoints());
+    /**
+     * Older kernels report 11 counters.
+     */
+    BlockDeviceInfo dm = devices.get(3);
+    assertEquals(9149, dm.getCounter(BlockDeviceInfo.WEIGHTED_IO_TIME));
+    assertEquals(-1, dm.getCounter(BlockDeviceInfo.DISCARDS));
+    assertEquals(Collections.singletonList("/home"), dm.getMountPoints());
+  }
+
+  @Test
+  public void testSampler() throws Exception {
+    Path diskstats = Files.createTempFile("diskstats", ".txt");
+    BlockDeviceSampler sampler = new BlockDeviceSampler(diskstats);
+    write(diskstats, "   8       0 sda 1000 0 8000 2000 500 0 16000 3000 0 1000 5000\n");
+    sampler.sample(1_000_000_000L);
+    assertTrue(Double.isNaN(sampler.getIops("sda")));
+    /**
+     * Over two seconds: 200 reads of 4 KB taking 400 ms, 100 writes of 8 KB
+     * taking 500 ms, 1500 ms busy and 2400 ms of weighted queue time.
+     */
+    write(diskstats, "   8       0 sda 1200 0 9600 2400 600 0 17600 3500 3 2500 7400\n");
+    sampler.sample(3_000_000_000L);
+    assertEquals(Collections.singleton("sda"), sampler.getDeviceNames());
+    assertEquals(150, sampler.getIops("sda"), 1e-9);
+    assertEquals(100 * 4096, sampler.getReadBytes("sda"), 1e-9);
+    assertEquals(50 * 8192, sampler.getWriteBytes("sda"), 1e-9);
+    assertEquals(2, sampler.getReadAwait("sda"), 1e-9);
+    assertEquals(5, sampler.getWriteAwait("sda"), 1e-9);
+    assertEquals(3, sampler.getAwait("sda"), 1e-9);
+    assertEquals(5, sampler.getServiceTime("sda"), 1e-9);
+    assertEquals(1.2, sampler.getQueueDepth("sda"), 1e-9);
+    assertEquals(75, sampler.getUtilization("sda"), 1e-9);
+    assertEquals(3, sampler.getRate("sda", BlockDeviceInfo.IN_FLIGHT), 1e-9);
+    assertTrue(Double.isNaN(sampler.getRate("sda", BlockDeviceInfo.DISCARDS)));
+    /**
+     * A counter reset restarts the baseline; a removed device is dropped.
+     */
+    write(diskstats, "   8       0 sda 10 0 80 20 5 0 160 30 0 10 50\n");
+    sampler.sample(4_000_000_000L);
+    assertTrue(Double.isNaN(sampler.getIops("sda")));
+    write(diskstats, "   8      16 sdb 10 0 80 20 5 0 160 30 0 10 50\n");
+    sampler.sample(5_000_000_000L);
+    assertEquals(Collections.singleton("sdb"), sampler.getDeviceNames());
+    Files.delete(diskstats);
+  }
+
+  @Test
+  public void testGetAllDevices() throws Exception {
+    if (!Files.exists(Paths.get("/proc/diskstats"))) {
+      return;
+    }
+    for (BlockDeviceInfo device : BlockDeviceInfo.getAllDevices()) {
+      System.out.println(device);
+    }
+  }
+
+  private static void write(Path file, String content) throws Exception {
+    Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private Path resource(String resource) throws Exception {
+    return Paths.get(BlockDeviceInfoTest.class.getClassLoader().getResource(resource).toURI());
+  }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Key Bridge LLC
+ */
+public class CgroupInfoTest {
+
+  private static final long SECOND = 1_000_000_000L;
+
+  @Test
+  public void testLocateAndRead() throws Exception {
+    Path root = Files.createTempDirectory("cgroup");
+    Path directory = Files.createDirectories(root.resolve("system.slice/app.service"));
+    Path cgroup = root.resolve("cgroup");
+    Path mountinfo = root.resolve("mountinfo");
+    write(cgroup, "1:cpu:/\n0::/system.slice/app.service\n");
+    write(mountinfo, "22 1 8:1 / / rw,relatime shared:1 - ext4 /dev/sda1 rw\n"
+                     + "30 22 0:26 / " + root.toString().replace(" ", "\\040") + " rw,nosuid shared:4 - cgroup2 cgroup2 rw,nsdelegate\n");
+    assertEquals(directory, CgroupInfo.locate(cgroup, mountinfo));
+    write(cgroup, "4:memory:/docker/abc\n");
+    assertNull(CgroupInfo.locate(cgroup, mountinfo));
+
+    write(directory.resolve("memory.current"), "104857600\n");
+    write(directory.resolve("memory.max"), "209715200\n");
+    write(directory.resolve("memory.stat"), "anon 52428800\nfile 41943040\npgfault 1000\npgmajfault 10\n");
+    write(directory.resolve("cpu.max"), "150000 100000\n");
+    write(directory.resolve("cpu.stat"), "usage_usec 5000000\nuser_usec 4000000\nsystem_usec 1000000\nnr_periods 100\nnr_throttled 5\nthrottled_usec 20000\n");
+    write(directory.resolve("io.stat"), "8:0 rbytes=4096 wbytes=8192 rios=1 wios=2 dbytes=0 dios=0\n8:16 rbytes=4096 wbytes=0 rios=1 wios=0 dbytes=0 dios=0\n");
+    CgroupInfo info = CgroupInfo.read(directory);
+    assertEquals(Long.valueOf(104857600), info.getMemoryCurrent());
+    assertEquals(Long.valueOf(209715200), info.getMemoryMax());
+    assertEquals(Long.valueOf(104857600), info.getMemoryAvailable());
+    assertEquals(Long.valueOf(52428800), info.getMemoryStat().get("anon"));
+    assertEquals(1.5, info.getCpuLimit(), 0.001);
+    assertTrue(info.getAvailableProcessors() <= 2);
+    assertEquals(Long.valueOf(5), info.getCpuStat().get("nr_throttled"));
+    assertEquals(Long.valueOf(8192), info.getIoStat().get("rbytes"));
+
+    CgroupSampler sampler = new CgroupSampler(directory);
+    sampler.sample(SECOND);
+    assertTrue(Double.isNaN(sampler.getCpuUsage()));
+    write(directory.resolve("cpu.stat"), "usage_usec 7000000\nuser_usec 5500000\nsystem_usec 1500000\nnr_periods 120\nnr_throttled 10\nthrottled_usec 40000\n");
+    write(directory.resolve("io.stat"), "8:0 rbytes=12288 wbytes=8192 rios=3 wios=2 dbytes=0 dios=0\n8:16 rbytes=4096 wbytes=4096 rios=1 wios=1 dbytes=0 dios=0\n");
+    write(directory.resolve("memory.stat"), "anon 52428800\nfile 41943040\npgfault 3000\npgmajfault 12\n");
+    sampler.sample(3 * SECOND);
+    assertEquals(1.0, sampler.getCpuUsage(), 0.001);
+    assertEquals(66.667, sampler.getCpuPercentOfLimit(), 0.001);
+    assertEquals(25.0, sampler.getThrottledPercent(), 0.001);
+    assertEquals(4096.0, sampler.getRate(CgroupSampler.IO_READ_BYTES), 0.001);
+    assertEquals(2048.0, sampler.getRate(CgroupSampler.IO_WRITE_BYTES), 0.001);
+    assertEquals(0.5, sampler.getRate(CgroupSampler.IO_WRITE_OPS), 0.001);
+    assertEquals(1000.0, sampler.getRate(CgroupSampler.PGFAULT), 0.001);
+
+    /**
+     * Unlimited quota.
+     */
+    write(directory.resolve("cpu.max"), "max 100000\n");
+    assertNull(CgroupInfo.read(directory).getCpuLimit());
+  }
+
+  private static void write(Path file, String contents) throws Exception {
+    Files.write(file, contents.getBytes(StandardCharsets.US_ASCII));
+  }
+
+}
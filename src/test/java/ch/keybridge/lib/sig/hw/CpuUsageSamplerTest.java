@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Key Bridge LLC
+ */
+public class CpuUsageSamplerTest {
+
+  @Test
+  public void testSample() throws Exception {
+    Path stat = Files.createTempFile("stat", ".txt");
+    try {
+      Files.write(stat, ("cpu  100 0 100 800 0 0 0 0 0 0\n"
+                         + "cpu0 50 0 50 400 0 0 0 0 0 0\n"
+                         + "cpu1 50 0 50 400 0 0 0 0 0 0\n"
+                         + "intr 1 2 3\nctxt 100\n").getBytes(StandardCharsets.US_ASCII));
+      CpuUsageSampler sampler = new CpuUsageSampler(stat);
+      sampler.sample();
+      assertEquals(2, sampler.getCpuCount());
+      assertEquals(20.0, sampler.getUsage(), 0.001);
+      /**
+       * cpu0 fully busy (user), cpu1 half iowait and half steal.
+       */
+      Files.write(stat, ("cpu  200 0 100 800 50 0 0 50 0 0\n"
+                         + "cpu0 150 0 50 400 0 0 0 0 0 0\n"
+                         + "cpu1 50 0 50 400 50 0 0 50 0 0\n"
+                         + "intr 1 2 3\nctxt 100\n").getBytes(StandardCharsets.US_ASCII));
+      sampler.sample();
+      assertEquals(75.0, sampler.getUsage(), 0.001);
+      assertEquals(100.0, sampler.getUsage(0), 0.001);
+      assertEquals(50.0, sampler.getUsage(1), 0.001);
+      assertEquals(50.0, sampler.getPercent(1, CpuUsageSampler.IOWAIT), 0.001);
+      assertEquals(25.0, sampler.getPercent(CpuUsageSampler.AGGREGATE, CpuUsageSampler.STEAL), 0.001);
+      /**
+       * cpu1 goes offline.
+       */
+      Files.write(stat, ("cpu  300 0 100 800 50 0 0 50 0 0\n"
+                         + "cpu0 250 0 50 400 0 0 0 0 0 0\n"
+                         + "intr 1 2 3\n").getBytes(StandardCharsets.US_ASCII));
+      sampler.sample();
+      assertEquals(100.0, sampler.getUsage(0), 0.001);
+      assertTrue(Double.isNaN(sampler.getUsage(1)));
+      /**
+       * Sampled again within the same jiffy: the previous values are kept.
+       */
+      sampler.sample();
+      assertEquals(100.0, sampler.getUsage(0), 0.001);
+      assertEquals(100.0, sampler.getUsage(), 0.001);
+      /**
+       * cpu1 comes back online and cpu2 is hot-added: both start a new
+       * baseline rather than reporting their since-boot average.
+       */
+      Files.write(stat, ("cpu  400 0 200 900 50 0 0 50 0 0\n"
+                         + "cpu0 300 0 50 450 0 0 0 0 0 0\n"
+                         + "cpu1 50 0 100 400 50 0 0 50 0 0\n"
+                         + "cpu2 0 0 50 50 0 0 0 0 0 0\n"
+                         + "intr 1 2 3\n").getBytes(StandardCharsets.US_ASCII));
+      sampler.sample();
+      assertEquals(3, sampler.getCpuCount());
+      assertEquals(50.0, sampler.getUsage(0), 0.001);
+      assertTrue(Double.isNaN(sampler.getUsage(1)));
+      assertTrue(Double.isNaN(sampler.getUsage(2)));
+      Files.write(stat, ("cpu  500 0 200 1000 50 0 0 50 0 0\n"
+                         + "cpu0 300 0 50 500 0 0 0 0 0 0\n"
+                         + "cpu1 100 0 100 400 50 0 0 50 0 0\n"
+                         + "cpu2 50 0 50 100 0 0 0 0 0 0\n"
+                         + "intr 1 2 3\n").getBytes(StandardCharsets.US_ASCII));
+      sampler.sample();
+      assertEquals(0.0, sampler.getUsage(0), 0.001);
+      assertEquals(100.0, sampler.getUsage(1), 0.001);
+      assertEquals(50.0, sampler.getUsage(2), 0.001);
+    } finally {
+      Files.delete(stat);
+    }
+  }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Key Bridge LLC
+ */
+public class FileSystemInfoTest {
+
+  @Test
+  public void testParseMountInfo() {
+    MountInfo mount = MountInfo.parse("36 35 98:0 /mnt1 /mnt/my\\040disk rw,noatime master:1 - ext3 /dev/root rw,errors=continue");
+    assertEquals(36, mount.getMountId());
+    assertEquals(98, mount.getMajor());
+    assertEquals(0, mount.getMinor());
+    assertEquals("/mnt1", mount.getRoot());
+    assertEquals("/mnt/my disk", mount.getMountPoint());
+    assertEquals("ext3", mount.getType());
+    assertEquals("/dev/root", mount.getSource());
+    assertFalse(mount.isReadOnly());
+    /**
+     * No optional fields.
+     */
+    mount = MountInfo.parse("25 1 0:22 / /sys/fs/cgroup ro,nosuid - cgroup2 cgroup2 rw");
+    assertEquals("cgroup2", mount.getType());
+    assertTrue(mount.isReadOnly());
+    assertNull(MountInfo.parse("25 1 0:22 / /sys/fs/cgroup ro,nosuid cgroup2 cgroup2 rw"));
+  }
+
+  @Test
+  public void testGetAllInstances() throws Exception {
+    Path directory = Files.createTempDirectory("sig fs");
+    Path bind = Files.createTempDirectory("sig");
+    String escaped = directory.toString().replace(" ", "\\040");
+    /**
+     * A bind mount shares the source of the original mount.
+     */
+    List<FileSystemInfo> fsInfo = new ArrayList<>(FileSystemInfo.getAllInstances(Arrays.asList(
+      MountInfo.parse("1 0 8:1 / " + escaped + " rw - ext4 /dev/sda1 rw"),
+      MountInfo.parse("2 0 0:5 / " + escaped + " rw - tmpfs tmpfs rw"),
+      MountInfo.parse("3 0 8:2 / /nonexistent/mount rw - ext4 /dev/sda2 rw"),
+      MountInfo.parse("4 0 8:1 /srv " + bind + " rw - ext4 /dev/sda1 rw")),
+                                                                                        FileSystemInfo.EXCLUDED_TYPES, 5, TimeUnit.SECONDS));
+    assertEquals(2, fsInfo.size());
+    FileSystemInfo fs = fsInfo.get(0);
+    assertEquals("/dev/sda1", fs.getName());
+    assertEquals("ext4", fs.getType());
+    assertEquals(directory.toString(), fs.getMountPoint());
+    assertTrue(fs.getSize() > 0);
+    assertTrue(fs.getUsed() + fs.getAvailable() <= fs.getSize());
+    assertEquals("/dev/sda1", fsInfo.get(1).getName());
+    assertEquals(bind.toString(), fsInfo.get(1).getMountPoint());
+    Files.delete(directory);
+    Files.delete(bind);
+  }
+
+  @Test
+  public void testUsedPercent() {
+    FileSystemInfo fs = new FileSystemInfo();
+    assertNull(fs.getUsedPercent());
+    fs.setSize(0L);
+    fs.setUsed(0L);
+    assertEquals(0, fs.getUsedPercent(), 0);
+    fs.setSize(200L);
+    fs.setUsed(50L);
+    assertEquals(0.25, fs.getUsedPercent(), 1e-9);
+    assertNull(fs.getInodesUsedPercent());
+    fs.setInodes(1000L);
+    fs.setInodesFree(900L);
+    assertEquals(Long.valueOf(100), fs.getInodesUsed());
+    assertEquals(0.1, fs.getInodesUsedPercent(), 1e-9);
+  }
+
+  @Test
+  public void testHistory() {
+    FileSystemHistory history = new FileSystemHistory(4);
+    /**
+     * Capacity grows 10 KB/s with 1000 KB available at the last sample;
+     * inodes grow 2 per second with 950 free.
+     */
+    for (int i = 0; i < 10; i++) {
+      history.update(Arrays.asList(fs("/data", 100 + 10 * i, 1090 - 10 * i, 1000, 968 - 2 * i),
+                                   fs("/static", 500, 500, 1000, 500)), i * 1_000_000_000L);
+      if (i == 0) {
+        assertTrue(Double.isNaN(history.getTimeToFull("/data")));
+      }
+    }
+    assertEquals(10, history.getGrowthRate("/data"), 1e-9);
+    assertEquals(100, history.getTimeToFull("/data"), 1e-6);
+    assertEquals(2, history.getInodeGrowthRate("/data"), 1e-9);
+    assertEquals(475, history.getTimeToInodeExhaustion("/data"), 1e-6);
+    assertEquals(0, history.getGrowthRate("/static"), 1e-9);
+    assertEquals(Double.POSITIVE_INFINITY, history.getTimeToFull("/static"), 0);
+    /**
+     * Only the last four samples are fitted.
+     */
+    history.update(Arrays.asList(fs("/data", 250, 940, 1000, 950)), 10_000_000_000L);
+    assertEquals(25, history.getGrowthRate("/data"), 1e-9);
+    assertEquals(Collections.singleton("/data"), history.getMountPoints());
+  }
+
+  private static FileSystemInfo fs(String mountPoint, long used, long available, long inodes, long inodesFree) {
+    FileSystemInfo fs = new FileSystemInfo();
+    /**
+     * All mounts share one source, as bind mounts do.
+     */
+    fs.setName("/dev/sda1");
+    fs.setMountPoint(mountPoint);
+    fs.setSize(used + available);
+    fs.setUsed(used);
+    fs.setAvailable(available);
+    fs.setInodes(inodes);
+    fs.setInodesFree(inodesFree);
+    return fs;
+  }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw;
+
+import ch.keybridge.lib.sig.hw.MemoryInfo.EMemoryField;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Key Bridge LLC
+ */
+public class MemoryInfoTest {
+
+  @Test
+  public void testRefresh() throws Exception {
+    MemoryInfo memory = new MemoryInfo().refresh(Paths.get(MemoryInfoTest.class.getClassLoader().getResource("proc.meminfo.txt").toURI()));
+    assertEquals(Long.valueOf(6158152), memory.getTotal());
+    assertEquals(Long.valueOf(5661936), memory.getAvailable());
+    assertEquals(Long.valueOf(521416), memory.getCached());
+    assertEquals(Long.valueOf(948), memory.getDirty());
+    assertEquals(Long.valueOf(337372), memory.getCommitted());
+    assertEquals(Long.valueOf(0), memory.getHugePagesTotal());
+    assertEquals(Long.valueOf(2048), memory.getHugePageSize());
+    assertEquals(185508, memory.get(EMemoryField.ACTIVE_FILE));
+    /**
+     * Not reported by this kernel.
+     */
+    assertNull(memory.getValue(EMemoryField.CMA_TOTAL));
+    assertEquals(-1, memory.get(EMemoryField.CMA_TOTAL));
+    MemoryInfo copy = memory.copy();
+
+    /**
+     * Without MemAvailable the estimate is MemFree + Active(file) +
+     * Inactive(file) + SReclaimable. Unknown fields are ignored.
+     */
+    Path meminfo = Files.createTempFile("meminfo", ".txt");
+    try {
+      Files.write(meminfo, ("MemTotal:        1000 kB\nMemFree:          100 kB\nNewField:          5 kB\n"
+                            + "Active(file):      20 kB\nInactive(file):    30 kB\nSReclaimable:      40 kB\n").getBytes(StandardCharsets.US_ASCII));
+      memory.refresh(meminfo);
+      assertEquals(Long.valueOf(1000), memory.getTotal());
+      assertEquals(Long.valueOf(190), memory.getAvailable());
+      assertNull(memory.getCached());
+      /**
+       * The copy is not affected by a refresh of the original.
+       */
+      assertEquals(Long.valueOf(6158152), copy.getTotal());
+      assertEquals(Long.valueOf(521416), copy.getCached());
+    } finally {
+      Files.delete(meminfo);
+    }
+  }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw;
+
+import ch.keybridge.lib.sig.hw.MemoryPressureSampler.EResource;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Key Bridge LLC
+ */
+public class MemoryPressureSamplerTest {
+
+  private static final long SECOND = 1_000_000_000L;
+
+  @Test
+  public void testSample() throws Exception {
+    Path directory = Files.createTempDirectory("proc");
+    Path vmstat = directory.resolve("vmstat");
+    Path pressure = Files.createDirectories(directory.resolve("pressure"));
+    MemoryPressureSampler sampler = new MemoryPressureSampler(vmstat, pressure);
+
+    write(vmstat, "nr_free_pages 1000\npgfault 100\npgmajfault 10\npswpin 0\npswpout 0\nallocstall_normal 1\nallocstall_movable 1\n"
+                  + "pgsteal_kswapd 50\npgsteal_direct 10\npgscan_kswapd 100\npgscan_direct 20\npgscan_direct_throttle 7\npgscan_anon 60\npgscan_file 60\noom_kill 0\n");
+    write(pressure.resolve("memory"), "some avg10=1.50 avg60=0.75 avg300=0.10 total=1000000\nfull avg10=0.50 avg60=0.25 avg300=0.05 total=200000\n");
+    sampler.sample(SECOND);
+    assertTrue(Double.isNaN(sampler.getRate(MemoryPressureSampler.PGFAULT)));
+    assertEquals(120, sampler.getValue(MemoryPressureSampler.PGSCAN));
+    assertEquals(60, sampler.getValue(MemoryPressureSampler.PGSTEAL));
+    assertEquals(2, sampler.getValue(MemoryPressureSampler.ALLOCSTALL));
+    assertEquals(1.5, sampler.getAverage(EResource.memory, MemoryPressureSampler.SOME, 10), 0.001);
+    assertEquals(0.05, sampler.getAverage(EResource.memory, MemoryPressureSampler.FULL, 300), 0.001);
+    /**
+     * PSI not available for this resource.
+     */
+    assertTrue(Double.isNaN(sampler.getAverage(EResource.io, MemoryPressureSampler.SOME, 10)));
+
+    write(vmstat, "nr_free_pages 900\npgfault 300\npgmajfault 30\npswpin 4\npswpout 8\nallocstall_normal 3\nallocstall_movable 1\n"
+                  + "pgsteal_kswapd 70\npgsteal_direct 30\npgscan_kswapd 140\npgscan_direct 40\npgscan_direct_throttle 9\npgscan_anon 90\npgscan_file 90\noom_kill 1\n");
+    write(pressure.resolve("memory"), "some avg10=2.00 avg60=1.00 avg300=0.20 total=1500000\nfull avg10=0.50 avg60=0.25 avg300=0.05 total=300000\n");
+    sampler.sample(3 * SECOND);
+    assertEquals(100.0, sampler.getRate(MemoryPressureSampler.PGFAULT), 0.001);
+    assertEquals(10.0, sampler.getRate(MemoryPressureSampler.PGMAJFAULT), 0.001);
+    assertEquals(2.0, sampler.getRate(MemoryPressureSampler.PSWPIN), 0.001);
+    assertEquals(4.0, sampler.getRate(MemoryPressureSampler.PSWPOUT), 0.001);
+    assertEquals(30.0, sampler.getRate(MemoryPressureSampler.PGSCAN), 0.001);
+    assertEquals(20.0, sampler.getRate(MemoryPressureSampler.PGSTEAL), 0.001);
+    assertEquals(1.0, sampler.getRate(MemoryPressureSampler.ALLOCSTALL), 0.001);
+    assertEquals(0.5, sampler.getRate(MemoryPressureSampler.OOM_KILL), 0.001);
+    /**
+     * 500 ms stalled over 2 seconds.
+     */
+    assertEquals(25.0, sampler.getStallPercent(EResource.memory, MemoryPressureSampler.SOME), 0.001);
+    assertEquals(5.0, sampler.getStallPercent(EResource.memory, MemoryPressureSampler.FULL), 0.001);
+    assertTrue(Double.isNaN(sampler.getStallPercent(EResource.cpu, MemoryPressureSampler.SOME)));
+  }
+
+  private static void write(Path file, String contents) throws Exception {
+    Files.write(file, contents.getBytes(StandardCharsets.US_ASCII));
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw.net;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Key Bridge LLC
+ */
+public class NetworkInterfaceInfoTest {
+
+  @Test
+  public void testSinglePass() throws Exception {
+    Path directory = Files.createTempDirectory("net");
+    Path dev = directory.resolve("dev");
+    Path sys = directory.resolve("class");
+    write(dev, "Inter-|   Receive                                                |  Transmit\n"
+               + " face |bytes    packets errs drop fifo frame compressed multicast|bytes    packets errs drop fifo colls carrier compressed\n"
+               + "    lo:     500       5    0    0    0     0          0         0      500       5    0    0    0     0       0          0\n"
+               + "  eth0:1234567      80    1    2    3     4          5         6     2172      25    7    8    9    10      11          0\n");
+    write(sys.resolve("lo/ifindex"), "1\n");
+    write(sys.resolve("lo/address"), "00:00:00:00:00:00\n");
+    write(sys.resolve("lo/operstate"), "unknown\n");
+    write(sys.resolve("eth0/ifindex"), "2\n");
+    write(sys.resolve("eth0/address"), "52:54:00:12:34:56\n");
+    write(sys.resolve("eth0/operstate"), "up\n");
+    write(sys.resolve("eth0/speed"), "1000\n");
+    write(sys.resolve("eth0/duplex"), "full\n");
+
+    Map<String, NetworkInterfaceInfo> networks = parse(dev, sys);
+    assertEquals(2, networks.size());
+    NetworkInterfaceInfo eth0 = networks.get("eth0");
+    assertEquals(Long.valueOf(1234567), eth0.getRxBytes());
+    assertEquals(Long.valueOf(80), eth0.getRxPackets());
+    assertEquals(Long.valueOf(1), eth0.getRxErrors());
+    assertEquals(Long.valueOf(2), eth0.getRxDropped());
+    assertEquals(Long.valueOf(6), eth0.getMulticast());
+    assertEquals(Long.valueOf(2172), eth0.getTxBytes());
+    assertEquals(Long.valueOf(25), eth0.getTxPackets());
+    assertEquals(Long.valueOf(7), eth0.getTxErrors());
+    assertEquals(Long.valueOf(8), eth0.getTxDropped());
+    assertEquals(Long.valueOf(10), eth0.getCollisions());
+    assertEquals(Long.valueOf(11), eth0.getTxCarrier());
+    assertEquals("52:54:00:12:34:56", eth0.getMacAddress());
+    assertEquals(NetworkInterfaceInfo.ELinkState.up, eth0.getLinkState());
+    assertEquals(Integer.valueOf(1000), eth0.getSpeed());
+    assertEquals(NetworkInterfaceInfo.EDuplex.full, eth0.getDuplex());
+    assertNull(networks.get("lo").getSpeed());
+    /**
+     * Slow attributes are cached by ifindex until the link state changes.
+     */
+    write(sys.resolve("eth0/speed"), "100\n");
+    assertEquals(Integer.valueOf(1000), parse(dev, sys).get("eth0").getSpeed());
+    write(sys.resolve("eth0/operstate"), "down\n");
+    eth0 = parse(dev, sys).get("eth0");
+    assertEquals(NetworkInterfaceInfo.ELinkState.down, eth0.getLinkState());
+    assertEquals(Integer.valueOf(100), eth0.getSpeed());
+  }
+
+  @Test
+  public void testQuery() throws Exception {
+    Path directory = Files.createTempDirectory("net");
+    Path dev = directory.resolve("dev");
+    Path sys = directory.resolve("class");
+    write(dev, "Inter-|   Receive                                                |  Transmit\n"
+               + " face |bytes    packets errs drop fifo frame compressed multicast|bytes    packets errs drop fifo colls carrier compressed\n"
+               + "    lo: 500 5 0 0 0 0 0 0 500 5 0 0 0 0 0 0\n"
+               + "  eth0: 100 1 0 0 0 0 0 0 200 2 0 0 0 0 0 0\n"
+               + "   br0: 300 3 0 0 0 0 0 0 400 4 0 0 0 0 0 0\n"
+               + "vethab12: 500 5 0 0 0 0 0 0 600 6 0 0 0 0 0 0\n"
+               + "vethcd34: 700 7 0 0 0 0 0 0 800 8 0 0 0 0 0 0\n");
+    for (String name : new String[]{"lo", "eth0", "br0", "vethab12", "vethcd34"}) {
+      Files.createDirectories(sys.resolve(name));
+    }
+    Files.createDirectories(sys.resolve("eth0/device"));
+    Files.createDirectories(sys.resolve("br0/bridge"));
+
+    List<NetworkInterfaceInfo> veth = new NetworkInterfaceQuery(dev, sys).withName("veth*").list();
+    assertEquals(2, veth.size());
+    assertEquals("vethab12", veth.get(0).getName());
+    assertEquals(Long.valueOf(600), veth.get(0).getTxBytes());
+    assertNull(veth.get(0).getType());
+
+    assertEquals(1, new NetworkInterfaceQuery(dev, sys).withName("veth[!a]*").list().size());
+    assertEquals(2, new NetworkInterfaceQuery(dev, sys).withPattern("eth\\d+").withName("lo").list().size());
+    try {
+      new NetworkInterfaceQuery(dev, sys).withName("eth[");
+      fail("Expected an unterminated character class to be rejected");
+    } catch (IllegalArgumentException exception) {
+    }
+
+    List<NetworkInterfaceInfo> physical = new NetworkInterfaceQuery(dev, sys).withType(NetworkInterfaceInfo.EInterfaceType.PHYSICAL).list();
+    assertEquals(1, physical.size());
+    assertEquals("eth0", physical.get(0).getName());
+    assertEquals(NetworkInterfaceInfo.EInterfaceType.PHYSICAL, physical.get(0).getType());
+
+    List<NetworkInterfaceInfo> bridges = new NetworkInterfaceQuery(dev, sys)
+      .withType(NetworkInterfaceInfo.EInterfaceType.BRIDGE)
+      .withAttributes(NetworkInterfaceQuery.EAttributeGroup.IPV6)
+      .list();
+    assertEquals("br0", bridges.get(0).getName());
+    assertNull(bridges.get(0).getRxBytes());
+    assertEquals(3, new NetworkInterfaceQuery(dev, sys).withType(NetworkInterfaceInfo.EInterfaceType.VIRTUAL).list().size());
+  }
+
+  private static Map<String, NetworkInterfaceInfo> parse(Path dev, Path sys) throws Exception {
+    Map<String, NetworkInterfaceInfo> networks = new HashMap<>();
+    for (NetworkInterfaceInfo network : NetworkInterfaceInfo.getAllInterfaces(dev, sys)) {
+      networks.put(network.getName(), network);
+    }
+    return networks;
+  }
+
+  private static void write(Path file, String contents) throws Exception {
+    Files.createDirectories(file.getParent());
+    Files.write(file, contents.getBytes(StandardCharsets.US_ASCII));
+  }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw.net;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Key Bridge LLC
+ */
+public class NetworkRateSamplerTest {
+
+  private static final String HEADER = "Inter-|   Receive                                                |  Transmit\n"
+                                       + " face |bytes    packets errs drop fifo frame compressed multicast|bytes    packets errs drop fifo colls carrier compressed\n";
+  private static final long SECOND = 1_000_000_000L;
+
+  @Test
+  public void testSample() throws Exception {
+    Path directory = Files.createTempDirectory("net");
+    Path dev = directory.resolve("dev");
+    Path sys = directory.resolve("class");
+    Path ifindex = Files.createDirectories(sys.resolve("eth0")).resolve("ifindex");
+    Files.write(ifindex, "2\n".getBytes(StandardCharsets.US_ASCII));
+
+    NetworkRateSampler sampler = new NetworkRateSampler(dev, sys);
+    write(dev, "  eth0: 1000 10 0 0 0 0 0 0 2000 20 0 0 0 0 0 0\n    lo: 5 1 0 0 0 0 0 0 5 1 0 0 0 0 0 0\n");
+    sampler.sample(0);
+    assertEquals(new TreeSet<>(Arrays.asList("eth0", "lo")), sampler.getInterfaceNames());
+    assertTrue(Double.isNaN(sampler.getRate("eth0", NetworkRateSampler.RX_BYTES)));
+
+    write(dev, "  eth0: 3000 30 1 2 0 0 0 0 6000 60 0 4 0 0 0 0\n");
+    sampler.sample(2 * SECOND);
+    assertEquals(1000.0, sampler.getRate("eth0", NetworkRateSampler.RX_BYTES), 0.001);
+    assertEquals(10.0, sampler.getRate("eth0", NetworkRateSampler.RX_PACKETS), 0.001);
+    assertEquals(0.5, sampler.getRate("eth0", NetworkRateSampler.RX_ERRORS), 0.001);
+    assertEquals(1.0, sampler.getRate("eth0", NetworkRateSampler.RX_DROPPED), 0.001);
+    assertEquals(2000.0, sampler.getRate("eth0", NetworkRateSampler.TX_BYTES), 0.001);
+    assertEquals(2.0, sampler.getRate("eth0", NetworkRateSampler.TX_DROPPED), 0.001);
+    assertEquals(1000.0, sampler.getAverage("eth0", NetworkRateSampler.RX_BYTES, NetworkRateSampler.EWindow.FIVE_SECONDS), 0.001);
+
+    /**
+     * 32-bit counter wrap: 4294967000 to 704 is 1000 bytes.
+     */
+    write(dev, "  eth0: 4294967000 40 1 2 0 0 0 0 8000 80 0 4 0 0 0 0\n");
+    sampler.sample(3 * SECOND);
+    write(dev, "  eth0: 704 50 1 2 0 0 0 0 9000 90 0 4 0 0 0 0\n");
+    sampler.sample(4 * SECOND);
+    assertEquals(1000.0, sampler.getRate("eth0", NetworkRateSampler.RX_BYTES), 0.001);
+    double average = sampler.getAverage("eth0", NetworkRateSampler.RX_BYTES, NetworkRateSampler.EWindow.FIFTEEN_SECONDS);
+    assertTrue(average > 1000.0 && average < 4294964000.0);
+
+    /**
+     * Interface re-created with a new index: the baseline is reset.
+     */
+    Files.write(ifindex, "7\n".getBytes(StandardCharsets.US_ASCII));
+    write(dev, "  eth0: 100 1 0 0 0 0 0 0 100 1 0 0 0 0 0 0\n");
+    sampler.sample(5 * SECOND);
+    assertTrue(Double.isNaN(sampler.getRate("eth0", NetworkRateSampler.RX_BYTES)));
+    write(dev, "  eth0: 600 6 0 0 0 0 0 0 100 1 0 0 0 0 0 0\n");
+    sampler.sample(6 * SECOND);
+    assertEquals(500.0, sampler.getRate("eth0", NetworkRateSampler.RX_BYTES), 0.001);
+
+    /**
+     * Interface removed.
+     */
+    write(dev, "");
+    sampler.sample(7 * SECOND);
+    assertTrue(sampler.getInterfaceNames().isEmpty());
+    assertTrue(Double.isNaN(sampler.getRate("eth0", NetworkRateSampler.RX_BYTES)));
+  }
+
+  @Test
+  public void testSampleParsed() throws Exception {
+    Path directory = Files.createTempDirectory("net");
+    Path dev = directory.resolve("dev");
+    Path sys = Files.createDirectories(directory.resolve("class"));
+    NetworkRateSampler sampler = new NetworkRateSampler(dev, sys);
+    /**
+     * Counters parsed by a query feed the sampler without a second read.
+     */
+    write(dev, "  eth0: 1000 10 0 0 0 0 0 0 2000 20 0 0 0 0 0 0\n    lo: 5 1 0 0 0 0 0 0 5 1 0 0 0 0 0 0\n");
+    sampler.sample(NetworkInterfaceInfo.readProcNetDev(dev, name -> true, true), 0);
+    Files.delete(dev);
+    assertEquals(new TreeSet<>(Arrays.asList("eth0", "lo")), sampler.getInterfaceNames());
+    NetworkInterfaceInfo eth0 = new NetworkInterfaceInfo();
+    eth0.setName("eth0");
+    eth0.setRxBytes(5000L);
+    eth0.setRxPackets(50L);
+    eth0.setRxErrors(0L);
+    eth0.setRxDropped(0L);
+    eth0.setTxBytes(4000L);
+    eth0.setTxPackets(40L);
+    eth0.setTxErrors(0L);
+    eth0.setTxDropped(0L);
+    sampler.sample(Arrays.asList(eth0), 2 * SECOND);
+    assertEquals(2000.0, sampler.getRate("eth0", NetworkRateSampler.RX_BYTES), 0.001);
+    assertEquals(1000.0, sampler.getRate("eth0", NetworkRateSampler.TX_BYTES), 0.001);
+    assertEquals(Collections.singleton("eth0"), sampler.getInterfaceNames());
+    /**
+     * An interface whose statistics could only be partly read is ignored.
+     */
+    NetworkInterfaceInfo partial = new NetworkInterfaceInfo();
+    partial.setName("eth1");
+    partial.setRxBytes(1L);
+    partial.setTxBytes(1L);
+    sampler.sample(Arrays.asList(eth0, partial), 3 * SECOND);
+    assertEquals(Collections.singleton("eth0"), sampler.getInterfaceNames());
+  }
+
+  private static void write(Path dev, String lines) throws Exception {
+    Files.write(dev, (HEADER + lines).getBytes(StandardCharsets.US_ASCII));
+  }
+
+}
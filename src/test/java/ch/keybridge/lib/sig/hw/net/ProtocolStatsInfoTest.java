@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.hw.net;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Key Bridge LLC
+ */
+public class ProtocolStatsInfoTest {
+
+  @Test
+  public void testRead() throws Exception {
+    Path directory = Files.createTempDirectory("net");
+    Path[] files = new Path[3];
+    String[] resources = {"proc.net.snmp.txt", "proc.net.snmp6.txt", "proc.net.netstat.txt"};
+    for (int i = 0; i < files.length; i++) {
+      files[i] = directory.resolve(resources[i]);
+      Files.copy(resource(resources[i]), files[i], StandardCopyOption.REPLACE_EXISTING);
+    }
+    ProtocolStatsInfo first = ProtocolStatsInfo.read(files, null);
+    assertEquals(Long.valueOf(30), first.getValue(ProtocolStatsInfo.TCP_RETRANS_SEGS));
+    assertEquals(Long.valueOf(9530), first.getValue(ProtocolStatsInfo.TCP_OUT_SEGS));
+    assertEquals(Long.valueOf(-1), first.getValue("Tcp.MaxConn"));
+    assertEquals(Long.valueOf(7), first.getValue(ProtocolStatsInfo.TCP_LISTEN_OVERFLOWS));
+    assertEquals(Long.valueOf(3), first.getValue(ProtocolStatsInfo.TCP_SYNCOOKIES_SENT));
+    assertEquals(Long.valueOf(0), first.getValue(ProtocolStatsInfo.UDP_RCVBUF_ERRORS));
+    assertEquals(Long.valueOf(3), first.getValue("Ip6.InReceives"));
+    assertEquals(Long.valueOf(48655764), first.getValue("IpExt.InOctets"));
+    assertNull(first.getValue("Tcp.NoSuchCounter"));
+    assertTrue(Double.isNaN(first.getRate(ProtocolStatsInfo.TCP_RETRANS_SEGS)));
+
+    /**
+     * The second read re-uses the key layout.
+     */
+    String snmp = new String(Files.readAllBytes(files[0]), StandardCharsets.US_ASCII);
+    Files.write(files[0], snmp.replace("9529 9530 30 0 6 0", "9729 9630 40 0 6 0").replace("-1 12 12 0 14 2", "-1 12 12 0 14 5").getBytes(StandardCharsets.US_ASCII));
+    Thread.sleep(10);
+    ProtocolStatsInfo second = ProtocolStatsInfo.read(files, first.layout());
+    assertSame(first.layout(), second.layout());
+    ProtocolStatsInfo delta = second.delta(first);
+    assertEquals(Long.valueOf(10), delta.getValue(ProtocolStatsInfo.TCP_RETRANS_SEGS));
+    assertEquals(Long.valueOf(100), delta.getValue(ProtocolStatsInfo.TCP_OUT_SEGS));
+    assertEquals(10.0, delta.getRetransmitPercent(), 0.001);
+    assertEquals(Long.valueOf(0), delta.getValue(ProtocolStatsInfo.TCP_LISTEN_OVERFLOWS));
+    /**
+     * Gauges report their current value.
+     */
+    assertEquals(Long.valueOf(5), delta.getValue(ProtocolStatsInfo.TCP_CURR_ESTAB));
+    assertEquals(Long.valueOf(200), delta.getValue("Tcp.RtoMin"));
+    assertTrue(delta.getInterval() > 0);
+    assertEquals(10.0 / (delta.getInterval() / 1e9), delta.getRate(ProtocolStatsInfo.TCP_RETRANS_SEGS), 0.001);
+
+    /**
+     * A changed file layout is detected and rebuilt.
+     */
+    Files.write(files[1], "Ip6InReceives 5\nIp6OutRequests 4\n".getBytes(StandardCharsets.US_ASCII));
+    ProtocolStatsInfo third = ProtocolStatsInfo.read(files, first.layout());
+    assertTrue(first.layout() != third.layout());
+    assertEquals(Long.valueOf(4), third.getValue("Ip6.OutRequests"));
+    assertEquals(Long.valueOf(2), third.delta(first).getValue("Ip6.InReceives"));
+  }
+
+  private Path resource(String resource) throws Exception {
+    return Paths.get(ProtocolStatsInfoTest.class.getClassLoader().getResource(resource).toURI());
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Key Bridge LLC
+ */
+public class ProcessSamplerTest {
+
+  @Test
+  public void testSample() throws Exception {
+    Path proc = Files.createTempDirectory("proc");
+    write(proc, 100, "(java) x", 1000, 50, 2000, 300, 5555, 4096, 8192);
+    write(proc, 200, "sh", 10, 0, 100, 100, 6666, 0, 0);
+    write(proc, 300, "idle", 10, 0, 0, 0, 7777, -1, -1);
+    ProcessSampler sampler = new ProcessSampler(proc);
+    sampler.sample(1_000_000_000L);
+    assertTrue(Double.isNaN(sampler.getCpuPercent(100)));
+    /**
+     * Over two seconds pid 100 uses 300 ticks (1.5 processors) and reads 1 MB;
+     * pid 200 is replaced by a new process with the same pid and pid 300
+     * exits.
+     */
+    write(proc, 100, "(java) x", 1250, 100, 2200, 500, 5555, 4096 + 2_097_152, 8192);
+    write(proc, 200, "sh", 500, 0, 0, 0, 9999, 0, 0);
+    Files.delete(proc.resolve("300").resolve("stat"));
+    Files.delete(proc.resolve("300"));
+    sampler.sample(3_000_000_000L);
+    assertEquals(2, sampler.getPids().size());
+    assertEquals(150, sampler.getCpuPercent(100), 1e-9);
+    assertEquals(100, sampler.getRate(100, ProcessSampler.MINOR_FAULTS), 1e-9);
+    assertEquals(100, sampler.getRate(100, ProcessSampler.MAJOR_FAULTS), 1e-9);
+    assertEquals(1_048_576, sampler.getRate(100, ProcessSampler.READ_BYTES), 1e-9);
+    assertEquals(0, sampler.getRate(100, ProcessSampler.WRITE_BYTES), 1e-9);
+    assertTrue(Double.isNaN(sampler.getCpuPercent(200)));
+
+    write(proc, 200, "sh", 520, 0, 0, 0, 9999, 0, 0);
+    sampler.sample(5_000_000_000L);
+    List<ProcessSampler.Rates> top = sampler.top(1, ProcessSampler.CPU_PERCENT);
+    assertEquals(1, top.size());
+    assertEquals(200, top.get(0).getPid());
+    assertEquals(9999, top.get(0).getStartTime());
+    assertEquals(10, top.get(0).getCpuPercent(), 1e-9);
+    assertEquals(2, sampler.top(5, ProcessSampler.CPU_PERCENT).size());
+  }
+
+  @Test
+  public void testCpuTime() {
+    ProcessInfo process = new ProcessInfo();
+    process.setTime("01:02:03");
+    assertEquals(Integer.valueOf(3_723_000), process.getCPUTime());
+    process.setTime("2-00:00:01");
+    assertEquals(Integer.valueOf(172_801_000), process.getCPUTime());
+    process.setTime("n/a");
+    assertEquals(Integer.valueOf(-1), process.getCPUTime());
+    process.setCpuTime(1234);
+    assertEquals(Integer.valueOf(1234), process.getCPUTime());
+  }
+
+  /**
+   * Write the stat file (and the io file unless the bytes are negative) of a
+   * synthetic process.
+   */
+  private static void write(Path proc, int pid, String comm, long utime, long stime, long minflt, long majflt, long starttime, long readBytes, long writeBytes) throws Exception {
+    Path directory = Files.createDirectories(proc.resolve(Integer.toString(pid)));
+    String stat = pid + " (" + comm + ") S 1 " + pid + " " + pid + " 0 -1 4194560 " + minflt + " 0 " + majflt + " 0 "
+                  + utime + " " + stime + " 0 0 20 0 1 0 " + starttime + " 1000000 100 18446744073709551615\n";
+    Files.write(directory.resolve("stat"), stat.getBytes(StandardCharsets.US_ASCII));
+    if (readBytes >= 0) {
+      String io = "rchar: 1\nwchar: 2\nsyscr: 3\nsyscw: 4\nread_bytes: " + readBytes + "\nwrite_bytes: " + writeBytes + "\ncancelled_write_bytes: 0\n";
+      Files.write(directory.resolve("io"), io.getBytes(StandardCharsets.US_ASCII));
+    }
+  }
+
+}
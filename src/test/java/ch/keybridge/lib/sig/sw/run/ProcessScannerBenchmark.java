@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import ch.keybridge.lib.sig.utility.SIGUtility;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH comparison of the {@code /proc} process scanner and the {@code ps -elf}
+ * parser over a synthetic process table.
+ * <p>
+ * A fake proc file system tree is generated with the indicated number of pid
+ * directories. The {@code ps} path is modelled by forking {@code cat} over an
+ * equivalent synthetic {@code ps -elf} output file, so that both the child
+ * process cost and the per-line regex split are measured.
+ * <p>
+ * Run with: {@code mvn test-compile exec:java
+ * -Dexec.classpathScope=test
+ * -Dexec.mainClass=ch.keybridge.lib.sig.sw.run.ProcessScannerBenchmark}
+ *
+ * @author Key Bridge LLC
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProcessScannerBenchmark {
+
+  @Param({"1000", "10000", "50000"})
+  public int pids;
+
+  private Path procRoot;
+  private Path psOutput;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    procRoot = Files.createTempDirectory("sig-proc");
+    psOutput = procRoot.resolve("ps-elf.txt");
+    Files.write(procRoot.resolve("stat"), "cpu  100 0 100 1000 0 0 0 0 0 0\nbtime 1700000000\n".getBytes(StandardCharsets.US_ASCII));
+    Files.write(procRoot.resolve("uptime"), "86400.00 80000.00\n".getBytes(StandardCharsets.US_ASCII));
+    List<String> psLines = new ArrayList<>(pids);
+    for (int pid = 1; pid <= pids; pid++) {
+      Path directory = Files.createDirectory(procRoot.resolve(Integer.toString(pid)));
+      Files.write(directory.resolve("stat"), (pid + " (worker-" + pid + ") S 1 " + pid + " " + pid
+                                              + " 0 -1 4194560 1200 0 0 0 350 120 0 0 20 0 4 0 "
+                                              + (1000 + pid) + " 120000000 2500 18446744073709551615 0 0 0 0 0 0 0 0 0 0 0 0 17 1 0 0 0 0 0\n")
+                  .getBytes(StandardCharsets.US_ASCII));
+      Files.write(directory.resolve("statm"), "29296 2500 900 10 0 8000 0\n".getBytes(StandardCharsets.US_ASCII));
+      Files.write(directory.resolve("status"), ("Name:\tworker-" + pid + "\nState:\tS (sleeping)\nPid:\t" + pid
+                                                + "\nPPid:\t1\nUid:\t1000\t1000\t1000\t1000\nGid:\t1000\t1000\t1000\t1000\nThreads:\t4\n")
+                  .getBytes(StandardCharsets.US_ASCII));
+      Files.write(directory.resolve("cmdline"), ("/usr/bin/worker\0--id\0" + pid + "\0").getBytes(StandardCharsets.US_ASCII));
+      psLines.add("1 S user " + pid + " 1 0 80 0 - 29296 - Nov14 ? 00:00:04 /usr/bin/worker --id " + pid);
+    }
+    Files.write(psOutput, psLines, StandardCharsets.US_ASCII);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    try (Stream<Path> stream = Files.walk(procRoot)) {
+      stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public Collection<ProcessInfo> procScanner() throws IOException {
+    return new ProcessScanner(procRoot).scan();
+  }
+
+  @Benchmark
+  public Collection<ProcessInfo> psParser() throws Exception {
+    Collection<ProcessInfo> processes = new TreeSet<>();
+    for (String entry : SIGUtility.execute("cat", psOutput.toString())) {
+      processes.add(ProcessInfo.parsePSEntry(entry));
+    }
+    return processes;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(ProcessScannerBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
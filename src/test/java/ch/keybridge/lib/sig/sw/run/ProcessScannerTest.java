@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Key Bridge LLC
+ */
+public class ProcessScannerTest {
+
+  @Test
+  public void testRead() throws Exception {
+    Path proc = Files.createTempDirectory("proc");
+    write(proc.resolve("stat"), "cpu  1 2 3 4\nbtime 1500000000\n");
+    write(proc.resolve("uptime"), "1000.50 3000.25\n");
+    Path directory = Files.createDirectories(proc.resolve("42"));
+    /**
+     * The comm field contains spaces and parentheses.
+     */
+    write(directory.resolve("stat"), "42 (my (odd) name) S 7 42 42 34817 -1 4194560 10 0 0 0 "
+                                     + (150 * ProcessScanner.CLOCK_TICKS) + " " + (50 * ProcessScanner.CLOCK_TICKS)
+                                     + " 0 0 20 -5 3 0 " + (500 * ProcessScanner.CLOCK_TICKS) + " 1000000 2 18446744073709551615\n");
+    write(directory.resolve("statm"), "250 2 1 1 0 40 0\n");
+    write(directory.resolve("status"), "Name:\tworker\nUid:\t1000\t0\t0\t0\nGid:\t0\t0\t0\t0\n");
+    write(directory.resolve("cmdline"), "/usr/bin/worker\u0000--id\u000042\u0000");
+
+    ProcessScanner scanner = new ProcessScanner(proc);
+    ProcessInfo process = scanner.read(42);
+    assertEquals(Integer.valueOf(42), process.getPid());
+    assertEquals(Integer.valueOf(7), process.getPpid());
+    assertEquals(ProcessInfo.EState.fromValue("S"), process.getProcessState());
+    assertEquals("pts/1", process.getTty());
+    assertEquals(Integer.valueOf(-5), process.getNice());
+    assertEquals(Integer.valueOf(3), process.getThreads());
+    assertEquals(Integer.valueOf(200_000), process.getCpuTime());
+    assertEquals("00:03:20", process.getTime());
+    assertEquals(Integer.valueOf(39), process.getCpuUtilization());
+    assertEquals(Integer.valueOf(250), process.getSize());
+    assertEquals(Long.valueOf(2L * ProcessScanner.PAGE_SIZE_KB), process.getRss());
+    /**
+     * The effective (second) user id.
+     */
+    assertEquals("root", process.getUid());
+    assertEquals("/usr/bin/worker --id 42", process.getCommand());
+    assertNull(scanner.read(43));
+  }
+
+  @Test
+  public void testCpuTimeOverflow() throws Exception {
+    ProcessScanner scanner = new ProcessScanner();
+    long ticks = 30L * 86400 * ProcessScanner.CLOCK_TICKS;
+    ProcessInfo process = scanner.parseStat("9 (db) S 1 9 9 0 -1 0 0 0 0 0 " + ticks + " 0 0 0 20 0 64 0 1 1 1 1\n");
+    assertEquals(Integer.valueOf(Integer.MAX_VALUE), process.getCpuTime());
+    assertEquals(Long.valueOf(ticks), process.getCpuTicks());
+    assertEquals("30-00:00:00", process.getTime());
+
+    /**
+     * Subtree totals use the unclamped tick count.
+     */
+    ProcessInfo child = scanner.parseStat("10 (db worker) S 9 9 9 0 -1 0 0 0 0 0 " + ticks + " 0 0 0 20 0 64 0 2 1 1 1\n");
+    assertEquals(2L * 30 * 86400 * 1000, new ProcessTree().update(Arrays.asList(process, child)).getTotals(9).getCpuTime());
+  }
+
+  private static void write(Path file, String content) throws Exception {
+    Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+  }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Key Bridge LLC
+ */
+public class ProcessTreeTest {
+
+  @Test
+  public void testTotals() {
+    /**
+     * Children are listed before their parent.
+     */
+    List<ProcessInfo> processes = new ArrayList<>(Arrays.asList(
+      process(12, 10, 5, 100, 2), process(11, 10, 7, 200, 1), process(10, 1, 10, 1000, 8),
+      process(1, 0, 1, 50, 1), process(13, 11, 3, 300, 4), process(2, 0, 0, 0, 1)));
+    ProcessTree tree = new ProcessTree().update(processes);
+    assertEquals(6, tree.size());
+    assertEquals(2, tree.getRoots().length);
+    assertEquals(10, tree.getParent(12));
+    assertEquals(-1, tree.getParent(1));
+    assertEquals(set(11, 12), set(tree.getChildren(10)));
+    assertEquals(set(11, 12, 13), set(tree.getDescendants(10)));
+
+    ProcessTree.Totals totals = tree.getTotals(10);
+    assertEquals(4, totals.getProcesses());
+    assertEquals(1600, totals.getRss());
+    assertEquals(25, totals.getCpuTime());
+    assertEquals(15, totals.getThreads());
+    assertEquals(6, tree.getTotals(1).getProcesses() + tree.getTotals(2).getProcesses());
+    assertNull(tree.getTotals(99));
+  }
+
+  @Test
+  public void testUpdate() {
+    List<ProcessInfo> processes = new ArrayList<>();
+    processes.add(process(1, 0, 1, 50, 1));
+    for (int pid = 100; pid < 300; pid++) {
+      processes.add(process(pid, pid < 110 ? 1 : 100 + pid % 10, 1, 10, 1));
+    }
+    ProcessTree tree = new ProcessTree().update(processes);
+    assertEquals(201, tree.size());
+    assertEquals(20, tree.getTotals(105).getProcesses());
+    /**
+     * 105 exits: its children are re-parented to init. 150 is re-parented to
+     * 101 and a new process 400 starts under 150. 120 is reused by a new
+     * process under init.
+     */
+    processes.removeIf(p -> p.getPid() == 105 || p.getPid() == 120);
+    for (ProcessInfo process : processes) {
+      if (process.getPpid() == 105) {
+        process.setPpid(1);
+      }
+      if (process.getPid() == 150) {
+        process.setPpid(101);
+      }
+    }
+    ProcessInfo reused = process(120, 1, 1, 10, 1);
+    reused.setStartTime(99L);
+    processes.add(reused);
+    processes.add(process(400, 150, 1, 10, 1));
+    tree.update(processes);
+    assertEquals(201, tree.size());
+    assertFalse(tree.contains(105));
+    assertEquals(1, tree.getParent(115));
+    assertEquals(1, tree.getParent(120));
+    assertEquals(0, tree.getChildren(120).length);
+    assertEquals(101, tree.getParent(150));
+    assertEquals(150, tree.getParent(400));
+    assertEquals(22, tree.getTotals(101).getProcesses());
+    assertEquals(201, tree.getTotals(1).getProcesses());
+    assertEquals(1, tree.getRoots().length);
+  }
+
+  private static Set<Integer> set(int... values) {
+    Set<Integer> set = new TreeSet<>();
+    for (int value : values) {
+      set.add(value);
+    }
+    return set;
+  }
+
+  private static ProcessInfo process(int pid, int ppid, int cpuTime, long rss, int threads) {
+    ProcessInfo process = new ProcessInfo();
+    process.setPid(pid);
+    process.setPpid(ppid);
+    process.setCpuTime(cpuTime);
+    process.setRss(rss);
+    process.setThreads(threads);
+    process.setStartTime(1L);
+    return process;
+  }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Key Bridge LLC
+ */
+public class ProcessWatcherTest {
+
+  @Test
+  public void testRefresh() throws Exception {
+    Path proc = Files.createTempDirectory("proc");
+    write(proc.resolve("stat"), "cpu  1 2 3 4\nbtime 1500000000\n");
+    write(proc.resolve("uptime"), "1000.50 3000.25\n");
+    process(proc, 42, 500, "/usr/bin/java\0-server\0");
+    process(proc, 7, 600, "");
+
+    ProcessWatcher watcher = new ProcessWatcher(proc, 42, 7, 99);
+    Collection<ProcessInfo> processes = watcher.refresh();
+    assertEquals(2, processes.size());
+    Iterator<ProcessInfo> iterator = processes.iterator();
+    ProcessInfo kernel = iterator.next();
+    assertEquals(Integer.valueOf(7), kernel.getPid());
+    assertEquals("[worker]", kernel.getCommand());
+    ProcessInfo java = iterator.next();
+    assertEquals("/usr/bin/java -server", java.getCommand());
+    assertEquals(Long.valueOf(500), java.getStartTime());
+    assertEquals(Long.valueOf(8), java.getRss());
+    assertEquals(Integer.valueOf(1230), java.getCpuTime());
+    /**
+     * The command line is cached for the same process instance, and re-read
+     * when the pid is reused.
+     */
+    write(proc.resolve("42").resolve("cmdline"), "/bin/sh\0");
+    assertEquals("/usr/bin/java -server", find(watcher.refresh(), 42).getCommand());
+    process(proc, 42, 900, "/bin/sh\0");
+    assertEquals("/bin/sh", find(watcher.refresh(), 42).getCommand());
+  }
+
+  @Test
+  public void testRefreshIdentity() throws Exception {
+    Path proc = Files.createTempDirectory("proc");
+    write(proc.resolve("stat"), "cpu  1 2 3 4\nbtime 1500000000\n");
+    write(proc.resolve("uptime"), "1000.50 3000.25\n");
+    process(proc, 42, 500, "/bin/sh\0script\0");
+    ProcessWatcher watcher = new ProcessWatcher(proc, 42);
+    long now = 1_000_000_000L;
+    assertEquals("/bin/sh script", find(watcher.refresh(now), 42).getCommand());
+    /**
+     * An execve keeps the pid and start time but changes the comm name.
+     */
+    Path directory = proc.resolve("42");
+    write(directory.resolve("stat"), stat(42, "java", 500));
+    write(directory.resolve("cmdline"), "/usr/bin/java\0-jar\0app.jar\0");
+    assertEquals("/usr/bin/java -jar app.jar", find(watcher.refresh(now + 1), 42).getCommand());
+    /**
+     * A user id change is picked up once the cached identity expires.
+     */
+    write(directory.resolve("status"), "Name:\tjava\nUid:\t0\t54321\t54321\t54321\n");
+    assertFalse("54321".equals(find(watcher.refresh(now + 2), 42).getUid()));
+    assertEquals("54321", find(watcher.refresh(now + 2 + ProcessWatcher.IDENTITY_INTERVAL), 42).getUid());
+  }
+
+  @Test
+  public void testForPid() throws Exception {
+    if (!ProcessScanner.isAvailable()) {
+      return;
+    }
+    ProcessInfo self = ProcessInfo.forPid(1);
+    assertNotNull(self);
+    assertEquals(Integer.valueOf(1), self.getPid());
+    assertEquals(1, ProcessInfo.forPids(1, Integer.MAX_VALUE).size());
+  }
+
+  private static ProcessInfo find(Collection<ProcessInfo> processes, int pid) {
+    for (ProcessInfo process : processes) {
+      if (process.getPid() == pid) {
+        return process;
+      }
+    }
+    return null;
+  }
+
+  private static void process(Path proc, int pid, long starttime, String cmdline) throws Exception {
+    Path directory = Files.createDirectories(proc.resolve(Integer.toString(pid)));
+    write(directory.resolve("stat"), stat(pid, "worker", starttime));
+    write(directory.resolve("statm"), "250 2 1 1 0 40 0\n");
+    write(directory.resolve("status"), "Name:\tworker\nUid:\t0\t0\t0\t0\n");
+    write(directory.resolve("cmdline"), cmdline);
+  }
+
+  private static String stat(int pid, String comm, long starttime) {
+    return pid + " (" + comm + ") S 1 " + pid + " " + pid + " 0 -1 4194560 10 0 0 0 "
+           + "100 23 0 0 20 0 3 0 " + starttime + " 1000000 2 18446744073709551615\n";
+  }
+
+  private static void write(Path file, String content) throws Exception {
+    Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+  }
+
+}
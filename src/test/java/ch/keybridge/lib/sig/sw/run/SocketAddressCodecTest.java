@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import java.net.InetAddress;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Key Bridge LLC
+ */
+public class SocketAddressCodecTest {
+
+  @Test
+  public void testParse() throws Exception {
+    String[] literals = {"0.0.0.0", "127.0.0.1", "255.255.255.255", "::", "::1", "1::", "2001:db8::ff00:42:8329",
+                         "fe80:0:0:0:202:b3ff:fe1e:8329", "1:2:3:4:5:6:7:8", "::ffff:192.0.2.128", "64:ff9b::192.0.2.33"};
+    for (String literal : literals) {
+      assertEquals(literal, InetAddress.getByName(literal), parse(literal));
+    }
+    assertEquals(InetAddress.getByName("::"), parse("[::]"));
+    assertEquals(InetAddress.getByName("127.0.0.53"), parse("127.0.0.53%lo"));
+    assertEquals(InetAddress.getByName("fe80::1"), parse("[fe80::1%eth0]"));
+    assertEquals(InetAddress.getByName("0.0.0.0"), parse("*"));
+    /**
+     * Interned.
+     */
+    assertSame(parse("10.1.2.3"), parse("10.1.2.3"));
+  }
+
+  @Test
+  public void testParseInvalid() {
+    String[] literals = {"", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", ":::",
+                         "1::2::3", "12345::", ":1::", "g::1", "::1.2.3", "1:2:3:4:5:6:7:1.2.3.4", "[]", "host"};
+    long[] packed = new long[2];
+    for (String literal : literals) {
+      assertFalse(literal, SocketAddressCodec.parse(literal, 0, literal.length(), packed));
+    }
+  }
+
+  @Test
+  public void testParseSocketEntry() throws Exception {
+    SocketInfo socket = SocketInfo.parseSocketEntry("udp   UNCONN  0  0  127.0.0.53%lo:53  0.0.0.0:*");
+    assertEquals(InetAddress.getByName("127.0.0.53"), socket.getLocalAddress());
+    assertEquals(Integer.valueOf(53), socket.getLocalPort());
+    assertNull(socket.getRemotePort());
+    socket = SocketInfo.parseSocketEntry("tcp   LISTEN  0  128  [::]:22  [::]:*");
+    assertTrue(socket.isIPv6());
+    assertEquals(Integer.valueOf(22), socket.getLocalPort());
+  }
+
+  private InetAddress parse(String literal) throws Exception {
+    return SocketAddressCodec.parseAddress(literal, 0, literal.length());
+  }
+
+}
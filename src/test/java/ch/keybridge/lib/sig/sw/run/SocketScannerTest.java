@@ -0,0 +1,236 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.sw.run;
+
+import ch.keybridge.lib.sig.sw.run.SocketInfo.ProtocolType;
+import ch.keybridge.lib.sig.sw.run.SocketInfo.SocketState;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Socket table fixtures are recorded on a little-endian (x86_64) host.
+ *
+ * @author Key Bridge LLC
+ */
+public class SocketScannerTest {
+
+  @Test
+  public void testParseTcp() throws Exception {
+    List<SocketInfo> sockets = parse("proc.net.tcp.txt", ProtocolType.tcp);
+    assertEquals(4, sockets.size());
+
+    SocketInfo dns = sockets.get(0);
+    assertEquals(InetAddress.getByName("127.0.0.1"), dns.getLocalAddress());
+    assertEquals(Integer.valueOf(53), dns.getLocalPort());
+    assertEquals(InetAddress.getByName("0.0.0.0"), dns.getRemoteAddress());
+    assertNull(dns.getRemotePort());
+    assertEquals(SocketState.LISTEN, dns.getConnectionState());
+    assertEquals(Integer.valueOf(101), dns.getUid());
+    assertEquals(Long.valueOf(17343), dns.getInode());
+    assertTrue(dns.isIPv4());
+
+    assertEquals(Integer.valueOf(128), sockets.get(1).getRxQueue());
+
+    SocketInfo ssh = sockets.get(2);
+    assertEquals(InetAddress.getByName("10.0.2.15"), ssh.getLocalAddress());
+    assertEquals(InetAddress.getByName("10.0.2.2"), ssh.getRemoteAddress());
+    assertEquals(Integer.valueOf(53940), ssh.getRemotePort());
+    assertEquals(SocketState.ESTABLISHED, ssh.getConnectionState());
+    assertEquals(Integer.valueOf(36), ssh.getTxQueue());
+
+    SocketInfo https = sockets.get(3);
+    assertEquals(InetAddress.getByName("34.216.184.93"), https.getRemoteAddress());
+    assertEquals(Integer.valueOf(443), https.getRemotePort());
+    assertEquals(SocketState.TIME_WAIT, https.getConnectionState());
+  }
+
+  @Test
+  public void testParseTcp6() throws Exception {
+    List<SocketInfo> sockets = parse("proc.net.tcp6.txt", ProtocolType.tcp6);
+    /**
+     * The second row has a truncated address and is skipped.
+     */
+    assertEquals(2, sockets.size());
+    assertEquals(InetAddress.getByName("::1"), sockets.get(0).getLocalAddress());
+    assertEquals(Integer.valueOf(8080), sockets.get(0).getLocalPort());
+    assertEquals(SocketState.LISTEN, sockets.get(0).getConnectionState());
+    assertTrue(sockets.get(0).isIPv6());
+    assertEquals(InetAddress.getByName("2001:db8::1"), sockets.get(1).getRemoteAddress());
+    assertEquals(Integer.valueOf(50000), sockets.get(1).getRemotePort());
+    assertEquals(Long.valueOf(31339), sockets.get(1).getInode());
+  }
+
+  @Test
+  public void testParseUdp() throws Exception {
+    List<SocketInfo> sockets = parse("proc.net.udp.txt", ProtocolType.udp);
+    assertEquals(2, sockets.size());
+    assertEquals(InetAddress.getByName("127.0.0.53"), sockets.get(0).getLocalAddress());
+    assertEquals(SocketState.UNCONNECTED, sockets.get(0).getConnectionState());
+    assertEquals(SocketState.ESTABLISHED, sockets.get(1).getConnectionState());
+    assertEquals(Integer.valueOf(67), sockets.get(1).getRemotePort());
+  }
+
+  @Test
+  public void testTable() throws Exception {
+    SocketTable table = new SocketTable(4);
+    SocketScanner.parse(resource("proc.net.tcp.txt"), ProtocolType.tcp, table);
+    SocketScanner.parse(resource("proc.net.tcp6.txt"), ProtocolType.tcp6, table);
+    SocketScanner.parse(resource("proc.net.udp.txt"), ProtocolType.udp, table);
+    assertEquals(8, table.size());
+
+    Map<SocketState, Integer> states = table.countByState();
+    assertEquals(Integer.valueOf(3), states.get(SocketState.LISTEN));
+    assertEquals(Integer.valueOf(3), states.get(SocketState.ESTABLISHED));
+    assertEquals(Integer.valueOf(1), states.get(SocketState.TIME_WAIT));
+    assertEquals(Integer.valueOf(1), states.get(SocketState.UNCONNECTED));
+
+    Map<Integer, Integer> ports = table.countByLocalPort();
+    assertEquals(Integer.valueOf(2), ports.get(22));
+    assertEquals(Integer.valueOf(2), ports.get(53));
+    assertEquals(Integer.valueOf(2), ports.get(8080));
+    assertEquals(Integer.valueOf(1), table.countByLocalPort(SocketState.ESTABLISHED).get(22));
+
+    table.add(ProtocolType.tcp, SocketState.ESTABLISHED, 0, SocketAddressCodec.packIPv4(0x0A000202), 22, 0, SocketAddressCodec.packIPv4(0x0A000202), 1234, 0, 0, 0, 0);
+    Map<InetAddress, Integer> peers = table.topRemotePeers(2);
+    assertEquals(2, peers.size());
+    Map.Entry<InetAddress, Integer> top = peers.entrySet().iterator().next();
+    assertEquals(InetAddress.getByName("10.0.2.2"), top.getKey());
+    assertEquals(Integer.valueOf(2), top.getValue());
+
+    List<SocketInfo> sockets = table.toSocketInfo();
+    SocketTable.Cursor cursor = table.cursor();
+    int count = 0;
+    while (cursor.next()) {
+      assertEquals(sockets.get(count), cursor.toSocketInfo());
+      count++;
+    }
+    assertEquals(table.size(), count);
+  }
+
+  @Test
+  public void testMonitor() throws Exception {
+    long local = SocketAddressCodec.packIPv4(0x0A00020F);
+    long remote = SocketAddressCodec.packIPv4(0x0A000202);
+    SocketMonitor monitor = new SocketMonitor();
+    List<SocketEvent> received = new ArrayList<>();
+    monitor.addListener(received::addAll);
+
+    SocketTable first = new SocketTable();
+    first.add(ProtocolType.tcp, SocketState.LISTEN, 0, local, 22, 0, SocketAddressCodec.IPV4_MAPPED, 0, 0, 0, 0, 1);
+    first.add(ProtocolType.tcp, SocketState.ESTABLISHED, 0, local, 22, 0, remote, 50000, 0, 0, 0, 2);
+    first.add(ProtocolType.tcp, SocketState.ESTABLISHED, 0, local, 22, 0, remote, 50001, 0, 0, 0, 3);
+    assertTrue(monitor.update(first).isEmpty());
+
+    SocketTable second = new SocketTable();
+    second.add(ProtocolType.tcp, SocketState.LISTEN, 0, local, 22, 0, SocketAddressCodec.IPV4_MAPPED, 0, 0, 0, 0, 1);
+    second.add(ProtocolType.tcp, SocketState.CLOSE_WAIT, 0, local, 22, 0, remote, 50000, 0, 0, 0, 2);
+    second.add(ProtocolType.tcp, SocketState.ESTABLISHED, 0, local, 22, 0, remote, 50002, 0, 0, 0, 4);
+    List<SocketEvent> events = monitor.update(second);
+    assertEquals(3, events.size());
+    assertEquals(events, received);
+    assertEquals(SocketEvent.EType.STATE_CHANGED, events.get(0).getType());
+    assertEquals(SocketState.ESTABLISHED, events.get(0).getPreviousState());
+    assertEquals(SocketState.CLOSE_WAIT, events.get(0).getSocket().getConnectionState());
+    assertEquals(SocketEvent.EType.OPENED, events.get(1).getType());
+    assertEquals(Integer.valueOf(50002), events.get(1).getSocket().getRemotePort());
+    assertEquals(SocketEvent.EType.CLOSED, events.get(2).getType());
+    assertEquals(Integer.valueOf(50001), events.get(2).getSocket().getRemotePort());
+
+    assertTrue(monitor.update(second).isEmpty());
+
+    /**
+     * Duplicate 4-tuples: a second SO_REUSEPORT listener is opened and the
+     * CLOSE_WAIT connection enters TIME_WAIT (no inode).
+     */
+    SocketTable third = new SocketTable();
+    third.add(ProtocolType.tcp, SocketState.LISTEN, 0, local, 22, 0, SocketAddressCodec.IPV4_MAPPED, 0, 0, 0, 0, 1);
+    third.add(ProtocolType.tcp, SocketState.LISTEN, 0, local, 22, 0, SocketAddressCodec.IPV4_MAPPED, 0, 0, 0, 0, 5);
+    third.add(ProtocolType.tcp, SocketState.TIME_WAIT, 0, local, 22, 0, remote, 50000, 0, 0, 0, 0);
+    third.add(ProtocolType.tcp, SocketState.ESTABLISHED, 0, local, 22, 0, remote, 50002, 0, 0, 0, 4);
+    events = monitor.update(third);
+    assertEquals(2, events.size());
+    assertEquals(SocketEvent.EType.OPENED, events.get(0).getType());
+    assertEquals(Long.valueOf(5), events.get(0).getSocket().getInode());
+    assertEquals(SocketEvent.EType.STATE_CHANGED, events.get(1).getType());
+    assertEquals(SocketState.TIME_WAIT, events.get(1).getSocket().getConnectionState());
+    /**
+     * Unchanged duplicates produce no events; closing one reports only that
+     * one.
+     */
+    assertTrue(monitor.update(third).isEmpty());
+    SocketTable fourth = new SocketTable();
+    fourth.add(ProtocolType.tcp, SocketState.LISTEN, 0, local, 22, 0, SocketAddressCodec.IPV4_MAPPED, 0, 0, 0, 0, 5);
+    fourth.add(ProtocolType.tcp, SocketState.TIME_WAIT, 0, local, 22, 0, remote, 50000, 0, 0, 0, 0);
+    fourth.add(ProtocolType.tcp, SocketState.ESTABLISHED, 0, local, 22, 0, remote, 50002, 0, 0, 0, 4);
+    events = monitor.update(fourth);
+    assertEquals(1, events.size());
+    assertEquals(SocketEvent.EType.CLOSED, events.get(0).getType());
+    assertEquals(Long.valueOf(1), events.get(0).getSocket().getInode());
+  }
+
+  @Test
+  public void testOwnerIndex() throws Exception {
+    Path proc = Files.createTempDirectory("proc");
+    Path fd = Files.createDirectories(proc.resolve("123").resolve("fd"));
+    Files.createSymbolicLink(fd.resolve("3"), Paths.get("socket:[555]"));
+    Files.createSymbolicLink(fd.resolve("4"), Paths.get("/dev/null"));
+    SocketOwnerIndex index = new SocketOwnerIndex(proc);
+    index.refresh();
+    assertEquals(1, index.getRescanned());
+    assertEquals(123, index.getPid(555));
+    assertEquals(-1, index.getPid(556));
+    /**
+     * Unchanged fd directories are not re-read.
+     */
+    index.refresh();
+    assertEquals(0, index.getRescanned());
+
+    SocketTable table = new SocketTable();
+    table.add(ProtocolType.tcp, SocketState.LISTEN, 0, SocketAddressCodec.IPV4_MAPPED, 80, 0, SocketAddressCodec.IPV4_MAPPED, 0, 0, 0, 0, 555);
+    assertEquals(Collections.singleton(123), table.assignOwners(index).getOwners(80));
+    assertEquals(Integer.valueOf(123), table.toSocketInfo().get(0).getPid());
+  }
+
+  @Test
+  public void testScan() throws Exception {
+    if (!SocketScanner.isAvailable()) {
+      return;
+    }
+    for (SocketInfo socket : new SocketScanner().scan()) {
+      System.out.println(socket);
+    }
+  }
+
+  private List<SocketInfo> parse(String resource, ProtocolType protocol) throws Exception {
+    List<SocketInfo> sockets = new ArrayList<>();
+    SocketScanner.parse(resource(resource), protocol, sockets);
+    return sockets;
+  }
+
+  private Path resource(String resource) throws Exception {
+    return Paths.get(SocketScannerTest.class.getClassLoader().getResource(resource).toURI());
+  }
+
+}
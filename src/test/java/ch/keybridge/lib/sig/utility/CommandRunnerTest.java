@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.utility;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Key Bridge LLC
+ */
+public class CommandRunnerTest {
+
+  @Test
+  public void testRun() throws Exception {
+    CommandResult result = new CommandRunner("sh", "-c", "echo ' one '; echo two; echo oops >&2; exit 3").run();
+    System.out.println("CommandRunner " + result);
+    assertEquals(3, result.getExitCode());
+    assertEquals(Arrays.asList("one", "two"), result.getOutput());
+    assertEquals("oops", result.getError());
+    assertFalse(result.isSuccess());
+  }
+
+  @Test
+  public void testStream() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    CommandResult result = new CommandRunner("printf", "  a b \\nc\\n\\nd").run(line -> sb.append('[').append(line).append(']'));
+    assertEquals("[a b][c][][d]", sb.toString());
+    assertNull(result.getOutput());
+    assertTrue(result.isSuccess());
+  }
+
+  @Test
+  public void testTruncated() throws Exception {
+    CommandResult result = new CommandRunner("sh", "-c", "while true; do echo 0123456789; done")
+      .setMaxOutput(1024)
+      .run();
+    assertTrue(result.isTruncated());
+    assertTrue(result.getOutput().size() < 100);
+  }
+
+  @Test(expected = TimeoutException.class)
+  public void testTimeout() throws Exception {
+    new CommandRunner("sleep", "10").setTimeout(200, TimeUnit.MILLISECONDS).run();
+  }
+
+  @Test
+  public void testTimeoutIncludesPermitWait() throws Exception {
+    /**
+     * Hold every process permit for one second.
+     */
+    int permits = Integer.getInteger("sig.command.maxProcesses", 8);
+    ExecutorService executor = Executors.newFixedThreadPool(permits);
+    for (int i = 0; i < permits; i++) {
+      executor.submit(() -> new CommandRunner("sleep", "1").run());
+    }
+    Thread.sleep(200);
+    long start = System.nanoTime();
+    try {
+      new CommandRunner("sleep", "10").setTimeout(1500, TimeUnit.MILLISECONDS).run();
+      fail("Expected a timeout");
+    } catch (TimeoutException exception) {
+    }
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    assertTrue("Elapsed " + elapsed + " ms", elapsed < 2200);
+    executor.shutdown();
+    executor.awaitTermination(5, TimeUnit.SECONDS);
+  }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Key Bridge LLC.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.keybridge.lib.sig.utility;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Key Bridge LLC
+ */
+public class ProcFileReaderTest {
+
+  private Path file;
+
+  @Before
+  public void setUp() throws Exception {
+    file = Files.createTempFile("sig", ".txt");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    ProcFileReader.get().close();
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void testReadPrimitive() throws Exception {
+    Files.write(file, " 4294967296\n".getBytes(StandardCharsets.US_ASCII));
+    assertEquals(4294967296L, ProcFileReader.get().readLong(file));
+    Files.write(file, "-42000\n".getBytes(StandardCharsets.US_ASCII));
+    assertEquals(-42000, ProcFileReader.get().readInt(file));
+    Files.write(file, "37.125\n".getBytes(StandardCharsets.US_ASCII));
+    assertEquals(37.125, ProcFileReader.get().readDouble(file), 0.0001);
+  }
+
+  @Test
+  public void testRemaining() throws Exception {
+    Files.write(file, "1234 (cat) R\n".getBytes(StandardCharsets.US_ASCII));
+    ProcFileReader reader = ProcFileReader.get().read(file);
+    assertEquals(1234, reader.nextLong());
+    assertEquals(" (cat) R\n", new String(reader.remaining(), StandardCharsets.US_ASCII));
+    assertFalse(reader.hasRemaining());
+    assertEquals(1234, reader.position(0).nextLong());
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testReadInvalid() throws Exception {
+    Files.write(file, "12 kB\n".getBytes(StandardCharsets.US_ASCII));
+    ProcFileReader.get().readLong(file);
+  }
+
+  @Test
+  public void testScanLines() throws Exception {
+    StringBuilder sb = new StringBuilder("cpu  10 20 30 40\n");
+    long expected = 0;
+    for (int i = 0; i < 5000; i++) {
+      sb.append("cpu").append(i).append(' ').append(i).append(" 0 0 0\n");
+      expected += i;
+    }
+    Files.write(file, sb.toString().getBytes(StandardCharsets.US_ASCII));
+    ProcFileReader reader = ProcFileReader.get().read(file);
+    assertTrue(reader.nextTokenEquals("cpu"));
+    assertEquals(10, reader.nextLong());
+    long sum = 0;
+    while (reader.nextLine()) {
+      assertFalse(reader.nextTokenEquals("cpu"));
+      sum += reader.skipToken().nextLong();
+    }
+    assertEquals(expected, sum);
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testReadOverflow() throws Exception {
+    Files.write(file, "18446744073709551615\n".getBytes(StandardCharsets.US_ASCII));
+    ProcFileReader.get().readLong(file);
+  }
+
+  @Test
+  public void testRelease() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() <= ProcFileReader.MAX_RETAINED_CAPACITY) {
+      sb.append("0123456789abcdef\n");
+    }
+    Files.write(file, sb.toString().getBytes(StandardCharsets.US_ASCII));
+    ProcFileReader reader = ProcFileReader.get();
+    assertEquals(sb.length(), reader.read(file).remaining().length);
+    ProcFileReader.release();
+    assertNotNull(ProcFileReader.get());
+    assertFalse(reader == ProcFileReader.get());
+    Files.write(file, "42\n".getBytes(StandardCharsets.US_ASCII));
+    assertEquals(42, reader.readInt(file));
+  }
+
+  @Test
+  public void testReadOnce() throws Exception {
+    Files.write(file, "42\n".getBytes(StandardCharsets.US_ASCII));
+    ProcFileReader reader = ProcFileReader.get();
+    assertEquals(42, reader.readOnce(file).nextInt());
+    /**
+     * No channel is retained: a deleted file is not readable afterwards.
+     */
+    Files.delete(file);
+    try {
+      reader.read(file);
+      fail("Expected the deleted file to be re-opened");
+    } catch (IOException exception) {
+    }
+  }
+
+}
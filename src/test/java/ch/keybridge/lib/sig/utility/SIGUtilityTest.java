@@ -18,11 +18,17 @@
  */
 package ch.keybridge.lib.sig.utility;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import static org.junit.Assert.*;
+
 /**
  *
  * @author Key Bridge
@@ -57,6 +63,24 @@ public class SIGUtilityTest {
 
   @Test
   public void testExecute() throws Exception {
+    /**
+     * A non-zero exit code is logged; the output is still returned.
+     */
+    assertEquals("[partial]", SIGUtility.execute("sh", "-c", "echo partial; exit 3").toString());
+    assertTrue(SIGUtility.canExecute("sh"));
+    assertFalse(SIGUtility.canExecute("sig-no-such-command"));
+    /**
+     * Streamed output is checked the same way.
+     */
+    StringBuilder sb = new StringBuilder();
+    assertEquals(3, SIGUtility.execute(sb::append, "sh", "-c", "echo partial; exit 3").getExitCode());
+    assertEquals("partial", sb.toString());
+    try {
+      SIGUtility.execute(line -> {
+      }, "sh", "-c", "yes | head -c " + (CommandRunner.DEFAULT_MAX_OUTPUT + 1));
+      fail("Expected truncated output to be an error");
+    } catch (IOException exception) {
+    }
   }
 
   @Test
@@ -77,10 +101,32 @@ public class SIGUtilityTest {
 
   @Test
   public void testReadFileDouble() throws Exception {
+    Path file = Files.createTempFile("sig", ".txt");
+    try {
+      Files.write(file, "37.5\n".getBytes(StandardCharsets.US_ASCII));
+      assertEquals(37.5, SIGUtility.readFileDouble(file), 0.0001);
+      Files.write(file, "1.5e3\n".getBytes(StandardCharsets.US_ASCII));
+      assertEquals(1500, SIGUtility.readFileDouble(file), 0.0001);
+      Files.write(file, "NaN\n".getBytes(StandardCharsets.US_ASCII));
+      assertTrue(SIGUtility.readFileDouble(file).isNaN());
+    } finally {
+      Files.delete(file);
+    }
   }
 
   @Test
   public void testReadFileLong() throws Exception {
+    Path file = Files.createTempFile("sig", ".txt");
+    try {
+      Files.write(file, "9223372036854775807\n".getBytes(StandardCharsets.US_ASCII));
+      assertEquals(Long.MAX_VALUE, SIGUtility.readFileLong(file).longValue());
+      Files.write(file, "9223372036854775808\n".getBytes(StandardCharsets.US_ASCII));
+      SIGUtility.readFileLong(file);
+      fail("Overflow not detected");
+    } catch (NumberFormatException exception) {
+    } finally {
+      Files.delete(file);
+    }
   }
 
   @Test